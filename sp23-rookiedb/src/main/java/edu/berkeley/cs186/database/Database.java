@@ -4,6 +4,7 @@ import edu.berkeley.cs186.database.cli.parser.ASTExecutableStatement;
 import edu.berkeley.cs186.database.cli.parser.ParseException;
 import edu.berkeley.cs186.database.cli.parser.RookieParser;
 import edu.berkeley.cs186.database.cli.visitor.ExecutableStatementVisitor;
+import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.ByteBuffer;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.common.PredicateOperator;
@@ -15,6 +16,7 @@ import edu.berkeley.cs186.database.index.BPlusTree;
 import edu.berkeley.cs186.database.index.BPlusTreeMetadata;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.io.MappedDiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
 import edu.berkeley.cs186.database.memory.EvictionPolicy;
@@ -175,6 +177,41 @@ public class Database implements AutoCloseable {
      */
     public Database(String fileDir, int numMemoryPages, LockManager lockManager,
                     EvictionPolicy policy, boolean useRecoveryManager) {
+        this(fileDir, numMemoryPages, lockManager, policy, useRecoveryManager, false);
+    }
+
+    /**
+     * Creates a new database.
+     *
+     * @param fileDir the directory to put the table files in
+     * @param numMemoryPages the number of pages of memory in the buffer cache
+     * @param lockManager the lock manager
+     * @param policy eviction policy for buffer cache
+     * @param useRecoveryManager flag to enable or disable the recovery manager (ARIES)
+     * @param useMemoryMappedIO flag to access table files through memory mappings
+     *                          (MappedDiskSpaceManager) instead of file reads/writes
+     */
+    public Database(String fileDir, int numMemoryPages, LockManager lockManager,
+                    EvictionPolicy policy, boolean useRecoveryManager, boolean useMemoryMappedIO) {
+        this(fileDir, numMemoryPages, lockManager, policy, useRecoveryManager, useMemoryMappedIO, false);
+    }
+
+    /**
+     * Creates a new database.
+     *
+     * @param fileDir the directory to put the table files in
+     * @param numMemoryPages the number of pages of memory in the buffer cache
+     * @param lockManager the lock manager
+     * @param policy eviction policy for buffer cache
+     * @param useRecoveryManager flag to enable or disable the recovery manager (ARIES)
+     * @param useMemoryMappedIO flag to access table files through memory mappings
+     *                          (MappedDiskSpaceManager) instead of file reads/writes
+     * @param useOffHeapBuffer flag to store the buffer cache in direct memory instead
+     *                         of the Java heap
+     */
+    public Database(String fileDir, int numMemoryPages, LockManager lockManager,
+                    EvictionPolicy policy, boolean useRecoveryManager, boolean useMemoryMappedIO,
+                    boolean useOffHeapBuffer) {
         boolean initialized = setupDirectory(fileDir);
 
         numTransactions = 0;
@@ -187,9 +224,20 @@ public class Database implements AutoCloseable {
             recoveryManager = new DummyRecoveryManager();
         }
 
-        diskSpaceManager = new DiskSpaceManagerImpl(fileDir, recoveryManager);
+        DiskSpaceManagerImpl diskSpaceManager;
+        if (useMemoryMappedIO) {
+            diskSpaceManager = new MappedDiskSpaceManager(fileDir, recoveryManager);
+        } else {
+            diskSpaceManager = new DiskSpaceManagerImpl(fileDir, recoveryManager);
+        }
+        // ARIES redoes page allocations and frees since the last checkpoint, so
+        // partition metadata need only be written out at checkpoints
+        diskSpaceManager.setLazyMetadata(useRecoveryManager);
+        // pages written before checksums were added have none, and are still readable
+        diskSpaceManager.setChecksummed(true);
+        this.diskSpaceManager = diskSpaceManager;
         bufferManager = new BufferManager(diskSpaceManager, recoveryManager, numMemoryPages,
-                                              policy);
+                                              policy, useOffHeapBuffer);
 
         // create log partition
         if (!initialized) diskSpaceManager.allocPart(0);
@@ -253,6 +301,7 @@ public class Database implements AutoCloseable {
         PageDirectory pageDirectory = new PageDirectory(bufferManager, 2, indexInfoPage0, (short) 0,
                                               indexInfoContext);
         indexMetadata = new Table(INDEX_INFO_TABLE_NAME, getIndexInfoSchema(), pageDirectory, indexInfoContext, stats);
+        indexMetadata.setFullPageRecords();
     }
 
     private void loadMetadataTables() {
@@ -315,6 +364,10 @@ public class Database implements AutoCloseable {
         return bufferManager;
     }
 
+    public RecoveryManager getRecoveryManager() {
+        return recoveryManager;
+    }
+
     public int getWorkMem() {
         // cap work memory at number of memory pages -- this is likely to cause out of memory
         // errors if actually set this high
@@ -333,6 +386,10 @@ public class Database implements AutoCloseable {
      * 1 | part_num     | int
      * 2 | page_num     | long
      * 3 | schema       | byte array(MAX_SCHEMA_SIZE)
+     *
+     * The schema field holds the serialized schema, followed by the ordinal of
+     * the layout of the table's data pages (see PageLayout), and zero padding.
+     * The layout byte is left out (i.e. zero) for ROW tables.
      */
     public Schema getTableInfoSchema() {
         return new Schema()
@@ -373,25 +430,35 @@ public class Database implements AutoCloseable {
         int partNum;
         long pageNum;
         Schema schema;
+        PageLayout layout;
 
         TableMetadata(String tableName) {
             this.tableName = tableName;
             this.partNum = -1;
             this.pageNum = -1;
             this.schema = new Schema();
+            this.layout = PageLayout.ROW;
         }
 
         TableMetadata(Record record) {
             tableName = record.getValue(0).getString();
             partNum = record.getValue(1).getInt();
             pageNum = record.getValue(2).getLong();
-            schema = Schema.fromBytes(ByteBuffer.wrap(record.getValue(3).toBytes()));
+            Buffer buf = ByteBuffer.wrap(record.getValue(3).toBytes());
+            schema = Schema.fromBytes(buf);
+            layout = PageLayout.fromInt(buf.position() < MAX_SCHEMA_SIZE ? buf.get() : 0);
         }
 
         Record toRecord() {
             byte[] schemaBytes = schema.toBytes();
             byte[] padded = new byte[MAX_SCHEMA_SIZE];
             System.arraycopy(schemaBytes, 0, padded, 0, schemaBytes.length);
+            if (layout != PageLayout.ROW) {
+                if (schemaBytes.length == MAX_SCHEMA_SIZE) {
+                    throw new DatabaseException("schema of table `" + tableName + "` is too large");
+                }
+                padded[schemaBytes.length] = (byte) layout.ordinal();
+            }
             return new Record(tableName, partNum, pageNum, padded);
         }
     }
@@ -452,7 +519,9 @@ public class Database implements AutoCloseable {
         LockContext tableContext = getTableContext(tableName);
         long page0 = DiskSpaceManager.getVirtualPageNum(metadata.partNum, 0);
         PageDirectory pd = new PageDirectory(bufferManager, metadata.partNum, page0, (short) 0, tableContext);
-        return new Table(metadata.tableName, metadata.schema, pd, tableContext, stats);
+        Table table = new Table(metadata.tableName, metadata.schema, pd, tableContext, stats);
+        table.setPageLayout(metadata.layout);
+        return table;
     }
 
     /**
@@ -736,6 +805,16 @@ public class Database implements AutoCloseable {
             return getTable(tableName).iterator();
         }
 
+        @Override
+        public BacktrackingIterator<RowView> getRowIterator(String tableName) {
+            return getTable(tableName).rowIterator();
+        }
+
+        @Override
+        public BacktrackingIterator<RowView> getRowIterator(String tableName, Set<Integer> columns) {
+            return getTable(tableName).rowIterator(columns);
+        }
+
         @Override
         public boolean contains(String tableName, String columnName, DataBox key) {
             tableName = aliases.getOrDefault(tableName, tableName);
@@ -785,6 +864,30 @@ public class Database implements AutoCloseable {
             return getTable(tableName).getRecord(rid);
         }
 
+        @Override
+        public int vacuumTable(String tableName) {
+            Table tab = getTable(tableName);
+            if (tab == null) {
+                throw new DatabaseException("table `" + tableName + "` does not exist!");
+            }
+            tableName = tab.getName();
+            List<String> colNames = tab.getSchema().getFieldNames();
+            List<BPlusTree> trees = new ArrayList<>();
+            for (Pair<RecordId, BPlusTreeMetadata> p: getTableIndicesMetadata(tableName)) {
+                trees.add(indexFromMetadata(p.getSecond()));
+            }
+
+            return tab.vacuum((oldRid, newRid) -> {
+                Record record = tab.getRecord(newRid);
+                for (BPlusTree tree : trees) {
+                    String column = tree.getMetadata().getColName();
+                    DataBox key = record.getValue(colNames.indexOf(column));
+                    tree.remove(key);
+                    tree.put(key, newRid);
+                }
+            });
+        }
+
         @Override
         public RecordId updateRecord(String tableName, RecordId rid, Record updated) {
             Table tab = getTable(tableName);
@@ -1042,6 +1145,11 @@ public class Database implements AutoCloseable {
 
         @Override
         public void createTable(Schema s, String tableName) {
+            createTable(s, tableName, PageLayout.ROW);
+        }
+
+        @Override
+        public void createTable(Schema s, String tableName, PageLayout layout) {
             if (tableName.contains(".") || tableName.contains(" ") || tableName.length() == 0) {
                 throw new IllegalArgumentException("name of new table may not contain '.' or ' ', or be the empty string");
             }
@@ -1058,6 +1166,7 @@ public class Database implements AutoCloseable {
             metadata.partNum = diskSpaceManager.allocPart();
             metadata.pageNum = diskSpaceManager.allocPage(metadata.partNum);
             metadata.schema = s;
+            metadata.layout = layout;
             synchronized (tableMetadata) {
                 tableMetadata.addRecord(metadata.toRecord());
             }
@@ -1164,6 +1273,11 @@ public class Database implements AutoCloseable {
             bufferManager.freePart(pair.getSecond().getPartNum());
         }
 
+        @Override
+        public int vacuum(String tableName) {
+            return transactionContext.vacuumTable(tableName);
+        }
+
         @Override
         public QueryPlan query(String tableName) {
             return new QueryPlan(transactionContext, tableName);
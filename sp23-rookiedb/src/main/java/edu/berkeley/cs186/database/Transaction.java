@@ -4,6 +4,7 @@ import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.databox.BoolDataBox;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.query.QueryPlan;
+import edu.berkeley.cs186.database.table.PageLayout;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 
@@ -124,6 +125,18 @@ public abstract class Transaction implements AutoCloseable {
      */
     public abstract void createTable(Schema s, String tableName);
 
+    /**
+     * Creates a table, like createTable(s, tableName), whose data pages have the
+     * given layout (see Table for details). Scans that only need a few of the
+     * table's columns are cheaper on PAX tables, and tables with long strings
+     * take up fewer pages when SLOTTED.
+     *
+     * @param s schema of new table
+     * @param tableName name of new table
+     * @param layout layout of the data pages of new table
+     */
+    public abstract void createTable(Schema s, String tableName, PageLayout layout);
+
     /**
      * Drops a table. Equivalent to
      *      DROP TABLE tableName
@@ -162,6 +175,19 @@ public abstract class Transaction implements AutoCloseable {
      */
     public abstract void dropIndex(String tableName, String columnName);
 
+    /**
+     * Compacts a table, moving records off of its sparsest data pages and
+     * freeing the data pages left empty. Equivalent to
+     *      VACUUM tableName
+     *
+     * Records moved get new record ids, and indices on the table are updated
+     * accordingly.
+     *
+     * @param tableName name of table to compact
+     * @return number of data pages freed
+     */
+    public abstract int vacuum(String tableName);
+
     // DML /////////////////////////////////////////////////////////////////////
 
     /**
@@ -6,11 +6,13 @@ import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.index.BPlusTreeMetadata;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.RowView;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.Iterator;
+import java.util.Set;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Condition;
@@ -156,6 +158,18 @@ public abstract class TransactionContext implements AutoCloseable {
      */
     public abstract BacktrackingIterator<Record> getRecordIterator(String tableName);
 
+    /**
+     * Returns a backtracking iterator over all of the rows in `tableName`,
+     * yielding one reused RowView per row (see Table#rowIterator).
+     */
+    public abstract BacktrackingIterator<RowView> getRowIterator(String tableName);
+
+    /**
+     * Same as getRowIterator(tableName), but only the columns whose indices
+     * are in `columns` are read (see Table#rowIterator(Set)).
+     */
+    public abstract BacktrackingIterator<RowView> getRowIterator(String tableName, Set<Integer> columns);
+
     public abstract boolean contains(String tableName, String columnName, DataBox key);
 
     // Record Operations ///////////////////////////////////////////////////////
@@ -178,6 +192,15 @@ public abstract class TransactionContext implements AutoCloseable {
 
     public abstract void updateRecordWhere(String tableName, String targetColumnName, Function<Record, DataBox> expr, Function<Record, DataBox> cond);
 
+    /**
+     * Compacts the data pages of `tableName` (see Table#vacuum), updating the
+     * indices on the table for every record moved.
+     *
+     * @param tableName name of table to compact
+     * @return number of data pages freed
+     */
+    public abstract int vacuumTable(String tableName);
+
     // Table/Schema ////////////////////////////////////////////////////////////
 
     /**
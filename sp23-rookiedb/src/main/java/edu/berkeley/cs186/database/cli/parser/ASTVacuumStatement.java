@@ -0,0 +1,22 @@
+/* Generated By:JJTree: Do not edit this line. ASTVacuumStatement.java Version 7.0 */
+/* JavaCCOptions:MULTI=true,NODE_USES_PARSER=false,VISITOR=true,TRACK_TOKENS=false,NODE_PREFIX=AST,NODE_EXTENDS=,NODE_FACTORY=,SUPPORT_CLASS_VISIBILITY_PUBLIC=true */
+package edu.berkeley.cs186.database.cli.parser;
+
+public
+class ASTVacuumStatement extends SimpleNode {
+  public ASTVacuumStatement(int id) {
+    super(id);
+  }
+
+  public ASTVacuumStatement(RookieParser p, int id) {
+    super(p, id);
+  }
+
+
+  /** Accept the visitor. **/
+  public void jjtAccept(RookieParserVisitor visitor, Object data) {
+
+    visitor.visit(this, data);
+  }
+}
+/* JavaCC - OriginalChecksum=c9d76ef5bc0457f44aaab9dca31d2c30 (do not edit this line) */
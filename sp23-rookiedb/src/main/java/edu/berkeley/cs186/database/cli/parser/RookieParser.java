@@ -54,7 +54,8 @@ public class RookieParser/*@bgen(jjtree)*/implements RookieParserTreeConstants,
         case K_SAVEPOINT:
         case K_ROLLBACK:
         case K_RELEASE:
-        case K_EXPLAIN:{
+        case K_EXPLAIN:
+        case K_VACUUM:{
           ;
           break;
           }
@@ -166,6 +167,10 @@ if (jjtc000) {
               explain_stmt();
               break;
               }
+            case K_VACUUM:{
+              vacuum_stmt();
+              break;
+              }
             default:
               jj_la1[6] = jj_gen;
               jj_consume_token(-1);
@@ -241,6 +246,10 @@ if (jjtc000) {
                 explain_stmt();
                 break;
                 }
+              case K_VACUUM:{
+                vacuum_stmt();
+                break;
+                }
               default:
                 jj_la1[9] = jj_gen;
                 jj_consume_token(-1);
@@ -260,7 +269,7 @@ if (jjtc000) {
         ;
       }
 jjtree.closeNodeScope(jjtn000, true);
-                                    jjtc000 = false;
+                                   jjtc000 = false;
 {if ("" != null) return jjtn000;}
     } catch (Throwable jjte000) {
 if (jjtc000) {
@@ -341,6 +350,34 @@ if (jjtc000) {
     }
 }
 
+  final public void vacuum_stmt() throws ParseException {/*@bgen(jjtree) VacuumStatement */
+  ASTVacuumStatement jjtn000 = new ASTVacuumStatement(JJTVACUUMSTATEMENT);
+  boolean jjtc000 = true;
+  jjtree.openNodeScope(jjtn000);
+    try {
+      jj_consume_token(K_VACUUM);
+      identifier();
+    } catch (Throwable jjte000) {
+if (jjtc000) {
+        jjtree.clearNodeScope(jjtn000);
+        jjtc000 = false;
+      } else {
+        jjtree.popNode();
+      }
+      if (jjte000 instanceof RuntimeException) {
+        {if (true) throw (RuntimeException)jjte000;}
+      }
+      if (jjte000 instanceof ParseException) {
+        {if (true) throw (ParseException)jjte000;}
+      }
+      {if (true) throw (Error)jjte000;}
+    } finally {
+if (jjtc000) {
+        jjtree.closeNodeScope(jjtn000, true);
+      }
+    }
+}
+
   final public void drop_index_stmt() throws ParseException {/*@bgen(jjtree) DropIndexStatement */
   ASTDropIndexStatement jjtn000 = new ASTDropIndexStatement(JJTDROPINDEXSTATEMENT);
   boolean jjtc000 = true;
@@ -2349,27 +2386,6 @@ if (jjtc000) {
     finally { jj_save(11, xla); }
   }
 
-  private boolean jj_3_8()
- {
-    if (jj_3R_24()) return true;
-    if (jj_3R_25()) return true;
-    return false;
-  }
-
-  private boolean jj_3_9()
- {
-    if (jj_3R_26()) return true;
-    if (jj_3R_27()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_21()
- {
-    if (jj_scan_token(K_DROP)) return true;
-    if (jj_scan_token(K_TABLE)) return true;
-    return false;
-  }
-
   private boolean jj_3R_32()
  {
     if (jj_3R_24()) return true;
@@ -2388,6 +2404,13 @@ if (jjtc000) {
     return false;
   }
 
+  private boolean jj_3R_21()
+ {
+    if (jj_scan_token(K_DROP)) return true;
+    if (jj_scan_token(K_TABLE)) return true;
+    return false;
+  }
+
   private boolean jj_3_11()
  {
     if (jj_3R_29()) return true;
@@ -2490,18 +2513,6 @@ if (jjtc000) {
     return false;
   }
 
-  private boolean jj_3_4()
- {
-    if (jj_3R_21()) return true;
-    return false;
-  }
-
-  private boolean jj_3_3()
- {
-    if (jj_3R_20()) return true;
-    return false;
-  }
-
   private boolean jj_3_6()
  {
     if (jj_scan_token(IDENTIFIER)) return true;
@@ -2531,7 +2542,7 @@ if (jjtc000) {
  {
     Token xsp;
     xsp = jj_scanpos;
-    if (!jj_scan_token(69)) return false;
+    if (!jj_scan_token(70)) return false;
     jj_scanpos = xsp;
     if (!jj_3R_33()) return false;
     jj_scanpos = xsp;
@@ -2541,12 +2552,24 @@ if (jjtc000) {
     return false;
   }
 
+  private boolean jj_3_4()
+ {
+    if (jj_3R_21()) return true;
+    return false;
+  }
+
   private boolean jj_3R_38()
  {
     if (jj_scan_token(MINUS)) return true;
     return false;
   }
 
+  private boolean jj_3_3()
+ {
+    if (jj_3R_20()) return true;
+    return false;
+  }
+
   private boolean jj_3R_23()
  {
     if (jj_3R_25()) return true;
@@ -2586,12 +2609,26 @@ if (jjtc000) {
     return false;
   }
 
+  private boolean jj_3_8()
+ {
+    if (jj_3R_24()) return true;
+    if (jj_3R_25()) return true;
+    return false;
+  }
+
   private boolean jj_3_2()
  {
     if (jj_3R_21()) return true;
     return false;
   }
 
+  private boolean jj_3_9()
+ {
+    if (jj_3R_26()) return true;
+    if (jj_3R_27()) return true;
+    return false;
+  }
+
   private boolean jj_3_1()
  {
     if (jj_3R_20()) return true;
@@ -2625,7 +2662,7 @@ if (jjtc000) {
 	   jj_la1_1 = new int[] {0x0,0x0,0x1b71800a,0x0,0x8,0x8000,0x1b710002,0x8,0x8000,0x1b610002,0x0,0x1000000,0x800000,0x1000000,0x4000000,0x800000,0x600000,0x800000,0x0,0x0,0x100,0x0,0x0,0x200,0x100,0x0,0x1000,0x0,0x4000,0x0,0x0,0x0,0x0,0x0,0x0,0x60,0x20,0x0,0x0,0x0,0x800,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x200,0x400,0x800,0x0,0x0,0x400,0x200,0x800,0x0,0x800,0x800,0x0,};
 	}
 	private static void jj_la1_init_2() {
-	   jj_la1_2 = new int[] {0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x1,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x62,0x40,0x40,0x0,0x0,0x40,0x0,0x0,0x62,0x0,0x0,0x22,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x62,0x62,0x0,};
+	   jj_la1_2 = new int[] {0x0,0x0,0x2,0x0,0x0,0x0,0x2,0x0,0x0,0x2,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x1,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0xc4,0x80,0x80,0x0,0x0,0x80,0x0,0x0,0xc4,0x0,0x0,0x44,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0xc4,0xc4,0x0,};
 	}
   final private JJCalls[] jj_2_rtns = new JJCalls[12];
   private boolean jj_rescan = false;
@@ -2767,6 +2804,7 @@ if (jjtc000) {
 	 return false;
   }
 
+
 /** Get the next Token. */
   final public Token getNextToken() {
 	 if (token.next != null) token = token.next;
@@ -2823,6 +2861,7 @@ if (jjtc000) {
 			   isMatched = false;
 			   break;
 			 }
+
 		   }
 		   if (isMatched) {
 			 jj_expentries.add(jj_expentry);
@@ -2840,7 +2879,7 @@ if (jjtc000) {
   /** Generate ParseException. */
   public ParseException generateParseException() {
 	 jj_expentries.clear();
-	 boolean[] la1tokens = new boolean[71];
+	 boolean[] la1tokens = new boolean[72];
 	 if (jj_kind >= 0) {
 	   la1tokens[jj_kind] = true;
 	   jj_kind = -1;
@@ -2860,7 +2899,7 @@ if (jjtc000) {
 		 }
 	   }
 	 }
-	 for (int i = 0; i < 71; i++) {
+	 for (int i = 0; i < 72; i++) {
 	   if (la1tokens[i]) {
 		 jj_expentry = new int[1];
 		 jj_expentry[0] = i;
@@ -2918,6 +2957,7 @@ if (jjtc000) {
 		   }
 		   p = p.next;
 		 } while (p != null);
+
 		 } catch(LookaheadSuccess ls) { }
 	 }
 	 jj_rescan = false;
@@ -1,11 +1,13 @@
 /* Generated By:JJTree&JavaCC: Do not edit this line. RookieParserConstants.java */
 package edu.berkeley.cs186.database.cli.parser;
 
+
 /**
  * Token literal values and constants.
  * Generated by org.javacc.parser.OtherFilesGen#start()
  */
 public interface RookieParserConstants {
+
   /** End of File. */
   int EOF = 0;
   /** RegularExpression Id. */
@@ -129,17 +131,19 @@ public interface RookieParserConstants {
   /** RegularExpression Id. */
   int K_ORDER = 64;
   /** RegularExpression Id. */
-  int NUMERIC_LITERAL = 65;
+  int K_VACUUM = 65;
+  /** RegularExpression Id. */
+  int NUMERIC_LITERAL = 66;
   /** RegularExpression Id. */
-  int DIGITS = 66;
+  int DIGITS = 67;
   /** RegularExpression Id. */
-  int DIGIT = 67;
+  int DIGIT = 68;
   /** RegularExpression Id. */
-  int SIGN = 68;
+  int SIGN = 69;
   /** RegularExpression Id. */
-  int STRING_LITERAL = 69;
+  int STRING_LITERAL = 70;
   /** RegularExpression Id. */
-  int IDENTIFIER = 70;
+  int IDENTIFIER = 71;
 
   /** Lexical state. */
   int DEFAULT = 0;
@@ -211,6 +215,7 @@ public interface RookieParserConstants {
     "\"plan\"",
     "\"analyze\"",
     "\"order\"",
+    "\"vacuum\"",
     "<NUMERIC_LITERAL>",
     "<DIGITS>",
     "<DIGIT>",
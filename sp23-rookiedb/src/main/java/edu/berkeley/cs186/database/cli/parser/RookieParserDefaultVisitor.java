@@ -21,6 +21,9 @@ public class RookieParserDefaultVisitor implements RookieParserVisitor{
   public void visit(ASTDropTableStatement node, Object data){
     defaultVisit(node, data);
   }
+  public void visit(ASTVacuumStatement node, Object data){
+    defaultVisit(node, data);
+  }
   public void visit(ASTDropIndexStatement node, Object data){
     defaultVisit(node, data);
   }
@@ -154,4 +157,4 @@ public class RookieParserDefaultVisitor implements RookieParserVisitor{
     defaultVisit(node, data);
   }
 }
-/* JavaCC - OriginalChecksum=bfc1abc56c56149d14ed9654715639ba (do not edit this line) */
+/* JavaCC - OriginalChecksum=b0423771e38288f9f68e0a84c23fd4ad (do not edit this line) */
@@ -4,6 +4,7 @@ package edu.berkeley.cs186.database.cli.parser;
 
 /** Token Manager. */
 public class RookieParserTokenManager implements RookieParserConstants {
+
   /** Debug output. */
   public  java.io.PrintStream debugStream = System.out;
   /** Set debug output. */
@@ -12,9 +13,9 @@ private final int jjStopStringLiteralDfa_0(int pos, long active0, long active1){
    switch (pos)
    {
       case 0:
-         if ((active0 & 0xfffffffff1800000L) != 0L || (active1 & 0x1L) != 0L)
+         if ((active0 & 0xfffffffff1800000L) != 0L || (active1 & 0x3L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 71;
             return 11;
          }
          if ((active0 & 0x40L) != 0L)
@@ -23,20 +24,20 @@ private final int jjStopStringLiteralDfa_0(int pos, long active0, long active1){
       case 1:
          if ((active0 & 0x400248020000000L) != 0L || (active1 & 0x1L) != 0L)
             return 11;
-         if ((active0 & 0xfbffdb7fd1800000L) != 0L)
+         if ((active0 & 0xfbffdb7fd1800000L) != 0L || (active1 & 0x2L) != 0L)
          {
             if (jjmatchedPos != 1)
             {
-               jjmatchedKind = 70;
+               jjmatchedKind = 71;
                jjmatchedPos = 1;
             }
             return 11;
          }
          return -1;
       case 2:
-         if ((active0 & 0xfbdfd17bd1800000L) != 0L || (active1 & 0x1L) != 0L)
+         if ((active0 & 0xfbdfd17bd1800000L) != 0L || (active1 & 0x3L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 71;
             jjmatchedPos = 2;
             return 11;
          }
@@ -46,9 +47,9 @@ private final int jjStopStringLiteralDfa_0(int pos, long active0, long active1){
       case 3:
          if ((active0 & 0x4001005111000000L) != 0L)
             return 11;
-         if ((active0 & 0xbbded12ac0800000L) != 0L || (active1 & 0x1L) != 0L)
+         if ((active0 & 0xbbded12ac0800000L) != 0L || (active1 & 0x3L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 71;
             jjmatchedPos = 3;
             return 11;
          }
@@ -56,9 +57,9 @@ private final int jjStopStringLiteralDfa_0(int pos, long active0, long active1){
       case 4:
          if ((active0 & 0x201a512000800000L) != 0L || (active1 & 0x1L) != 0L)
             return 11;
-         if ((active0 & 0x9bc4800ac0000000L) != 0L)
+         if ((active0 & 0x9bc4800ac0000000L) != 0L || (active1 & 0x2L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 71;
             jjmatchedPos = 4;
             return 11;
          }
@@ -66,17 +67,17 @@ private final int jjStopStringLiteralDfa_0(int pos, long active0, long active1){
       case 5:
          if ((active0 & 0x9b80000000000000L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 71;
             jjmatchedPos = 5;
             return 11;
          }
-         if ((active0 & 0x44800ac0000000L) != 0L)
+         if ((active0 & 0x44800ac0000000L) != 0L || (active1 & 0x2L) != 0L)
             return 11;
          return -1;
       case 6:
          if ((active0 & 0x380000000000000L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 71;
             jjmatchedPos = 6;
             return 11;
          }
@@ -88,25 +89,25 @@ private final int jjStopStringLiteralDfa_0(int pos, long active0, long active1){
             return 11;
          if ((active0 & 0x180000000000000L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 71;
             jjmatchedPos = 7;
             return 11;
          }
          return -1;
       case 8:
+         if ((active0 & 0x100000000000000L) != 0L)
+            return 11;
          if ((active0 & 0x80000000000000L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 71;
             jjmatchedPos = 8;
             return 11;
          }
-         if ((active0 & 0x100000000000000L) != 0L)
-            return 11;
          return -1;
       case 9:
          if ((active0 & 0x80000000000000L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 71;
             jjmatchedPos = 9;
             return 11;
          }
@@ -217,7 +218,7 @@ private int jjMoveStringLiteralDfa0_0(){
          return jjMoveStringLiteralDfa1_0(0x200000000L, 0x0L);
       case 86:
       case 118:
-         return jjMoveStringLiteralDfa1_0(0x4000000000000L, 0x0L);
+         return jjMoveStringLiteralDfa1_0(0x4000000000000L, 0x2L);
       case 87:
       case 119:
          return jjMoveStringLiteralDfa1_0(0x10010000000L, 0x0L);
@@ -255,7 +256,7 @@ private int jjMoveStringLiteralDfa1_0(long active0, long active1){
          break;
       case 65:
       case 97:
-         return jjMoveStringLiteralDfa2_0(active0, 0x106000000800000L, active1, 0L);
+         return jjMoveStringLiteralDfa2_0(active0, 0x106000000800000L, active1, 0x2L);
       case 69:
       case 101:
          return jjMoveStringLiteralDfa2_0(active0, 0x810000c40000000L, active1, 0L);
@@ -330,6 +331,9 @@ private int jjMoveStringLiteralDfa2_0(long old0, long active0, long old1, long a
       case 66:
       case 98:
          return jjMoveStringLiteralDfa3_0(active0, 0x2000000000000L, active1, 0L);
+      case 67:
+      case 99:
+         return jjMoveStringLiteralDfa3_0(active0, 0L, active1, 0x2L);
       case 68:
       case 100:
          if ((active0 & 0x20000000000L) != 0L)
@@ -441,7 +445,7 @@ private int jjMoveStringLiteralDfa3_0(long old0, long active0, long old1, long a
          return jjMoveStringLiteralDfa4_0(active0, 0x800000L, active1, 0L);
       case 85:
       case 117:
-         return jjMoveStringLiteralDfa4_0(active0, 0x4100000000000L, active1, 0L);
+         return jjMoveStringLiteralDfa4_0(active0, 0x4100000000000L, active1, 0x2L);
       default :
          break;
    }
@@ -503,6 +507,9 @@ private int jjMoveStringLiteralDfa4_0(long old0, long active0, long old1, long a
          if ((active0 & 0x400000000000L) != 0L)
             return jjStartNfaWithStates_0(4, 46, 11);
          return jjMoveStringLiteralDfa5_0(active0, 0x800240000000L, active1, 0L);
+      case 85:
+      case 117:
+         return jjMoveStringLiteralDfa5_0(active0, 0L, active1, 0x2L);
       case 88:
       case 120:
          if ((active0 & 0x8000000000000L) != 0L)
@@ -523,14 +530,14 @@ private int jjMoveStringLiteralDfa5_0(long old0, long active0, long old1, long a
       return jjStartNfa_0(3, old0, old1);
    try { curChar = input_stream.readChar(); }
    catch(java.io.IOException e) {
-      jjStopStringLiteralDfa_0(4, active0, 0L);
+      jjStopStringLiteralDfa_0(4, active0, active1);
       return 5;
    }
    switch(curChar)
    {
       case 65:
       case 97:
-         return jjMoveStringLiteralDfa6_0(active0, 0x280000000000000L);
+         return jjMoveStringLiteralDfa6_0(active0, 0x280000000000000L, active1, 0L);
       case 69:
       case 101:
          if ((active0 & 0x40000000L) != 0L)
@@ -542,15 +549,20 @@ private int jjMoveStringLiteralDfa5_0(long old0, long active0, long old1, long a
          break;
       case 73:
       case 105:
-         return jjMoveStringLiteralDfa6_0(active0, 0x1000000000000000L);
+         return jjMoveStringLiteralDfa6_0(active0, 0x1000000000000000L, active1, 0L);
+      case 77:
+      case 109:
+         if ((active1 & 0x2L) != 0L)
+            return jjStartNfaWithStates_0(5, 65, 11);
+         break;
       case 79:
       case 111:
-         return jjMoveStringLiteralDfa6_0(active0, 0x100000000000000L);
+         return jjMoveStringLiteralDfa6_0(active0, 0x100000000000000L, active1, 0L);
       case 83:
       case 115:
          if ((active0 & 0x4000000000000L) != 0L)
             return jjStartNfaWithStates_0(5, 50, 11);
-         return jjMoveStringLiteralDfa6_0(active0, 0x800000000000000L);
+         return jjMoveStringLiteralDfa6_0(active0, 0x800000000000000L, active1, 0L);
       case 84:
       case 116:
          if ((active0 & 0x80000000L) != 0L)
@@ -562,15 +574,15 @@ private int jjMoveStringLiteralDfa5_0(long old0, long active0, long old1, long a
          break;
       case 90:
       case 122:
-         return jjMoveStringLiteralDfa6_0(active0, 0x8000000000000000L);
+         return jjMoveStringLiteralDfa6_0(active0, 0x8000000000000000L, active1, 0L);
       default :
          break;
    }
-   return jjStartNfa_0(4, active0, 0L);
+   return jjStartNfa_0(4, active0, active1);
 }
-private int jjMoveStringLiteralDfa6_0(long old0, long active0){
-   if (((active0 &= old0)) == 0L)
-      return jjStartNfa_0(4, old0, 0L);
+private int jjMoveStringLiteralDfa6_0(long old0, long active0, long old1, long active1){
+   if (((active0 &= old0) | (active1 &= old1)) == 0L)
+      return jjStartNfa_0(4, old0, old1);
    try { curChar = input_stream.readChar(); }
    catch(java.io.IOException e) {
       jjStopStringLiteralDfa_0(5, active0, 0L);
@@ -720,8 +732,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 0:
                   if ((0x3ff000000000000L & l) != 0L)
                   {
-                     if (kind > 65)
-                        kind = 65;
+                     if (kind > 66)
+                        kind = 66;
                      { jjCheckNAddStates(0, 3); }
                   }
                   else if (curChar == 34)
@@ -734,8 +746,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 1:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 65)
-                     kind = 65;
+                  if (kind > 66)
+                     kind = 66;
                   { jjCheckNAddTwoStates(1, 2); }
                   break;
                case 3:
@@ -745,8 +757,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 4:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 65)
-                     kind = 65;
+                  if (kind > 66)
+                     kind = 66;
                   { jjCheckNAdd(4); }
                   break;
                case 5:
@@ -763,14 +775,14 @@ private int jjMoveNfa_0(int startState, int curPos)
                      jjstateSet[jjnewStateCnt++] = 7;
                   break;
                case 9:
-                  if (curChar == 39 && kind > 69)
-                     kind = 69;
+                  if (curChar == 39 && kind > 70)
+                     kind = 70;
                   break;
                case 11:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 70)
-                     kind = 70;
+                  if (kind > 71)
+                     kind = 71;
                   jjstateSet[jjnewStateCnt++] = 11;
                   break;
                case 12:
@@ -790,8 +802,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                      jjstateSet[jjnewStateCnt++] = 14;
                   break;
                case 16:
-                  if (curChar == 34 && kind > 70)
-                     kind = 70;
+                  if (curChar == 34 && kind > 71)
+                     kind = 71;
                   break;
                case 18:
                   if ((0xffffffffffffdbffL & l) != 0L)
@@ -804,29 +816,29 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 25:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 65)
-                     kind = 65;
+                  if (kind > 66)
+                     kind = 66;
                   { jjCheckNAddStates(0, 3); }
                   break;
                case 26:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 65)
-                     kind = 65;
+                  if (kind > 66)
+                     kind = 66;
                   { jjCheckNAddStates(15, 17); }
                   break;
                case 27:
                   if (curChar != 46)
                      break;
-                  if (kind > 65)
-                     kind = 65;
+                  if (kind > 66)
+                     kind = 66;
                   { jjCheckNAddTwoStates(28, 29); }
                   break;
                case 28:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 65)
-                     kind = 65;
+                  if (kind > 66)
+                     kind = 66;
                   { jjCheckNAddTwoStates(28, 29); }
                   break;
                case 30:
@@ -836,15 +848,15 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 31:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 65)
-                     kind = 65;
+                  if (kind > 66)
+                     kind = 66;
                   { jjCheckNAdd(31); }
                   break;
                case 32:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 66)
-                     kind = 66;
+                  if (kind > 67)
+                     kind = 67;
                   { jjCheckNAdd(32); }
                   break;
                default : break;
@@ -861,8 +873,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 0:
                   if ((0x7fffffe87fffffeL & l) != 0L)
                   {
-                     if (kind > 70)
-                        kind = 70;
+                     if (kind > 71)
+                        kind = 71;
                      { jjCheckNAdd(11); }
                   }
                   else if (curChar == 91)
@@ -881,8 +893,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 11:
                   if ((0x7fffffe87fffffeL & l) == 0L)
                      break;
-                  if (kind > 70)
-                     kind = 70;
+                  if (kind > 71)
+                     kind = 71;
                   { jjCheckNAdd(11); }
                   break;
                case 13:
@@ -905,8 +917,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                      jjstateSet[jjnewStateCnt++] = 19;
                   break;
                case 21:
-                  if (curChar == 96 && kind > 70)
-                     kind = 70;
+                  if (curChar == 96 && kind > 71)
+                     kind = 71;
                   break;
                case 22:
                   if (curChar == 91)
@@ -917,8 +929,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                      { jjCheckNAddTwoStates(23, 24); }
                   break;
                case 24:
-                  if (curChar == 93 && kind > 70)
-                     kind = 70;
+                  if (curChar == 93 && kind > 71)
+                     kind = 71;
                   break;
                case 29:
                   if ((0x2000000020L & l) != 0L)
@@ -977,7 +989,7 @@ public static final String[] jjstrLiteralImages = {
 "\74\76", null, null, "\41", "\46\46", "\174\174", null, null, null, null, null, null, 
 null, null, null, null, null, null, null, null, null, null, null, null, null, null, 
 null, null, null, null, null, null, null, null, null, null, null, null, null, null, 
-null, null, null, null, null, null, null, null, null, };
+null, null, null, null, null, null, null, null, null, null, };
 protected Token jjFillToken()
 {
    final Token t;
@@ -1135,6 +1147,7 @@ private void jjCheckNAddStates(int start, int end)
 
     /** Constructor. */
     public RookieParserTokenManager(SimpleCharStream stream){
+
       if (SimpleCharStream.staticFlag)
             throw new Error("ERROR: Cannot use a static CharStream class with a non-static lexical analyzer.");
 
@@ -1151,6 +1164,8 @@ private void jjCheckNAddStates(int start, int end)
   
   public void ReInit(SimpleCharStream stream)
   {
+
+
     jjmatchedPos =
     jjnewStateCnt =
     0;
@@ -1184,6 +1199,7 @@ private void jjCheckNAddStates(int start, int end)
       curLexState = lexState;
   }
 
+
 /** Lexer state names. */
 public static final String[] lexStateNames = {
    "DEFAULT",
@@ -1193,10 +1209,10 @@ public static final String[] lexStateNames = {
 public static final int[] jjnewLexState = {
    -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 
    -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 
-   -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 
+   -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 
 };
 static final long[] jjtoToken = {
-   0xffffffffffffffe1L, 0x67L, 
+   0xffffffffffffffe1L, 0xcfL, 
 };
 static final long[] jjtoSkip = {
    0x1eL, 0x0L, 
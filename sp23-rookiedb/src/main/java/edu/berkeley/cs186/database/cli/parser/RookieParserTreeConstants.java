@@ -8,50 +8,52 @@ public interface RookieParserTreeConstants
   public int JJTEXECUTABLESTATEMENT = 2;
   public int JJTEXPLAINSTATEMENT = 3;
   public int JJTDROPTABLESTATEMENT = 4;
-  public int JJTDROPINDEXSTATEMENT = 5;
-  public int JJTRELEASESTATEMENT = 6;
-  public int JJTSAVEPOINTSTATEMENT = 7;
-  public int JJTROLLBACKSTATEMENT = 8;
-  public int JJTBEGINSTATEMENT = 9;
-  public int JJTCOMMITSTATEMENT = 10;
-  public int JJTINSERTSTATEMENT = 11;
-  public int JJTINSERTVALUES = 12;
-  public int JJTUPDATESTATEMENT = 13;
-  public int JJTSELECTSTATEMENT = 14;
-  public int JJTCOMMONTABLEEXPRESSION = 15;
-  public int JJTDELETESTATEMENT = 16;
-  public int JJTCREATETABLESTATEMENT = 17;
-  public int JJTCREATEINDEXSTATEMENT = 18;
-  public int JJTCOLUMNDEF = 19;
-  public int JJTSELECTCLAUSE = 20;
-  public int JJTLIMITCLAUSE = 21;
-  public int JJTFROMCLAUSE = 22;
-  public int JJTORDERCLAUSE = 23;
-  public int JJTJOINEDTABLE = 24;
-  public int JJTSELECTCOLUMN = 25;
-  public int JJTRESULTCOLUMNNAME = 26;
-  public int JJTCOLUMNNAME = 27;
-  public int JJTIDENTIFIER = 28;
-  public int JJTALIASEDTABLENAME = 29;
-  public int JJTCOLUMNVALUECOMPARISON = 30;
-  public int JJTNUMERICLITERAL = 31;
-  public int JJTINTEGERLITERAL = 32;
-  public int JJTLITERAL = 33;
-  public int JJTCOMPARISONOPERATOR = 34;
-  public int JJTOROPERATOR = 35;
-  public int JJTANDOPERATOR = 36;
-  public int JJTNOTOPERATOR = 37;
-  public int JJTMULTIPLICATIVEOPERATOR = 38;
-  public int JJTADDITIVEOPERATOR = 39;
-  public int JJTEXPRESSION = 40;
-  public int JJTOREXPRESSION = 41;
-  public int JJTANDEXPRESSION = 42;
-  public int JJTNOTEXPRESSION = 43;
-  public int JJTCOMPARISONEXPRESSION = 44;
-  public int JJTADDITIVEEXPRESSION = 45;
-  public int JJTMULTIPLICATIVEEXPRESSION = 46;
-  public int JJTFUNCTIONCALLEXPRESSION = 47;
-  public int JJTPRIMARYEXPRESSION = 48;
+  public int JJTVACUUMSTATEMENT = 5;
+  public int JJTDROPINDEXSTATEMENT = 6;
+  public int JJTRELEASESTATEMENT = 7;
+  public int JJTSAVEPOINTSTATEMENT = 8;
+  public int JJTROLLBACKSTATEMENT = 9;
+  public int JJTBEGINSTATEMENT = 10;
+  public int JJTCOMMITSTATEMENT = 11;
+  public int JJTINSERTSTATEMENT = 12;
+  public int JJTINSERTVALUES = 13;
+  public int JJTUPDATESTATEMENT = 14;
+  public int JJTSELECTSTATEMENT = 15;
+  public int JJTCOMMONTABLEEXPRESSION = 16;
+  public int JJTDELETESTATEMENT = 17;
+  public int JJTCREATETABLESTATEMENT = 18;
+  public int JJTCREATEINDEXSTATEMENT = 19;
+  public int JJTCOLUMNDEF = 20;
+  public int JJTSELECTCLAUSE = 21;
+  public int JJTLIMITCLAUSE = 22;
+  public int JJTFROMCLAUSE = 23;
+  public int JJTORDERCLAUSE = 24;
+  public int JJTJOINEDTABLE = 25;
+  public int JJTSELECTCOLUMN = 26;
+  public int JJTRESULTCOLUMNNAME = 27;
+  public int JJTCOLUMNNAME = 28;
+  public int JJTIDENTIFIER = 29;
+  public int JJTALIASEDTABLENAME = 30;
+  public int JJTCOLUMNVALUECOMPARISON = 31;
+  public int JJTNUMERICLITERAL = 32;
+  public int JJTINTEGERLITERAL = 33;
+  public int JJTLITERAL = 34;
+  public int JJTCOMPARISONOPERATOR = 35;
+  public int JJTOROPERATOR = 36;
+  public int JJTANDOPERATOR = 37;
+  public int JJTNOTOPERATOR = 38;
+  public int JJTMULTIPLICATIVEOPERATOR = 39;
+  public int JJTADDITIVEOPERATOR = 40;
+  public int JJTEXPRESSION = 41;
+  public int JJTOREXPRESSION = 42;
+  public int JJTANDEXPRESSION = 43;
+  public int JJTNOTEXPRESSION = 44;
+  public int JJTCOMPARISONEXPRESSION = 45;
+  public int JJTADDITIVEEXPRESSION = 46;
+  public int JJTMULTIPLICATIVEEXPRESSION = 47;
+  public int JJTFUNCTIONCALLEXPRESSION = 48;
+  public int JJTPRIMARYEXPRESSION = 49;
+
 
   public String[] jjtNodeName = {
     "SQLStatementList",
@@ -59,6 +61,7 @@ public interface RookieParserTreeConstants
     "ExecutableStatement",
     "ExplainStatement",
     "DropTableStatement",
+    "VacuumStatement",
     "DropIndexStatement",
     "ReleaseStatement",
     "SavepointStatement",
@@ -105,4 +108,4 @@ public interface RookieParserTreeConstants
     "PrimaryExpression",
   };
 }
-/* JavaCC - OriginalChecksum=7454a2bc0c1d9ffa919482951677c36d (do not edit this line) */
+/* JavaCC - OriginalChecksum=e75404f6a4a1e8c1b069fc423bad1538 (do not edit this line) */
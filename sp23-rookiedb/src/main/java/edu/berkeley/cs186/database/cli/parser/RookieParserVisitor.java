@@ -8,6 +8,7 @@ public interface RookieParserVisitor
   public void visit(ASTExecutableStatement node, Object data);
   public void visit(ASTExplainStatement node, Object data);
   public void visit(ASTDropTableStatement node, Object data);
+  public void visit(ASTVacuumStatement node, Object data);
   public void visit(ASTDropIndexStatement node, Object data);
   public void visit(ASTReleaseStatement node, Object data);
   public void visit(ASTSavepointStatement node, Object data);
@@ -53,4 +54,4 @@ public interface RookieParserVisitor
   public void visit(ASTFunctionCallExpression node, Object data);
   public void visit(ASTPrimaryExpression node, Object data);
 }
-/* JavaCC - OriginalChecksum=b2a80acec93a79482d81c9c81b82256e (do not edit this line) */
+/* JavaCC - OriginalChecksum=ed20c3c7928d7b4c9bc8c4a775202c70 (do not edit this line) */
@@ -133,4 +133,13 @@ public class ExecutableStatementVisitor extends RookieParserDefaultVisitor {
         this.visitor = new ExplainStatementVisitor();
         node.childrenAccept(visitor, null);
     }
+
+    /**
+     * VACUUM
+     */
+    @Override
+    public void visit(ASTVacuumStatement node, Object data) {
+        this.visitor = new VacuumStatementVisitor();
+        node.childrenAccept(visitor, null);
+    }
 }
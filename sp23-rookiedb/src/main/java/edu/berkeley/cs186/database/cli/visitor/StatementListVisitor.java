@@ -226,4 +226,14 @@ public class StatementListVisitor extends RookieParserDefaultVisitor {
         node.childrenAccept(visitor, null);
         this.statementVisitors.add(visitor);
     }
+
+    /**
+     * VACUUM
+     */
+    @Override
+    public void visit(ASTVacuumStatement node, Object data) {
+        VacuumStatementVisitor visitor = new VacuumStatementVisitor();
+        node.childrenAccept(visitor, null);
+        this.statementVisitors.add(visitor);
+    }
 }
@@ -14,5 +14,6 @@ enum StatementType{
     ROLLBACK,
     SAVEPOINT,
     RELEASE_SAVEPOINT,
-    EXPLAIN
+    EXPLAIN,
+    VACUUM
 }
\ No newline at end of file
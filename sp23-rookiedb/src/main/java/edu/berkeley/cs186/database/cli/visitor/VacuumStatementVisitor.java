@@ -0,0 +1,32 @@
+package edu.berkeley.cs186.database.cli.visitor;
+
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.cli.parser.ASTIdentifier;
+
+import java.io.PrintStream;
+
+class VacuumStatementVisitor extends StatementVisitor {
+    public String tableName;
+
+    @Override
+    public void visit(ASTIdentifier node, Object data) {
+        this.tableName = (String) node.jjtGetValue();
+    }
+
+    @Override
+    public void execute(Transaction transaction, PrintStream out) {
+        try {
+            int numFreed = transaction.vacuum(this.tableName);
+            out.println("VACUUM " + this.tableName + "; (" + numFreed + " pages freed)");
+        } catch (Exception e) {
+            out.println(e.getMessage());
+            out.println("Failed to execute VACUUM.");
+        }
+    }
+
+    @Override
+    public StatementType getType() {
+        return StatementType.VACUUM;
+    }
+
+}
\ No newline at end of file
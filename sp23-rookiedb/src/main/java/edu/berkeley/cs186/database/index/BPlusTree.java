@@ -9,6 +9,7 @@ import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ExtentAllocator;
 import edu.berkeley.cs186.database.table.RecordId;
 
 import java.io.FileWriter;
@@ -340,6 +341,19 @@ public class BPlusTree {
         // TODO(proj4_integration): Update the following line
         LockUtil.ensureSufficientLockHeld(lockContext, LockType.NL);
 
+        // New leaves come from extents, so that they are not interleaved with
+        // inner nodes on disk.
+        ExtentAllocator leafExtents = new ExtentAllocator(bufferManager, lockContext, metadata.getPartNum());
+        metadata.setLeafExtents(leafExtents);
+        try {
+            bulkLoadHelper(data, fillFactor);
+        } finally {
+            metadata.setLeafExtents(null);
+            leafExtents.close();
+        }
+    }
+
+    private void bulkLoadHelper(Iterator<Pair<DataBox, RecordId>> data, float fillFactor) {
         // Note: You should NOT update the root variable directly.
         // Use the provided updateRoot() helper method to change
         // the tree's root if the old root splits.
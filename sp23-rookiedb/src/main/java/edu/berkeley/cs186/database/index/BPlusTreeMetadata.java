@@ -2,6 +2,7 @@ package edu.berkeley.cs186.database.index;
 
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.memory.ExtentAllocator;
 import edu.berkeley.cs186.database.table.Record;
 
 /** Metadata about a B+ tree. */
@@ -33,6 +34,10 @@ public class BPlusTreeMetadata {
     // The height of this tree.
     private int height;
 
+    // While the tree is being bulk loaded, the allocator that new leaves get their
+    // pages from, so that the leaves are laid out sequentially. Not persisted.
+    private ExtentAllocator leafExtents;
+
     public BPlusTreeMetadata(String tableName, String colName, Type keySchema, int order, int partNum,
                              long rootPageNum, int height) {
         this.tableName = tableName;
@@ -106,4 +111,12 @@ public class BPlusTreeMetadata {
     void incrementHeight() {
         ++height;
     }
+
+    ExtentAllocator getLeafExtents() {
+        return leafExtents;
+    }
+
+    void setLeafExtents(ExtentAllocator leafExtents) {
+        this.leafExtents = leafExtents;
+    }
 }
@@ -6,6 +6,7 @@ import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ExtentAllocator;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.RecordId;
 
@@ -205,7 +206,11 @@ class LeafNode extends BPlusNode {
         List<RecordId> rids = new ArrayList<>();
         keys.add(this.keys.remove(logical2d));
         rids.add(this.rids.remove(logical2d));
-        LeafNode newNode = new LeafNode(metadata, bufferManager, keys, rids, rightSibling, treeContext);
+        ExtentAllocator leafExtents = metadata.getLeafExtents();
+        Page newPage = leafExtents == null
+                       ? bufferManager.fetchNewPage(treeContext, metadata.getPartNum())
+                       : leafExtents.fetchNewPage();
+        LeafNode newNode = new LeafNode(metadata, bufferManager, newPage, keys, rids, rightSibling, treeContext);
         rightSibling = Optional.of(newNode.getPage().getPageNum());
         newNode.sync();
         sync();
@@ -0,0 +1,21 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * Exception thrown when a page read from disk does not match its checksum.
+ */
+@SuppressWarnings("serial")
+public class CorruptPageException extends PageException {
+    private final long pageNum;
+
+    public CorruptPageException(long pageNum, String message) {
+        super(message);
+        this.pageNum = pageNum;
+    }
+
+    /**
+     * @return virtual page number of the corrupt page
+     */
+    public long getPageNum() {
+        return this.pageNum;
+    }
+}
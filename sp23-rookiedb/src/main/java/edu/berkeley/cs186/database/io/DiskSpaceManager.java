@@ -1,5 +1,7 @@
 package edu.berkeley.cs186.database.io;
 
+import java.nio.ByteBuffer;
+
 public interface DiskSpaceManager extends AutoCloseable {
     short PAGE_SIZE = 4096; // size of a page in bytes
     long INVALID_PAGE_NUM = -1L; // a page number that is always invalid
@@ -36,6 +38,22 @@ public interface DiskSpaceManager extends AutoCloseable {
      */
     long allocPage(int partNum);
 
+    /**
+     * Allocates several new pages in a partition. Implementations backed by files
+     * allocate them as one run of contiguous pages, with a single update of the
+     * partition's metadata; the default allocates them one at a time.
+     * @param partNum partition to allocate new pages under
+     * @param count number of pages to allocate
+     * @return virtual page numbers of new pages, in ascending order
+     */
+    default long[] allocPages(int partNum, int count) {
+        long[] pages = new long[count];
+        for (int i = 0; i < count; ++i) {
+            pages[i] = allocPage(partNum);
+        }
+        return pages;
+    }
+
     /**
      * Allocates a new page with a specific page number.
      * @param pageNum page number of new page
@@ -49,6 +67,38 @@ public interface DiskSpaceManager extends AutoCloseable {
      */
     void freePage(long page);
 
+    /**
+     * Frees every allocated page from fromPage up to (but not including) toPage, which
+     * must be in the same partition. Nothing is logged, so the pages' contents must no
+     * longer be needed for recovery; this is used to truncate the log. The default frees
+     * the pages one at a time.
+     * @param fromPage virtual page number of the first page to free
+     * @param toPage virtual page number to stop at
+     */
+    default void freePages(long fromPage, long toPage) {
+        for (long page = fromPage; page < toPage; ++page) {
+            if (pageAllocated(page)) {
+                freePage(page);
+            }
+        }
+    }
+
+    /**
+     * Finds the first allocated page from fromPage up to (but not including) toPage,
+     * which must be in the same partition. The default checks the pages one at a time.
+     * @param fromPage virtual page number to start at
+     * @param toPage virtual page number to stop at
+     * @return virtual page number of the first allocated page, or toPage if there is none
+     */
+    default long firstAllocatedPage(long fromPage, long toPage) {
+        for (long page = fromPage; page < toPage; ++page) {
+            if (pageAllocated(page)) {
+                return page;
+            }
+        }
+        return toPage;
+    }
+
     /**
      * Reads a page.
      *
@@ -57,6 +107,57 @@ public interface DiskSpaceManager extends AutoCloseable {
      */
     void readPage(long page, byte[] buf);
 
+    /**
+     * Reads a page into a ByteBuffer, e.g. a slice of an off-heap buffer pool.
+     * Implementations that read from a file fill the buffer directly; the default
+     * reads into a temporary array and copies it.
+     *
+     * @param page number of page to be read
+     * @param buf buffer with exactly a page of bytes remaining, filled from its
+     *            position; its position is not changed
+     */
+    default void readPage(long page, ByteBuffer buf) {
+        if (buf.remaining() != PAGE_SIZE) {
+            throw new IllegalArgumentException("readPage expects a page-sized buffer");
+        }
+        byte[] bytes = new byte[PAGE_SIZE];
+        readPage(page, bytes);
+        buf.duplicate().put(bytes);
+    }
+
+    /**
+     * Reads several pages. Implementations may coalesce pages that are stored
+     * contiguously into a single read.
+     *
+     * @param pages numbers of pages to be read
+     * @param bufs byte buffers, bufs[i] is filled with the data of page pages[i]
+     */
+    default void readPages(long[] pages, byte[][] bufs) {
+        if (pages.length != bufs.length) {
+            throw new IllegalArgumentException("readPages expects one buffer per page");
+        }
+        for (int i = 0; i < pages.length; ++i) {
+            readPage(pages[i], bufs[i]);
+        }
+    }
+
+    /**
+     * Reads several pages into ByteBuffers. Implementations may coalesce pages that
+     * are stored contiguously into a single read.
+     *
+     * @param pages numbers of pages to be read
+     * @param bufs buffers with exactly a page of bytes remaining, bufs[i] is filled
+     *             with the data of page pages[i]
+     */
+    default void readPages(long[] pages, ByteBuffer[] bufs) {
+        if (pages.length != bufs.length) {
+            throw new IllegalArgumentException("readPages expects one buffer per page");
+        }
+        for (int i = 0; i < pages.length; ++i) {
+            readPage(pages[i], bufs[i]);
+        }
+    }
+
     /**
      * Writes to a page.
      *
@@ -65,6 +166,29 @@ public interface DiskSpaceManager extends AutoCloseable {
      */
     void writePage(long page, byte[] buf);
 
+    /**
+     * Writes to a page from a ByteBuffer. The default copies the buffer into a
+     * temporary array.
+     *
+     * @param page number of page to be written
+     * @param buf buffer with exactly a page of bytes remaining, written from its
+     *            position; its position is not changed
+     */
+    default void writePage(long page, ByteBuffer buf) {
+        if (buf.remaining() != PAGE_SIZE) {
+            throw new IllegalArgumentException("writePage expects a page-sized buffer");
+        }
+        byte[] bytes = new byte[PAGE_SIZE];
+        buf.duplicate().get(bytes);
+        writePage(page, bytes);
+    }
+
+    /**
+     * Forces all data page writes made so far to disk. Only needed if the
+     * implementation defers durability of data page writes.
+     */
+    void sync();
+
     /**
      * Checks if a page is allocated
      *
@@ -1,11 +1,17 @@
 package edu.berkeley.cs186.database.io;
 
 import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.recovery.LogManager;
 import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -44,6 +50,37 @@ import java.util.concurrent.locks.ReentrantLock;
  * - the second header page follows
  * - the next 32K pages are data pages managed by the second header page
  * - etc.
+ *
+ * By default every data page write is forced to disk before returning. In deferred sync
+ * mode, data page writes (except to the log partition) are only written to the OS cache,
+ * and are forced in batches when sync() is called (the recovery manager does so at every
+ * checkpoint) or when the partition is closed. This is safe under ARIES, since the log is
+ * still forced before any page it covers is written, and a checkpoint only records a DPT
+ * without a page once that page's writes have been synced.
+ *
+ * Similarly, with lazy metadata, allocating or freeing a page only changes the cached
+ * master and header pages, and changed master and header pages are written out at
+ * sync() (after flushing the log past the allocations and frees) and at close. Under
+ * ARIES, a checkpoint syncs after writing its begin record, so every allocation and free
+ * logged before the checkpoint is on disk, and restart recovery redoes those logged
+ * after it. The log partition's metadata is always written out immediately, since the
+ * log must be readable before anything is redone.
+ *
+ * Partitions that are read but rarely modified can be stored compressed (see
+ * setCompressed), in which case their files hold only the allocated data pages,
+ * each compressed, one after another. Pages are decompressed as they are read, and
+ * a compressed partition is rewritten uncompressed the first time it is modified.
+ *
+ * With checksums on (see setChecksummed), every data page written (except to the log
+ * partition) carries a CRC32C checksum in the first 4 bytes of its reserved space,
+ * which is verified whenever the page is read. A page that fails verification is
+ * handed to the recovery manager to be rebuilt (RecoveryManager#repairPage), and if it
+ * cannot be, the read throws a CorruptPageException.
+ *
+ * Pages of the log partition are never reused once freed, so log page numbers (which
+ * LSNs are made from) keep increasing after the log is truncated. Truncation frees
+ * log pages in bulk (see freePages), and once as many pages have been freed as remain,
+ * the partition file is rewritten as a sparse file holding only the remaining pages.
  */
 public class DiskSpaceManagerImpl implements DiskSpaceManager {
     static final int MAX_HEADER_PAGES = PAGE_SIZE / 2; // 2 bytes per header page
@@ -62,7 +99,16 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
     private ReentrantLock managerLock;
 
     // recovery manager
-    private RecoveryManager recoveryManager;
+    RecoveryManager recoveryManager;
+
+    // Whether data page writes are only forced to disk on sync()
+    private boolean deferSync;
+
+    // Whether master and header page changes are only written out on sync()
+    private boolean lazyMetadata;
+
+    // Whether data pages are checksummed
+    private boolean checksummed;
 
     /**
      * Initialize the disk space manager using the given directory. Creates the directory
@@ -71,8 +117,20 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
      * @param dbDir base directory of the database
      */
     public DiskSpaceManagerImpl(String dbDir, RecoveryManager recoveryManager) {
+        this(dbDir, recoveryManager, false);
+    }
+
+    /**
+     * Initialize the disk space manager using the given directory. Creates the directory
+     * if not present.
+     *
+     * @param dbDir base directory of the database
+     * @param deferSync true to defer forcing data page writes to disk until sync()
+     */
+    public DiskSpaceManagerImpl(String dbDir, RecoveryManager recoveryManager, boolean deferSync) {
         this.dbDir = dbDir;
         this.recoveryManager = recoveryManager;
+        this.deferSync = deferSync;
         this.partInfo = new HashMap<>();
         this.partNumCounter = new AtomicInteger(0);
         this.managerLock = new ReentrantLock();
@@ -89,7 +147,9 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                 throw new PageException("could not initialize disk space manager - directory is a file");
             }
             for (File f : files) {
-                if (f.length() == 0) {
+                if (f.length() == 0 || f.getName().endsWith(PartitionHandle.TEMP_SUFFIX)) {
+                    // empty, or left over from a rewrite (see PartitionHandle#compress)
+                    // that did not finish
                     if (!f.delete()) {
                         throw new PageException("could not clean up unused file - " + f.getName());
                     }
@@ -98,7 +158,8 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                 int fileNum = Integer.parseInt(f.getName());
                 maxFileNum = Math.max(maxFileNum, fileNum);
 
-                PartitionHandle pi = new PartitionHandle(fileNum, recoveryManager);
+                PartitionHandle pi = newPartitionHandle(fileNum);
+                pi.setAppendOnly(appendOnly(fileNum));
                 pi.open(dbDir + "/" + f.getName());
                 this.partInfo.put(fileNum, pi);
             }
@@ -106,6 +167,15 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
     }
 
+    /**
+     * Creates the handle for a partition (not yet opened).
+     * @param partNum partition number
+     * @return new partition handle
+     */
+    PartitionHandle newPartitionHandle(int partNum) {
+        return new PartitionHandle(partNum, recoveryManager, deferSync(partNum));
+    }
+
     @Override
     public void close() {
         for (Map.Entry<Integer, PartitionHandle> part : this.partInfo.entrySet()) {
@@ -137,7 +207,10 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                 throw new IllegalStateException("partition number " + partNum + " already exists");
             }
 
-            pi = new PartitionHandle(partNum, recoveryManager);
+            pi = newPartitionHandle(partNum);
+            pi.setLazyMetadata(lazyMetadata(partNum));
+            pi.setChecksums(checksummed(partNum));
+            pi.setAppendOnly(appendOnly(partNum));
             this.partInfo.put(partNum, pi);
 
             pi.partitionLock.lock();
@@ -206,15 +279,54 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         } finally {
             this.managerLock.unlock();
         }
+        int pageNum;
         try {
-            int pageNum = pi.allocPage();
-            pi.writePage(pageNum, new byte[PAGE_SIZE]);
-            return DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
+            pageNum = pi.allocPage();
+            pi.writePage(pageNum, ByteBuffer.wrap(new byte[PAGE_SIZE]));
         } catch (IOException e) {
             throw new PageException("could not modify partition " + partNum + ": " + e.getMessage());
         } finally {
             pi.partitionLock.unlock();
         }
+        this.syncUnlogged(pi);
+        return DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
+    }
+
+    /**
+     * Allocates a run of contiguous new pages in a partition, with one update of the
+     * partition's master and header pages and one write to zero out the pages.
+     * A run cannot span header pages, so at most DATA_PAGES_PER_HEADER pages can be
+     * allocated at once.
+     *
+     * @param partNum partition to allocate new pages under
+     * @param count number of pages to allocate
+     * @return virtual page numbers of new pages, in ascending order
+     */
+    @Override
+    public long[] allocPages(int partNum, int count) {
+        this.managerLock.lock();
+        PartitionHandle pi;
+        try {
+            pi = getPartInfo(partNum);
+            pi.partitionLock.lock();
+        } finally {
+            this.managerLock.unlock();
+        }
+        int firstPageNum;
+        try {
+            firstPageNum = pi.allocPages(count);
+            pi.zeroPages(firstPageNum, count);
+        } catch (IOException e) {
+            throw new PageException("could not modify partition " + partNum + ": " + e.getMessage());
+        } finally {
+            pi.partitionLock.unlock();
+        }
+        this.syncUnlogged(pi);
+        long[] pages = new long[count];
+        for (int i = 0; i < count; ++i) {
+            pages[i] = DiskSpaceManager.getVirtualPageNum(partNum, firstPageNum + i);
+        }
+        return pages;
     }
 
     @Override
@@ -234,13 +346,14 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
         try {
             pi.allocPage(headerIndex, pageIndex);
-            pi.writePage(pageNum, new byte[PAGE_SIZE]);
-            return DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
+            pi.writePage(pageNum, ByteBuffer.wrap(new byte[PAGE_SIZE]));
         } catch (IOException e) {
             throw new PageException("could not modify partition " + partNum + ": " + e.getMessage());
         } finally {
             pi.partitionLock.unlock();
         }
+        this.syncUnlogged(pi);
+        return DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
     }
 
     @Override
@@ -262,6 +375,71 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         } finally {
             pi.partitionLock.unlock();
         }
+        this.syncUnlogged(pi);
+    }
+
+    @Override
+    public void freePages(long fromPage, long toPage) {
+        int partNum = DiskSpaceManager.getPartNum(fromPage);
+        if (toPage <= fromPage) {
+            return;
+        }
+        if (DiskSpaceManager.getPartNum(toPage - 1) != partNum) {
+            throw new IllegalArgumentException("cannot free pages of more than one partition at once");
+        }
+        this.managerLock.lock();
+        PartitionHandle pi;
+        try {
+            pi = getPartInfo(partNum);
+        } finally {
+            this.managerLock.unlock();
+        }
+        while (true) {
+            // as in sync(), logged allocations and frees must be flushed before the
+            // partition's metadata is written out
+            long metadataLSN = pi.getMetadataLSN();
+            if (metadataLSN > 0) {
+                recoveryManager.pageFlushHook(metadataLSN);
+            }
+            pi.partitionLock.lock();
+            try {
+                if (pi.getMetadataLSN() != metadataLSN) {
+                    continue;
+                }
+                pi.discardPages(DiskSpaceManager.getPageNum(fromPage),
+                                DiskSpaceManager.getPageNum(toPage - 1) + 1);
+                break;
+            } catch (IOException e) {
+                throw new PageException("could not modify partition " + partNum + ": " + e.getMessage());
+            } finally {
+                pi.partitionLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public long firstAllocatedPage(long fromPage, long toPage) {
+        int partNum = DiskSpaceManager.getPartNum(fromPage);
+        if (toPage <= fromPage) {
+            return toPage;
+        }
+        this.managerLock.lock();
+        PartitionHandle pi;
+        try {
+            pi = getPartInfo(partNum);
+            pi.partitionLock.lock();
+        } finally {
+            this.managerLock.unlock();
+        }
+        try {
+            int endPageNum = DiskSpaceManager.getPartNum(toPage - 1) == partNum
+                             ? DiskSpaceManager.getPageNum(toPage - 1) + 1
+                             : Integer.MAX_VALUE;
+            int pageNum = pi.firstAllocatedPage(DiskSpaceManager.getPageNum(fromPage), endPageNum);
+            return pageNum == endPageNum ? toPage : DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
+        } finally {
+            pi.partitionLock.unlock();
+        }
     }
 
     @Override
@@ -269,6 +447,14 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         if (buf.length != PAGE_SIZE) {
             throw new IllegalArgumentException("readPage expects a page-sized buffer");
         }
+        this.readPage(page, ByteBuffer.wrap(buf));
+    }
+
+    @Override
+    public void readPage(long page, ByteBuffer buf) {
+        if (buf.remaining() != PAGE_SIZE) {
+            throw new IllegalArgumentException("readPage expects a page-sized buffer");
+        }
         int partNum = DiskSpaceManager.getPartNum(page);
         int pageNum = DiskSpaceManager.getPageNum(page);
         this.managerLock.lock();
@@ -279,13 +465,117 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         } finally {
             this.managerLock.unlock();
         }
+        CorruptPageException corrupt;
         try {
             pi.readPage(pageNum, buf);
+            return;
+        } catch (CorruptPageException e) {
+            corrupt = e;
         } catch (IOException e) {
             throw new PageException("could not read partition " + partNum + ": " + e.getMessage());
         } finally {
             pi.partitionLock.unlock();
         }
+        this.repairPage(corrupt, buf);
+    }
+
+    /**
+     * Asks the recovery manager to rebuild a page that failed its checksum, and
+     * writes the rebuilt page out in place of the corrupt one. Called without
+     * the partition lock, since the recovery manager reads the log to rebuild
+     * the page.
+     *
+     * @param e exception thrown when the page was read
+     * @param buf output buffer to be filled with the rebuilt page
+     * @throws CorruptPageException e, if the page cannot be rebuilt
+     */
+    private void repairPage(CorruptPageException e, ByteBuffer buf) {
+        byte[] contents = new byte[PAGE_SIZE];
+        if (!recoveryManager.repairPage(e.getPageNum(), contents)) {
+            throw e;
+        }
+        ByteBuffer repaired = ByteBuffer.wrap(contents);
+        this.writePage(e.getPageNum(), repaired);
+        buf.duplicate().put(repaired);
+    }
+
+    @Override
+    public void readPages(long[] pages, byte[][] bufs) {
+        ByteBuffer[] buffers = new ByteBuffer[bufs.length];
+        for (int i = 0; i < bufs.length; ++i) {
+            if (bufs[i].length != PAGE_SIZE) {
+                throw new IllegalArgumentException("readPages expects page-sized buffers");
+            }
+            buffers[i] = ByteBuffer.wrap(bufs[i]);
+        }
+        this.readPages(pages, buffers);
+    }
+
+    /**
+     * Reads several pages. Pages are grouped by partition, and each run of
+     * pages stored contiguously in a partition's file is read with a single
+     * scattering read.
+     *
+     * @param pages numbers of pages to be read
+     * @param bufs byte buffers, bufs[i] is filled with the data of page pages[i]
+     */
+    @Override
+    public void readPages(long[] pages, ByteBuffer[] bufs) {
+        if (pages.length != bufs.length) {
+            throw new IllegalArgumentException("readPages expects one buffer per page");
+        }
+        for (ByteBuffer buf : bufs) {
+            if (buf.remaining() != PAGE_SIZE) {
+                throw new IllegalArgumentException("readPages expects page-sized buffers");
+            }
+        }
+        // sort requests by page number, which groups them by partition
+        Integer[] order = new Integer[pages.length];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong((Integer i) -> pages[i]));
+
+        int start = 0;
+        while (start < order.length) {
+            int partNum = DiskSpaceManager.getPartNum(pages[order[start]]);
+            int end = start + 1;
+            while (end < order.length && DiskSpaceManager.getPartNum(pages[order[end]]) == partNum) {
+                ++end;
+            }
+            int[] pageNums = new int[end - start];
+            ByteBuffer[] partBufs = new ByteBuffer[end - start];
+            for (int i = start; i < end; ++i) {
+                pageNums[i - start] = DiskSpaceManager.getPageNum(pages[order[i]]);
+                partBufs[i - start] = bufs[order[i]];
+            }
+
+            this.managerLock.lock();
+            PartitionHandle pi;
+            try {
+                pi = getPartInfo(partNum);
+                pi.partitionLock.lock();
+            } finally {
+                this.managerLock.unlock();
+            }
+            boolean corrupt = false;
+            try {
+                pi.readPages(pageNums, partBufs);
+            } catch (CorruptPageException e) {
+                corrupt = true;
+            } catch (IOException e) {
+                throw new PageException("could not read partition " + partNum + ": " + e.getMessage());
+            } finally {
+                pi.partitionLock.unlock();
+            }
+            if (corrupt) {
+                // read the pages again one at a time, repairing the corrupt ones
+                for (int i = start; i < end; ++i) {
+                    this.readPage(pages[order[i]], bufs[order[i]]);
+                }
+            }
+            start = end;
+        }
     }
 
     @Override
@@ -293,6 +583,14 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         if (buf.length != PAGE_SIZE) {
             throw new IllegalArgumentException("writePage expects a page-sized buffer");
         }
+        this.writePage(page, ByteBuffer.wrap(buf));
+    }
+
+    @Override
+    public void writePage(long page, ByteBuffer buf) {
+        if (buf.remaining() != PAGE_SIZE) {
+            throw new IllegalArgumentException("writePage expects a page-sized buffer");
+        }
         int partNum = DiskSpaceManager.getPartNum(page);
         int pageNum = DiskSpaceManager.getPageNum(page);
         this.managerLock.lock();
@@ -312,6 +610,259 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
     }
 
+    @Override
+    public void sync() {
+        for (PartitionHandle pi : getAllPartInfo()) {
+            this.syncPart(pi);
+        }
+    }
+
+    private void syncPart(PartitionHandle pi) {
+        while (true) {
+            // Page allocations and frees must be logged before they are written out.
+            // The log is flushed without the partition lock, since flushing it may
+            // evict (and write out) pages of this partition.
+            long metadataLSN = pi.getMetadataLSN();
+            if (metadataLSN > 0) {
+                recoveryManager.pageFlushHook(metadataLSN);
+            }
+            pi.partitionLock.lock();
+            try {
+                if (pi.getMetadataLSN() != metadataLSN) {
+                    // more allocations or frees were logged in the meantime
+                    continue;
+                }
+                pi.sync();
+                break;
+            } catch (IOException e) {
+                throw new PageException("could not sync partition " + pi.getPartNum() + ": " + e.getMessage());
+            } finally {
+                pi.partitionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Syncs a partition after a page allocation or free made outside of a
+     * transaction, if its metadata is written lazily: the change was not logged,
+     * so restart recovery could not redo it.
+     */
+    private void syncUnlogged(PartitionHandle pi) {
+        if (this.lazyMetadata(pi.getPartNum()) && TransactionContext.getTransaction() == null) {
+            this.syncPart(pi);
+        }
+    }
+
+    /**
+     * Sets whether data page writes are forced to disk immediately (the default),
+     * or deferred until the next sync(). Writes to the log partition are always
+     * forced immediately. Turning deferral off syncs all pending writes.
+     *
+     * @param deferSync true to defer forcing data page writes to disk
+     */
+    public void setDeferSync(boolean deferSync) {
+        this.managerLock.lock();
+        try {
+            this.deferSync = deferSync;
+        } finally {
+            this.managerLock.unlock();
+        }
+        for (PartitionHandle pi : getAllPartInfo()) {
+            pi.partitionLock.lock();
+            try {
+                pi.setDeferSync(deferSync(pi.getPartNum()));
+            } catch (IOException e) {
+                throw new PageException("could not sync partition " + pi.getPartNum() + ": " + e.getMessage());
+            } finally {
+                pi.partitionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return whether data page writes are deferred until sync()
+     */
+    public boolean isDeferSync() {
+        return deferSync;
+    }
+
+    /**
+     * Sets whether changes to master and header pages (by page allocations and frees)
+     * are written out immediately (the default), or lazily by sync() and close(). The
+     * log partition's metadata is always written out immediately. Turning lazy metadata
+     * off syncs all pending changes.
+     *
+     * Lazy metadata relies on restart recovery to redo the allocations and frees logged
+     * since the last sync, so it should only be used with ARIES, which syncs at every
+     * checkpoint. Allocations and frees made outside of a transaction are not logged,
+     * so they sync the partition right away.
+     *
+     * @param lazyMetadata true to write out master and header pages lazily
+     */
+    public void setLazyMetadata(boolean lazyMetadata) {
+        this.managerLock.lock();
+        try {
+            this.lazyMetadata = lazyMetadata;
+        } finally {
+            this.managerLock.unlock();
+        }
+        for (PartitionHandle pi : getAllPartInfo()) {
+            pi.partitionLock.lock();
+            try {
+                pi.setLazyMetadata(lazyMetadata(pi.getPartNum()));
+            } finally {
+                pi.partitionLock.unlock();
+            }
+        }
+        if (!lazyMetadata) {
+            this.sync();
+        }
+    }
+
+    /**
+     * @return whether master and header page changes are written out lazily
+     */
+    public boolean isLazyMetadata() {
+        return lazyMetadata;
+    }
+
+    /**
+     * Sets whether a partition is stored compressed. Compressing a partition syncs it,
+     * and rewrites its file with every allocated data page compressed (see
+     * PartitionHandle#compress). Reads of a compressed partition decompress pages into
+     * the caller's buffer, and the first allocation, free, or write rewrites the
+     * partition uncompressed again, so compression is meant for cold partitions.
+     * The log partition cannot be compressed.
+     *
+     * @param partNum partition to compress or decompress
+     * @param compressed true to compress the partition, false to decompress it
+     */
+    public void setCompressed(int partNum, boolean compressed) {
+        if (partNum == LogManager.LOG_PARTITION) {
+            throw new IllegalArgumentException("the log partition cannot be compressed");
+        }
+        this.managerLock.lock();
+        PartitionHandle pi;
+        try {
+            pi = getPartInfo(partNum);
+        } finally {
+            this.managerLock.unlock();
+        }
+        while (true) {
+            // as in sync(), logged allocations and frees must be flushed before the
+            // partition's metadata is written out
+            long metadataLSN = pi.getMetadataLSN();
+            if (compressed && metadataLSN > 0) {
+                recoveryManager.pageFlushHook(metadataLSN);
+            }
+            pi.partitionLock.lock();
+            try {
+                if (pi.getMetadataLSN() != metadataLSN) {
+                    continue;
+                }
+                if (compressed) {
+                    pi.compress();
+                } else {
+                    pi.decompress();
+                }
+                break;
+            } catch (IOException e) {
+                throw new PageException("could not rewrite partition " + partNum + ": " + e.getMessage());
+            } finally {
+                pi.partitionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @param partNum partition number
+     * @return whether the partition is stored compressed
+     */
+    public boolean isCompressed(int partNum) {
+        this.managerLock.lock();
+        PartitionHandle pi;
+        try {
+            pi = getPartInfo(partNum);
+            pi.partitionLock.lock();
+        } finally {
+            this.managerLock.unlock();
+        }
+        try {
+            return pi.isCompressed();
+        } finally {
+            pi.partitionLock.unlock();
+        }
+    }
+
+    /**
+     * Sets whether data pages are checksummed (off by default). When on, every page
+     * written to a partition other than the log partition gets a CRC32C checksum,
+     * stored in its first 4 bytes (the first bytes of the buffer manager's reserved
+     * space), and every page read is verified against its checksum. Pages written
+     * while checksums were off have no checksum, and are not verified.
+     *
+     * @param checksummed true to checksum data pages
+     */
+    public void setChecksummed(boolean checksummed) {
+        this.managerLock.lock();
+        try {
+            this.checksummed = checksummed;
+        } finally {
+            this.managerLock.unlock();
+        }
+        for (PartitionHandle pi : getAllPartInfo()) {
+            pi.partitionLock.lock();
+            try {
+                pi.setChecksums(checksummed(pi.getPartNum()));
+            } finally {
+                pi.partitionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return whether data pages are checksummed
+     */
+    public boolean isChecksummed() {
+        return checksummed;
+    }
+
+    // Whether pages of the given partition are checksummed. Log pages have no
+    // reserved space to store a checksum in.
+    boolean checksummed(int partNum) {
+        return this.checksummed && partNum != LogManager.LOG_PARTITION;
+    }
+
+    // Whether metadata changes of the given partition are written out lazily. The
+    // log partition's are not, since restart recovery reads the log before it can
+    // redo anything.
+    boolean lazyMetadata(int partNum) {
+        return this.lazyMetadata && partNum != LogManager.LOG_PARTITION;
+    }
+
+    // Whether pages freed in the given partition are never reused. Log page numbers
+    // are part of LSNs, which must keep increasing after the log is truncated.
+    boolean appendOnly(int partNum) {
+        return partNum == LogManager.LOG_PARTITION;
+    }
+
+    // Whether writes to the given partition should be deferred. The log
+    // partition is always forced, since commits rely on it being durable.
+    boolean deferSync(int partNum) {
+        return this.deferSync && partNum != LogManager.LOG_PARTITION;
+    }
+
+    // Snapshot of all open partitions. Partition locks are not held, so a partition
+    // may be closed by the time the caller gets to it.
+    private List<PartitionHandle> getAllPartInfo() {
+        this.managerLock.lock();
+        try {
+            return new ArrayList<>(this.partInfo.values());
+        } finally {
+            this.managerLock.unlock();
+        }
+    }
+
     @Override
     public boolean pageAllocated(long page) {
         int partNum = DiskSpaceManager.getPartNum(page);
@@ -0,0 +1,37 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+/**
+ * Disk space manager that accesses partition files through memory mappings
+ * (see MappedPartitionHandle), so that reading a page is a copy out of mapped
+ * memory rather than a read syscall. Partitions use the same on-disk layout as
+ * DiskSpaceManagerImpl, and databases created by either can be opened by the other.
+ */
+public class MappedDiskSpaceManager extends DiskSpaceManagerImpl {
+    /**
+     * Initialize the disk space manager using the given directory. Creates the directory
+     * if not present.
+     *
+     * @param dbDir base directory of the database
+     */
+    public MappedDiskSpaceManager(String dbDir, RecoveryManager recoveryManager) {
+        super(dbDir, recoveryManager);
+    }
+
+    /**
+     * Initialize the disk space manager using the given directory. Creates the directory
+     * if not present.
+     *
+     * @param dbDir base directory of the database
+     * @param deferSync true to defer forcing data page writes to disk until sync()
+     */
+    public MappedDiskSpaceManager(String dbDir, RecoveryManager recoveryManager, boolean deferSync) {
+        super(dbDir, recoveryManager, deferSync);
+    }
+
+    @Override
+    PartitionHandle newPartitionHandle(int partNum) {
+        return new MappedPartitionHandle(partNum, recoveryManager, deferSync(partNum));
+    }
+}
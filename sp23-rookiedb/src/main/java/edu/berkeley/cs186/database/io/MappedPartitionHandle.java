@@ -0,0 +1,146 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static edu.berkeley.cs186.database.io.DiskSpaceManager.PAGE_SIZE;
+
+/**
+ * Partition handle that accesses its OS file through memory mappings instead of
+ * positional reads and writes. The file is mapped lazily in fixed-size segments
+ * (SEGMENT_SIZE bytes each, a multiple of the page size so that no page straddles
+ * two segments), and reading or writing a page is a bulk copy between the frame's
+ * byte array and mapped memory.
+ *
+ * The file layout is exactly the same as for PartitionHandle. Mapping a segment
+ * past the end of the file extends the file (sparsely), so the file is truncated
+ * back to the end of the last page written when the partition is closed.
+ */
+class MappedPartitionHandle extends PartitionHandle {
+    // 16M per segment (4K pages)
+    static final int SEGMENT_SIZE = PAGE_SIZE * 4096;
+
+    // Mapped segments of the OS file; null for segments not mapped yet
+    private List<MappedByteBuffer> segments;
+
+    // Segments written to since they were last forced
+    private BitSet dirtySegments;
+
+    // Length of the file if it were not extended by mappings
+    private long logicalLength;
+
+    MappedPartitionHandle(int partNum, RecoveryManager recoveryManager, boolean deferSync) {
+        super(partNum, recoveryManager, deferSync);
+        this.segments = new ArrayList<>();
+        this.dirtySegments = new BitSet();
+    }
+
+    @Override
+    void open(String fileName) {
+        this.logicalLength = new File(fileName).length();
+        super.open(fileName);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.partitionLock.lock();
+        try {
+            this.sync();
+            this.segments.clear();
+            this.dirtySegments.clear();
+            try {
+                this.fileChannel.truncate(this.logicalLength);
+            } catch (IOException e) {
+                // Some platforms refuse to truncate files that are still mapped. The
+                // zero-filled tail is harmless: pages past the end of the last written
+                // page are never read until they are allocated and written.
+            }
+            super.close();
+        } finally {
+            this.partitionLock.unlock();
+        }
+    }
+
+    @Override
+    void fileReplaced() throws IOException {
+        // the old file's segments were all forced before it was rewritten
+        this.segments.clear();
+        this.dirtySegments.clear();
+        this.logicalLength = this.fileChannel.size();
+    }
+
+    @Override
+    void readData(long offset, ByteBuffer buf) throws IOException {
+        ByteBuffer src = getSegment(offset).duplicate();
+        src.position((int) (offset % SEGMENT_SIZE));
+        src.limit(src.position() + buf.remaining());
+        buf.duplicate().put(src);
+    }
+
+    @Override
+    void readDataRun(long offset, ByteBuffer[] bufs, int start, int count) throws IOException {
+        // already a memory copy per page, nothing to gain from coalescing
+        for (int i = 0; i < count; ++i) {
+            this.readData(offset + (long) i * PAGE_SIZE, bufs[start + i]);
+        }
+    }
+
+    @Override
+    void writeData(long offset, ByteBuffer buf) throws IOException {
+        int segmentIndex = (int) (offset / SEGMENT_SIZE);
+        ByteBuffer dst = getSegment(offset).duplicate();
+        dst.position((int) (offset % SEGMENT_SIZE));
+        int length = buf.remaining();
+        dst.put(buf.duplicate());
+        this.dirtySegments.set(segmentIndex);
+        this.logicalLength = Math.max(this.logicalLength, offset + length);
+    }
+
+    @Override
+    void writeDataRun(long offset, ByteBuffer buf) throws IOException {
+        // blocks may fall in different segments
+        ByteBuffer src = buf.duplicate();
+        for (long blockOffset = offset; src.hasRemaining(); blockOffset += PAGE_SIZE) {
+            ByteBuffer block = src.duplicate();
+            block.limit(block.position() + PAGE_SIZE);
+            this.writeData(blockOffset, block);
+            src.position(src.position() + PAGE_SIZE);
+        }
+    }
+
+    @Override
+    void forceData() {
+        for (int i = dirtySegments.nextSetBit(0); i >= 0; i = dirtySegments.nextSetBit(i + 1)) {
+            this.segments.get(i).force();
+        }
+        this.dirtySegments.clear();
+    }
+
+    /**
+     * Gets the segment containing offset, mapping it (and growing the list of
+     * segments) if necessary. Assumes that the partition lock is held.
+     * @param offset offset in OS file
+     * @return mapped segment containing offset
+     */
+    private MappedByteBuffer getSegment(long offset) throws IOException {
+        int segmentIndex = (int) (offset / SEGMENT_SIZE);
+        while (this.segments.size() <= segmentIndex) {
+            this.segments.add(null);
+        }
+        MappedByteBuffer segment = this.segments.get(segmentIndex);
+        if (segment == null) {
+            segment = this.fileChannel.map(FileChannel.MapMode.READ_WRITE,
+                                           (long) segmentIndex * SEGMENT_SIZE, SEGMENT_SIZE);
+            this.segments.set(segmentIndex, segment);
+        }
+        return segment;
+    }
+}
@@ -0,0 +1,194 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.Arrays;
+
+/**
+ * A fast, pure Java LZ77 codec for pages, in the style of LZ4. Compressed data
+ * is a sequence of (literals, match) pairs, each starting with a token byte: the
+ * high 4 bits of the token are the number of literal bytes that follow, and the
+ * low 4 bits are the length of the match minus MIN_MATCH. A value of 15 in either
+ * means that the length continues in extra bytes, each added to it, up to the
+ * first byte that is not 255. The literals come next, then the match as a 2-byte
+ * offset back from the current position in the output, then the extra bytes of
+ * the match length. The last pair has literals only.
+ *
+ * Mostly empty pages, and pages with repeated record layouts, compress well; the
+ * matcher skips ahead faster the longer it goes without a match, so incompressible
+ * pages are cheap to give up on.
+ *
+ * A compressor reuses its hash table from call to call, so it must not be used by
+ * several threads at once.
+ */
+class PageCompressor {
+    static final int MIN_MATCH = 4;
+    static final int MAX_OFFSET = 0xFFFF;
+
+    private static final int HASH_BITS = 12;
+
+    // Position of the last 4-byte sequence with each hash, or -1
+    private final int[] table = new int[1 << HASH_BITS];
+
+    /**
+     * Compresses src into dst.
+     * @param src bytes to compress
+     * @param dst output buffer
+     * @return length of the compressed data, or -1 if it does not fit in dst
+     */
+    int compress(byte[] src, byte[] dst) {
+        Arrays.fill(this.table, -1);
+        int anchor = 0;
+        int out = 0;
+        int i = 0;
+        while (i + MIN_MATCH <= src.length) {
+            int sequence = readInt(src, i);
+            int h = hash(sequence);
+            int ref = this.table[h];
+            this.table[h] = i;
+            if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                // skip ahead faster the longer we go without finding a match
+                i += 1 + ((i - anchor) >> 6);
+                continue;
+            }
+            int length = MIN_MATCH;
+            while (i + length < src.length && src[ref + length] == src[i + length]) {
+                ++length;
+            }
+            out = writeSequence(src, anchor, i - anchor, i - ref, length, dst, out);
+            if (out < 0) {
+                return -1;
+            }
+            i += length;
+            anchor = i;
+        }
+        return writeSequence(src, anchor, src.length - anchor, 0, 0, dst, out);
+    }
+
+    /**
+     * Decompresses data produced by compress.
+     * @param src compressed data
+     * @param length length of the compressed data in src
+     * @param dst output buffer
+     * @param dstOffset offset in dst to decompress to
+     * @param dstLength length of the uncompressed data
+     * @throws PageException if the compressed data is corrupt
+     */
+    static void decompress(byte[] src, int length, byte[] dst, int dstOffset, int dstLength) {
+        int in = 0;
+        int out = dstOffset;
+        int end = dstOffset + dstLength;
+        try {
+            while (in < length) {
+                int token = src[in++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        checkAvailable(in, 1, length);
+                        b = src[in++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+                checkAvailable(in, literals, length);
+                if (literals > end - out) {
+                    throw new PageException("corrupt compressed page: literals run past the end of the page");
+                }
+                System.arraycopy(src, in, dst, out, literals);
+                in += literals;
+                out += literals;
+                if (in >= length) {
+                    break;
+                }
+
+                checkAvailable(in, 2, length);
+                int offset = ((src[in] & 0xFF) << 8) | (src[in + 1] & 0xFF);
+                in += 2;
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        checkAvailable(in, 1, length);
+                        b = src[in++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int ref = out - offset;
+                if (offset == 0 || ref < dstOffset) {
+                    throw new PageException("corrupt compressed page: bad match offset " + offset);
+                }
+                if (matchLength > end - out) {
+                    throw new PageException("corrupt compressed page: match runs past the end of the page");
+                }
+                if (offset >= matchLength) {
+                    System.arraycopy(dst, ref, dst, out, matchLength);
+                } else {
+                    // the match overlaps the bytes it produces, so copy one at a time
+                    for (int j = 0; j < matchLength; ++j) {
+                        dst[out + j] = dst[ref + j];
+                    }
+                }
+                out += matchLength;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new PageException("corrupt compressed page: " + e.getMessage());
+        }
+        if (out != end) {
+            throw new PageException("corrupt compressed page: decompressed to " + (out - dstOffset) + " bytes");
+        }
+    }
+
+    private static void checkAvailable(int in, int count, int length) {
+        if (count > length - in) {
+            throw new PageException("corrupt compressed page: data is truncated");
+        }
+    }
+
+    /**
+     * Writes one (literals, match) pair.
+     * @return position in dst after the pair, or -1 if it does not fit
+     */
+    private static int writeSequence(byte[] src, int literalStart, int literals, int offset, int matchLength,
+                                     byte[] dst, int out) {
+        boolean last = matchLength == 0;
+        int extra = last ? 0 : matchLength - MIN_MATCH;
+        // token, literals with their length bytes, then offset and match length bytes
+        int maxSize = 1 + literals / 255 + 1 + literals + (last ? 0 : 2 + extra / 255 + 1);
+        if (out + maxSize > dst.length) {
+            return -1;
+        }
+        int tokenPos = out++;
+        int token = Math.min(literals, 15) << 4;
+        if (literals >= 15) {
+            out = writeLength(literals - 15, dst, out);
+        }
+        System.arraycopy(src, literalStart, dst, out, literals);
+        out += literals;
+        if (!last) {
+            token |= Math.min(extra, 15);
+            dst[out++] = (byte) (offset >>> 8);
+            dst[out++] = (byte) offset;
+            if (extra >= 15) {
+                out = writeLength(extra - 15, dst, out);
+            }
+        }
+        dst[tokenPos] = (byte) token;
+        return out;
+    }
+
+    private static int writeLength(int length, byte[] dst, int out) {
+        while (length >= 255) {
+            dst[out++] = (byte) 255;
+            length -= 255;
+        }
+        dst[out++] = (byte) length;
+        return out;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) << 24 | (b[i + 1] & 0xFF) << 16 | (b[i + 2] & 0xFF) << 8 | (b[i + 3] & 0xFF);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_BITS);
+    }
+}
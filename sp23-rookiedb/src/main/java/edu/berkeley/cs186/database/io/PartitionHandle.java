@@ -9,21 +9,41 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.NoSuchElementException;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
 
 import static edu.berkeley.cs186.database.io.DiskSpaceManager.PAGE_SIZE;
 import static edu.berkeley.cs186.database.io.DiskSpaceManagerImpl.DATA_PAGES_PER_HEADER;
 import static edu.berkeley.cs186.database.io.DiskSpaceManagerImpl.MAX_HEADER_PAGES;
 
 class PartitionHandle implements AutoCloseable {
+    // First two bytes of a compressed partition file. The first two bytes of an
+    // uncompressed file are the number of pages allocated under the first header
+    // page, which is at most DATA_PAGES_PER_HEADER.
+    static final int COMPRESSED_MAGIC = 0xFFFF;
+
+    // Suffix of the temporary file that a partition file is rewritten into.
+    static final String TEMP_SUFFIX = ".tmp";
+
+    // Fewest discarded data pages (see discardPages) that the file is rewritten
+    // without, however few pages remain allocated.
+    static final int MIN_DISCARDED_FOR_REWRITE = 256;
+
     // Lock on the partition.
     ReentrantLock partitionLock;
 
     // Underlying OS file/file channel.
+    private String fileName;
     private RandomAccessFile file;
-    private FileChannel fileChannel;
+    FileChannel fileChannel;
 
     // Contents of the master page of this partition
     // Ideally would be an unsigned short array but Java doesn't have unsigned types
@@ -38,12 +58,63 @@ class PartitionHandle implements AutoCloseable {
     // Partition number
     private int partNum;
 
+    // Whether data page writes are left in the OS cache until sync() is called,
+    // rather than forced to disk on every write.
+    private boolean deferSync;
+
+    // Whether there are data page writes that have not been forced to disk yet.
+    private boolean unsynced;
+
+    // Every data page numbered below this one is allocated, so searches for free
+    // pages start here.
+    private int freeHint;
+
+    // Whether changes to the master and header pages are left in memory until
+    // sync() or close() is called, rather than written out immediately.
+    private boolean lazyMetadata;
+
+    // Whether the master page, and which header pages, changed since they were
+    // last written out.
+    private boolean masterDirty;
+    private BitSet dirtyHeaders;
+
+    // LSN of the last logged page allocation or free.
+    private volatile long metadataLSN;
+
+    // Where each data page is stored in a compressed partition file, and how many
+    // bytes it takes up (0 if it is not allocated, PAGE_SIZE if it is stored
+    // uncompressed). Null if the partition is not compressed.
+    private long[] storedOffsets;
+    private int[] storedLengths;
+
+    // Buffers for reading compressed pages
+    private byte[] compressedBytes;
+    private byte[] pageBytes;
+
+    // Whether data pages are checksummed (see setChecksums), and the checksum
+    // computation
+    private boolean checksums;
+    private final CRC32C crc;
+
+    // Whether freed data pages are never allocated again (see setAppendOnly)
+    private boolean appendOnly;
+
+    // Data pages discarded (see discardPages) since the file was last rewritten
+    private int numDiscarded;
+
     PartitionHandle(int partNum, RecoveryManager recoveryManager) {
+        this(partNum, recoveryManager, false);
+    }
+
+    PartitionHandle(int partNum, RecoveryManager recoveryManager, boolean deferSync) {
         this.masterPage = new int[MAX_HEADER_PAGES];
         this.headerPages = new byte[MAX_HEADER_PAGES][];
         this.partitionLock = new ReentrantLock();
         this.recoveryManager = recoveryManager;
         this.partNum = partNum;
+        this.deferSync = deferSync;
+        this.dirtyHeaders = new BitSet();
+        this.crc = new CRC32C();
     }
 
     /**
@@ -52,6 +123,7 @@ class PartitionHandle implements AutoCloseable {
      */
     void open(String fileName) {
         assert (this.fileChannel == null);
+        this.fileName = fileName;
         try {
             this.file = new RandomAccessFile(fileName, "rw");
             this.fileChannel = this.file.getChannel();
@@ -61,18 +133,25 @@ class PartitionHandle implements AutoCloseable {
                 this.writeMasterPage();
             } else {
                 // old file, read in master page + header pages
-                ByteBuffer b = ByteBuffer.wrap(new byte[PAGE_SIZE]);
-                this.fileChannel.read(b, PartitionHandle.masterPageOffset());
-                b.position(0);
+                byte[] masterBytes = new byte[PAGE_SIZE];
+                this.readData(PartitionHandle.masterPageOffset(), masterBytes);
+                ByteBuffer b = ByteBuffer.wrap(masterBytes);
+                if (Short.toUnsignedInt(b.getShort(0)) == COMPRESSED_MAGIC) {
+                    this.loadCompressedIndex(b);
+                    return;
+                }
                 for (int i = 0; i < MAX_HEADER_PAGES; ++i) {
                     this.masterPage[i] = Short.toUnsignedInt(b.getShort());
                     if (PartitionHandle.headerPageOffset(i) < length) {
                         // Load header pages that were already in the file
                         byte[] headerPage = new byte[PAGE_SIZE];
                         this.headerPages[i] = headerPage;
-                        this.fileChannel.read(ByteBuffer.wrap(headerPage), PartitionHandle.headerPageOffset(i));
+                        this.readData(PartitionHandle.headerPageOffset(i), headerPage);
                     }
                 }
+                if (this.appendOnly) {
+                    this.freeHint = this.getNumDataPages();
+                }
             }
         } catch (IOException e) {
             throw new PageException("Could not open or read file: " + e.getMessage());
@@ -83,6 +162,7 @@ class PartitionHandle implements AutoCloseable {
     public void close() throws IOException {
         this.partitionLock.lock();
         try {
+            this.sync();
             Arrays.fill(this.headerPages, null);
             this.file.close();
             this.fileChannel.close();
@@ -95,12 +175,18 @@ class PartitionHandle implements AutoCloseable {
      * Writes the master page to disk.
      */
     private void writeMasterPage() throws IOException {
+        this.writeData(PartitionHandle.masterPageOffset(), this.getMasterPageBytes());
+    }
+
+    /**
+     * @return contents of the master page
+     */
+    private byte[] getMasterPageBytes() {
         ByteBuffer b = ByteBuffer.wrap(new byte[PAGE_SIZE]);
         for (int i = 0; i < MAX_HEADER_PAGES; ++i) {
             b.putShort((short) masterPage[i]);
         }
-        b.position(0);
-        this.fileChannel.write(b, PartitionHandle.masterPageOffset());
+        return b.array();
     }
 
     /**
@@ -108,8 +194,40 @@ class PartitionHandle implements AutoCloseable {
      * @param headerIndex which header page
      */
     private void writeHeaderPage(int headerIndex) throws IOException {
-        ByteBuffer b = ByteBuffer.wrap(this.headerPages[headerIndex]);
-        this.fileChannel.write(b, PartitionHandle.headerPageOffset(headerIndex));
+        this.writeData(PartitionHandle.headerPageOffset(headerIndex), this.headerPages[headerIndex]);
+    }
+
+    /**
+     * Writes out the master page and a header page after pages were allocated or
+     * freed, or just marks them dirty if metadata is written lazily.
+     * @param headerIndex which header page changed
+     */
+    private void metadataChanged(int headerIndex) throws IOException {
+        if (this.lazyMetadata) {
+            this.masterDirty = true;
+            this.dirtyHeaders.set(headerIndex);
+        } else {
+            this.writeMasterPage();
+            this.writeHeaderPage(headerIndex);
+        }
+    }
+
+    /**
+     * Writes out the master page and header pages changed since they were last
+     * written. Assumes that the partition lock is held.
+     * @return whether anything was written
+     */
+    private boolean writeBackMetadata() throws IOException {
+        if (!this.masterDirty) {
+            return false;
+        }
+        this.writeMasterPage();
+        for (int i = this.dirtyHeaders.nextSetBit(0); i >= 0; i = this.dirtyHeaders.nextSetBit(i + 1)) {
+            this.writeHeaderPage(i);
+        }
+        this.masterDirty = false;
+        this.dirtyHeaders.clear();
+        return true;
     }
 
     /**
@@ -117,35 +235,64 @@ class PartitionHandle implements AutoCloseable {
      * @return data page number
      */
     int allocPage() throws IOException {
-        int headerIndex = -1;
-        for (int i = 0; i < MAX_HEADER_PAGES; ++i) {
-            if (this.masterPage[i] < DATA_PAGES_PER_HEADER) {
-                headerIndex = i;
-                break;
+        return this.allocPages(1);
+    }
+
+    /**
+     * Allocates a run of contiguous data pages in the partition, with a single update
+     * of the master page and of the header page for the whole run. A run does not span
+     * header pages, since the data pages of different header pages are not adjacent
+     * in the OS file.
+     * @param count number of pages to allocate, at most DATA_PAGES_PER_HEADER
+     * @return data page number of the first page of the run
+     */
+    int allocPages(int count) throws IOException {
+        if (count < 1 || count > DATA_PAGES_PER_HEADER) {
+            throw new IllegalArgumentException("cannot allocate a run of " + count + " pages");
+        }
+        for (int headerIndex = this.freeHint / DATA_PAGES_PER_HEADER; headerIndex < MAX_HEADER_PAGES; ++headerIndex) {
+            if (DATA_PAGES_PER_HEADER - this.masterPage[headerIndex] < count) {
+                continue;
+            }
+            int from = headerIndex == this.freeHint / DATA_PAGES_PER_HEADER ? this.freeHint % DATA_PAGES_PER_HEADER : 0;
+            int pageIndex = this.findFreeRun(headerIndex, from, count);
+            if (pageIndex != -1) {
+                return this.allocPages(headerIndex, pageIndex, count);
             }
         }
-        if (headerIndex == -1) {
+        if (count == 1) {
             throw new PageException("no free pages - partition has reached max size");
         }
+        throw new PageException("no run of " + count + " free pages - partition has reached max size");
+    }
 
+    /**
+     * Finds the first run of free data pages under a header page.
+     * @param headerIndex index of header page
+     * @param from index within header page to start searching at
+     * @param count length of run
+     * @return index within header page of the first page of the run, or -1 if there is none
+     */
+    private int findFreeRun(int headerIndex, int from, int count) {
         byte[] headerBytes = this.headerPages[headerIndex];
-
-        int pageIndex = -1;
         if (headerBytes == null) {
-            pageIndex = 0;
-        } else {
-            for (int i = 0; i < DATA_PAGES_PER_HEADER; i++) {
-                if (Bits.getBit(headerBytes, i) == Bits.Bit.ZERO) {
-                    pageIndex = i;
-                    break;
-                }
-            }
-            if (pageIndex == -1) {
-                throw new PageException("header page should have free space, but doesn't");
+            return from + count <= DATA_PAGES_PER_HEADER ? from : -1;
+        }
+        int runStart = from;
+        int i = from;
+        while (i < DATA_PAGES_PER_HEADER && i - runStart < count) {
+            if (i % 8 == 0 && headerBytes[i / 8] == (byte) 0xFF) {
+                // skip fully allocated bytes of the bitmap
+                i += 8;
+                runStart = i;
+            } else if (Bits.getBit(headerBytes, i) == Bits.Bit.ONE) {
+                ++i;
+                runStart = i;
+            } else {
+                ++i;
             }
         }
-
-        return this.allocPage(headerIndex, pageIndex);
+        return i - runStart >= count ? runStart : -1;
     }
 
     /**
@@ -155,33 +302,53 @@ class PartitionHandle implements AutoCloseable {
      * @return data page number
      */
     int allocPage(int headerIndex, int pageIndex) throws IOException {
+        return this.allocPages(headerIndex, pageIndex, 1);
+    }
+
+    /**
+     * Allocates a run of contiguous new pages in the partition.
+     * @param headerIndex index of header page managing the new pages
+     * @param pageIndex index within header page of the first new page
+     * @param count number of pages
+     * @return data page number of the first page
+     */
+    private int allocPages(int headerIndex, int pageIndex, int count) throws IOException {
+        this.decompress();
         byte[] headerBytes = this.headerPages[headerIndex];
         if (headerBytes == null) {
             headerBytes = new byte[PAGE_SIZE];
             this.headerPages[headerIndex] = headerBytes;
         }
 
-        if (Bits.getBit(headerBytes, pageIndex) == Bits.Bit.ONE) {
-            throw new IllegalStateException("page at (part=" + partNum + ", header=" + headerIndex + ", index="
-                                            +
-                                            pageIndex + ") already allocated");
+        for (int i = pageIndex; i < pageIndex + count; ++i) {
+            if (Bits.getBit(headerBytes, i) == Bits.Bit.ONE) {
+                throw new IllegalStateException("page at (part=" + partNum + ", header=" + headerIndex + ", index="
+                                                +
+                                                i + ") already allocated");
+            }
         }
 
-        Bits.setBit(headerBytes, pageIndex, Bits.Bit.ONE);
-        this.masterPage[headerIndex] = Bits.countBits(headerBytes);
+        for (int i = pageIndex; i < pageIndex + count; ++i) {
+            Bits.setBit(headerBytes, i, Bits.Bit.ONE);
+        }
+        this.masterPage[headerIndex] += count;
 
-        int pageNum = pageIndex + headerIndex * DATA_PAGES_PER_HEADER;
+        int firstPageNum = pageIndex + headerIndex * DATA_PAGES_PER_HEADER;
+        if (firstPageNum == this.freeHint) {
+            this.freeHint += count;
+        }
 
         TransactionContext transaction = TransactionContext.getTransaction();
-        long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
-        if (transaction != null) {
-            recoveryManager.logAllocPage(transaction.getTransNum(), vpn);
+        for (int pageNum = firstPageNum; pageNum < firstPageNum + count; ++pageNum) {
+            long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
+            if (transaction != null) {
+                this.metadataLSN = recoveryManager.logAllocPage(transaction.getTransNum(), vpn);
+            }
+            recoveryManager.diskIOHook(vpn);
         }
-        recoveryManager.diskIOHook(vpn);
-        this.writeMasterPage();
-        this.writeHeaderPage(headerIndex);
+        this.metadataChanged(headerIndex);
 
-        return pageNum;
+        return firstPageNum;
     }
 
     /**
@@ -200,66 +367,677 @@ class PartitionHandle implements AutoCloseable {
         if (Bits.getBit(headerBytes, pageIndex) == Bits.Bit.ZERO) {
             throw new NoSuchElementException("cannot free unallocated page");
         }
+        this.decompress();
 
         TransactionContext transaction = TransactionContext.getTransaction();
         long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
         if (transaction != null) {
             byte[] contents = new byte[PAGE_SIZE];
-            readPage(pageNum, contents);
+            readPage(pageNum, ByteBuffer.wrap(contents));
             int halfway = BufferManager.RESERVED_SPACE + BufferManager.EFFECTIVE_PAGE_SIZE / 2;
-            recoveryManager.logPageWrite(
-                    transaction.getTransNum(),
-                    vpn,
-                    (short) 0,
-                    Arrays.copyOfRange(contents, BufferManager.RESERVED_SPACE, halfway),
-                    new byte[BufferManager.EFFECTIVE_PAGE_SIZE / 2]
-            );
-            recoveryManager.logPageWrite(
+            recoveryManager.logPageWrites(
                     transaction.getTransNum(),
                     vpn,
-                    (short) (BufferManager.EFFECTIVE_PAGE_SIZE / 2),
-                    Arrays.copyOfRange(contents, halfway, PAGE_SIZE),
-                    new byte[BufferManager.EFFECTIVE_PAGE_SIZE / 2]
+                    new short[] {0, (short) (BufferManager.EFFECTIVE_PAGE_SIZE / 2)},
+                    new byte[][] {
+                        Arrays.copyOfRange(contents, BufferManager.RESERVED_SPACE, halfway),
+                        Arrays.copyOfRange(contents, halfway, PAGE_SIZE)
+                    },
+                    new byte[][] {
+                        new byte[BufferManager.EFFECTIVE_PAGE_SIZE / 2],
+                        new byte[BufferManager.EFFECTIVE_PAGE_SIZE / 2]
+                    }
             );
-            recoveryManager.logFreePage(transaction.getTransNum(), vpn);
+            this.metadataLSN = recoveryManager.logFreePage(transaction.getTransNum(), vpn);
         }
         recoveryManager.diskIOHook(vpn);
         Bits.setBit(headerBytes, pageIndex, Bits.Bit.ZERO);
-        this.masterPage[headerIndex] = Bits.countBits(headerBytes);
-        this.writeMasterPage();
-        this.writeHeaderPage(headerIndex);
+        --this.masterPage[headerIndex];
+        if (!this.appendOnly) {
+            this.freeHint = Math.min(this.freeHint, pageNum);
+        }
+        this.metadataChanged(headerIndex);
+    }
+
+    /**
+     * Frees every allocated data page numbered from fromPageNum up to (but not
+     * including) toPageNum, with a single update of the master page and of each header
+     * page involved. Unlike freePage, nothing is logged, so this is only for pages whose
+     * contents are no longer needed by recovery, such as log pages before the log is
+     * truncated. Once as many pages have been discarded as remain allocated, the file
+     * is rewritten without them (see rewriteSparse). Assumes that the partition lock
+     * is held.
+     * @param fromPageNum first data page number to free
+     * @param toPageNum data page number to stop at
+     * @return number of pages freed
+     */
+    int discardPages(int fromPageNum, int toPageNum) throws IOException {
+        fromPageNum = Math.max(fromPageNum, 0);
+        toPageNum = Math.min(toPageNum, MAX_HEADER_PAGES * DATA_PAGES_PER_HEADER);
+        if (fromPageNum >= toPageNum) {
+            return 0;
+        }
+        this.decompress();
+        int numFreed = 0;
+        for (int headerIndex = fromPageNum / DATA_PAGES_PER_HEADER;
+                headerIndex <= (toPageNum - 1) / DATA_PAGES_PER_HEADER; ++headerIndex) {
+            if (this.masterPage[headerIndex] == 0) {
+                continue;
+            }
+            byte[] headerBytes = this.headerPages[headerIndex];
+            int firstPageNum = headerIndex * DATA_PAGES_PER_HEADER;
+            int from = Math.max(fromPageNum - firstPageNum, 0);
+            int to = Math.min(toPageNum - firstPageNum, DATA_PAGES_PER_HEADER);
+            int freedHere = 0;
+            for (int i = from; i < to; ++i) {
+                if (Bits.getBit(headerBytes, i) == Bits.Bit.ONE) {
+                    Bits.setBit(headerBytes, i, Bits.Bit.ZERO);
+                    ++freedHere;
+                }
+            }
+            if (freedHere > 0) {
+                this.masterPage[headerIndex] -= freedHere;
+                this.metadataChanged(headerIndex);
+                numFreed += freedHere;
+            }
+        }
+        if (!this.appendOnly) {
+            this.freeHint = Math.min(this.freeHint, fromPageNum);
+        }
+        this.numDiscarded += numFreed;
+        if (this.numDiscarded >= Math.max(this.getNumAllocatedPages(), MIN_DISCARDED_FOR_REWRITE)) {
+            this.rewriteSparse();
+        }
+        return numFreed;
+    }
+
+    /**
+     * Finds the first allocated data page in a range. Assumes that the partition lock
+     * is held.
+     * @param fromPageNum first data page number to look at
+     * @param toPageNum data page number to stop at
+     * @return data page number of the first allocated page numbered from fromPageNum up
+     * to (but not including) toPageNum, or toPageNum if there is none
+     */
+    int firstAllocatedPage(int fromPageNum, int toPageNum) {
+        int pageNum = Math.max(fromPageNum, 0);
+        while (pageNum < toPageNum) {
+            int headerIndex = pageNum / DATA_PAGES_PER_HEADER;
+            if (headerIndex >= MAX_HEADER_PAGES) {
+                break;
+            }
+            if (this.masterPage[headerIndex] == 0) {
+                // skip header pages with nothing allocated under them
+                pageNum = (headerIndex + 1) * DATA_PAGES_PER_HEADER;
+                continue;
+            }
+            if (Bits.getBit(this.headerPages[headerIndex], pageNum % DATA_PAGES_PER_HEADER) == Bits.Bit.ONE) {
+                return pageNum;
+            }
+            ++pageNum;
+        }
+        return toPageNum;
+    }
+
+    /**
+     * Sets whether freed data pages are never allocated again: new pages are always
+     * allocated after the last allocated one, so data page numbers only increase. Must
+     * be set before the file is opened.
+     * @param appendOnly true to never reuse freed data pages
+     */
+    void setAppendOnly(boolean appendOnly) {
+        this.appendOnly = appendOnly;
     }
 
     /**
      * Reads in a data page. Assumes that the partition lock is held.
      * @param pageNum data page number to read in
-     * @param buf output buffer to be filled with page - assumed to be page size
+     * @param buf output buffer to be filled with page - assumed to have page size bytes remaining
      */
-    void readPage(int pageNum, byte[] buf) throws IOException {
+    void readPage(int pageNum, ByteBuffer buf) throws IOException {
         if (this.isNotAllocatedPage(pageNum)) {
             throw new PageException("page " + pageNum + " is not allocated");
         }
-        ByteBuffer b = ByteBuffer.wrap(buf);
-        this.fileChannel.read(b, PartitionHandle.dataPageOffset(pageNum));
+        if (this.storedLengths != null) {
+            this.readCompressedPage(pageNum, buf);
+        } else {
+            this.readData(PartitionHandle.dataPageOffset(pageNum), buf);
+        }
+        this.verifyChecksum(pageNum, buf);
+    }
+
+    /**
+     * Reads in a data page of a compressed partition, decompressing it straight into
+     * buf when buf is backed by an array.
+     * @param pageNum data page number to read in
+     * @param buf output buffer to be filled with page - assumed to have page size bytes remaining
+     */
+    private void readCompressedPage(int pageNum, ByteBuffer buf) throws IOException {
+        int length = this.storedLengths[pageNum];
+        long offset = this.storedOffsets[pageNum];
+        if (length == PAGE_SIZE) {
+            this.readData(offset, buf);
+            return;
+        }
+        if (this.compressedBytes == null) {
+            this.compressedBytes = new byte[PAGE_SIZE];
+        }
+        this.readData(offset, ByteBuffer.wrap(this.compressedBytes, 0, length));
+        if (buf.hasArray()) {
+            PageCompressor.decompress(this.compressedBytes, length, buf.array(),
+                                      buf.arrayOffset() + buf.position(), PAGE_SIZE);
+        } else {
+            if (this.pageBytes == null) {
+                this.pageBytes = new byte[PAGE_SIZE];
+            }
+            PageCompressor.decompress(this.compressedBytes, length, this.pageBytes, 0, PAGE_SIZE);
+            buf.duplicate().put(this.pageBytes);
+        }
+    }
+
+    /**
+     * Reads in several data pages, with one read for every run of pages that are
+     * stored contiguously in the OS file. Assumes that the partition lock is held.
+     * @param pageNums data page numbers to read in, in ascending order
+     * @param bufs output buffers, bufs[i] is filled with page pageNums[i] - assumed to have page
+     *             size bytes remaining
+     */
+    void readPages(int[] pageNums, ByteBuffer[] bufs) throws IOException {
+        for (int pageNum : pageNums) {
+            if (this.isNotAllocatedPage(pageNum)) {
+                throw new PageException("page " + pageNum + " is not allocated");
+            }
+        }
+        if (this.storedLengths != null) {
+            // compressed pages are not a fixed size, so read them one at a time
+            for (int i = 0; i < pageNums.length; ++i) {
+                this.readCompressedPage(pageNums[i], bufs[i]);
+                this.verifyChecksum(pageNums[i], bufs[i]);
+            }
+            return;
+        }
+        int start = 0;
+        while (start < pageNums.length) {
+            // data pages are contiguous unless separated by a header page
+            int end = start + 1;
+            while (end < pageNums.length && pageNums[end] == pageNums[end - 1] + 1 &&
+                    pageNums[end] % DATA_PAGES_PER_HEADER != 0) {
+                ++end;
+            }
+            this.readDataRun(PartitionHandle.dataPageOffset(pageNums[start]), bufs, start, end - start);
+            start = end;
+        }
+        for (int i = 0; i < pageNums.length; ++i) {
+            this.verifyChecksum(pageNums[i], bufs[i]);
+        }
     }
 
     /**
      * Writes to a data page. Assumes that the partition lock is held.
      * @param pageNum data page number to write to
-     * @param buf input buffer with new contents of page - assumed to be page size
+     * @param buf input buffer with new contents of page - assumed to have page size bytes remaining
      */
-    void writePage(int pageNum, byte[] buf) throws IOException {
+    void writePage(int pageNum, ByteBuffer buf) throws IOException {
         if (this.isNotAllocatedPage(pageNum)) {
             throw new PageException("page " + pageNum + " is not allocated");
         }
-        ByteBuffer b = ByteBuffer.wrap(buf);
-        this.fileChannel.write(b, PartitionHandle.dataPageOffset(pageNum));
-        this.fileChannel.force(false);
+        this.decompress();
+        if (this.checksums) {
+            buf.putInt(buf.position(), this.computeChecksum(buf));
+        }
+        this.writeData(PartitionHandle.dataPageOffset(pageNum), buf);
+        if (this.deferSync) {
+            this.unsynced = true;
+        } else {
+            this.forceData();
+        }
 
         long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
         recoveryManager.diskIOHook(vpn);
     }
 
+    /**
+     * Zeroes out a run of contiguous data pages with a single write, e.g. pages just
+     * allocated with allocPages. Assumes that the partition lock is held.
+     * @param pageNum data page number of the first page
+     * @param count number of pages, all managed by the same header page
+     */
+    void zeroPages(int pageNum, int count) throws IOException {
+        for (int i = pageNum; i < pageNum + count; ++i) {
+            if (this.isNotAllocatedPage(i)) {
+                throw new PageException("page " + i + " is not allocated");
+            }
+        }
+        this.decompress();
+        this.writeDataRun(PartitionHandle.dataPageOffset(pageNum), ByteBuffer.allocate(count * PAGE_SIZE));
+        if (this.deferSync) {
+            this.unsynced = true;
+        } else {
+            this.forceData();
+        }
+
+        for (int i = pageNum; i < pageNum + count; ++i) {
+            recoveryManager.diskIOHook(DiskSpaceManager.getVirtualPageNum(partNum, i));
+        }
+    }
+
+    /**
+     * Reads a page-sized block of the OS file.
+     * @param offset offset in OS file to read from
+     * @param buf output buffer to be filled - assumed to be page size
+     */
+    void readData(long offset, byte[] buf) throws IOException {
+        this.readData(offset, ByteBuffer.wrap(buf));
+    }
+
+    /**
+     * Reads a page-sized block of the OS file. All reads of the file go through here.
+     * Direct buffers are filled by the read itself, without a copy through a
+     * temporary buffer.
+     * @param offset offset in OS file to read from
+     * @param buf output buffer to be filled from its position - assumed to have page size
+     *            bytes remaining; its position is not changed
+     */
+    void readData(long offset, ByteBuffer buf) throws IOException {
+        this.fileChannel.read(buf.duplicate(), offset);
+    }
+
+    /**
+     * Reads count contiguous page-sized blocks of the OS file with a single scattering read.
+     * @param offset offset in OS file of the first block
+     * @param bufs output buffers; bufs[start] through bufs[start + count - 1] are filled
+     * @param start index of the first output buffer
+     * @param count number of blocks to read
+     */
+    void readDataRun(long offset, ByteBuffer[] bufs, int start, int count) throws IOException {
+        if (count == 1) {
+            this.readData(offset, bufs[start]);
+            return;
+        }
+        ByteBuffer[] dsts = new ByteBuffer[count];
+        for (int i = 0; i < count; ++i) {
+            dsts[i] = bufs[start + i].duplicate();
+        }
+        // FileChannel has no positional scattering read, but the partition lock is
+        // held and nothing else uses the channel's position.
+        this.fileChannel.position(offset);
+        long remaining = (long) count * PAGE_SIZE;
+        while (remaining > 0) {
+            long numRead = this.fileChannel.read(dsts);
+            if (numRead < 0) {
+                break;
+            }
+            remaining -= numRead;
+        }
+    }
+
+    /**
+     * Writes a page-sized block of the OS file.
+     * @param offset offset in OS file to write to
+     * @param buf input buffer - assumed to be page size
+     */
+    void writeData(long offset, byte[] buf) throws IOException {
+        this.writeData(offset, ByteBuffer.wrap(buf));
+    }
+
+    /**
+     * Writes a page-sized block of the OS file. All writes to the file go through here.
+     * @param offset offset in OS file to write to
+     * @param buf input buffer, written from its position - assumed to have page size bytes
+     *            remaining; its position is not changed
+     */
+    void writeData(long offset, ByteBuffer buf) throws IOException {
+        this.fileChannel.write(buf.duplicate(), offset);
+    }
+
+    /**
+     * Writes several contiguous page-sized blocks of the OS file with a single write.
+     * @param offset offset in OS file of the first block
+     * @param buf input buffer, written from its position - assumed to have a multiple of
+     *            page size bytes remaining; its position is not changed
+     */
+    void writeDataRun(long offset, ByteBuffer buf) throws IOException {
+        ByteBuffer src = buf.duplicate();
+        while (src.hasRemaining()) {
+            offset += this.fileChannel.write(src, offset);
+        }
+    }
+
+    /**
+     * Forces all writes to the OS file so far to disk.
+     */
+    void forceData() throws IOException {
+        this.fileChannel.force(false);
+    }
+
+    /**
+     * @return partition number of this partition
+     */
+    int getPartNum() {
+        return this.partNum;
+    }
+
+    /**
+     * Writes out changes to the master and header pages not written yet, and forces
+     * them and any data page writes still in the OS cache to disk. Assumes that the
+     * partition lock is held.
+     */
+    void sync() throws IOException {
+        if (this.writeBackMetadata() || this.unsynced) {
+            this.forceData();
+            this.unsynced = false;
+        }
+    }
+
+    /**
+     * Sets whether changes to the master and header pages are written out lazily, by
+     * sync() and close(), rather than on every allocation and free. Changes made while
+     * this was on are written out by the next sync(). Assumes that the partition lock
+     * is held.
+     * @param lazyMetadata true to write out master and header pages lazily
+     */
+    void setLazyMetadata(boolean lazyMetadata) {
+        this.lazyMetadata = lazyMetadata;
+    }
+
+    /**
+     * @return LSN of the last page allocation or free logged for this partition, or 0
+     * if none were
+     */
+    long getMetadataLSN() {
+        return this.metadataLSN;
+    }
+
+    /**
+     * Sets whether data page writes are forced to disk immediately. Pending writes
+     * are forced when switching deferral off. Assumes that the partition lock is held.
+     * @param deferSync true to leave data page writes in the OS cache until sync()
+     */
+    void setDeferSync(boolean deferSync) throws IOException {
+        this.deferSync = deferSync;
+        if (!deferSync) {
+            this.sync();
+        }
+    }
+
+    /**
+     * Sets whether data pages are checksummed. When on, writing a data page stores
+     * the CRC32C of the rest of the page in its first 4 bytes (overwriting them in
+     * the buffer written), and reading a data page verifies it. A stored checksum of
+     * 0 marks a page without a checksum (written while checksums were off, or just
+     * zeroed by zeroPages), which is not verified; a CRC of 0 is stored as 1.
+     * Assumes that the partition lock is held.
+     * @param checksums true to checksum data pages
+     */
+    void setChecksums(boolean checksums) {
+        this.checksums = checksums;
+    }
+
+    /**
+     * @param page page, from its position
+     * @return checksum of the page, never 0
+     */
+    private int computeChecksum(ByteBuffer page) {
+        ByteBuffer rest = page.duplicate();
+        rest.position(page.position() + 4);
+        rest.limit(page.position() + PAGE_SIZE);
+        this.crc.reset();
+        this.crc.update(rest);
+        int checksum = (int) this.crc.getValue();
+        return checksum == 0 ? 1 : checksum;
+    }
+
+    /**
+     * Checks a page just read against its checksum, if checksums are on and the page
+     * has one.
+     * @param pageNum data page number of the page
+     * @param page page, from its position
+     * @throws CorruptPageException if the page does not match its checksum
+     */
+    private void verifyChecksum(int pageNum, ByteBuffer page) {
+        if (!this.checksums) {
+            return;
+        }
+        int stored = page.getInt(page.position());
+        if (stored != 0) {
+            int actual = this.computeChecksum(page);
+            if (stored != actual) {
+                long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
+                throw new CorruptPageException(vpn, String.format(
+                        "page %d is corrupt: checksum %08x does not match stored checksum %08x",
+                        vpn, actual, stored));
+            }
+        }
+    }
+
+    /**
+     * @return whether the partition is stored compressed
+     */
+    boolean isCompressed() {
+        return this.storedLengths != null;
+    }
+
+    /**
+     * Rewrites the partition file with every data page compressed, for partitions
+     * that are read but rarely modified. The compressed file starts with
+     * COMPRESSED_MAGIC, two unused bytes, and the number N of data pages up to the
+     * last allocated one; then, for each of the N pages, the number of bytes it takes
+     * up (0 if it is not allocated, and PAGE_SIZE if it did not compress and is stored
+     * as is). The pages follow one after another, without master or header pages,
+     * which are rebuilt from the lengths when the file is opened.
+     *
+     * Pages are still read one at a time, and decompressed as they are read. The
+     * first allocation, free, or write to the partition rewrites it uncompressed
+     * (see decompress()), so the partition stays compressed only while it is cold.
+     * The file is rewritten into a temporary file that is then renamed over the
+     * partition file, so a crash leaves either the old or the new file in place.
+     * Assumes that the partition lock is held.
+     */
+    void compress() throws IOException {
+        if (this.storedLengths != null) {
+            return;
+        }
+        this.sync();
+        int numPages = this.getNumDataPages();
+        long[] offsets = new long[numPages];
+        int[] lengths = new int[numPages];
+        PageCompressor compressor = new PageCompressor();
+        byte[] page = new byte[PAGE_SIZE];
+        byte[] compressed = new byte[PAGE_SIZE - 1];
+
+        Path tempPath = Paths.get(this.fileName + TEMP_SUFFIX);
+        try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long offset = 8 + 4L * numPages;
+            for (int pageNum = 0; pageNum < numPages; ++pageNum) {
+                if (this.isNotAllocatedPage(pageNum)) {
+                    continue;
+                }
+                this.readPage(pageNum, ByteBuffer.wrap(page));
+                int length = compressor.compress(page, compressed);
+                ByteBuffer data;
+                if (length < 0) {
+                    length = PAGE_SIZE;
+                    data = ByteBuffer.wrap(page);
+                } else {
+                    data = ByteBuffer.wrap(compressed, 0, length);
+                }
+                PartitionHandle.writeFully(out, data, offset);
+                offsets[pageNum] = offset;
+                lengths[pageNum] = length;
+                offset += length;
+            }
+            ByteBuffer index = ByteBuffer.allocate(8 + 4 * numPages);
+            index.putShort((short) COMPRESSED_MAGIC);
+            index.putShort((short) 0);
+            index.putInt(numPages);
+            for (int length : lengths) {
+                index.putInt(length);
+            }
+            index.flip();
+            PartitionHandle.writeFully(out, index, 0);
+            out.force(true);
+        }
+        this.replaceFile(tempPath);
+        this.storedOffsets = offsets;
+        this.storedLengths = lengths;
+    }
+
+    /**
+     * Rewrites a compressed partition file uncompressed, in the usual layout of master,
+     * header, and data pages. Does nothing if the partition is not compressed.
+     * Assumes that the partition lock is held.
+     */
+    void decompress() throws IOException {
+        if (this.storedLengths == null) {
+            return;
+        }
+        byte[] page = new byte[PAGE_SIZE];
+        Path tempPath = Paths.get(this.fileName + TEMP_SUFFIX);
+        try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            PartitionHandle.writeFully(out, ByteBuffer.wrap(this.getMasterPageBytes()),
+                                       PartitionHandle.masterPageOffset());
+            for (int i = 0; i < MAX_HEADER_PAGES; ++i) {
+                if (this.headerPages[i] != null) {
+                    PartitionHandle.writeFully(out, ByteBuffer.wrap(this.headerPages[i]),
+                                               PartitionHandle.headerPageOffset(i));
+                }
+            }
+            for (int pageNum = 0; pageNum < this.storedLengths.length; ++pageNum) {
+                if (this.storedLengths[pageNum] > 0) {
+                    this.readCompressedPage(pageNum, ByteBuffer.wrap(page));
+                    PartitionHandle.writeFully(out, ByteBuffer.wrap(page),
+                                               PartitionHandle.dataPageOffset(pageNum));
+                }
+            }
+            out.force(true);
+        }
+        this.replaceFile(tempPath);
+        this.storedOffsets = null;
+        this.storedLengths = null;
+    }
+
+    /**
+     * Rewrites the partition file with just its master page, the header pages with
+     * allocated data pages under them, and its allocated data pages, each at its usual
+     * offset. The rest of the rewritten file is never written to, so on file systems
+     * with sparse files the pages freed since the last rewrite take up no disk space,
+     * while page numbers (and offsets) stay as they were. Does nothing if the partition
+     * is compressed. Assumes that the partition lock is held.
+     */
+    private void rewriteSparse() throws IOException {
+        if (this.storedLengths != null) {
+            return;
+        }
+        this.sync();
+        byte[] page = new byte[PAGE_SIZE];
+        Path tempPath = Paths.get(this.fileName + TEMP_SUFFIX);
+        try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            PartitionHandle.writeFully(out, ByteBuffer.wrap(this.getMasterPageBytes()),
+                                       PartitionHandle.masterPageOffset());
+            for (int headerIndex = 0; headerIndex < MAX_HEADER_PAGES; ++headerIndex) {
+                if (this.masterPage[headerIndex] == 0) {
+                    continue;
+                }
+                PartitionHandle.writeFully(out, ByteBuffer.wrap(this.headerPages[headerIndex]),
+                                           PartitionHandle.headerPageOffset(headerIndex));
+                for (int pageIndex = 0; pageIndex < DATA_PAGES_PER_HEADER; ++pageIndex) {
+                    if (Bits.getBit(this.headerPages[headerIndex], pageIndex) == Bits.Bit.ONE) {
+                        long offset = PartitionHandle.dataPageOffset(headerIndex * DATA_PAGES_PER_HEADER + pageIndex);
+                        this.readData(offset, ByteBuffer.wrap(page));
+                        PartitionHandle.writeFully(out, ByteBuffer.wrap(page), offset);
+                    }
+                }
+            }
+            out.force(true);
+        }
+        this.replaceFile(tempPath);
+        this.numDiscarded = 0;
+    }
+
+    /**
+     * Loads the lengths of the pages of a compressed partition file, and rebuilds the
+     * master and header pages from them.
+     * @param firstPage first page of the file
+     */
+    private void loadCompressedIndex(ByteBuffer firstPage) throws IOException {
+        int numPages = firstPage.getInt(4);
+        ByteBuffer index = ByteBuffer.allocate(4 * numPages);
+        this.readData(8, index);
+        this.storedOffsets = new long[numPages];
+        this.storedLengths = new int[numPages];
+        long offset = 8 + 4L * numPages;
+        for (int pageNum = 0; pageNum < numPages; ++pageNum) {
+            int length = index.getInt();
+            this.storedOffsets[pageNum] = offset;
+            this.storedLengths[pageNum] = length;
+            offset += length;
+            if (length > 0) {
+                int headerIndex = pageNum / DATA_PAGES_PER_HEADER;
+                if (this.headerPages[headerIndex] == null) {
+                    this.headerPages[headerIndex] = new byte[PAGE_SIZE];
+                }
+                Bits.setBit(this.headerPages[headerIndex], pageNum % DATA_PAGES_PER_HEADER, Bits.Bit.ONE);
+                ++this.masterPage[headerIndex];
+            }
+        }
+    }
+
+    /**
+     * @return number of data pages up to and including the last allocated one
+     */
+    private int getNumDataPages() {
+        for (int headerIndex = MAX_HEADER_PAGES - 1; headerIndex >= 0; --headerIndex) {
+            if (this.masterPage[headerIndex] > 0) {
+                for (int pageIndex = DATA_PAGES_PER_HEADER - 1; pageIndex >= 0; --pageIndex) {
+                    if (Bits.getBit(this.headerPages[headerIndex], pageIndex) == Bits.Bit.ONE) {
+                        return headerIndex * DATA_PAGES_PER_HEADER + pageIndex + 1;
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return number of allocated data pages
+     */
+    private int getNumAllocatedPages() {
+        int numPages = 0;
+        for (int count : this.masterPage) {
+            numPages += count;
+        }
+        return numPages;
+    }
+
+    /**
+     * Replaces the partition file with a rewritten one, and reopens it.
+     * @param newPath path of the rewritten file
+     */
+    private void replaceFile(Path newPath) throws IOException {
+        this.file.close();
+        Files.move(newPath, Paths.get(this.fileName), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        this.file = new RandomAccessFile(this.fileName, "rw");
+        this.fileChannel = this.file.getChannel();
+        this.fileReplaced();
+    }
+
+    /**
+     * Called after the partition file is rewritten and reopened, for subclasses that
+     * keep state about the file.
+     */
+    void fileReplaced() throws IOException {
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long offset) throws IOException {
+        while (buf.hasRemaining()) {
+            offset += channel.write(buf, offset);
+        }
+    }
+
     /**
      * Checks if page number is for an unallocated data page
      * @param pageNum data page number
@@ -5,7 +5,7 @@ package edu.berkeley.cs186.database.memory;
  */
 abstract class BufferFrame {
     Object tag = null;
-    private int pinCount = 0;
+    private volatile int pinCount = 0;
 
     /**
      * Pin buffer frame; cannot be evicted while pinned. A "hit" happens when the
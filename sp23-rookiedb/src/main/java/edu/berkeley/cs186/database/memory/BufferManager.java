@@ -10,20 +10,28 @@ import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
 import java.util.function.BiConsumer;
 
 /**
  * Implementation of a buffer manager, with configurable page replacement policies.
- * Data is stored in page-sized byte arrays, and returned in a Frame object specific
+ * Data is stored in page-sized byte buffers, and returned in a Frame object specific
  * to the page loaded (evicting and loading a new page into the frame will result in
- * a new Frame object, with the same underlying byte array), with old Frame objects
- * backed by the same byte array marked as invalid.
+ * a new Frame object, with the same underlying byte buffer), with old Frame objects
+ * backed by the same byte buffer marked as invalid.
+ *
+ * Frame buffers are byte arrays on the Java heap by default. With off-heap frames,
+ * the pool is instead one direct buffer (or a few, for pools over 2GB) sliced into
+ * page-sized frames, which the garbage collector never scans or copies, and which
+ * the disk space manager reads into without a temporary buffer. Direct memory is
+ * limited by -XX:MaxDirectMemorySize, which defaults to the maximum heap size.
  */
 public class BufferManager implements AutoCloseable {
     // We reserve 36 bytes on each page for bookkeeping for recovery
-    // (used to store the pageLSN, and to ensure that a redo-only/undo-only log record can
-    // fit on one page).
+    // (used to store the page's checksum in bytes 0-3 and its pageLSN in bytes 8-15, and
+    // to ensure that a redo-only/undo-only log record can fit on one page).
     public static final short RESERVED_SPACE = 36;
 
     // Effective page size available to users of buffer manager.
@@ -51,24 +59,55 @@ public class BufferManager implements AutoCloseable {
     private RecoveryManager recoveryManager;
 
     // Count of number of I/Os
-    private long numIOs = 0;
+    private final AtomicLong numIOs = new AtomicLong();
+
+    // Sequential read-ahead, or null if disabled
+    private volatile ReadAheadPrefetcher readAheadPrefetcher;
+
+    // Background writer, or null if disabled
+    private volatile PageCleaner pageCleaner;
+
+    // Whether frames are stored in direct memory instead of the Java heap
+    private final boolean offHeap;
+
+    // Striped pool this buffer manager is a stripe of, or null. Read-ahead and
+    // the page cleaner are configured on the striped pool.
+    private final BufferManager parent;
+
+    // Number of frames evicted to make room for a page, and how many of them
+    // had to be written out first by the fetching thread
+    private final AtomicLong numEvictions = new AtomicLong();
+    private final AtomicLong numForegroundFlushes = new AtomicLong();
 
     /**
      * Buffer frame, containing information about the loaded page, wrapped around the
      * underlying byte array. Free frames use the index field to create a (singly) linked
      * list between free frames.
+     *
+     * Pinning a frame only keeps it from being evicted. Reads and writes of the page
+     * take the frame's latch, shared for reads and exclusive for writes, for the
+     * duration of the copy, so any number of threads can pin and read the same page
+     * at once. Reads are optimistic, and only take the latch if a write or eviction
+     * happened during the copy. The frame lock guards the pin count and validity of
+     * the frame; it is held for longer only while a page is loaded into the frame or
+     * the frame is being evicted.
      */
     class Frame extends BufferFrame {
         private static final int INVALID_INDEX = Integer.MIN_VALUE;
 
-        byte[] contents;
+        ByteBuffer contents;
         private int index;
         private long pageNum;
-        private boolean dirty;
+        private volatile boolean dirty;
         private ReentrantLock frameLock;
+        // Latch on the page data: shared for reads, exclusive for writes and
+        // invalidation. Not reentrant.
+        private StampedLock latch;
         private boolean logPage;
+        // Prefetcher that loaded this page, until the page is first fetched
+        private ReadAheadPrefetcher prefetchedBy;
 
-        Frame(byte[] contents, int nextFree) {
+        Frame(ByteBuffer contents, int nextFree) {
             this(contents, ~nextFree, DiskSpaceManager.INVALID_PAGE_NUM);
         }
 
@@ -76,12 +115,13 @@ public class BufferManager implements AutoCloseable {
             this(frame.contents, frame.index, frame.pageNum);
         }
 
-        Frame(byte[] contents, int index, long pageNum) {
+        Frame(ByteBuffer contents, int index, long pageNum) {
             this.contents = contents;
             this.index = index;
             this.pageNum = pageNum;
             this.dirty = false;
             this.frameLock = new ReentrantLock();
+            this.latch = new StampedLock();
             int partNum = DiskSpaceManager.getPartNum(pageNum);
             this.logPage = partNum == LogManager.LOG_PARTITION;
         }
@@ -93,12 +133,19 @@ public class BufferManager implements AutoCloseable {
         @Override
         public void pin() {
             this.frameLock.lock();
+            try {
+                if (!this.isValid()) {
+                    throw new IllegalStateException("pinning invalidated frame");
+                }
 
-            if (!this.isValid()) {
-                throw new IllegalStateException("pinning invalidated frame");
+                boolean wasPinned = this.isPinned();
+                super.pin();
+                if (!wasPinned) {
+                    BufferManager.this.evictionPolicy.pinned(this);
+                }
+            } finally {
+                this.frameLock.unlock();
             }
-
-            super.pin();
         }
 
         /**
@@ -106,8 +153,16 @@ public class BufferManager implements AutoCloseable {
          */
         @Override
         public void unpin() {
-            super.unpin();
-            this.frameLock.unlock();
+            this.frameLock.lock();
+            try {
+                super.unpin();
+                // frames freed while pinned are no longer known to the eviction policy
+                if (!this.isPinned() && this.isValid()) {
+                    BufferManager.this.evictionPolicy.unpinned(this);
+                }
+            } finally {
+                this.frameLock.unlock();
+            }
         }
 
         /**
@@ -126,14 +181,32 @@ public class BufferManager implements AutoCloseable {
         }
 
         /**
-         * Invalidates the frame, flushing it if necessary.
+         * Invalidates the frame, flushing it if necessary. Waits for threads still
+         * reading the page (e.g. the page cleaner writing it out) to finish.
          */
         private void invalidate() {
-            if (this.isValid()) {
-                this.flush();
+            long stamp = this.latch.writeLock();
+            try {
+                this.flushLatched();
+                this.index = INVALID_INDEX;
+                this.contents = null;
+            } finally {
+                this.latch.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Invalidates the frame without writing it out, for a frame whose page
+         * was never read in.
+         */
+        private void discard() {
+            long stamp = this.latch.writeLock();
+            try {
+                this.index = INVALID_INDEX;
+                this.contents = null;
+            } finally {
+                this.latch.unlockWrite(stamp);
             }
-            this.index = INVALID_INDEX;
-            this.contents = null;
         }
 
         /**
@@ -143,9 +216,14 @@ public class BufferManager implements AutoCloseable {
             if (isFreed()) {
                 throw new IllegalStateException("cannot free free frame");
             }
-            int nextFreeIndex = firstFreeIndex;
-            firstFreeIndex = this.index;
-            this.index = ~nextFreeIndex;
+            long stamp = this.latch.writeLock();
+            try {
+                int nextFreeIndex = firstFreeIndex;
+                firstFreeIndex = this.index;
+                this.index = ~nextFreeIndex;
+            } finally {
+                this.latch.unlockWrite(stamp);
+            }
         }
 
         private void setUsed() {
@@ -170,25 +248,46 @@ public class BufferManager implements AutoCloseable {
          */
         @Override
         void flush() {
+            // pinned (without telling the eviction policy) so that the frame is not
+            // evicted while it is written out, which may flush the log and evict pages
             this.frameLock.lock();
-            super.pin();
             try {
-                if (!this.isValid()) {
-                    return;
-                }
-                if (!this.dirty) {
+                if (!this.isValid() || !this.dirty) {
                     return;
                 }
-                if (!this.logPage) {
-                    recoveryManager.pageFlushHook(this.getPageLSN());
-                }
-                BufferManager.this.diskSpaceManager.writePage(pageNum, contents);
-                BufferManager.this.incrementIOs();
-                this.dirty = false;
+                super.pin();
             } finally {
-                super.unpin();
                 this.frameLock.unlock();
             }
+            try {
+                long stamp = this.latch.readLock();
+                try {
+                    this.flushLatched();
+                } finally {
+                    this.latch.unlockRead(stamp);
+                }
+            } finally {
+                this.unpin();
+            }
+        }
+
+        /**
+         * Writes the page out if the frame is valid and dirty. Assumes that the
+         * latch is held.
+         */
+        private void flushLatched() {
+            if (!this.isValid()) {
+                return;
+            }
+            if (!this.dirty) {
+                return;
+            }
+            if (!this.logPage) {
+                recoveryManager.pageFlushHook(this.contents.getLong(8));
+            }
+            BufferManager.this.diskSpaceManager.writePage(pageNum, contents);
+            BufferManager.this.incrementIOs();
+            this.dirty = false;
         }
 
         /**
@@ -199,16 +298,33 @@ public class BufferManager implements AutoCloseable {
          */
         @Override
         void readBytes(short position, short num, byte[] buf) {
-            this.pin();
+            // no pin needed: the frame cannot be invalidated while the latch is held,
+            // and an optimistic read is discarded if it was
+            long stamp = this.latch.tryOptimisticRead();
+            ByteBuffer contents = this.contents;
+            if (stamp != 0 && this.isValid() && contents != null) {
+                copyTo(contents, position, num, buf);
+                if (this.latch.validate(stamp)) {
+                    BufferManager.this.evictionPolicy.hit(this);
+                    return;
+                }
+            }
+            stamp = this.latch.readLock();
             try {
                 if (!this.isValid()) {
                     throw new IllegalStateException("reading from invalid buffer frame");
                 }
-                System.arraycopy(this.contents, position + dataOffset(), buf, 0, num);
-                BufferManager.this.evictionPolicy.hit(this);
+                copyTo(this.contents, position, num, buf);
             } finally {
-                this.unpin();
+                this.latch.unlockRead(stamp);
             }
+            BufferManager.this.evictionPolicy.hit(this);
+        }
+
+        private void copyTo(ByteBuffer contents, short position, short num, byte[] buf) {
+            ByteBuffer src = contents.duplicate();
+            src.position(position + dataOffset());
+            src.get(buf, 0, num);
         }
 
         /**
@@ -219,33 +335,60 @@ public class BufferManager implements AutoCloseable {
          */
         @Override
         void writeBytes(short position, short num, byte[] buf) {
+            // pinned, so that the buffer manager never waits for the latch while a
+            // write is being logged (which may fetch log pages)
             this.pin();
             try {
                 if (!this.isValid()) {
                     throw new IllegalStateException("writing to invalid buffer frame");
                 }
-                int offset = position + dataOffset();
-                TransactionContext transaction = TransactionContext.getTransaction();
-                if (transaction != null && !logPage) {
-                    List<Pair<Integer, Integer>> changedRanges = getChangedBytes(offset, num, buf);
-                    for (Pair<Integer, Integer> range : changedRanges) {
-                        int start = range.getFirst();
-                        int len = range.getSecond();
-                        byte[] before = Arrays.copyOfRange(contents, start + offset, start + offset + len);
-                        byte[] after = Arrays.copyOfRange(buf, start, start + len);
-                        long pageLSN = recoveryManager.logPageWrite(transaction.getTransNum(), pageNum, (short) (start + position), before,
-                                       after);
-                        this.setPageLSN(pageLSN);
-                    }
+                long stamp = this.latch.writeLock();
+                try {
+                    this.writeLatched(position, num, buf);
+                } finally {
+                    this.latch.unlockWrite(stamp);
                 }
-                System.arraycopy(buf, 0, this.contents, offset, num);
-                this.dirty = true;
                 BufferManager.this.evictionPolicy.hit(this);
             } finally {
                 this.unpin();
             }
         }
 
+        /**
+         * Implementation of writeBytes. Assumes that the frame is pinned and its
+         * latch is held exclusively.
+         */
+        private void writeLatched(short position, short num, byte[] buf) {
+            int offset = position + dataOffset();
+            TransactionContext transaction = TransactionContext.getTransaction();
+            if (transaction != null && !logPage) {
+                List<Pair<Integer, Integer>> changedRanges = getChangedBytes(offset, num, buf);
+                int numRanges = changedRanges.size();
+                if (numRanges > 0) {
+                    short[] pageOffsets = new short[numRanges];
+                    byte[][] befores = new byte[numRanges][];
+                    byte[][] afters = new byte[numRanges][];
+                    for (int i = 0; i < numRanges; ++i) {
+                        int start = changedRanges.get(i).getFirst();
+                        int len = changedRanges.get(i).getSecond();
+                        befores[i] = new byte[len];
+                        ByteBuffer src = this.contents.duplicate();
+                        src.position(start + offset);
+                        src.get(befores[i]);
+                        afters[i] = Arrays.copyOfRange(buf, start, start + len);
+                        pageOffsets[i] = (short) (start + position);
+                    }
+                    long pageLSN = recoveryManager.logPageWrites(transaction.getTransNum(), pageNum, pageOffsets,
+                                   befores, afters);
+                    this.contents.putLong(8, pageLSN);
+                }
+            }
+            ByteBuffer dst = this.contents.duplicate();
+            dst.position(offset);
+            dst.put(buf, 0, num);
+            this.dirty = true;
+        }
+
         /**
          * Requests a valid Frame object for the page (if invalid, a new Frame object is returned).
          * Page is pinned on return.
@@ -261,10 +404,10 @@ public class BufferManager implements AutoCloseable {
                     this.pin();
                     return this;
                 }
-                return BufferManager.this.fetchPageFrame(this.pageNum);
             } finally {
                 this.frameLock.unlock();
             }
+            return BufferManager.this.fetchPageFrame(this.pageNum);
         }
 
         @Override
@@ -278,7 +421,12 @@ public class BufferManager implements AutoCloseable {
 
         @Override
         long getPageLSN() {
-            return ByteBuffer.wrap(this.contents).getLong(8);
+            long stamp = this.latch.readLock();
+            try {
+                return this.contents.getLong(8);
+            } finally {
+                this.latch.unlockRead(stamp);
+            }
         }
 
         @Override
@@ -304,10 +452,12 @@ public class BufferManager implements AutoCloseable {
             int skip = -1;
             for (int i = 0; i < num; ++i) {
                 if (startIndex >= 0 && maxRange == i - startIndex) {
-                    ranges.add(new Pair<>(startIndex, maxRange));
+                    // range is full: byte i is looked at below, as if no range had started
+                    ranges.add(new Pair<>(startIndex, maxRange - skip));
                     startIndex = -1;
                     skip = -1;
-                } else if (buf[i] == contents[offset + i] && startIndex >= 0) {
+                }
+                if (buf[i] == contents.get(offset + i) && startIndex >= 0) {
                     if (skip > BufferManager.RESERVED_SPACE) {
                         ranges.add(new Pair<>(startIndex, i - startIndex - skip));
                         startIndex = -1;
@@ -315,7 +465,7 @@ public class BufferManager implements AutoCloseable {
                     } else {
                         ++skip;
                     }
-                } else if (buf[i] != contents[offset + i]) {
+                } else if (buf[i] != contents.get(offset + i)) {
                     if (startIndex < 0) {
                         startIndex = i;
                     }
@@ -329,7 +479,12 @@ public class BufferManager implements AutoCloseable {
         }
 
         void setPageLSN(long pageLSN) {
-            ByteBuffer.wrap(this.contents).putLong(8, pageLSN);
+            long stamp = this.latch.writeLock();
+            try {
+                this.contents.putLong(8, pageLSN);
+            } finally {
+                this.latch.unlockWrite(stamp);
+            }
         }
 
         private short dataOffset() {
@@ -350,9 +505,39 @@ public class BufferManager implements AutoCloseable {
      */
     public BufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
                          int bufferSize, EvictionPolicy evictionPolicy) {
+        this(diskSpaceManager, recoveryManager, bufferSize, evictionPolicy, false);
+    }
+
+    /**
+     * Creates a new buffer manager.
+     *
+     * @param diskSpaceManager the underlying disk space manager
+     * @param bufferSize size of buffer (in pages)
+     * @param evictionPolicy eviction policy to use
+     * @param offHeap whether to store frames in direct memory instead of the Java heap
+     */
+    public BufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
+                         int bufferSize, EvictionPolicy evictionPolicy, boolean offHeap) {
+        this(diskSpaceManager, recoveryManager, bufferSize, evictionPolicy, offHeap, null);
+    }
+
+    /**
+     * Creates a new buffer manager, as one stripe of a striped pool.
+     *
+     * @param diskSpaceManager the underlying disk space manager
+     * @param bufferSize size of buffer (in pages)
+     * @param evictionPolicy eviction policy to use
+     * @param offHeap whether to store frames in direct memory instead of the Java heap
+     * @param parent striped pool this buffer manager is part of, or null
+     */
+    BufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
+                  int bufferSize, EvictionPolicy evictionPolicy, boolean offHeap, BufferManager parent) {
+        this.parent = parent;
+        this.offHeap = offHeap;
         this.frames = new Frame[bufferSize];
+        ByteBuffer[] buffers = allocateFrameBuffers(bufferSize, offHeap);
         for (int i = 0; i < bufferSize; ++i) {
-            this.frames[i] = new Frame(new byte[DiskSpaceManager.PAGE_SIZE], i + 1);
+            this.frames[i] = new Frame(buffers[i], i + 1);
         }
         this.firstFreeIndex = 0;
         this.diskSpaceManager = diskSpaceManager;
@@ -362,8 +547,42 @@ public class BufferManager implements AutoCloseable {
         this.recoveryManager = recoveryManager;
     }
 
+    /**
+     * Allocates page-sized buffers for the frames of a buffer manager.
+     *
+     * @param bufferSize number of buffers
+     * @param offHeap whether to slice the buffers out of direct memory
+     * @return bufferSize buffers, each with a capacity of a page
+     */
+    private static ByteBuffer[] allocateFrameBuffers(int bufferSize, boolean offHeap) {
+        ByteBuffer[] buffers = new ByteBuffer[bufferSize];
+        if (!offHeap) {
+            for (int i = 0; i < bufferSize; ++i) {
+                buffers[i] = ByteBuffer.wrap(new byte[DiskSpaceManager.PAGE_SIZE]);
+            }
+            return buffers;
+        }
+        // a direct buffer holds at most 2GB
+        int pagesPerRegion = Integer.MAX_VALUE / DiskSpaceManager.PAGE_SIZE;
+        ByteBuffer region = null;
+        for (int i = 0; i < bufferSize; ++i) {
+            int regionIndex = i % pagesPerRegion;
+            if (regionIndex == 0) {
+                int regionPages = Math.min(pagesPerRegion, bufferSize - i);
+                region = ByteBuffer.allocateDirect(regionPages * DiskSpaceManager.PAGE_SIZE);
+            }
+            ByteBuffer slice = region.duplicate();
+            slice.position(regionIndex * DiskSpaceManager.PAGE_SIZE);
+            slice.limit(slice.position() + DiskSpaceManager.PAGE_SIZE);
+            buffers[i] = slice.slice();
+        }
+        return buffers;
+    }
+
     @Override
     public void close() {
+        this.disableReadAhead();
+        this.disablePageCleaner();
         this.managerLock.lock();
         try {
             for (Frame frame : this.frames) {
@@ -406,47 +625,516 @@ public class BufferManager implements AutoCloseable {
             if (this.pageToFrame.containsKey(pageNum)) {
                 newFrame = this.frames[this.pageToFrame.get(pageNum)];
                 newFrame.pin();
+                this.usePrefetched(newFrame);
                 return newFrame;
             }
-            // prioritize free frames over eviction
-            if (this.firstFreeIndex < this.frames.length) {
-                evictedFrame = this.frames[this.firstFreeIndex];
-                evictedFrame.setUsed();
-            } else {
-                evictedFrame = (Frame) evictionPolicy.evict(frames);
-                this.pageToFrame.remove(evictedFrame.pageNum, evictedFrame.index);
-                evictionPolicy.cleanup(evictedFrame);
+            ReadAheadPrefetcher prefetcher = this.activeReadAheadPrefetcher();
+            if (prefetcher != null) {
+                prefetcher.recordMiss();
             }
+            evictedFrame = this.claimFrame();
             int frameIndex = evictedFrame.index;
             newFrame = this.frames[frameIndex] = new Frame(evictedFrame.contents, frameIndex, pageNum);
             evictionPolicy.init(newFrame);
 
-            evictedFrame.frameLock.lock();
+            // held until the page is read in, so that other threads wait for it, and
+            // pinned so that the frame cannot be picked for eviction before then
             newFrame.frameLock.lock();
+            newFrame.pin();
 
             this.pageToFrame.put(pageNum, frameIndex);
         } finally {
             this.managerLock.unlock();
         }
-        // flush evicted frame
+        // flush evicted frame, and read new page into frame
         try {
-            evictedFrame.invalidate();
+            try {
+                this.invalidateVictim(evictedFrame);
+            } finally {
+                evictedFrame.frameLock.unlock();
+            }
+            this.diskSpaceManager.readPage(pageNum, newFrame.contents);
+            this.incrementIOs();
+        } catch (RuntimeException e) {
+            this.abandonFrames(Collections.singletonList(newFrame));
+            throw e;
+        }
+        newFrame.frameLock.unlock();
+        return newFrame;
+    }
+
+    /**
+     * Picks the frame to load a new page into: a free frame if there is one, and
+     * otherwise the frame chosen by the eviction policy, which is removed from
+     * the manager's state. Assumes that the manager lock is held.
+     *
+     * @return frame whose contents are to be reused, with its frame lock held
+     */
+    private Frame claimFrame() {
+        Frame frame;
+        // prioritize free frames over eviction
+        if (this.firstFreeIndex < this.frames.length) {
+            frame = this.frames[this.firstFreeIndex];
+            frame.frameLock.lock();
+            frame.setUsed();
+        } else {
+            frame = this.lockVictim();
+            this.pageToFrame.remove(frame.pageNum, frame.index);
+            evictionPolicy.cleanup(frame);
+            this.dropPrefetched(frame);
+            this.numEvictions.incrementAndGet();
+        }
+        return frame;
+    }
+
+    /**
+     * Picks the frame to evict, and takes its frame lock. A frame whose lock is
+     * held by another thread is skipped rather than waited for, since the manager
+     * lock is held: the coldest frame that can be locked is taken instead.
+     * Assumes that the manager lock is held.
+     *
+     * @return unpinned frame to evict, with its frame lock held
+     */
+    private Frame lockVictim() {
+        while (true) {
+            Frame frame = (Frame) evictionPolicy.evict(frames);
+            if (this.tryLockVictim(frame)) {
+                return frame;
+            }
+            for (BufferFrame cold : evictionPolicy.coldFrames(frames, frames.length)) {
+                if (this.tryLockVictim((Frame) cold)) {
+                    return (Frame) cold;
+                }
+            }
+            // every unpinned frame is busy for now
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Takes the lock of a frame if it is free, and keeps it if the frame is
+     * unpinned (it may have been pinned through a page handle after the
+     * eviction policy picked it).
+     */
+    private boolean tryLockVictim(Frame frame) {
+        if (!frame.frameLock.tryLock()) {
+            return false;
+        }
+        if (frame.isPinned()) {
+            frame.frameLock.unlock();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gives up on frames claimed for pages that could not be read in: unmaps the
+     * pages and returns the frames to the free list. Assumes that the lock of
+     * each frame is held and that the frame is pinned, by the current thread; the
+     * locks are released. The frames are invalidated before their locks are
+     * released, so a thread waiting to pin one of them fails rather than reading
+     * its contents.
+     */
+    private void abandonFrames(List<Frame> unread) {
+        int[] indices = new int[unread.size()];
+        ByteBuffer[] contents = new ByteBuffer[unread.size()];
+        for (int i = 0; i < indices.length; ++i) {
+            Frame frame = unread.get(i);
+            indices[i] = frame.index;
+            contents[i] = frame.contents;
+            // left pinned, so that the eviction policy skips it until it is cleaned up
+            frame.discard();
+            frame.frameLock.unlock();
+        }
+        this.managerLock.lock();
+        try {
+            for (int i = 0; i < indices.length; ++i) {
+                Frame frame = unread.get(i);
+                this.pageToFrame.remove(frame.pageNum, indices[i]);
+                evictionPolicy.cleanup(frame);
+                // not counted as loaded by the prefetcher, so neither used nor wasted
+                frame.prefetchedBy = null;
+                this.frames[indices[i]] = new Frame(contents[i], this.firstFreeIndex);
+                this.firstFreeIndex = indices[i];
+            }
         } finally {
-            evictedFrame.frameLock.unlock();
+            this.managerLock.unlock();
         }
-        // read new page into frame
+    }
+
+    /**
+     * Invalidates a frame returned by claimFrame, writing it out first if it is
+     * dirty. Assumes that the frame's lock is held.
+     */
+    private void invalidateVictim(Frame victim) {
+        if (victim.isValid() && victim.dirty) {
+            this.numForegroundFlushes.incrementAndGet();
+            PageCleaner cleaner = this.parent == null ? this.pageCleaner : this.parent.pageCleaner;
+            if (cleaner != null) {
+                cleaner.wake();
+            }
+        }
+        victim.invalidate();
+    }
+
+    /**
+     * @return the read-ahead prefetcher of this buffer manager, or of the striped
+     * pool it is part of
+     */
+    private ReadAheadPrefetcher activeReadAheadPrefetcher() {
+        return this.parent == null ? this.readAheadPrefetcher : this.parent.readAheadPrefetcher;
+    }
+
+    /**
+     * Records a fetch of a frame loaded by read-ahead, the first time it is
+     * fetched. Assumes that the manager lock is held.
+     */
+    private void usePrefetched(Frame frame) {
+        if (frame.prefetchedBy != null) {
+            frame.prefetchedBy.recordHit();
+            frame.prefetchedBy = null;
+        }
+    }
+
+    /**
+     * Records that a frame loaded by read-ahead is being unloaded without
+     * ever being fetched. Assumes that the manager lock is held.
+     */
+    private void dropPrefetched(Frame frame) {
+        if (frame.prefetchedBy != null) {
+            frame.prefetchedBy.recordWasted();
+            frame.prefetchedBy = null;
+        }
+    }
+
+    /**
+     * Fetches buffer frames with data for the specified pages. Reuses existing
+     * buffer frames for pages already loaded in memory, and reads all other pages
+     * with a single call to DiskSpaceManager#readPages, so that pages stored
+     * contiguously on disk are read together. Pins all the buffer frames.
+     * Cannot be used outside the package.
+     *
+     * @param pageNums page numbers
+     * @return buffer frames with the specified pages loaded, in the same order as pageNums
+     */
+    Frame[] fetchPageFrames(long[] pageNums) {
+        return this.loadPageFrames(pageNums, null);
+    }
+
+    /**
+     * Loads the specified pages into unpinned frames on behalf of a read-ahead
+     * prefetcher. Pages already in memory and pages that are not allocated are
+     * skipped, and no more pages are loaded once every frame is pinned. Errors
+     * are ignored: read-ahead is only a hint.
+     *
+     * @param pageNums page numbers
+     * @param prefetcher prefetcher to report the loaded pages to when they are used or wasted
+     * @return number of pages loaded
+     */
+    int prefetchPageFrames(long[] pageNums, ReadAheadPrefetcher prefetcher) {
+        Frame[] frames = this.loadPageFrames(pageNums, prefetcher);
+        int numLoaded = 0;
+        for (Frame frame : frames) {
+            if (frame != null) {
+                frame.unpin();
+                ++numLoaded;
+            }
+        }
+        return numLoaded;
+    }
+
+    /**
+     * Implementation of fetchPageFrames and prefetchPageFrames. If prefetcher is
+     * null, fetches every page (pinning existing frames); otherwise only loads the
+     * pages not in memory, and marks their frames as prefetched.
+     */
+    private Frame[] loadPageFrames(long[] pageNums, ReadAheadPrefetcher prefetcher) {
+        Frame[] result = new Frame[pageNums.length];
+        List<Frame> evictedFrames = new ArrayList<>();
+        List<Frame> newFrames = new ArrayList<>();
+        RuntimeException error = null;
+        this.managerLock.lock();
+        // figure out what frames to load data to, and update manager state. New
+        // frames are pinned right away, so that loading a later page cannot evict them.
         try {
-            newFrame.pageNum = pageNum;
-            newFrame.pin();
-            BufferManager.this.diskSpaceManager.readPage(pageNum, newFrame.contents);
-            this.incrementIOs();
-            return newFrame;
-        } catch (PageException e) {
-            newFrame.unpin();
-            throw e;
+            for (int i = 0; i < pageNums.length; ++i) {
+                long pageNum = pageNums[i];
+                boolean allocated = this.diskSpaceManager.pageAllocated(pageNum);
+                if (prefetcher != null) {
+                    if (!allocated || this.pageToFrame.containsKey(pageNum)) {
+                        continue;
+                    }
+                    if (this.firstFreeIndex >= this.frames.length && !this.hasUnpinnedFrame()) {
+                        break;
+                    }
+                } else if (!allocated) {
+                    throw new PageException("page " + pageNum + " not allocated");
+                } else if (this.pageToFrame.containsKey(pageNum)) {
+                    result[i] = this.frames[this.pageToFrame.get(pageNum)];
+                    result[i].pin();
+                    this.usePrefetched(result[i]);
+                    continue;
+                }
+                Frame evictedFrame = this.claimFrame();
+                int frameIndex = evictedFrame.index;
+                Frame newFrame = this.frames[frameIndex] = new Frame(evictedFrame.contents, frameIndex, pageNum);
+                evictionPolicy.init(newFrame);
+
+                // held until the page is read in, so that other threads wait for it
+                newFrame.frameLock.lock();
+                newFrame.pin();
+                newFrame.prefetchedBy = prefetcher;
+                evictedFrames.add(evictedFrame);
+                newFrames.add(newFrame);
+                result[i] = newFrame;
+
+                this.pageToFrame.put(pageNum, frameIndex);
+            }
+        } catch (RuntimeException e) {
+            // frames claimed so far are still loaded below, to leave the manager consistent
+            error = e;
+        } finally {
+            this.managerLock.unlock();
+        }
+        // flush evicted frames
+        for (Frame evictedFrame : evictedFrames) {
+            try {
+                this.invalidateVictim(evictedFrame);
+            } catch (RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                }
+            } finally {
+                evictedFrame.frameLock.unlock();
+            }
+        }
+        // read new pages into frames
+        if (!newFrames.isEmpty()) {
+            long[] loadPageNums = new long[newFrames.size()];
+            ByteBuffer[] bufs = new ByteBuffer[newFrames.size()];
+            for (int i = 0; i < loadPageNums.length; ++i) {
+                loadPageNums[i] = newFrames.get(i).pageNum;
+                bufs[i] = newFrames.get(i).contents;
+            }
+            List<Frame> unread = new ArrayList<>();
+            try {
+                this.diskSpaceManager.readPages(loadPageNums, bufs);
+                for (int i = 0; i < loadPageNums.length; ++i) {
+                    this.incrementIOs();
+                }
+            } catch (RuntimeException e) {
+                // there is no telling which pages were read in, so they are read
+                // again one at a time
+                for (Frame newFrame : newFrames) {
+                    try {
+                        this.diskSpaceManager.readPage(newFrame.pageNum, newFrame.contents);
+                        this.incrementIOs();
+                    } catch (RuntimeException e2) {
+                        unread.add(newFrame);
+                    }
+                }
+                if (!unread.isEmpty() && error == null) {
+                    error = e;
+                }
+            }
+            for (Frame newFrame : newFrames) {
+                if (!unread.contains(newFrame)) {
+                    newFrame.frameLock.unlock();
+                }
+            }
+            if (!unread.isEmpty()) {
+                // the frames may hold what was in them before, so they are not kept
+                this.abandonFrames(unread);
+                for (int i = 0; i < result.length; ++i) {
+                    if (result[i] != null && !result[i].isValid()) {
+                        result[i] = null;
+                    }
+                }
+            }
+        }
+        // read-ahead is only a hint, so the pages read in before the error are kept
+        if (error != null && prefetcher == null) {
+            for (Frame frame : result) {
+                if (frame != null) {
+                    frame.unpin();
+                }
+            }
+            throw error;
+        }
+        return result;
+    }
+
+    /**
+     * @return whether any frame is unpinned. Assumes that the manager lock is held.
+     */
+    private boolean hasUnpinnedFrame() {
+        for (Frame frame : this.frames) {
+            if (!frame.isPinned()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fetches the specified pages, with loaded and pinned buffer frames. Pages not
+     * already in memory are read from disk together (see fetchPageFrames), which is
+     * cheaper than fetching them one at a time when they are stored contiguously.
+     *
+     * @param parentContext lock context of the **parent** of the pages being fetched
+     * @param pageNums      page numbers
+     * @return specified pages, in the same order as pageNums
+     */
+    public Page[] fetchPages(LockContext parentContext, long[] pageNums) {
+        Frame[] frames = this.fetchPageFrames(pageNums);
+        Page[] pages = new Page[frames.length];
+        for (int i = 0; i < frames.length; ++i) {
+            pages[i] = this.frameToPage(parentContext, pageNums[i], frames[i]);
+        }
+        return pages;
+    }
+
+    /**
+     * Turns on the background page cleaner, which writes out dirty frames at the
+     * cold end of the eviction policy ahead of time. Replaces any previous page
+     * cleaner configuration.
+     *
+     * @param lowDirtyRatio fraction of dirty frames the cleaner tries to stay under
+     * @param highDirtyRatio fraction of dirty frames above which the cleaner runs
+     *                       continuously
+     * @param cleanIntervalMillis time (in ms) between rounds of cleaning
+     */
+    public void enablePageCleaner(double lowDirtyRatio, double highDirtyRatio, long cleanIntervalMillis) {
+        disablePageCleaner();
+        this.pageCleaner = new PageCleaner(this, lowDirtyRatio, highDirtyRatio, cleanIntervalMillis);
+    }
+
+    /**
+     * Turns off the background page cleaner.
+     */
+    public void disablePageCleaner() {
+        PageCleaner cleaner = this.pageCleaner;
+        this.pageCleaner = null;
+        if (cleaner != null) {
+            // Must not hold the manager lock here: a round in progress needs it.
+            cleaner.close();
+        }
+    }
+
+    /**
+     * @return the page cleaner (with its background flush counters), or null if
+     * the page cleaner is disabled
+     */
+    public PageCleaner getPageCleaner() {
+        return this.pageCleaner;
+    }
+
+    /**
+     * Picks frames for the page cleaner to write out: the dirty frames among the
+     * coldDepth frames the eviction policy would evict first, and then more dirty
+     * frames, coldest first, while more than maxDirty frames are dirty. Log pages
+     * are left to the log manager.
+     *
+     * @param coldDepth number of frames at the cold end to clean
+     * @param maxDirty number of dirty frames to stay under
+     * @return frames to write out, coldest first
+     */
+    List<Frame> pickFramesToClean(int coldDepth, int maxDirty) {
+        this.managerLock.lock();
+        try {
+            int numDirty = this.countDirtyFrames();
+            List<Frame> toClean = new ArrayList<>();
+            List<BufferFrame> cold = this.evictionPolicy.coldFrames(this.frames, this.frames.length);
+            for (int i = 0; i < cold.size(); ++i) {
+                if (i >= coldDepth && numDirty <= maxDirty) {
+                    break;
+                }
+                Frame frame = (Frame) cold.get(i);
+                if (frame.isValid() && frame.dirty && !frame.logPage) {
+                    toClean.add(frame);
+                    --numDirty;
+                }
+            }
+            return toClean;
+        } finally {
+            this.managerLock.unlock();
+        }
+    }
+
+    /**
+     * Writes out a frame for the page cleaner, unless it is pinned, locked by
+     * another thread, or no longer valid and dirty.
+     *
+     * @param frame frame to write out
+     * @return whether the frame was written out
+     */
+    boolean cleanFrame(Frame frame) {
+        if (!frame.frameLock.tryLock()) {
+            return false;
+        }
+        try {
+            if (!frame.isValid() || !frame.dirty || frame.isPinned()) {
+                return false;
+            }
         } finally {
-            newFrame.frameLock.unlock();
+            frame.frameLock.unlock();
         }
+        frame.flush();
+        return true;
+    }
+
+    /**
+     * @return number of valid, dirty frames. Assumes that the manager lock is held.
+     */
+    private int countDirtyFrames() {
+        int numDirty = 0;
+        for (Frame frame : this.frames) {
+            if (frame.isValid() && frame.dirty) {
+                ++numDirty;
+            }
+        }
+        return numDirty;
+    }
+
+    /**
+     * @return fraction of frames that are dirty
+     */
+    public double getDirtyRatio() {
+        this.managerLock.lock();
+        try {
+            return (double) this.countDirtyFrames() / this.frames.length;
+        } finally {
+            this.managerLock.unlock();
+        }
+    }
+
+    /**
+     * @return whether frames are stored in direct memory instead of the Java heap
+     */
+    public boolean isOffHeap() {
+        return this.offHeap;
+    }
+
+    /**
+     * @return number of frames in the buffer
+     */
+    public int getBufferSize() {
+        return this.frames.length;
+    }
+
+    /**
+     * @return number of frames evicted to make room for another page
+     */
+    public long getNumEvictions() {
+        return this.numEvictions.get();
+    }
+
+    /**
+     * @return number of evicted frames that were dirty, and had to be written out
+     * by the thread fetching a page
+     */
+    public long getNumForegroundFlushes() {
+        return this.numForegroundFlushes.get();
     }
 
     /**
@@ -457,7 +1145,51 @@ public class BufferManager implements AutoCloseable {
      * @return specified page
      */
     public Page fetchPage(LockContext parentContext, long pageNum) {
-        return this.frameToPage(parentContext, pageNum, this.fetchPageFrame(pageNum));
+        Frame frame = this.fetchPageFrame(pageNum);
+        ReadAheadPrefetcher prefetcher = this.readAheadPrefetcher;
+        if (prefetcher != null) {
+            prefetcher.pageFetched(pageNum);
+        }
+        return this.frameToPage(parentContext, pageNum, frame);
+    }
+
+    /**
+     * Turns on sequential read-ahead: once a caller fetches consecutive pages of a
+     * partition, the following pages are loaded into unpinned frames in the
+     * background. Replaces any previous read-ahead configuration.
+     *
+     * @param prefetchDistance number of pages to read ahead of a sequential scan
+     * @param maxPrefetchedPages maximum number of prefetched pages not used yet
+     * @param numThreads number of I/O threads
+     */
+    public void enableReadAhead(int prefetchDistance, int maxPrefetchedPages, int numThreads) {
+        if (maxPrefetchedPages >= this.getBufferSize()) {
+            throw new IllegalArgumentException("read-ahead budget must be smaller than the buffer");
+        }
+        disableReadAhead();
+        this.readAheadPrefetcher = new ReadAheadPrefetcher(this, prefetchDistance, maxPrefetchedPages,
+                numThreads);
+    }
+
+    /**
+     * Turns off read-ahead, waiting for prefetches in progress to finish. Pages
+     * already prefetched stay in memory.
+     */
+    public void disableReadAhead() {
+        ReadAheadPrefetcher prefetcher = this.readAheadPrefetcher;
+        this.readAheadPrefetcher = null;
+        if (prefetcher != null) {
+            // Must not hold the manager lock here: the I/O threads need it.
+            prefetcher.close();
+        }
+    }
+
+    /**
+     * @return the read-ahead prefetcher (with its hit/miss/wasted counters), or
+     * null if read-ahead is disabled
+     */
+    public ReadAheadPrefetcher getReadAheadPrefetcher() {
+        return this.readAheadPrefetcher;
     }
 
     /**
@@ -488,6 +1220,19 @@ public class BufferManager implements AutoCloseable {
         return this.frameToPage(parentContext, newFrame.getPageNum(), newFrame);
     }
 
+    /**
+     * Allocates several new pages in a partition without loading them, as one run
+     * of contiguous pages if the disk space manager supports it. The pages are
+     * fetched with fetchPage as they are needed (see ExtentAllocator).
+     *
+     * @param partNum partition number for new pages
+     * @param count   number of pages
+     * @return page numbers of the new pages, in ascending order
+     */
+    public long[] allocPages(int partNum, int count) {
+        return this.diskSpaceManager.allocPages(partNum, count);
+    }
+
     /**
      * Frees a page - evicts the page from cache, and tells the disk space manager
      * that the page is no longer needed. Page must be pinned before this call,
@@ -505,6 +1250,7 @@ public class BufferManager implements AutoCloseable {
             if (transaction != null) page.flush();
             this.pageToFrame.remove(page.getPageNum(), frameIndex);
             evictionPolicy.cleanup(frame);
+            this.dropPrefetched(frame);
             frame.setFree();
 
             this.frames[frameIndex] = new Frame(frame);
@@ -522,20 +1268,35 @@ public class BufferManager implements AutoCloseable {
      * @param partNum partition number to free
      */
     public void freePart(int partNum) {
+        this.managerLock.lock();
+        try {
+            this.dropPart(partNum);
+            diskSpaceManager.freePart(partNum);
+        } finally {
+            this.managerLock.unlock();
+        }
+    }
+
+    /**
+     * Evicts all pages of a partition from cache, without freeing the partition.
+     *
+     * @param partNum partition number
+     */
+    void dropPart(int partNum) {
         this.managerLock.lock();
         try {
             for (int i = 0; i < frames.length; ++i) {
                 Frame frame = frames[i];
-                if (DiskSpaceManager.getPartNum(frame.pageNum) == partNum) {
+                // frames freed by freePage still carry the page number of the freed page
+                if (frame.isValid() && DiskSpaceManager.getPartNum(frame.pageNum) == partNum) {
                     this.pageToFrame.remove(frame.getPageNum(), i);
                     evictionPolicy.cleanup(frame);
+                    this.dropPrefetched(frame);
                     frame.flush();
                     frame.setFree();
                     frames[i] = new Frame(frame);
                 }
             }
-
-            diskSpaceManager.freePart(partNum);
         } finally {
             this.managerLock.unlock();
         }
@@ -565,6 +1326,7 @@ public class BufferManager implements AutoCloseable {
             if (frame.isValid() && !frame.isPinned()) {
                 this.pageToFrame.remove(frame.pageNum, frame.index);
                 evictionPolicy.cleanup(frame);
+                this.dropPrefetched(frame);
 
                 frames[i] = new Frame(frame.contents, this.firstFreeIndex);
                 this.firstFreeIndex = i;
@@ -611,7 +1373,7 @@ public class BufferManager implements AutoCloseable {
      * @return number of I/Os
      */
     public long getNumIOs() {
-        return numIOs;
+        return numIOs.get();
     }
 
     public static boolean logIOs;
@@ -626,7 +1388,7 @@ public class BufferManager implements AutoCloseable {
                 }
             }
         }
-        ++numIOs;
+        numIOs.incrementAndGet();
     }
 
     /**
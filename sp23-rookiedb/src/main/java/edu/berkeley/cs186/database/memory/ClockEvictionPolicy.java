@@ -1,18 +1,82 @@
 package edu.berkeley.cs186.database.memory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Implementation of clock eviction policy, which works by adding a reference
  * bit to each frame, and running the algorithm.
+ *
+ * The clock is a ring of the unpinned frames rather than the array of all frames:
+ * frames leave the ring when they are pinned and rejoin it (just behind the arm)
+ * when they are unpinned, so the arm never has to sweep over pinned frames. New
+ * frames are also added just behind the arm, which is where the frame they replace
+ * was, so the order frames are visited in is the same as a clock over the array.
+ *
+ * Methods other than hit are synchronized, since frames are unpinned without the
+ * buffer manager's lock.
  */
 public class ClockEvictionPolicy implements EvictionPolicy {
-    private int arm;
+    // Next frame the arm visits, or null if the ring is empty
+    private Tag arm;
+    private int ringSize;
+
+    // Position of a frame in the ring, and its reference bit
+    private static class Tag {
+        Tag prev = null;
+        Tag next = null;
+        BufferFrame cur;
+        volatile boolean referenced = false;
+        // whether the frame is pinned, and so not in the ring
+        boolean detached = false;
+        // whether the frame has been cleaned up
+        boolean removed = false;
 
-    private static final Object ACTIVE = true;
-    // null not false, because default tag (before this class ever sees a frame) is null.
-    private static final Object INACTIVE = null;
+        Tag(BufferFrame cur) {
+            this.cur = cur;
+        }
+    }
 
     public ClockEvictionPolicy() {
-        this.arm = 0;
+        this.arm = null;
+        this.ringSize = 0;
+    }
+
+    /**
+     * Adds a tag to the ring just behind the arm.
+     */
+    private void link(Tag frameTag) {
+        if (this.arm == null) {
+            frameTag.prev = frameTag.next = frameTag;
+            this.arm = frameTag;
+        } else {
+            frameTag.next = this.arm;
+            frameTag.prev = this.arm.prev;
+            this.arm.prev.next = frameTag;
+            this.arm.prev = frameTag;
+        }
+        ++this.ringSize;
+    }
+
+    private void unlink(Tag frameTag) {
+        if (frameTag.next == frameTag) {
+            this.arm = null;
+        } else {
+            if (this.arm == frameTag) {
+                this.arm = frameTag.next;
+            }
+            frameTag.prev.next = frameTag.next;
+            frameTag.next.prev = frameTag.prev;
+        }
+        frameTag.prev = frameTag.next = null;
+        --this.ringSize;
+    }
+
+    /**
+     * @return the frame's tag, or null if this policy does not know the frame
+     */
+    private static Tag tagOf(BufferFrame frame) {
+        return frame.tag instanceof Tag ? (Tag) frame.tag : null;
     }
 
     /**
@@ -20,15 +84,50 @@ public class ClockEvictionPolicy implements EvictionPolicy {
      * @param frame new frame to be initialized
      */
     @Override
-    public void init(BufferFrame frame) {}
+    public synchronized void init(BufferFrame frame) {
+        Tag frameTag = new Tag(frame);
+        frame.tag = frameTag;
+        link(frameTag);
+    }
 
     /**
-     * Called when a frame is hit.
+     * Called when a frame is hit. Not synchronized, so that threads reading the
+     * same page do not contend here: setting the reference bit is a single write.
      * @param frame Frame object that is being read from/written to
      */
     @Override
     public void hit(BufferFrame frame) {
-        frame.tag = ACTIVE;
+        Tag frameTag = tagOf(frame);
+        if (frameTag != null) {
+            frameTag.referenced = true;
+        }
+    }
+
+    /**
+     * Called when a frame is pinned; takes the frame out of the ring.
+     * @param frame frame that was pinned
+     */
+    @Override
+    public synchronized void pinned(BufferFrame frame) {
+        Tag frameTag = tagOf(frame);
+        if (frameTag != null && !frameTag.removed && !frameTag.detached) {
+            unlink(frameTag);
+            frameTag.detached = true;
+        }
+    }
+
+    /**
+     * Called when a frame is unpinned; puts the frame back in the ring, just
+     * behind the arm.
+     * @param frame frame that was unpinned
+     */
+    @Override
+    public synchronized void unpinned(BufferFrame frame) {
+        Tag frameTag = tagOf(frame);
+        if (frameTag != null && !frameTag.removed && frameTag.detached) {
+            link(frameTag);
+            frameTag.detached = false;
+        }
     }
 
     /**
@@ -38,26 +137,54 @@ public class ClockEvictionPolicy implements EvictionPolicy {
      * @throws IllegalStateException if everything is pinned
      */
     @Override
-    public BufferFrame evict(BufferFrame[] frames) {
+    public synchronized BufferFrame evict(BufferFrame[] frames) {
         int iters = 0;
-        // loop around the frames looking for a frame that has bit 0
+        // loop around the ring looking for a frame that has bit 0
         // iters is used to ensure that we don't loop forever - after two
-        // passes through the frames, every frame has bit 0, so if we still haven't
-        // found a good page to evict, everything is pinned.
-        while ((frames[this.arm].tag == ACTIVE || frames[this.arm].isPinned()) &&
-                iters < 2 * frames.length) {
-            frames[this.arm].tag = INACTIVE;
-            this.arm = (this.arm + 1) % frames.length;
+        // passes through the ring, every frame has bit 0, so if we still haven't
+        // found a good page to evict, everything is pinned. Frames in the ring
+        // are only pinned here if they were pinned without telling the policy
+        // (e.g. while being flushed).
+        while (this.arm != null && (this.arm.referenced || this.arm.cur.isPinned()) &&
+                iters < 2 * this.ringSize) {
+            this.arm.referenced = false;
+            this.arm = this.arm.next;
             ++iters;
         }
-        if (iters == 2 * frames.length) {
+        if (this.arm == null || iters == 2 * this.ringSize) {
             throw new IllegalStateException("cannot evict - everything pinned");
         }
-        BufferFrame evicted = frames[this.arm];
-        this.arm = (this.arm + 1) % frames.length;
+        BufferFrame evicted = this.arm.cur;
+        this.arm = this.arm.next;
         return evicted;
     }
 
+    /**
+     * Lists unpinned frames in the order they would be evicted, without changing
+     * the state of the policy: frames with the reference bit unset in clock order
+     * from the arm, then frames with the reference bit set.
+     * @param frames Array of all frames (same length every call)
+     * @param max maximum number of frames to return
+     * @return up to max unpinned frames, coldest first
+     */
+    @Override
+    public synchronized List<BufferFrame> coldFrames(BufferFrame[] frames, int max) {
+        List<BufferFrame> cold = new ArrayList<>();
+        if (this.arm == null) {
+            return cold;
+        }
+        for (int pass = 0; pass < 2; ++pass) {
+            Tag frameTag = this.arm;
+            for (int i = 0; i < this.ringSize && cold.size() < max; ++i) {
+                if (!frameTag.cur.isPinned() && frameTag.referenced == (pass == 1)) {
+                    cold.add(frameTag.cur);
+                }
+                frameTag = frameTag.next;
+            }
+        }
+        return cold;
+    }
+
     /**
      * Called when a frame is removed, either because it
      * was returned from a call to evict, or because of other constraints
@@ -65,5 +192,14 @@ public class ClockEvictionPolicy implements EvictionPolicy {
      * @param frame frame being removed
      */
     @Override
-    public void cleanup(BufferFrame frame) {}
+    public synchronized void cleanup(BufferFrame frame) {
+        Tag frameTag = tagOf(frame);
+        if (frameTag == null || frameTag.removed) {
+            return;
+        }
+        if (!frameTag.detached) {
+            unlink(frameTag);
+        }
+        frameTag.removed = true;
+    }
 }
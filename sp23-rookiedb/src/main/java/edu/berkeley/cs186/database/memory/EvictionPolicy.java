@@ -1,5 +1,7 @@
 package edu.berkeley.cs186.database.memory;
 
+import java.util.List;
+
 /**
  * Interface for eviction policies for the buffer manager.
  */
@@ -16,6 +18,20 @@ public interface EvictionPolicy {
      */
     void hit(BufferFrame frame);
 
+    /**
+     * Called when a frame becomes pinned (its pin count goes from 0 to 1). Pinned
+     * frames cannot be evicted, so policies may take them off their candidate
+     * structures until they are unpinned.
+     * @param frame frame that was pinned
+     */
+    default void pinned(BufferFrame frame) {}
+
+    /**
+     * Called when a frame becomes unpinned (its pin count goes from 1 to 0).
+     * @param frame frame that was unpinned
+     */
+    default void unpinned(BufferFrame frame) {}
+
     /**
      * Called when a frame needs to be evicted.
      * @param frames Array of all frames (same length every call)
@@ -24,6 +40,16 @@ public interface EvictionPolicy {
      */
     BufferFrame evict(BufferFrame[] frames);
 
+    /**
+     * Lists unpinned frames in the order they would be evicted, without changing
+     * the state of the policy. Used by the background page cleaner to find the
+     * frames that will be evicted soonest.
+     * @param frames Array of all frames (same length every call)
+     * @param max maximum number of frames to return
+     * @return up to max unpinned frames, coldest first
+     */
+    List<BufferFrame> coldFrames(BufferFrame[] frames, int max);
+
     /**
      * Called when a frame is removed, either because it
      * was returned from a call to evict, or because of other constraints
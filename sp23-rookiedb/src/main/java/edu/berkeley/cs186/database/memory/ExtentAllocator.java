@@ -0,0 +1,86 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.concurrency.LockContext;
+
+/**
+ * Hands out new pages of a partition from extents, runs of contiguous pages that
+ * are allocated together. Pages fetched one after another from an extent allocator
+ * are therefore laid out sequentially on disk, even if other pages of the partition
+ * are allocated in between (e.g. the inner nodes of a B+ tree being bulk loaded),
+ * and the partition's header page is updated once per extent rather than once per
+ * page.
+ *
+ * Extents start small and double in size up to a maximum, so that few pages are
+ * left over when the allocator is closed. Extent pages are allocated under the
+ * current transaction like any other new page, so an extent allocator should be
+ * used and closed within a single transaction.
+ */
+public class ExtentAllocator implements AutoCloseable {
+    public static final int DEFAULT_FIRST_EXTENT_SIZE = 8;
+    public static final int DEFAULT_MAX_EXTENT_SIZE = 64;
+
+    private final BufferManager bufferManager;
+    private final LockContext lockContext;
+    private final int partNum;
+    private final int maxExtentSize;
+
+    // pages of the current extent, and index of the next one to hand out
+    private long[] extent;
+    private int next;
+    private int nextExtentSize;
+
+    public ExtentAllocator(BufferManager bufferManager, LockContext lockContext, int partNum) {
+        this(bufferManager, lockContext, partNum, DEFAULT_FIRST_EXTENT_SIZE, DEFAULT_MAX_EXTENT_SIZE);
+    }
+
+    /**
+     * @param bufferManager buffer manager to fetch pages through
+     * @param lockContext   parent lock context of the new pages
+     * @param partNum       partition to allocate pages in
+     * @param firstExtentSize number of pages in the first extent
+     * @param maxExtentSize maximum number of pages in an extent
+     */
+    public ExtentAllocator(BufferManager bufferManager, LockContext lockContext, int partNum,
+                           int firstExtentSize, int maxExtentSize) {
+        if (firstExtentSize < 1 || maxExtentSize < firstExtentSize) {
+            throw new IllegalArgumentException("invalid extent sizes");
+        }
+        this.bufferManager = bufferManager;
+        this.lockContext = lockContext;
+        this.partNum = partNum;
+        this.maxExtentSize = maxExtentSize;
+        this.extent = new long[0];
+        this.next = 0;
+        this.nextExtentSize = firstExtentSize;
+    }
+
+    /**
+     * Fetches the next new page, allocating a new extent if the current one is
+     * used up.
+     *
+     * @return the new page, with a loaded and pinned buffer frame
+     */
+    public Page fetchNewPage() {
+        if (this.next == this.extent.length) {
+            this.extent = this.bufferManager.allocPages(this.partNum, this.nextExtentSize);
+            this.next = 0;
+            this.nextExtentSize = Math.min(2 * this.nextExtentSize, this.maxExtentSize);
+        }
+        return this.bufferManager.fetchPage(this.lockContext, this.extent[this.next++]);
+    }
+
+    /**
+     * Frees the pages of the current extent that were not handed out.
+     */
+    @Override
+    public void close() {
+        while (this.next < this.extent.length) {
+            Page page = this.bufferManager.fetchPage(this.lockContext, this.extent[this.next++]);
+            try {
+                this.bufferManager.freePage(page);
+            } finally {
+                page.unpin();
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Queue of hits on frames, for eviction policies that keep their state under a
+ * lock. Every read of a page is a hit, so taking the policy's lock on each one
+ * would make threads reading the same hot page serialize on the policy, even
+ * though they share the page's latch. Instead, hits are queued without a lock,
+ * and the policy applies them in the order they were queued, under its lock,
+ * before it next uses or changes its state (and whenever enough hits have
+ * piled up).
+ *
+ * A hit on the frame that was hit last, with nothing applied in between, is
+ * not queued: to the policy it is the same reference as the one before it.
+ * This keeps threads reading the same page from writing to the queue at all.
+ */
+class HitQueue {
+    // Number of queued hits at which they are applied by the thread hitting
+    static final int MAX_PENDING = 64;
+
+    private final Queue<BufferFrame> frames = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger(0);
+    // frame hit last since hits were applied, or null
+    private volatile BufferFrame last = null;
+
+    /**
+     * Queues a hit on a frame.
+     * @param frame frame that was hit
+     * @return whether enough hits are queued that the caller should apply them
+     */
+    boolean add(BufferFrame frame) {
+        if (this.last == frame) {
+            return false;
+        }
+        this.last = frame;
+        this.frames.offer(frame);
+        return this.size.incrementAndGet() >= MAX_PENDING;
+    }
+
+    /**
+     * Applies the queued hits in order. Must be called with the policy's lock held.
+     * @param hit applies a hit on a frame
+     */
+    void apply(Consumer<BufferFrame> hit) {
+        this.last = null;
+        BufferFrame frame;
+        while ((frame = this.frames.poll()) != null) {
+            this.size.decrementAndGet();
+            hit.accept(frame);
+        }
+    }
+}
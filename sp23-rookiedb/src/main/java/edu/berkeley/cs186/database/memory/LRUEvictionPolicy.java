@@ -1,12 +1,26 @@
 package edu.berkeley.cs186.database.memory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Implementation of LRU eviction policy, which works by creating a
  * doubly-linked list between frames in order of ascending use time.
+ *
+ * Only unpinned frames are kept in the list: frames are unlinked when they are
+ * pinned and relinked as most recently used when they are unpinned, so the victim
+ * is found at the head of the list without skipping over pinned frames.
+ *
+ * Methods are synchronized, since frames are unpinned without the buffer
+ * manager's lock, except for hit: frames are hit on every read, so hits are
+ * queued without a lock and applied in order before the list is next used
+ * (see HitQueue).
  */
 public class LRUEvictionPolicy implements EvictionPolicy {
     private Tag listHead;
     private Tag listTail;
+    // hits not yet applied
+    private final HitQueue hits = new HitQueue();
 
     // Doubly-linked list between frames, in order of least to most
     // recently used.
@@ -14,6 +28,10 @@ public class LRUEvictionPolicy implements EvictionPolicy {
         Tag prev = null;
         Tag next = null;
         BufferFrame cur = null;
+        // whether the frame is pinned, and so not in the list
+        boolean detached = false;
+        // whether the frame has been cleaned up
+        boolean removed = false;
 
         @Override
         public String toString() {
@@ -31,17 +49,39 @@ public class LRUEvictionPolicy implements EvictionPolicy {
         this.listTail.prev = this.listHead;
     }
 
+    private void append(Tag frameTag) {
+        frameTag.next = this.listTail;
+        frameTag.prev = this.listTail.prev;
+        this.listTail.prev.next = frameTag;
+        this.listTail.prev = frameTag;
+    }
+
+    private void unlink(Tag frameTag) {
+        frameTag.prev.next = frameTag.next;
+        frameTag.next.prev = frameTag.prev;
+        frameTag.prev = frameTag.next = frameTag;
+    }
+
+    /**
+     * @return the frame's tag if it is still in use, or null
+     */
+    private static Tag liveTag(BufferFrame frame) {
+        if (!(frame.tag instanceof LRUEvictionPolicy.Tag)) {
+            return null;
+        }
+        Tag frameTag = (Tag) frame.tag;
+        return frameTag.removed ? null : frameTag;
+    }
+
     /**
      * Called to initiaize a new buffer frame.
      * @param frame new frame to be initialized
      */
     @Override
-    public void init(BufferFrame frame) {
+    public synchronized void init(BufferFrame frame) {
+        applyHits();
         Tag frameTag = new Tag();
-        frameTag.next = listTail;
-        frameTag.prev = listTail.prev;
-        listTail.prev = frameTag;
-        frameTag.prev.next = frameTag;
+        append(frameTag);
         frameTag.cur = frame;
         frame.tag = frameTag;
     }
@@ -52,13 +92,55 @@ public class LRUEvictionPolicy implements EvictionPolicy {
      */
     @Override
     public void hit(BufferFrame frame) {
-        Tag frameTag = (Tag) frame.tag;
-        frameTag.prev.next = frameTag.next;
-        frameTag.next.prev = frameTag.prev;
-        frameTag.next = this.listTail;
-        frameTag.prev = this.listTail.prev;
-        this.listTail.prev.next = frameTag;
-        this.listTail.prev = frameTag;
+        if (this.hits.add(frame)) {
+            synchronized (this) {
+                applyHits();
+            }
+        }
+    }
+
+    /**
+     * Applies the queued hits, moving each frame hit to the end of the list.
+     * Must be synchronized.
+     */
+    private void applyHits() {
+        this.hits.apply(frame -> {
+            Tag frameTag = liveTag(frame);
+            // pinned frames become most recently used when they are unpinned
+            if (frameTag != null && !frameTag.detached) {
+                unlink(frameTag);
+                append(frameTag);
+            }
+        });
+    }
+
+    /**
+     * Called when a frame is pinned; takes the frame out of the list.
+     * @param frame frame that was pinned
+     */
+    @Override
+    public synchronized void pinned(BufferFrame frame) {
+        applyHits();
+        Tag frameTag = liveTag(frame);
+        if (frameTag != null && !frameTag.detached) {
+            unlink(frameTag);
+            frameTag.detached = true;
+        }
+    }
+
+    /**
+     * Called when a frame is unpinned; puts the frame back in the list as the
+     * most recently used frame.
+     * @param frame frame that was unpinned
+     */
+    @Override
+    public synchronized void unpinned(BufferFrame frame) {
+        applyHits();
+        Tag frameTag = liveTag(frame);
+        if (frameTag != null && frameTag.detached) {
+            append(frameTag);
+            frameTag.detached = false;
+        }
     }
 
     /**
@@ -68,7 +150,10 @@ public class LRUEvictionPolicy implements EvictionPolicy {
      * @throws IllegalStateException if everything is pinned
      */
     @Override
-    public BufferFrame evict(BufferFrame[] frames) {
+    public synchronized BufferFrame evict(BufferFrame[] frames) {
+        applyHits();
+        // frames in the list are only pinned here if they were pinned without
+        // telling the policy (e.g. while being flushed)
         Tag frameTag = this.listHead.next;
         while (frameTag.cur != null && frameTag.cur.isPinned()) {
             frameTag = frameTag.next;
@@ -79,6 +164,26 @@ public class LRUEvictionPolicy implements EvictionPolicy {
         return frameTag.cur;
     }
 
+    /**
+     * Lists unpinned frames in the order they would be evicted, without changing
+     * the state of the policy: least recently used first.
+     * @param frames Array of all frames (same length every call)
+     * @param max maximum number of frames to return
+     * @return up to max unpinned frames, coldest first
+     */
+    @Override
+    public synchronized List<BufferFrame> coldFrames(BufferFrame[] frames, int max) {
+        applyHits();
+        List<BufferFrame> cold = new ArrayList<>();
+        for (Tag frameTag = this.listHead.next; frameTag.cur != null && cold.size() < max;
+                frameTag = frameTag.next) {
+            if (!frameTag.cur.isPinned()) {
+                cold.add(frameTag.cur);
+            }
+        }
+        return cold;
+    }
+
     /**
      * Called when a frame is removed, either because it
      * was returned from a call to evict, or because of other constraints
@@ -86,10 +191,15 @@ public class LRUEvictionPolicy implements EvictionPolicy {
      * @param frame frame being removed
      */
     @Override
-    public void cleanup(BufferFrame frame) {
-        Tag frameTag = (Tag) frame.tag;
-        frameTag.prev.next = frameTag.next;
-        frameTag.next.prev = frameTag.prev;
-        frameTag.prev = frameTag.next = frameTag;
+    public synchronized void cleanup(BufferFrame frame) {
+        applyHits();
+        Tag frameTag = liveTag(frame);
+        if (frameTag == null) {
+            return;
+        }
+        if (!frameTag.detached) {
+            unlink(frameTag);
+        }
+        frameTag.removed = true;
     }
 }
@@ -0,0 +1,188 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of the LRU-K eviction policy, which evicts the frame whose K-th
+ * most recent reference is furthest in the past. Frames with fewer than K
+ * references are evicted first (least recently used first), so pages touched
+ * once by a large scan do not push out pages that are referenced repeatedly,
+ * such as B+ tree inner nodes and catalog pages.
+ *
+ * Hits on a frame with no other frame referenced in between (e.g. reading several
+ * records off the same page) are one correlated reference, and only refresh the
+ * most recent reference. The reference history of evicted pages is retained (for
+ * as many pages as there are frames), so a page that is evicted and loaded again
+ * keeps its history.
+ *
+ * Methods are synchronized, except for hit: frames are hit on every read,
+ * without the buffer manager's lock, so hits are queued without a lock and
+ * applied in order before the reference histories are next used (see HitQueue).
+ */
+public class LRUKEvictionPolicy implements EvictionPolicy {
+    public static final int DEFAULT_K = 2;
+
+    private final int k;
+
+    // logical time, advanced on every reference
+    private long clock;
+
+    // frame referenced last, to detect correlated references
+    private BufferFrame lastReferenced;
+    // hits not yet applied
+    private final HitQueue hits = new HitQueue();
+
+    // history of recently evicted pages, least recently evicted first
+    private final Map<Long, long[]> retainedHistory;
+    private int maxRetained;
+
+    // Reference times of a frame, most recent first; 0 if fewer than K references
+    private static class Tag {
+        long[] history;
+
+        Tag(long[] history) {
+            this.history = history;
+        }
+    }
+
+    public LRUKEvictionPolicy() {
+        this(DEFAULT_K);
+    }
+
+    public LRUKEvictionPolicy(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("K must be positive");
+        }
+        this.k = k;
+        this.clock = 0;
+        this.maxRetained = 0;
+        this.retainedHistory = new LinkedHashMap<Long, long[]>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, long[]> eldest) {
+                return size() > maxRetained;
+            }
+        };
+    }
+
+    /**
+     * Called to initiaize a new buffer frame.
+     * @param frame new frame to be initialized
+     */
+    @Override
+    public synchronized void init(BufferFrame frame) {
+        applyHits();
+        long[] history = this.retainedHistory.remove(frame.getPageNum());
+        frame.tag = new Tag(history == null ? new long[this.k] : history);
+        reference(frame);
+    }
+
+    /**
+     * Called when a frame is hit.
+     * @param frame Frame object that is being read from/written to
+     */
+    @Override
+    public void hit(BufferFrame frame) {
+        if (this.hits.add(frame)) {
+            synchronized (this) {
+                applyHits();
+            }
+        }
+    }
+
+    /**
+     * Applies the queued hits as references, in order. Must be synchronized.
+     */
+    private void applyHits() {
+        this.hits.apply(this::reference);
+    }
+
+    private void reference(BufferFrame frame) {
+        long[] history = ((Tag) frame.tag).history;
+        long now = ++this.clock;
+        if (this.lastReferenced != frame) {
+            System.arraycopy(history, 0, history, 1, history.length - 1);
+        }
+        history[0] = now;
+        this.lastReferenced = frame;
+    }
+
+    /**
+     * Orders frames by eviction priority: frames with fewer than K references by
+     * their last reference, and then frames with K references by their K-th most
+     * recent reference.
+     */
+    private int compareForEviction(BufferFrame a, BufferFrame b) {
+        long[] ha = ((Tag) a.tag).history;
+        long[] hb = ((Tag) b.tag).history;
+        boolean fullA = ha[this.k - 1] != 0;
+        boolean fullB = hb[this.k - 1] != 0;
+        if (fullA != fullB) {
+            return fullA ? 1 : -1;
+        }
+        return fullA ? Long.compare(ha[this.k - 1], hb[this.k - 1]) : Long.compare(ha[0], hb[0]);
+    }
+
+    private static boolean isCandidate(BufferFrame frame) {
+        return !frame.isPinned() && frame.tag instanceof Tag;
+    }
+
+    /**
+     * Called when a frame needs to be evicted.
+     * @param frames Array of all frames (same length every call)
+     * @return index of frame to be evicted
+     * @throws IllegalStateException if everything is pinned
+     */
+    @Override
+    public synchronized BufferFrame evict(BufferFrame[] frames) {
+        applyHits();
+        this.maxRetained = frames.length;
+        BufferFrame victim = null;
+        for (BufferFrame frame : frames) {
+            if (isCandidate(frame) && (victim == null || compareForEviction(frame, victim) < 0)) {
+                victim = frame;
+            }
+        }
+        if (victim == null) {
+            throw new IllegalStateException("cannot evict anything - everything pinned");
+        }
+        this.retainedHistory.put(victim.getPageNum(), ((Tag) victim.tag).history);
+        return victim;
+    }
+
+    /**
+     * Lists unpinned frames in the order they would be evicted, without changing
+     * the state of the policy.
+     * @param frames Array of all frames (same length every call)
+     * @param max maximum number of frames to return
+     * @return up to max unpinned frames, coldest first
+     */
+    @Override
+    public synchronized List<BufferFrame> coldFrames(BufferFrame[] frames, int max) {
+        applyHits();
+        List<BufferFrame> cold = new ArrayList<>();
+        for (BufferFrame frame : frames) {
+            if (isCandidate(frame)) {
+                cold.add(frame);
+            }
+        }
+        cold.sort(this::compareForEviction);
+        return cold.size() > max ? cold.subList(0, max) : cold;
+    }
+
+    /**
+     * Called when a frame is removed, either because it
+     * was returned from a call to evict, or because of other constraints
+     * (e.g. if the page is deleted on disk).
+     * @param frame frame being removed
+     */
+    @Override
+    public synchronized void cleanup(BufferFrame frame) {
+        applyHits();
+        if (this.lastReferenced == frame) {
+            this.lastReferenced = null;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Background writer for the buffer manager.
+ *
+ * Every cleanIntervalMillis (or sooner, when a fetch had to write out a dirty
+ * victim itself), the cleaner asks the eviction policy for its coldest frames
+ * and writes out the dirty, unpinned ones, so that the next evictions find
+ * clean victims. While more than lowDirtyRatio of the buffer is dirty, it also
+ * keeps writing frames further from the cold end, coldest first, and while
+ * more than highDirtyRatio of the buffer is dirty it runs rounds back to back
+ * instead of waiting for the next interval.
+ *
+ * Frames are written with Frame#flush, so the WAL is flushed up to the
+ * pageLSN (recoveryManager.pageFlushHook) before any page is written. Frames
+ * that are pinned, or locked by another thread, are skipped.
+ */
+public class PageCleaner implements AutoCloseable {
+    // Fraction of the buffer at the cold end that is always kept clean
+    static final double COLD_FRACTION = 0.125;
+
+    private final BufferManager bufferManager;
+    private final double lowDirtyRatio;
+    private final double highDirtyRatio;
+    private final long cleanIntervalMillis;
+
+    private final ReentrantLock cleanerLock = new ReentrantLock();
+    // signalled when a foreground flush happens or the cleaner is stopped
+    private final Condition wakeUp = cleanerLock.newCondition();
+    private boolean woken = false;
+    private boolean running = true;
+
+    // Statistics
+    private long numRounds = 0;
+    private long numBackgroundFlushes = 0;
+
+    private final Thread cleanerThread;
+
+    /**
+     * Starts a page cleaner for the given buffer manager.
+     *
+     * @param bufferManager buffer manager to clean
+     * @param lowDirtyRatio fraction of dirty frames the cleaner tries to stay under
+     * @param highDirtyRatio fraction of dirty frames above which the cleaner does not
+     *                       wait between rounds
+     * @param cleanIntervalMillis time (in ms) between rounds
+     */
+    PageCleaner(BufferManager bufferManager, double lowDirtyRatio, double highDirtyRatio,
+                long cleanIntervalMillis) {
+        if (lowDirtyRatio < 0 || highDirtyRatio > 1 || lowDirtyRatio > highDirtyRatio ||
+                cleanIntervalMillis <= 0) {
+            throw new IllegalArgumentException("invalid page cleaner configuration");
+        }
+        this.bufferManager = bufferManager;
+        this.lowDirtyRatio = lowDirtyRatio;
+        this.highDirtyRatio = highDirtyRatio;
+        this.cleanIntervalMillis = cleanIntervalMillis;
+        this.cleanerThread = new Thread(this::run, "rookiedb-page-cleaner");
+        this.cleanerThread.setDaemon(true);
+        this.cleanerThread.start();
+    }
+
+    /**
+     * Called by the buffer manager when a fetch had to write out a dirty
+     * victim, to start a round of cleaning right away.
+     */
+    void wake() {
+        cleanerLock.lock();
+        try {
+            woken = true;
+            wakeUp.signal();
+        } finally {
+            cleanerLock.unlock();
+        }
+    }
+
+    private void run() {
+        boolean backToBack = false;
+        while (true) {
+            cleanerLock.lock();
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(cleanIntervalMillis);
+                while (running && !woken && !backToBack && remaining > 0) {
+                    try {
+                        remaining = wakeUp.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                woken = false;
+            } finally {
+                cleanerLock.unlock();
+            }
+            int numFlushed = cleanOnce();
+            // keep going while over the high watermark, as long as progress is made
+            backToBack = numFlushed > 0 && bufferManager.getDirtyRatio() > highDirtyRatio;
+        }
+    }
+
+    /**
+     * Runs one round of cleaning.
+     * @return number of frames written out
+     */
+    int cleanOnce() {
+        int numFrames = bufferManager.getBufferSize();
+        int coldDepth = Math.max(1, (int) (numFrames * COLD_FRACTION));
+        int maxDirty = (int) (numFrames * lowDirtyRatio);
+        List<BufferManager.Frame> toClean = bufferManager.pickFramesToClean(coldDepth, maxDirty);
+        int numFlushed = 0;
+        for (BufferManager.Frame frame : toClean) {
+            if (bufferManager.cleanFrame(frame)) {
+                ++numFlushed;
+            }
+        }
+        cleanerLock.lock();
+        try {
+            ++numRounds;
+            numBackgroundFlushes += numFlushed;
+        } finally {
+            cleanerLock.unlock();
+        }
+        return numFlushed;
+    }
+
+    /**
+     * Stops the background thread, waiting for a round in progress to finish.
+     */
+    @Override
+    public void close() {
+        cleanerLock.lock();
+        try {
+            running = false;
+            wakeUp.signalAll();
+        } finally {
+            cleanerLock.unlock();
+        }
+        try {
+            cleanerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return number of cleaning rounds run
+     */
+    public long getNumRounds() {
+        cleanerLock.lock();
+        try {
+            return numRounds;
+        } finally {
+            cleanerLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of pages written out by the cleaner
+     */
+    public long getNumBackgroundFlushes() {
+        cleanerLock.lock();
+        try {
+            return numBackgroundFlushes;
+        } finally {
+            cleanerLock.unlock();
+        }
+    }
+
+    public double getLowDirtyRatio() {
+        return lowDirtyRatio;
+    }
+
+    public double getHighDirtyRatio() {
+        return highDirtyRatio;
+    }
+
+    public long getCleanIntervalMillis() {
+        return cleanIntervalMillis;
+    }
+}
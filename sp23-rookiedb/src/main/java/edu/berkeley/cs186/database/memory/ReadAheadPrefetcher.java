@@ -0,0 +1,265 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.recovery.LogManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sequential read-ahead for the buffer manager.
+ *
+ * The buffer manager reports every page fetched by its callers. For each
+ * partition, the prefetcher remembers the last page fetched and how many
+ * consecutive pages were fetched in a row; once a run of triggerLength
+ * consecutive pages is seen, the next prefetchDistance pages of the partition
+ * are loaded in the background (into unpinned frames, with a single vectored
+ * read), and the window is topped up again whenever half of it has been used.
+ *
+ * At most maxPrefetchedPages pages may be prefetched but not yet used at any
+ * time. A prefetched page stops counting against this budget once it is
+ * fetched (a hit) or evicted/freed before being fetched (wasted).
+ */
+public class ReadAheadPrefetcher implements AutoCloseable {
+    // Number of consecutive page fetches that starts read-ahead on a partition
+    static final int DEFAULT_TRIGGER_LENGTH = 2;
+
+    private final BufferManager bufferManager;
+    private final int prefetchDistance;
+    private final int maxPrefetchedPages;
+    private final int triggerLength;
+    private final ExecutorService ioPool;
+
+    // Sequential access state of each partition, guarded by streamLock
+    private final ReentrantLock streamLock = new ReentrantLock();
+    private final Map<Integer, SequentialStream> streams = new HashMap<>();
+
+    // Pages prefetched (or being prefetched) that have not been used or wasted yet
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    // Statistics
+    private final AtomicLong numPrefetched = new AtomicLong();
+    private final AtomicLong numHits = new AtomicLong();
+    private final AtomicLong numMisses = new AtomicLong();
+    private final AtomicLong numWasted = new AtomicLong();
+
+    private static class SequentialStream {
+        // last page number fetched from the partition
+        long lastPageNum;
+        // number of consecutive pages fetched, ending with lastPageNum
+        int runLength;
+        // last page number read ahead (or scheduled to be)
+        long prefetchedUpTo;
+
+        SequentialStream(long pageNum) {
+            this.lastPageNum = pageNum;
+            this.runLength = 1;
+            this.prefetchedUpTo = pageNum;
+        }
+    }
+
+    /**
+     * Starts a read-ahead prefetcher for a buffer manager.
+     *
+     * @param bufferManager buffer manager to load pages into
+     * @param prefetchDistance number of pages to read ahead of a sequential scan
+     * @param maxPrefetchedPages maximum number of prefetched pages not used yet
+     * @param numThreads number of I/O threads
+     */
+    ReadAheadPrefetcher(BufferManager bufferManager, int prefetchDistance, int maxPrefetchedPages,
+                        int numThreads) {
+        this(bufferManager, prefetchDistance, maxPrefetchedPages, numThreads, DEFAULT_TRIGGER_LENGTH);
+    }
+
+    ReadAheadPrefetcher(BufferManager bufferManager, int prefetchDistance, int maxPrefetchedPages,
+                        int numThreads, int triggerLength) {
+        if (prefetchDistance < 1 || maxPrefetchedPages < 1 || numThreads < 1 || triggerLength < 1) {
+            throw new IllegalArgumentException("invalid read-ahead configuration");
+        }
+        this.bufferManager = bufferManager;
+        this.prefetchDistance = prefetchDistance;
+        this.maxPrefetchedPages = maxPrefetchedPages;
+        this.triggerLength = triggerLength;
+        AtomicInteger threadNum = new AtomicInteger();
+        this.ioPool = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread t = new Thread(r, "rookiedb-read-ahead-" + threadNum.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Called by the buffer manager whenever a page is fetched, to detect
+     * sequential access and schedule read-ahead.
+     *
+     * @param pageNum page number fetched
+     */
+    void pageFetched(long pageNum) {
+        int partNum = DiskSpaceManager.getPartNum(pageNum);
+        if (partNum == LogManager.LOG_PARTITION) {
+            return;
+        }
+        long[] toPrefetch;
+        streamLock.lock();
+        try {
+            SequentialStream stream = streams.get(partNum);
+            if (stream == null) {
+                streams.put(partNum, new SequentialStream(pageNum));
+                return;
+            }
+            if (pageNum == stream.lastPageNum) {
+                return;
+            }
+            if (pageNum == stream.lastPageNum + 1) {
+                ++stream.runLength;
+            } else {
+                stream.runLength = 1;
+                stream.prefetchedUpTo = pageNum;
+            }
+            stream.lastPageNum = pageNum;
+            if (stream.runLength < triggerLength) {
+                return;
+            }
+            // top up the window once half of it has been consumed
+            if (stream.prefetchedUpTo - pageNum > prefetchDistance / 2) {
+                return;
+            }
+            long start = Math.max(pageNum + 1, stream.prefetchedUpTo + 1);
+            int count = (int) (pageNum + prefetchDistance - start + 1);
+            count = reserve(count);
+            if (count <= 0) {
+                return;
+            }
+            toPrefetch = new long[count];
+            for (int i = 0; i < count; ++i) {
+                toPrefetch[i] = start + i;
+            }
+            stream.prefetchedUpTo = start + count - 1;
+        } finally {
+            streamLock.unlock();
+        }
+        try {
+            ioPool.execute(() -> prefetch(toPrefetch));
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            outstanding.addAndGet(-toPrefetch.length);
+        }
+    }
+
+    /**
+     * Reserves up to count pages of the prefetch budget.
+     * @return number of pages reserved
+     */
+    private int reserve(int count) {
+        while (true) {
+            int current = outstanding.get();
+            int reserved = Math.min(count, maxPrefetchedPages - current);
+            if (reserved <= 0) {
+                return 0;
+            }
+            if (outstanding.compareAndSet(current, current + reserved)) {
+                return reserved;
+            }
+        }
+    }
+
+    private void prefetch(long[] pageNums) {
+        int loaded = 0;
+        try {
+            loaded = bufferManager.prefetchPageFrames(pageNums, this);
+        } catch (RuntimeException e) {
+            // read-ahead is only a hint; the pages will be read on demand
+        } finally {
+            // pages that were already loaded, not allocated, or could not be loaded
+            outstanding.addAndGet(loaded - pageNums.length);
+        }
+        numPrefetched.addAndGet(loaded);
+    }
+
+    /**
+     * Called by the buffer manager when a prefetched page is fetched for the first time.
+     */
+    void recordHit() {
+        numHits.incrementAndGet();
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * Called by the buffer manager when a page fetch has to read the page from disk.
+     */
+    void recordMiss() {
+        numMisses.incrementAndGet();
+    }
+
+    /**
+     * Called by the buffer manager when a prefetched page is evicted or freed
+     * without ever being fetched.
+     */
+    void recordWasted() {
+        numWasted.incrementAndGet();
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * Stops the I/O threads, waiting for prefetches in progress to finish.
+     */
+    @Override
+    public void close() {
+        ioPool.shutdown();
+        try {
+            ioPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return number of pages loaded by read-ahead
+     */
+    public long getNumPrefetched() {
+        return numPrefetched.get();
+    }
+
+    /**
+     * @return number of page fetches served by a page loaded by read-ahead
+     */
+    public long getNumHits() {
+        return numHits.get();
+    }
+
+    /**
+     * @return number of page fetches that had to read from disk
+     */
+    public long getNumMisses() {
+        return numMisses.get();
+    }
+
+    /**
+     * @return number of pages loaded by read-ahead but evicted before being used
+     */
+    public long getNumWasted() {
+        return numWasted.get();
+    }
+
+    /**
+     * @return number of prefetched pages that have not been used (or wasted) yet
+     */
+    public int getNumOutstanding() {
+        return outstanding.get();
+    }
+
+    public int getPrefetchDistance() {
+        return prefetchDistance;
+    }
+
+    public int getMaxPrefetchedPages() {
+        return maxPrefetchedPages;
+    }
+}
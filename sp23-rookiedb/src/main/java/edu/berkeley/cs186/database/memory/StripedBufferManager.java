@@ -0,0 +1,290 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Buffer manager made of several independent stripes. Pages are split into
+ * ranges of consecutive pages, and the ranges of a partition are dealt out to
+ * the stripes in turn. Each stripe is a BufferManager with its own lock, frames,
+ * eviction policy and page table, so that fetching, freeing and evicting pages
+ * in different stripes never contend on the same lock.
+ *
+ * The pages of a range are read in with a single vectored read. A range holds
+ * at most half of the frames of the smallest stripe, so that a table, an extent
+ * or a batch of pages spans several stripes rather than thrashing in one of
+ * them: a run of consecutive pages puts at most about its length divided by the
+ * number of stripes in each stripe, and fits in the pool whenever it fits with
+ * a range to spare.
+ *
+ * Each stripe makes eviction decisions on its own frames only, so a stripe may
+ * evict a page while other stripes still have free frames. Read-ahead and the
+ * page cleaner are configured on the striped pool as a whole.
+ */
+public class StripedBufferManager extends BufferManager {
+    // Most consecutive pages that go to the same stripe: a whole extent
+    static final int MAX_STRIPE_RANGE = ExtentAllocator.DEFAULT_MAX_EXTENT_SIZE;
+
+    private final BufferManager[] stripes;
+    // number of consecutive pages that go to the same stripe, a power of two
+    private final int stripeRange;
+    private final DiskSpaceManager diskSpaceManager;
+
+    /**
+     * Creates a new striped buffer manager.
+     *
+     * @param diskSpaceManager the underlying disk space manager
+     * @param bufferSize total size of buffer (in pages), split evenly between stripes
+     * @param evictionPolicies supplier of a new eviction policy for each stripe
+     * @param numStripes number of stripes
+     */
+    public StripedBufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
+                                int bufferSize, Supplier<EvictionPolicy> evictionPolicies, int numStripes) {
+        this(diskSpaceManager, recoveryManager, bufferSize, evictionPolicies, numStripes, false);
+    }
+
+    /**
+     * Creates a new striped buffer manager.
+     *
+     * @param diskSpaceManager the underlying disk space manager
+     * @param bufferSize total size of buffer (in pages), split evenly between stripes
+     * @param evictionPolicies supplier of a new eviction policy for each stripe
+     * @param numStripes number of stripes
+     * @param offHeap whether to store frames in direct memory instead of the Java heap
+     */
+    public StripedBufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
+                                int bufferSize, Supplier<EvictionPolicy> evictionPolicies, int numStripes,
+                                boolean offHeap) {
+        super(diskSpaceManager, recoveryManager, 0, evictionPolicies.get(), offHeap);
+        if (numStripes < 1 || bufferSize < numStripes) {
+            throw new IllegalArgumentException("need at least one frame per stripe");
+        }
+        this.diskSpaceManager = diskSpaceManager;
+        this.stripes = new BufferManager[numStripes];
+        for (int i = 0; i < numStripes; ++i) {
+            int stripeSize = bufferSize / numStripes + (i < bufferSize % numStripes ? 1 : 0);
+            this.stripes[i] = new BufferManager(diskSpaceManager, recoveryManager, stripeSize,
+                                                evictionPolicies.get(), offHeap, this);
+        }
+        // a power of two, so that ranges never span partitions
+        int smallestStripe = bufferSize / numStripes;
+        this.stripeRange = Math.max(1, Integer.highestOneBit(Math.min(MAX_STRIPE_RANGE, smallestStripe / 2)));
+    }
+
+    /**
+     * @return the stripe that caches the page
+     */
+    private BufferManager stripeFor(long pageNum) {
+        return this.stripes[stripeIndex(pageNum)];
+    }
+
+    int stripeIndex(long pageNum) {
+        // consecutive ranges of a partition go to consecutive stripes; the
+        // partition number is mixed in so that partitions start on different
+        // stripes
+        long h = DiskSpaceManager.getPartNum(pageNum) * 0x9E3779B97F4A7C15L;
+        long range = DiskSpaceManager.getPageNum(pageNum) / this.stripeRange;
+        return Math.floorMod(range + (h ^ (h >>> 32)), this.stripes.length);
+    }
+
+    /**
+     * Splits page numbers by stripe.
+     * @return for each stripe, the indices into pageNums of its pages
+     */
+    private List<List<Integer>> splitByStripe(long[] pageNums) {
+        List<List<Integer>> split = new ArrayList<>();
+        for (int i = 0; i < this.stripes.length; ++i) {
+            split.add(new ArrayList<>());
+        }
+        for (int i = 0; i < pageNums.length; ++i) {
+            split.get(stripeIndex(pageNums[i])).add(i);
+        }
+        return split;
+    }
+
+    private static long[] select(long[] pageNums, List<Integer> indices) {
+        long[] selected = new long[indices.size()];
+        for (int i = 0; i < selected.length; ++i) {
+            selected[i] = pageNums[indices.get(i)];
+        }
+        return selected;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        for (BufferManager stripe : this.stripes) {
+            stripe.close();
+        }
+    }
+
+    @Override
+    Frame fetchPageFrame(long pageNum) {
+        return stripeFor(pageNum).fetchPageFrame(pageNum);
+    }
+
+    @Override
+    Frame[] fetchPageFrames(long[] pageNums) {
+        Frame[] result = new Frame[pageNums.length];
+        List<List<Integer>> split = splitByStripe(pageNums);
+        try {
+            for (int i = 0; i < this.stripes.length; ++i) {
+                List<Integer> indices = split.get(i);
+                if (indices.isEmpty()) {
+                    continue;
+                }
+                Frame[] frames = this.stripes[i].fetchPageFrames(select(pageNums, indices));
+                for (int j = 0; j < frames.length; ++j) {
+                    result[indices.get(j)] = frames[j];
+                }
+            }
+        } catch (RuntimeException e) {
+            for (Frame frame : result) {
+                if (frame != null) {
+                    frame.unpin();
+                }
+            }
+            throw e;
+        }
+        return result;
+    }
+
+    @Override
+    int prefetchPageFrames(long[] pageNums, ReadAheadPrefetcher prefetcher) {
+        int numLoaded = 0;
+        List<List<Integer>> split = splitByStripe(pageNums);
+        for (int i = 0; i < this.stripes.length; ++i) {
+            List<Integer> indices = split.get(i);
+            // pages past what the stripe holds would only evict the pages
+            // prefetched before them
+            int limit = Math.min(indices.size(), this.stripes[i].getBufferSize() - 1);
+            if (limit > 0) {
+                numLoaded += this.stripes[i].prefetchPageFrames(select(pageNums, indices.subList(0, limit)),
+                                                                prefetcher);
+            }
+        }
+        return numLoaded;
+    }
+
+    @Override
+    Frame fetchNewPageFrame(int partNum) {
+        long pageNum = this.diskSpaceManager.allocPage(partNum);
+        return fetchPageFrame(pageNum);
+    }
+
+    @Override
+    public void freePage(Page page) {
+        stripeFor(page.getPageNum()).freePage(page);
+    }
+
+    @Override
+    public void freePart(int partNum) {
+        for (BufferManager stripe : this.stripes) {
+            stripe.dropPart(partNum);
+        }
+        this.diskSpaceManager.freePart(partNum);
+    }
+
+    @Override
+    void dropPart(int partNum) {
+        for (BufferManager stripe : this.stripes) {
+            stripe.dropPart(partNum);
+        }
+    }
+
+    @Override
+    public void evict(long pageNum) {
+        stripeFor(pageNum).evict(pageNum);
+    }
+
+    @Override
+    public void evictAll() {
+        for (BufferManager stripe : this.stripes) {
+            stripe.evictAll();
+        }
+    }
+
+    @Override
+    public void iterPageNums(BiConsumer<Long, Boolean> process) {
+        for (BufferManager stripe : this.stripes) {
+            stripe.iterPageNums(process);
+        }
+    }
+
+    @Override
+    List<Frame> pickFramesToClean(int coldDepth, int maxDirty) {
+        // split the cleaner's budget between stripes in proportion to their size
+        int bufferSize = getBufferSize();
+        List<Frame> toClean = new ArrayList<>();
+        for (BufferManager stripe : this.stripes) {
+            int stripeSize = stripe.getBufferSize();
+            toClean.addAll(stripe.pickFramesToClean(Math.max(1, coldDepth * stripeSize / bufferSize),
+                                                    maxDirty * stripeSize / bufferSize));
+        }
+        return toClean;
+    }
+
+    @Override
+    public double getDirtyRatio() {
+        double numDirty = 0;
+        for (BufferManager stripe : this.stripes) {
+            numDirty += stripe.getDirtyRatio() * stripe.getBufferSize();
+        }
+        return numDirty / getBufferSize();
+    }
+
+    @Override
+    public int getBufferSize() {
+        int bufferSize = 0;
+        for (BufferManager stripe : this.stripes) {
+            bufferSize += stripe.getBufferSize();
+        }
+        return bufferSize;
+    }
+
+    @Override
+    public long getNumEvictions() {
+        long numEvictions = 0;
+        for (BufferManager stripe : this.stripes) {
+            numEvictions += stripe.getNumEvictions();
+        }
+        return numEvictions;
+    }
+
+    @Override
+    public long getNumForegroundFlushes() {
+        long numFlushes = 0;
+        for (BufferManager stripe : this.stripes) {
+            numFlushes += stripe.getNumForegroundFlushes();
+        }
+        return numFlushes;
+    }
+
+    @Override
+    public long getNumIOs() {
+        long numIOs = 0;
+        for (BufferManager stripe : this.stripes) {
+            numIOs += stripe.getNumIOs();
+        }
+        return numIOs;
+    }
+
+    /**
+     * @return number of consecutive pages that go to the same stripe
+     */
+    int getStripeRange() {
+        return this.stripeRange;
+    }
+
+    /**
+     * @return number of stripes
+     */
+    public int getNumStripes() {
+        return this.stripes.length;
+    }
+}
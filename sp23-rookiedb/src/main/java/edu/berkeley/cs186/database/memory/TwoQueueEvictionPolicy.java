@@ -0,0 +1,206 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Implementation of the 2Q eviction policy. Pages loaded for the first time go
+ * into a FIFO queue (A1in). When a page is evicted from A1in its page number is
+ * remembered in a bounded ghost queue (A1out), and if the page is loaded again
+ * while still remembered, it goes into an LRU queue of hot pages (Am) instead.
+ *
+ * A frame in A1in also moves to Am when it is hit again later, but not on hits
+ * with no other frame referenced since it was loaded (e.g. reading several records
+ * off a page a scan just loaded), which are correlated references.
+ *
+ * Frames are evicted from A1in while it holds more than its share of the buffer,
+ * so a large scan only cycles through A1in and leaves the hot pages in Am alone.
+ *
+ * Methods are synchronized, except for hit: frames are hit on every read,
+ * without the buffer manager's lock, so hits are queued without a lock and
+ * applied in order before the queues are next used (see HitQueue).
+ */
+public class TwoQueueEvictionPolicy implements EvictionPolicy {
+    // Default share of the buffer for A1in, and size of A1out relative to the buffer
+    public static final double DEFAULT_IN_FRACTION = 0.25;
+    public static final double DEFAULT_OUT_FRACTION = 0.5;
+
+    private static final Object A1IN = "A1in";
+    private static final Object AM = "Am";
+
+    private final double inFraction;
+    private final double outFraction;
+
+    // Frames in each queue, oldest (or least recently used) first
+    private final LinkedHashSet<BufferFrame> a1in;
+    private final LinkedHashSet<BufferFrame> am;
+    // Page numbers of pages recently evicted from A1in, oldest first
+    private final LinkedHashSet<Long> a1out;
+
+    // Number of frames in the buffer, learned from calls to evict
+    private int capacity;
+
+    // frame referenced last, to detect correlated references
+    private BufferFrame lastReferenced;
+    // hits not yet applied
+    private final HitQueue hits = new HitQueue();
+
+    public TwoQueueEvictionPolicy() {
+        this(DEFAULT_IN_FRACTION, DEFAULT_OUT_FRACTION);
+    }
+
+    /**
+     * @param inFraction share of the buffer A1in may hold before frames are evicted from it
+     * @param outFraction number of page numbers remembered in A1out, as a fraction of the buffer size
+     */
+    public TwoQueueEvictionPolicy(double inFraction, double outFraction) {
+        if (inFraction <= 0 || inFraction >= 1 || outFraction <= 0) {
+            throw new IllegalArgumentException("invalid 2Q configuration");
+        }
+        this.inFraction = inFraction;
+        this.outFraction = outFraction;
+        this.a1in = new LinkedHashSet<>();
+        this.am = new LinkedHashSet<>();
+        this.a1out = new LinkedHashSet<>();
+        this.capacity = 0;
+    }
+
+    /**
+     * Called to initiaize a new buffer frame.
+     * @param frame new frame to be initialized
+     */
+    @Override
+    public synchronized void init(BufferFrame frame) {
+        applyHits();
+        if (this.a1out.remove(frame.getPageNum())) {
+            this.am.add(frame);
+            frame.tag = AM;
+        } else {
+            this.a1in.add(frame);
+            frame.tag = A1IN;
+        }
+        this.lastReferenced = frame;
+    }
+
+    /**
+     * Called when a frame is hit.
+     * @param frame Frame object that is being read from/written to
+     */
+    @Override
+    public void hit(BufferFrame frame) {
+        if (this.hits.add(frame)) {
+            synchronized (this) {
+                applyHits();
+            }
+        }
+    }
+
+    /**
+     * Applies the queued hits in order. Must be synchronized.
+     */
+    private void applyHits() {
+        this.hits.apply(frame -> {
+            if (frame.tag == AM && this.am.remove(frame)) {
+                this.am.add(frame);
+            } else if (frame.tag == A1IN && this.lastReferenced != frame && this.a1in.remove(frame)) {
+                this.am.add(frame);
+                frame.tag = AM;
+            }
+            this.lastReferenced = frame;
+        });
+    }
+
+    private static BufferFrame firstUnpinned(Iterable<BufferFrame> queue) {
+        for (BufferFrame frame : queue) {
+            if (!frame.isPinned()) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether A1in holds more than its share of the buffer
+     */
+    private boolean a1inOverfull() {
+        return this.a1in.size() > Math.max(1, (int) (this.capacity * this.inFraction));
+    }
+
+    /**
+     * Called when a frame needs to be evicted.
+     * @param frames Array of all frames (same length every call)
+     * @return index of frame to be evicted
+     * @throws IllegalStateException if everything is pinned
+     */
+    @Override
+    public synchronized BufferFrame evict(BufferFrame[] frames) {
+        applyHits();
+        this.capacity = frames.length;
+        BufferFrame victim = null;
+        if (this.a1inOverfull()) {
+            victim = firstUnpinned(this.a1in);
+        }
+        if (victim == null) {
+            victim = firstUnpinned(this.am);
+        }
+        if (victim == null) {
+            victim = firstUnpinned(this.a1in);
+        }
+        if (victim == null) {
+            throw new IllegalStateException("cannot evict anything - everything pinned");
+        }
+        if (victim.tag == A1IN) {
+            this.a1out.add(victim.getPageNum());
+            int maxOut = Math.max(1, (int) (this.capacity * this.outFraction));
+            Iterator<Long> iter = this.a1out.iterator();
+            while (this.a1out.size() > maxOut) {
+                iter.next();
+                iter.remove();
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * Lists unpinned frames in the order they would be evicted, without changing
+     * the state of the policy: A1in first if it is over its share, and then Am.
+     * @param frames Array of all frames (same length every call)
+     * @param max maximum number of frames to return
+     * @return up to max unpinned frames, coldest first
+     */
+    @Override
+    public synchronized List<BufferFrame> coldFrames(BufferFrame[] frames, int max) {
+        applyHits();
+        List<BufferFrame> cold = new ArrayList<>();
+        boolean inFirst = this.a1inOverfull();
+        for (Iterable<BufferFrame> queue : inFirst ? List.of(this.a1in, this.am) : List.of(this.am, this.a1in)) {
+            for (BufferFrame frame : queue) {
+                if (cold.size() >= max) {
+                    return cold;
+                }
+                if (!frame.isPinned()) {
+                    cold.add(frame);
+                }
+            }
+        }
+        return cold;
+    }
+
+    /**
+     * Called when a frame is removed, either because it
+     * was returned from a call to evict, or because of other constraints
+     * (e.g. if the page is deleted on disk).
+     * @param frame frame being removed
+     */
+    @Override
+    public synchronized void cleanup(BufferFrame frame) {
+        applyHits();
+        this.a1in.remove(frame);
+        this.am.remove(frame);
+        if (this.lastReferenced == frame) {
+            this.lastReferenced = null;
+        }
+    }
+}
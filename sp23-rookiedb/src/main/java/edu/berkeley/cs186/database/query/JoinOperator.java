@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.query;
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RowView;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -176,4 +177,19 @@ public abstract class JoinOperator extends QueryOperator {
         DataBox rightRecordValue = rightRecord.getValue(this.rightColumnIndex);
         return leftRecordValue.compareTo(rightRecordValue);
     }
+
+    /**
+     * Same as compare(Record, Record), without materializing the right row.
+     */
+    public int compare(Record leftRecord, RowView rightRow) {
+        DataBox leftRecordValue = leftRecord.getValue(this.leftColumnIndex);
+        return -rightRow.compareTo(this.rightColumnIndex, leftRecordValue);
+    }
+
+    /**
+     * Same as compare(Record, Record), without materializing either row.
+     */
+    public int compare(RowView leftRow, RowView rightRow) {
+        return leftRow.compareTo(this.leftColumnIndex, rightRow, this.rightColumnIndex);
+    }
 }
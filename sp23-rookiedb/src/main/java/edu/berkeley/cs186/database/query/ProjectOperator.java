@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.query;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.query.expr.Expression;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RowView;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -22,6 +23,9 @@ public class ProjectOperator extends QueryOperator {
     // expression corresponds to one of the column names in outputColumns.
     private List<Expression> expressions;
 
+    // Indices of the source columns that the expressions depend on
+    private Set<Integer> dependencyIndices;
+
     /**
      * Creates a new ProjectOperator that reads tuples from source and filters
      * out columns. Optionally computes an aggregate if it is specified.
@@ -58,6 +62,13 @@ public class ProjectOperator extends QueryOperator {
         }
         this.outputSchema = schema;
 
+        this.dependencyIndices = new HashSet<>();
+        for (Expression expression: expressions) {
+            for (String colName: expression.getDependencies()) {
+                this.dependencyIndices.add(this.sourceSchema.findField(colName));
+            }
+        }
+
         Set<Integer> groupByIndices = new HashSet<>();
         for (String colName: groupByColumns) {
             groupByIndices.add(this.sourceSchema.findField(colName));
@@ -118,31 +129,53 @@ public class ProjectOperator extends QueryOperator {
 
     private class ProjectIterator implements Iterator<Record> {
         private Iterator<Record> sourceIterator;
+        // without a GROUP BY, records are projected straight out of the
+        // source's rows, so that only the projected values are materialized
+        // and only the columns the expressions depend on are read
+        private Iterator<RowView> sourceRowIterator;
         private boolean hasAgg = false;
 
         private ProjectIterator() {
-            this.sourceIterator = ProjectOperator.this.getSource().iterator();
             for (Expression func: expressions) {
                 this.hasAgg |= func.hasAgg();
             }
+            if (groupByColumns.size() == 0) {
+                this.sourceRowIterator = ProjectOperator.this.getSource().rowIterator(dependencyIndices);
+            } else {
+                this.sourceIterator = ProjectOperator.this.getSource().iterator();
+            }
         }
 
         @Override
         public boolean hasNext() {
+            if (this.sourceRowIterator != null) return this.sourceRowIterator.hasNext();
             return this.sourceIterator.hasNext();
         }
 
         @Override
         public Record next() {
             if (!this.hasNext()) throw new NoSuchElementException();
-            Record curr = this.sourceIterator.next();
-            if (!this.hasAgg && groupByColumns.size() == 0 ) {
+            if (this.sourceRowIterator != null && !this.hasAgg) {
+                RowView row = this.sourceRowIterator.next();
                 List<DataBox> newValues = new ArrayList<>();
                 for (Expression f: expressions) {
-                    newValues.add(f.evaluate(curr));
+                    newValues.add(f.evaluate(row));
                 }
                 return new Record(newValues);
             }
+            if (this.sourceRowIterator != null) {
+                // Without a GROUP BY, all rows form a single group
+                Record base = null;
+                while (this.sourceRowIterator.hasNext()) {
+                    Record curr = this.sourceRowIterator.next().toRecord();
+                    if (base == null) base = curr;
+                    for (Expression dataFunction: expressions) {
+                        if (dataFunction.hasAgg()) dataFunction.update(curr);
+                    }
+                }
+                return aggregate(base);
+            }
+            Record curr = this.sourceIterator.next();
 
             // Everything after here is to handle aggregation
             Record base = curr; // We'll draw the GROUP BY values from here
@@ -153,7 +186,15 @@ public class ProjectOperator extends QueryOperator {
                 if (!sourceIterator.hasNext()) break;
                 curr = this.sourceIterator.next();
             }
+            return aggregate(base);
+        }
 
+        /**
+         * @return the output record of a group, once all records of the group
+         * have been passed to the aggregates. The GROUP BY values are drawn
+         * from base, any record of the group.
+         */
+        private Record aggregate(Record base) {
             // Figure out where to get each value in the output record from
             List<DataBox> values = new ArrayList<>();
             for (Expression dataFunction: expressions) {
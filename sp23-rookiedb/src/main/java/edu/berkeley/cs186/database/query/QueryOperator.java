@@ -5,6 +5,7 @@ import edu.berkeley.cs186.database.common.iterator.ArrayBacktrackingIterator;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.table.PageDirectory;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RowView;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -13,6 +14,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 public abstract class QueryOperator implements Iterable<Record> {
     protected QueryOperator source;
@@ -171,6 +173,36 @@ public abstract class QueryOperator implements Iterable<Record> {
         );
     }
 
+    /**
+     * @return an iterator over the output rows of this operator. The iterator
+     * may yield the same RowView over and over, repositioned over each row (see
+     * RowView). By default this views the records of iterator(); operators
+     * that can produce rows without materializing a Record per row override it.
+     */
+    public Iterator<RowView> rowIterator() {
+        return new RecordRowIterator(iterator(), getSchema());
+    }
+
+    /**
+     * Same as rowIterator(), but only the columns whose indices are in
+     * `columns` need to be readable from the yielded rows (see
+     * RowView#isRead). By default all columns are read; scans of PAX tables
+     * only read the given columns.
+     */
+    public Iterator<RowView> rowIterator(Set<Integer> columns) {
+        return rowIterator();
+    }
+
+    /**
+     * @throws UnsupportedOperationException if this operator doesn't support
+     * backtracking
+     * @return A backtracking iterator over the output rows of this operator
+     * (see rowIterator)
+     */
+    public BacktrackingIterator<RowView> backtrackingRowIterator() {
+        return new RecordRowIterator(backtrackingIterator(), getSchema());
+    }
+
     /**
      * @param records an iterator of records
      * @param schema the schema of the records yielded from `records`
@@ -227,4 +259,50 @@ public abstract class QueryOperator implements Iterable<Record> {
      */
     public abstract int estimateIOCost();
 
+    /**
+     * Views the records of a record iterator through a single RowView.
+     */
+    private static class RecordRowIterator implements BacktrackingIterator<RowView> {
+        private Iterator<Record> records;
+        private RowView view;
+
+        private RecordRowIterator(Iterator<Record> records, Schema schema) {
+            this.records = records;
+            this.view = new RowView(schema);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return records.hasNext();
+        }
+
+        @Override
+        public RowView next() {
+            view.reset(records.next());
+            return view;
+        }
+
+        @Override
+        public void markPrev() {
+            backtracking().markPrev();
+        }
+
+        @Override
+        public void markNext() {
+            backtracking().markNext();
+        }
+
+        @Override
+        public void reset() {
+            backtracking().reset();
+        }
+
+        private BacktrackingIterator<Record> backtracking() {
+            if (!(records instanceof BacktrackingIterator)) {
+                throw new UnsupportedOperationException("source iterator doesn't support backtracking");
+            }
+            return (BacktrackingIterator<Record>) records;
+        }
+    }
+
 }
@@ -3,11 +3,14 @@ package edu.berkeley.cs186.database.query;
 import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RowView;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 public class SelectOperator extends QueryOperator {
     private int columnIndex;
@@ -75,16 +78,49 @@ public class SelectOperator extends QueryOperator {
     @Override
     public Iterator<Record> iterator() { return new SelectIterator(); }
 
+    @Override
+    public Iterator<RowView> rowIterator() {
+        return new SelectRowIterator(this.getSource().rowIterator());
+    }
+
+    @Override
+    public Iterator<RowView> rowIterator(Set<Integer> columns) {
+        Set<Integer> sourceColumns = new HashSet<>(columns);
+        sourceColumns.add(this.columnIndex);
+        return new SelectRowIterator(this.getSource().rowIterator(sourceColumns));
+    }
+
+    /**
+     * @return true if the row satisfies the predicate of this operator
+     */
+    private boolean matches(RowView row) {
+        switch (this.operator) {
+        case EQUALS:
+            return row.valueEquals(this.columnIndex, this.value);
+        case NOT_EQUALS:
+            return !row.valueEquals(this.columnIndex, this.value);
+        case LESS_THAN:
+            return row.compareTo(this.columnIndex, this.value) < 0;
+        case LESS_THAN_EQUALS:
+            return row.compareTo(this.columnIndex, this.value) <= 0;
+        case GREATER_THAN:
+            return row.compareTo(this.columnIndex, this.value) > 0;
+        case GREATER_THAN_EQUALS:
+            return row.compareTo(this.columnIndex, this.value) >= 0;
+        default:
+            return false;
+        }
+    }
+
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
+     * Only the rows satisfying the predicate are materialized into records.
      */
     private class SelectIterator implements Iterator<Record> {
-        private Iterator<Record> sourceIterator;
-        private Record nextRecord;
+        private Iterator<RowView> rowIterator;
 
         private SelectIterator() {
-            this.sourceIterator = SelectOperator.this.getSource().iterator();
-            this.nextRecord = null;
+            this.rowIterator = new SelectRowIterator(SelectOperator.this.getSource().rowIterator());
         }
 
         /**
@@ -94,59 +130,7 @@ public class SelectOperator extends QueryOperator {
          */
         @Override
         public boolean hasNext() {
-            if (this.nextRecord != null) {
-                return true;
-            }
-            while (this.sourceIterator.hasNext()) {
-                Record r = this.sourceIterator.next();
-                switch (SelectOperator.this.operator) {
-                case EQUALS:
-                    if (r.getValue(SelectOperator.this.columnIndex).equals(value)) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case NOT_EQUALS:
-                    if (!r.getValue(SelectOperator.this.columnIndex).equals(value)) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case LESS_THAN:
-                    if (r.getValue(SelectOperator.this.columnIndex).compareTo(value) < 0) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case LESS_THAN_EQUALS:
-                    if (r.getValue(SelectOperator.this.columnIndex).compareTo(value) < 0) {
-                        this.nextRecord = r;
-                        return true;
-                    } else if (r.getValue(SelectOperator.this.columnIndex).compareTo(value) == 0) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case GREATER_THAN:
-                    if (r.getValue(SelectOperator.this.columnIndex).compareTo(value) > 0) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case GREATER_THAN_EQUALS:
-                    if (r.getValue(SelectOperator.this.columnIndex).compareTo(value) > 0) {
-                        this.nextRecord = r;
-                        return true;
-                    } else if (r.getValue(SelectOperator.this.columnIndex).compareTo(value) == 0) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                default:
-                    break;
-                }
-            }
-            return false;
+            return this.rowIterator.hasNext();
         }
 
         /**
@@ -157,12 +141,7 @@ public class SelectOperator extends QueryOperator {
          */
         @Override
         public Record next() {
-            if (this.hasNext()) {
-                Record r = this.nextRecord;
-                this.nextRecord = null;
-                return r;
-            }
-            throw new NoSuchElementException();
+            return this.rowIterator.next().toRecord();
         }
 
         @Override
@@ -170,4 +149,42 @@ public class SelectOperator extends QueryOperator {
             throw new UnsupportedOperationException();
         }
     }
+
+    /**
+     * Iterator over the rows of the source operator that satisfy the predicate.
+     */
+    private class SelectRowIterator implements Iterator<RowView> {
+        private Iterator<RowView> sourceIterator;
+        private RowView nextRow;
+
+        private SelectRowIterator(Iterator<RowView> sourceIterator) {
+            this.sourceIterator = sourceIterator;
+            this.nextRow = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.nextRow != null) {
+                return true;
+            }
+            while (this.sourceIterator.hasNext()) {
+                RowView row = this.sourceIterator.next();
+                if (matches(row)) {
+                    this.nextRow = row;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public RowView next() {
+            if (this.hasNext()) {
+                RowView row = this.nextRow;
+                this.nextRow = null;
+                return row;
+            }
+            throw new NoSuchElementException();
+        }
+    }
 }
@@ -3,10 +3,12 @@ package edu.berkeley.cs186.database.query;
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RowView;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.Iterator;
+import java.util.Set;
 
 public class SequentialScanOperator extends QueryOperator {
     private TransactionContext transaction;
@@ -60,6 +62,21 @@ public class SequentialScanOperator extends QueryOperator {
         return this.transaction.getRecordIterator(tableName);
     }
 
+    @Override
+    public Iterator<RowView> rowIterator() {
+        return this.backtrackingRowIterator();
+    }
+
+    @Override
+    public Iterator<RowView> rowIterator(Set<Integer> columns) {
+        return this.transaction.getRowIterator(tableName, columns);
+    }
+
+    @Override
+    public BacktrackingIterator<RowView> backtrackingRowIterator() {
+        return this.transaction.getRowIterator(tableName);
+    }
+
     @Override
     public Schema computeSchema() {
         return this.transaction.getFullyQualifiedSchema(this.tableName);
@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.query.expr;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RowView;
 import edu.berkeley.cs186.database.table.Schema;
 
 class Column extends Expression {
@@ -31,6 +32,11 @@ class Column extends Expression {
         return record.getValue(this.col);
     }
 
+    @Override
+    public DataBox evaluate(RowView row) {
+        return row.getValue(this.col);
+    }
+
     @Override
     protected OperationPriority priority() {
         return OperationPriority.ATOMIC;
@@ -5,6 +5,7 @@ import edu.berkeley.cs186.database.cli.parser.ParseException;
 import edu.berkeley.cs186.database.cli.parser.RookieParser;
 import edu.berkeley.cs186.database.databox.*;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RowView;
 import edu.berkeley.cs186.database.table.Schema;
 
 import java.io.ByteArrayInputStream;
@@ -84,6 +85,17 @@ public abstract class Expression {
      */
     public abstract DataBox evaluate(Record record);
 
+    /**
+     * Same as evaluate(Record), for a row. By default the row is materialized
+     * into a record first; column references and literals evaluate against
+     * the row directly.
+     * @param row The row that this expression will be evaluated on.
+     * @return A DataBox containing the expression's value.
+     */
+    public DataBox evaluate(RowView row) {
+        return evaluate(row.toRecord());
+    }
+
     /**
      * Sets the Schema of this expression. This schema should match the schema
      * of the records that will be passed to the update() and evaluate()
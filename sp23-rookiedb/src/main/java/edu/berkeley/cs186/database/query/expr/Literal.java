@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.query.expr;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RowView;
 
 class Literal extends Expression {
     private DataBox data;
@@ -22,6 +23,11 @@ class Literal extends Expression {
         return data;
     }
 
+    @Override
+    public DataBox evaluate(RowView row) {
+        return data;
+    }
+
     @Override
     protected OperationPriority priority() {
         return OperationPriority.ATOMIC;
@@ -5,6 +5,7 @@ import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.query.JoinOperator;
 import edu.berkeley.cs186.database.query.QueryOperator;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RowView;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -39,13 +40,14 @@ public class SNLJOperator extends JoinOperator {
     /**
      * A record iterator that executes the logic for a simple nested loop join.
      * Note that the left table is the "outer" loop and the right table is the
-     * "inner" loop.
+     * "inner" loop. The right relation is scanned as rows, so that only right
+     * records that match are materialized.
      */
     private class SNLJIterator implements Iterator<Record> {
         // Iterator over all the records of the left relation
         private Iterator<Record> leftSourceIterator;
-        // Iterator over all the records of the right relation
-        private BacktrackingIterator<Record> rightSourceIterator;
+        // Iterator over all the rows of the right relation
+        private BacktrackingIterator<RowView> rightSourceIterator;
         // The current record from the left relation
         private Record leftRecord;
         // The next record to return
@@ -56,7 +58,7 @@ public class SNLJOperator extends JoinOperator {
             this.leftSourceIterator = getLeftSource().iterator();
             if (leftSourceIterator.hasNext()) leftRecord = leftSourceIterator.next();
 
-            this.rightSourceIterator = getRightSource().backtrackingIterator();
+            this.rightSourceIterator = getRightSource().backtrackingRowIterator();
             this.rightSourceIterator.markNext();
         }
 
@@ -72,9 +74,9 @@ public class SNLJOperator extends JoinOperator {
             while(true) {
                 if (this.rightSourceIterator.hasNext()) {
                     // there's a next right record, join it if there's a match
-                    Record rightRecord = rightSourceIterator.next();
-                    if (compare(leftRecord, rightRecord) == 0) {
-                        return leftRecord.concat(rightRecord);
+                    RowView rightRow = rightSourceIterator.next();
+                    if (compare(leftRecord, rightRow) == 0) {
+                        return leftRecord.concat(rightRow.toRecord());
                     }
                 } else if (leftSourceIterator.hasNext()){
                     // there's no more right records but there's still left
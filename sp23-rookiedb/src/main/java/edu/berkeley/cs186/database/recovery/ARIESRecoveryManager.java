@@ -8,8 +8,10 @@ import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.recovery.records.*;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 
 /**
@@ -34,6 +36,30 @@ public class ARIESRecoveryManager implements RecoveryManager {
     // true if redo phase of restart has terminated, false otherwise. Used
     // to prevent DPT entries from being flushed during restartRedo.
     boolean redoComplete;
+    // Page allocations and frees logged from this LSN on may not have been written
+    // out by the disk space manager (see DiskSpaceManagerImpl#setLazyMetadata), and
+    // are redone even before the redo point. Set by restartAnalysis to the LSN of the
+    // checkpoint it starts from, since a checkpoint syncs the disk space manager.
+    long allocRedoLSN = Long.MAX_VALUE;
+    // Whether pages that fail their checksum are rebuilt from the log.
+    private volatile boolean repairPages;
+    // Number of threads restartRedo redoes page changes with (1: redo serially).
+    private int redoThreads = 1;
+    // Held while taking a checkpoint, so that checkpoints do not interleave.
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+    // LSN of the begin checkpoint record of the last complete checkpoint.
+    private volatile long lastCheckpointLSN = 0;
+    // Background checkpointer, or null if checkpoints are only taken on request.
+    private volatile Checkpointer checkpointer;
+    // Whether every checkpoint truncates the log.
+    private volatile boolean truncateLog;
+    // Archive truncated log pages are copied to, or null if they are dropped.
+    private volatile LogArchive logArchive;
+    // Whether page writes are logged as deltas (UpdatePageDeltaLogRecord).
+    private volatile boolean compactLogging;
+    // Largest delta logged in one record, leaving room in a log page for the
+    // header of the record's CLR.
+    private static final int MAX_DELTA_SIZE = BufferManager.EFFECTIVE_PAGE_SIZE / 2;
 
     public ARIESRecoveryManager(Function<Long, Transaction> newTransaction) {
         this.newTransaction = newTransaction;
@@ -65,7 +91,187 @@ public class ARIESRecoveryManager implements RecoveryManager {
     public void setManagers(DiskSpaceManager diskSpaceManager, BufferManager bufferManager) {
         this.diskSpaceManager = diskSpaceManager;
         this.bufferManager = bufferManager;
-        this.logManager = new LogManager(bufferManager);
+        this.logManager = new LogManager(bufferManager, diskSpaceManager);
+    }
+
+    /**
+     * Enables group commit: instead of every committing transaction flushing
+     * the log itself, commits are batched and flushed by a background thread.
+     * Must be called after setManagers.
+     *
+     * @param flushIntervalMillis maximum time (in ms) a commit waits for its batch
+     * @param maxBatchSize        number of pending commits that triggers a flush
+     */
+    public void enableGroupCommit(long flushIntervalMillis, int maxBatchSize) {
+        this.logManager.enableGroupCommit(flushIntervalMillis, maxBatchSize);
+    }
+
+    /**
+     * Disables group commit; subsequent commits flush the log synchronously.
+     */
+    public void disableGroupCommit() {
+        this.logManager.disableGroupCommit();
+    }
+
+    /**
+     * @return the group commit flusher, for its flush/batch counters, or null if
+     * group commit is disabled
+     */
+    public GroupCommitFlusher getGroupCommitFlusher() {
+        return this.logManager.getGroupCommitFlusher();
+    }
+
+    /**
+     * Enables the background checkpointer: a checkpoint is taken whenever
+     * maxLogBytes of log have been written since the last one, which bounds
+     * how much log restart recovery has to scan. Replaces any previous
+     * checkpointer. Should be called after restart.
+     *
+     * @param maxLogBytes log volume since the last checkpoint (in bytes) that
+     *                    triggers a new checkpoint
+     */
+    public void enableCheckpointer(long maxLogBytes) {
+        disableCheckpointer();
+        this.checkpointer = new Checkpointer(this, maxLogBytes);
+    }
+
+    /**
+     * Disables the background checkpointer, waiting for a checkpoint in
+     * progress to finish.
+     */
+    public void disableCheckpointer() {
+        Checkpointer checkpointer = this.checkpointer;
+        this.checkpointer = null;
+        if (checkpointer != null) {
+            checkpointer.close();
+        }
+    }
+
+    /**
+     * @return the background checkpointer, for its checkpoint counter, or null
+     * if it is disabled
+     */
+    public Checkpointer getCheckpointer() {
+        return this.checkpointer;
+    }
+
+    /**
+     * @return LSN of the begin checkpoint record of the last complete checkpoint
+     */
+    long getLastCheckpointLSN() {
+        return this.lastCheckpointLSN;
+    }
+
+    /**
+     * Sets whether every checkpoint truncates the log (see truncateLog). Off by
+     * default, in which case the log is only truncated on request.
+     *
+     * @param truncateLog true to truncate the log at every checkpoint
+     */
+    public void setTruncateLog(boolean truncateLog) {
+        this.truncateLog = truncateLog;
+    }
+
+    /**
+     * @return whether every checkpoint truncates the log
+     */
+    public boolean isTruncateLog() {
+        return this.truncateLog;
+    }
+
+    /**
+     * Sets whether page writes are logged compactly (see logPageWrites): as one
+     * UpdatePageDeltaLogRecord per write, holding the XOR of the changed bytes,
+     * instead of an UpdatePageLogRecord with before and after images per changed
+     * range. Off by default. Records of either kind can be recovered whatever the
+     * setting.
+     *
+     * @param compactLogging true to log page writes as deltas
+     */
+    public void setCompactLogging(boolean compactLogging) {
+        this.compactLogging = compactLogging;
+    }
+
+    /**
+     * @return whether page writes are logged as deltas
+     */
+    public boolean isCompactLogging() {
+        return this.compactLogging;
+    }
+
+    /**
+     * Enables archival of truncated log pages: instead of being dropped, they
+     * are appended to the archive in the given file (created if it does not
+     * exist), whose records repairPage replays ahead of the log. Replaces any
+     * previous archive. Must be called after setManagers.
+     *
+     * @param fileName name of the archive file
+     */
+    public void enableLogArchive(String fileName) {
+        enableLogArchive(new LogArchive(fileName));
+    }
+
+    /**
+     * Enables archival of truncated log pages to an open archive, replacing any
+     * previous archive.
+     *
+     * @param archive the archive
+     */
+    void enableLogArchive(LogArchive archive) {
+        checkpointLock.lock();
+        try {
+            disableLogArchive();
+            this.logArchive = archive;
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    /**
+     * Disables archival of truncated log pages; pages truncated from now on are
+     * dropped.
+     */
+    public void disableLogArchive() {
+        checkpointLock.lock();
+        try {
+            LogArchive archive = this.logArchive;
+            this.logArchive = null;
+            if (archive != null) {
+                archive.close();
+            }
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    /**
+     * @return the log archive, or null if truncated log pages are dropped
+     */
+    public LogArchive getLogArchive() {
+        return this.logArchive;
+    }
+
+    /**
+     * Sets the number of threads the redo pass of restart recovery uses. With
+     * more than one, the log is still scanned once, by the thread calling
+     * restart, but updates to pages (and their CLRs) are redone by a pool of
+     * worker threads, each responsible for a subset of the pages (see
+     * ParallelRedo). Defaults to 1, which redoes every record serially.
+     *
+     * @param redoThreads number of redo worker threads
+     */
+    public void setRedoThreads(int redoThreads) {
+        if (redoThreads < 1) {
+            throw new IllegalArgumentException("need at least one redo thread");
+        }
+        this.redoThreads = redoThreads;
+    }
+
+    /**
+     * @return the number of threads the redo pass uses
+     */
+    public int getRedoThreads() {
+        return this.redoThreads;
     }
 
     // Forward Processing //////////////////////////////////////////////////////
@@ -84,7 +290,11 @@ public class ARIESRecoveryManager implements RecoveryManager {
 
     private long appendAndUpdate(LogRecord log) {
         long lastLSN = logManager.appendToLog(log);
-        transactionTable.get(log.getTransNum().get()).lastLSN = lastLSN;
+        transactionTable.get(log.getTransNum().get()).logged(lastLSN);
+        Checkpointer checkpointer = this.checkpointer;
+        if (checkpointer != null) {
+            checkpointer.logAppended(lastLSN);
+        }
         return lastLSN;
     }
 
@@ -104,7 +314,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
         LogRecord commitLog = new CommitTransactionLogRecord(transNum, entry.lastLSN);
         long lastLSN = appendAndUpdate(commitLog);
         current.setStatus(Transaction.Status.COMMITTING);
-        flushToLSN(lastLSN);
+        logManager.flushCommit(lastLSN);
         return lastLSN;
     }
 
@@ -253,6 +463,38 @@ public class ARIESRecoveryManager implements RecoveryManager {
 
     }
 
+    /**
+     * Called when a page write changing several ranges of a page happens.
+     * <p>
+     * With compact logging, the write is logged as one UpdatePageDeltaLogRecord
+     * (or a few, if the delta would not fit in a log page), otherwise as one
+     * UpdatePageLogRecord per range.
+     *
+     * @param transNum    transaction performing the write
+     * @param pageNum     page number of page being written
+     * @param pageOffsets offset into page of each changed range, in increasing order
+     * @param befores     bytes of each range before the write
+     * @param afters      bytes of each range after the write
+     * @return LSN of last record written to log
+     */
+    @Override
+    public long logPageWrites(long transNum, long pageNum, short[] pageOffsets, byte[][] befores,
+                              byte[][] afters) {
+        if (!compactLogging) {
+            return RecoveryManager.super.logPageWrites(transNum, pageNum, pageOffsets, befores, afters);
+        }
+        TransactionTableEntry entry = transactionTable.get(transNum);
+        PageDelta delta = PageDelta.of(pageOffsets, befores, afters);
+        long lastLSN = entry.lastLSN;
+        for (PageDelta part : delta.split(MAX_DELTA_SIZE)) {
+            lastLSN = appendAndUpdate(new UpdatePageDeltaLogRecord(transNum, pageNum, entry.lastLSN, part));
+        }
+        if (!dirtyPageTable.containsKey(pageNum)) {
+            dirtyPageTable.put(pageNum, lastLSN);
+        }
+        return lastLSN;
+    }
+
     /**
      * Called when a new partition is allocated. A log flush is necessary,
      * since changes are visible on disk immediately after this returns.
@@ -277,7 +519,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
         LogRecord record = new AllocPartLogRecord(transNum, partNum, prevLSN);
         long LSN = logManager.appendToLog(record);
         // Update lastLSN
-        transactionEntry.lastLSN = LSN;
+        transactionEntry.logged(LSN);
         // Flush log
         logManager.flushToLSN(LSN);
         return LSN;
@@ -308,7 +550,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
         LogRecord record = new FreePartLogRecord(transNum, partNum, prevLSN);
         long LSN = logManager.appendToLog(record);
         // Update lastLSN
-        transactionEntry.lastLSN = LSN;
+        transactionEntry.logged(LSN);
         // Flush log
         logManager.flushToLSN(LSN);
         return LSN;
@@ -339,7 +581,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
         LogRecord record = new AllocPageLogRecord(transNum, pageNum, prevLSN);
         long LSN = logManager.appendToLog(record);
         // Update lastLSN
-        transactionEntry.lastLSN = LSN;
+        transactionEntry.logged(LSN);
         // Flush log
         logManager.flushToLSN(LSN);
         return LSN;
@@ -370,7 +612,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
         LogRecord record = new FreePageLogRecord(transNum, pageNum, prevLSN);
         long LSN = logManager.appendToLog(record);
         // Update lastLSN
-        transactionEntry.lastLSN = LSN;
+        transactionEntry.logged(LSN);
         dirtyPageTable.remove(pageNum);
         // Flush log
         logManager.flushToLSN(LSN);
@@ -443,17 +685,77 @@ public class ARIESRecoveryManager implements RecoveryManager {
      * <p>
      * Finally, the master record should be rewritten with the LSN of the
      * begin checkpoint record.
+     * <p>
+     * The checkpoint is fuzzy: transactions keep running and logging while it
+     * is taken, and only other checkpoints wait for it. Each end checkpoint
+     * record is appended on its own, so transactions appending to the log
+     * wait for at most one record at a time. Anything that changes after the
+     * begin checkpoint record is logged after it, and restart analysis scans
+     * the log from there. Transactions that have completed are left out.
      */
     @Override
-    public synchronized void checkpoint() {
+    public void checkpoint() {
+        checkpointLock.lock();
+        try {
+            writeCheckpoint();
+            if (truncateLog) {
+                truncateLog();
+            }
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    /**
+     * Truncates the log: frees the log pages before the oldest record that
+     * recovery may still need (copying them to the log archive first, if
+     * there is one). That is the oldest of: the begin checkpoint record of the
+     * last complete checkpoint, where restart analysis starts; the recLSN of
+     * every dirty page, where restart redo may start; and the first record of
+     * every running transaction, which it may have to roll back to.
+     * <p>
+     * Pages that are not in the dirty page table may still only be in the OS
+     * cache (see DiskSpaceManagerImpl#setDeferSync), so the disk space manager
+     * is synced before anything is freed, as at a checkpoint.
+     *
+     * @return number of log pages truncated
+     */
+    public long truncateLog() {
+        checkpointLock.lock();
+        try {
+            long LSN = lastCheckpointLSN;
+            if (LSN == 0) {
+                // no complete checkpoint yet
+                return 0;
+            }
+            for (long recLSN : dirtyPageTable.values()) {
+                LSN = Math.min(LSN, recLSN);
+            }
+            for (TransactionTableEntry entry : transactionTable.values()) {
+                LSN = Math.min(LSN, entry.firstLSN);
+            }
+            diskSpaceManager.sync();
+            return logManager.truncate(LSN, logArchive);
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    private void writeCheckpoint() {
         // Create begin checkpoint log record and write to log
         LogRecord beginRecord = new BeginCheckpointLogRecord();
         long beginLSN = logManager.appendToLog(beginRecord);
 
+        // Snapshot the DPT, then force data pages to disk (needed if the disk space
+        // manager defers syncing page writes): a page missing from the snapshot was
+        // written out before the snapshot, so its changes are durable after the sync.
+        Map<Long, Long> dirtyPages = new HashMap<>(dirtyPageTable);
+        diskSpaceManager.sync();
+
         Map<Long, Long> chkptDPT = new HashMap<>();
         Map<Long, Pair<Transaction.Status, Long>> chkptTxnTable = new HashMap<>();
 
-        for (Map.Entry<Long, Long> pageNum : dirtyPageTable.entrySet()) {
+        for (Map.Entry<Long, Long> pageNum : dirtyPages.entrySet()) {
             boolean fitsAfterAdd = EndCheckpointLogRecord.fitsInOneRecord(
                     chkptDPT.size() + 1, chkptTxnTable.size());
 
@@ -470,6 +772,11 @@ public class ARIESRecoveryManager implements RecoveryManager {
 
 
         for (Map.Entry<Long, TransactionTableEntry> entry : transactionTable.entrySet()) {
+            Transaction.Status status = entry.getValue().transaction.getStatus();
+            if (status == Transaction.Status.COMPLETE) {
+                // its end record is being appended
+                continue;
+            }
             boolean fitsAfterAdd = EndCheckpointLogRecord.fitsInOneRecord(
                     chkptDPT.size(), chkptTxnTable.size() + 1);
 
@@ -481,7 +788,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
                 chkptTxnTable.clear();
             }
 
-            chkptTxnTable.putIfAbsent(entry.getKey(), new Pair<>(entry.getValue().transaction.getStatus(), entry.getValue().lastLSN));
+            chkptTxnTable.putIfAbsent(entry.getKey(), new Pair<>(status, entry.getValue().lastLSN));
         }
 
 
@@ -494,6 +801,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
         // Update master record
         MasterLogRecord masterRecord = new MasterLogRecord(beginLSN);
         logManager.rewriteMasterRecord(masterRecord);
+        lastCheckpointLSN = beginLSN;
     }
 
     /**
@@ -518,8 +826,10 @@ public class ARIESRecoveryManager implements RecoveryManager {
 
     @Override
     public void close() {
+        this.disableCheckpointer();
         this.checkpoint();
         this.logManager.close();
+        this.disableLogArchive();
     }
 
     // Restart Recovery ////////////////////////////////////////////////////////
@@ -593,6 +903,8 @@ public class ARIESRecoveryManager implements RecoveryManager {
         MasterLogRecord masterRecord = (MasterLogRecord) record;
         // Get start checkpoint LSN
         long LSN = masterRecord.lastCheckpointLSN;
+        allocRedoLSN = LSN;
+        lastCheckpointLSN = LSN;
         // Set of transactions that have completed
         Set<Long> endedTransactions = new HashSet<>();
 
@@ -606,15 +918,16 @@ public class ARIESRecoveryManager implements RecoveryManager {
                     // update lastLSN
                 } else {
                     // add record to transactionTable
-                    Transaction newTxn = newTransaction.apply(transNum);
                     startTransaction(newTransaction.apply(transNum));
+                    // it may have logged records before the checkpoint
+                    transactionTable.get(transNum).firstLSN = 0;
                 }
                 transactionTable.get(transNum).lastLSN = logRecord.getLSN();
             }
             // page-related op
             if (logRecord.getPageNum().isPresent()) {
                 long pageNum = logRecord.getPageNum().get();
-                if (logRecord instanceof UpdatePageLogRecord || logRecord instanceof UndoUpdatePageLogRecord) {
+                if (isPageUpdate(logRecord)) {
                     dirtyPage(pageNum, logRecord.getLSN());
                 } else if (logRecord instanceof FreePageLogRecord || logRecord instanceof UndoAllocPageLogRecord) {
                     dirtyPageTable.remove(pageNum);
@@ -652,6 +965,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
                             newTxn.setStatus(endTxnTable.get(transNum).getFirst());
                             TransactionTableEntry newTxntableEntry = new TransactionTableEntry(newTxn);
                             newTxntableEntry.lastLSN = endTxnTable.get(transNum).getSecond();
+                            newTxntableEntry.firstLSN = 0;
                             transactionTable.put(transNum, newTxntableEntry);
                         }
 
@@ -691,18 +1005,38 @@ public class ARIESRecoveryManager implements RecoveryManager {
      * - modifies a page (Update/UndoUpdate/Free/UndoAlloc....Page) in
      * the dirty page table with LSN >= recLSN, the page is fetched from disk,
      * the pageLSN is checked, and the record is redone if needed.
+     * <p>
+     * Page allocations and frees logged since the checkpoint analysis started
+     * from may not be on disk, so from there on (even before the starting
+     * point), they are redone if the disk space manager does not reflect them.
+     * <p>
+     * If more than one redo thread is set, Update/UndoUpdate records are handed
+     * to worker threads instead (see restartRedoParallel).
      */
     void restartRedo() {
         long lowestRecLSN = Integer.MAX_VALUE;
         for (Long pageNum : dirtyPageTable.keySet()) {
             lowestRecLSN = Math.min(lowestRecLSN, dirtyPageTable.get(pageNum));
         }
-        Iterator<LogRecord> iter = logManager.scanFrom(lowestRecLSN);
+        if (redoThreads > 1) {
+            restartRedoParallel(lowestRecLSN);
+            return;
+        }
+        Iterator<LogRecord> iter = logManager.scanFrom(Math.min(lowestRecLSN, allocRedoLSN));
         while (iter.hasNext()) {
             LogRecord logRecord = iter.next();
             if (!logRecord.isRedoable()) {
                 continue;
             }
+            if (logRecord.getLSN() >= allocRedoLSN && isPageAllocation(logRecord)) {
+                if (allocationNotOnDisk(logRecord)) {
+                    logRecord.redo(this, diskSpaceManager, bufferManager);
+                }
+                continue;
+            }
+            if (logRecord.getLSN() < lowestRecLSN) {
+                continue;
+            }
             boolean needRedo = false;
             if (logRecord instanceof AllocPartLogRecord || logRecord instanceof UndoAllocPartLogRecord || logRecord instanceof FreePartLogRecord || logRecord instanceof UndoFreePartLogRecord) {
                 needRedo = true;
@@ -710,16 +1044,9 @@ public class ARIESRecoveryManager implements RecoveryManager {
             if (logRecord instanceof AllocPageLogRecord || logRecord instanceof UndoFreePageLogRecord) {
                 needRedo = true;
             }
-            if (logRecord instanceof UpdatePageLogRecord || logRecord instanceof UndoUpdatePageLogRecord || logRecord instanceof UndoAllocPageLogRecord || logRecord instanceof FreePageLogRecord) {
-                long pageNum = logRecord.getPageNum().get();
-                Page page = bufferManager.fetchPage(new DummyLockContext(), pageNum);
-                try {
-                    if (dirtyPageTable.containsKey(pageNum) && logRecord.getLSN() >= dirtyPageTable.get(pageNum) && page.getPageLSN() < logRecord.getLSN()) {
-                        needRedo = true;
-                    }
-                } finally {
-                    page.unpin();
-                }
+            if (isPageUpdate(logRecord) || logRecord instanceof UndoAllocPageLogRecord || logRecord instanceof FreePageLogRecord) {
+                redoPageChange(logRecord);
+                continue;
             }
             if (needRedo) {
                 logRecord.redo(this, diskSpaceManager, bufferManager);
@@ -727,6 +1054,98 @@ public class ARIESRecoveryManager implements RecoveryManager {
         }
     }
 
+    /**
+     * Redo pass with worker threads. Makes the same decisions as the serial
+     * redo pass, in one scan of the log, except that Update/UndoUpdate records
+     * from the starting point on are dispatched to the worker for their page,
+     * which redoes them in LSN order. Partition records and page allocations
+     * and frees change what pages exist, so each one is a barrier: it is
+     * redone (if needed) by this thread once the workers have caught up with
+     * every record before it.
+     */
+    private void restartRedoParallel(long lowestRecLSN) {
+        try (ParallelRedo workers = new ParallelRedo(redoThreads, this::redoPageChange)) {
+            Iterator<LogRecord> iter = logManager.scanFrom(Math.min(lowestRecLSN, allocRedoLSN));
+            while (iter.hasNext()) {
+                LogRecord logRecord = iter.next();
+                if (!logRecord.isRedoable()) {
+                    continue;
+                }
+                boolean inRedo = logRecord.getLSN() >= lowestRecLSN;
+                if (inRedo && isPageUpdate(logRecord)) {
+                    workers.dispatch(logRecord.getPageNum().get(), logRecord);
+                    continue;
+                }
+                if (logRecord.getLSN() >= allocRedoLSN && isPageAllocation(logRecord)) {
+                    workers.barrier();
+                    if (allocationNotOnDisk(logRecord)) {
+                        logRecord.redo(this, diskSpaceManager, bufferManager);
+                    }
+                    continue;
+                }
+                if (!inRedo) {
+                    continue;
+                }
+                workers.barrier();
+                if (logRecord instanceof UndoAllocPageLogRecord || logRecord instanceof FreePageLogRecord) {
+                    redoPageChange(logRecord);
+                } else {
+                    // partition operations, AllocPage/UndoFreePage
+                    logRecord.redo(this, diskSpaceManager, bufferManager);
+                }
+            }
+            workers.barrier();
+        }
+    }
+
+    /**
+     * Redoes a record that modifies a page (Update/UndoUpdate/Free/UndoAlloc..Page)
+     * if the page is in the dirty page table with recLSN <= LSN, and its pageLSN
+     * is older than the record.
+     */
+    private void redoPageChange(LogRecord logRecord) {
+        long pageNum = logRecord.getPageNum().get();
+        boolean needRedo = false;
+        Page page = bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            if (dirtyPageTable.containsKey(pageNum) && logRecord.getLSN() >= dirtyPageTable.get(pageNum) && page.getPageLSN() < logRecord.getLSN()) {
+                needRedo = true;
+            }
+        } finally {
+            page.unpin();
+        }
+        if (needRedo) {
+            logRecord.redo(this, diskSpaceManager, bufferManager);
+        }
+    }
+
+    private static boolean isPageUpdate(LogRecord logRecord) {
+        return logRecord instanceof UpdatePageLogRecord || logRecord instanceof UndoUpdatePageLogRecord
+               || logRecord instanceof UpdatePageDeltaLogRecord || logRecord instanceof UndoUpdatePageDeltaLogRecord;
+    }
+
+    private static boolean isPageAllocation(LogRecord logRecord) {
+        return logRecord instanceof AllocPageLogRecord || logRecord instanceof UndoFreePageLogRecord
+               || logRecord instanceof FreePageLogRecord || logRecord instanceof UndoAllocPageLogRecord;
+    }
+
+    /**
+     * @param logRecord a page allocation or free
+     * @return whether the disk space manager has the page in the opposite state to
+     * what logRecord leaves it in (false if its partition no longer exists)
+     */
+    private boolean allocationNotOnDisk(LogRecord logRecord) {
+        boolean allocates = logRecord instanceof AllocPageLogRecord || logRecord instanceof UndoFreePageLogRecord;
+        boolean allocated;
+        try {
+            allocated = diskSpaceManager.pageAllocated(logRecord.getPageNum().get());
+        } catch (NoSuchElementException e) {
+            // partition freed later on
+            return false;
+        }
+        return allocates != allocated;
+    }
+
     private void endTransaction(TransactionTableEntry entry, long transNum) {
         if (entry.transaction.getStatus().equals(Transaction.Status.COMMITTING)) {
             entry.transaction.cleanup();
@@ -811,6 +1230,157 @@ public class ARIESRecoveryManager implements RecoveryManager {
         }
     }
 
+    // Page Repair /////////////////////////////////////////////////////////////
+
+    /**
+     * Sets whether pages read from disk that do not match their checksum (see
+     * DiskSpaceManagerImpl#setChecksummed) are rebuilt from the log (see
+     * repairPage), rather than failing the read. Off by default.
+     *
+     * @param repairPages true to rebuild corrupt pages from the log
+     */
+    public void setRepairPages(boolean repairPages) {
+        this.repairPages = repairPages;
+    }
+
+    /**
+     * @return whether corrupt pages are rebuilt from the log
+     */
+    public boolean isRepairPages() {
+        return this.repairPages;
+    }
+
+    /**
+     * Rebuilds a page that failed its checksum by replaying the log, if page
+     * repair is on.
+     * <p>
+     * The last known-good state of a page is the empty page it was when it was
+     * last allocated (or reallocated, by undoing a free), and every change to
+     * it since then was made by a transaction, and logged. So the log is
+     * scanned from the start, the page is reset to empty at each allocation,
+     * and every update and CLR for the page after the last allocation is
+     * applied, as restart redo would apply it. The rebuilt page is as of its
+     * last logged change, which is at least as new as the page on disk, and its
+     * pageLSN is that change's LSN; the log is flushed up to it, as before any
+     * page is written out.
+     * <p>
+     * Once the log is truncated, the scan starts with the log archive, if there
+     * is one, and skips the records in the log that it read from the archive.
+     * Without one, the allocation of a page allocated before the truncation
+     * point is gone, so the page cannot be rebuilt. If the log is truncated
+     * during the scan, the scan starts over.
+     *
+     * @param pageNum page number of the corrupt page
+     * @param contents page-sized buffer to be filled with the rebuilt page
+     * @return whether the page was rebuilt: false if page repair is off, or if
+     * the page is not allocated as of the end of the log
+     */
+    @Override
+    public boolean repairPage(long pageNum, byte[] contents) {
+        if (!this.repairPages) {
+            return false;
+        }
+        PageRebuild rebuild;
+        long firstLSN;
+        do {
+            firstLSN = logManager.getFirstLSN();
+            rebuild = new PageRebuild(pageNum, contents);
+            LogArchive archive = this.logArchive;
+            // every record must be replayed exactly once, since a delta applied
+            // twice cancels itself out: records the archive iterator returns are
+            // skipped in the log, and pages archived after the iterator took its
+            // snapshot are replayed from the log (or, if they were freed in the
+            // meantime, the scan starts over)
+            long archivedLSN = 0;
+            if (archive != null) {
+                for (LogRecord record : archive) {
+                    rebuild.apply(record);
+                    archivedLSN = record.getLSN();
+                }
+            }
+            Iterator<LogRecord> iter = logManager.scanFrom(0);
+            while (iter.hasNext()) {
+                LogRecord record = iter.next();
+                if (record.getLSN() > archivedLSN) {
+                    rebuild.apply(record);
+                }
+            }
+        } while (logManager.getFirstLSN() != firstLSN);
+        if (!rebuild.allocated) {
+            return false;
+        }
+        ByteBuffer.wrap(contents).putLong(8, rebuild.pageLSN);
+        this.logManager.flushToLSN(rebuild.pageLSN);
+        return true;
+    }
+
+    /**
+     * State of a page being rebuilt by repairPage, as log records for it are
+     * replayed in LSN order.
+     */
+    private static class PageRebuild {
+        private final long pageNum;
+        private final byte[] contents;
+        // whether the page is allocated as of the last record replayed
+        private boolean allocated = false;
+        // LSN of the last change replayed since the page was last allocated
+        private long pageLSN = 0;
+
+        private PageRebuild(long pageNum, byte[] contents) {
+            this.pageNum = pageNum;
+            this.contents = contents;
+        }
+
+        private void apply(LogRecord record) {
+            Optional<Long> recordPageNum = record.getPageNum();
+            if (!recordPageNum.isPresent() || recordPageNum.get() != pageNum) {
+                return;
+            }
+            switch (record.getType()) {
+            case ALLOC_PAGE:
+            case UNDO_FREE_PAGE:
+                Arrays.fill(this.contents, (byte) 0);
+                allocated = true;
+                pageLSN = 0;
+                break;
+            case FREE_PAGE:
+            case UNDO_ALLOC_PAGE:
+                allocated = false;
+                break;
+            case UPDATE_PAGE:
+                UpdatePageLogRecord update = (UpdatePageLogRecord) record;
+                if (allocated) {
+                    System.arraycopy(update.after, 0, this.contents, BufferManager.RESERVED_SPACE + update.offset,
+                                     update.after.length);
+                    pageLSN = record.getLSN();
+                }
+                break;
+            case UNDO_UPDATE_PAGE:
+                UndoUpdatePageLogRecord clr = (UndoUpdatePageLogRecord) record;
+                if (allocated) {
+                    System.arraycopy(clr.after, 0, this.contents, BufferManager.RESERVED_SPACE + clr.offset,
+                                     clr.after.length);
+                    pageLSN = record.getLSN();
+                }
+                break;
+            case UPDATE_PAGE_DELTA:
+                if (allocated) {
+                    ((UpdatePageDeltaLogRecord) record).delta.apply(this.contents, BufferManager.RESERVED_SPACE);
+                    pageLSN = record.getLSN();
+                }
+                break;
+            case UNDO_UPDATE_PAGE_DELTA:
+                if (allocated) {
+                    ((UndoUpdatePageDeltaLogRecord) record).delta.apply(this.contents, BufferManager.RESERVED_SPACE);
+                    pageLSN = record.getLSN();
+                }
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
     // Helpers /////////////////////////////////////////////////////////////////
 
     /**
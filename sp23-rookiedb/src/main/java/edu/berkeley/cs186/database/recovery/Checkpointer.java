@@ -0,0 +1,176 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Background checkpointer for the ARIES recovery manager.
+ *
+ * Restart recovery scans the log from the last checkpoint, so the amount of
+ * log written since then bounds how long restart takes. Every record appended
+ * on behalf of a transaction is reported to the checkpointer (logAppended),
+ * and once the log has grown by at least maxLogBytes since the begin
+ * checkpoint record of the last complete checkpoint, a background thread takes
+ * a new checkpoint. Transactions keep running while it does: the checkpoint
+ * is fuzzy, and is written out in several end checkpoint records (see
+ * ARIESRecoveryManager#checkpoint).
+ *
+ * A checkpoint that fails does not stop the checkpointer: the failure is
+ * recorded (see getLastFailure), and the next record appended triggers
+ * another attempt, since the log is still due for a checkpoint.
+ */
+public class Checkpointer implements AutoCloseable {
+    private final ARIESRecoveryManager recoveryManager;
+    // log pages written since the last checkpoint that trigger a new one
+    private final long logPagesPerCheckpoint;
+
+    private final ReentrantLock checkpointerLock = new ReentrantLock();
+    // signalled when enough log has been written, or the checkpointer is stopped
+    private final Condition wakeUp = checkpointerLock.newCondition();
+    private boolean woken = false;
+    private boolean running = true;
+
+    // Statistics
+    private long numCheckpoints = 0;
+    private long numFailures = 0;
+    // exception thrown by the last checkpoint that failed, or null
+    private RuntimeException lastFailure = null;
+
+    private final Thread checkpointerThread;
+
+    /**
+     * Starts a checkpointer for the given recovery manager.
+     *
+     * @param recoveryManager recovery manager to checkpoint
+     * @param maxLogBytes amount of log (in bytes, rounded down to whole log
+     *                    pages) written since the last checkpoint that triggers
+     *                    a new checkpoint
+     */
+    Checkpointer(ARIESRecoveryManager recoveryManager, long maxLogBytes) {
+        if (maxLogBytes < DiskSpaceManager.PAGE_SIZE) {
+            throw new IllegalArgumentException("invalid checkpointer configuration");
+        }
+        this.recoveryManager = recoveryManager;
+        this.logPagesPerCheckpoint = maxLogBytes / DiskSpaceManager.PAGE_SIZE;
+        this.checkpointerThread = new Thread(this::run, "rookiedb-checkpointer");
+        this.checkpointerThread.setDaemon(true);
+        this.checkpointerThread.start();
+    }
+
+    /**
+     * Called by the recovery manager after appending a record, to start a
+     * checkpoint if enough log has been written since the last one. Does not
+     * wait for the checkpoint.
+     *
+     * @param LSN LSN of the appended record
+     */
+    void logAppended(long LSN) {
+        if (!isDue(LSN)) {
+            return;
+        }
+        checkpointerLock.lock();
+        try {
+            woken = true;
+            wakeUp.signal();
+        } finally {
+            checkpointerLock.unlock();
+        }
+    }
+
+    private boolean isDue(long LSN) {
+        long lastCheckpointLSN = recoveryManager.getLastCheckpointLSN();
+        return LogManager.getLSNPage(LSN) - LogManager.getLSNPage(lastCheckpointLSN) >= logPagesPerCheckpoint;
+    }
+
+    private void run() {
+        while (true) {
+            checkpointerLock.lock();
+            try {
+                while (running && !woken) {
+                    wakeUp.awaitUninterruptibly();
+                }
+                if (!running) {
+                    return;
+                }
+                woken = false;
+            } finally {
+                checkpointerLock.unlock();
+            }
+            RuntimeException error = null;
+            try {
+                recoveryManager.checkpoint();
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            checkpointerLock.lock();
+            try {
+                if (error == null) {
+                    ++numCheckpoints;
+                } else {
+                    ++numFailures;
+                    lastFailure = error;
+                }
+            } finally {
+                checkpointerLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread, waiting for a checkpoint in progress to finish.
+     */
+    @Override
+    public void close() {
+        checkpointerLock.lock();
+        try {
+            running = false;
+            wakeUp.signalAll();
+        } finally {
+            checkpointerLock.unlock();
+        }
+        try {
+            checkpointerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return number of checkpoints taken by the checkpointer
+     */
+    public long getNumCheckpoints() {
+        checkpointerLock.lock();
+        try {
+            return numCheckpoints;
+        } finally {
+            checkpointerLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of checkpoints started by the checkpointer that failed
+     */
+    public long getNumFailures() {
+        checkpointerLock.lock();
+        try {
+            return numFailures;
+        } finally {
+            checkpointerLock.unlock();
+        }
+    }
+
+    /**
+     * @return exception thrown by the last checkpoint that failed, or null if
+     * none have
+     */
+    public RuntimeException getLastFailure() {
+        checkpointerLock.lock();
+        try {
+            return lastFailure;
+        } finally {
+            checkpointerLock.unlock();
+        }
+    }
+}
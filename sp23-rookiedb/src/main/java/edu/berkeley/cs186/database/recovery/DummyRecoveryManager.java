@@ -45,6 +45,11 @@ public class DummyRecoveryManager implements RecoveryManager {
     @Override
     public void diskIOHook(long pageNum) {}
 
+    @Override
+    public boolean repairPage(long pageNum, byte[] contents) {
+        return false;
+    }
+
     @Override
     public long logPageWrite(long transNum, long pageNum, short pageOffset, byte[] before,
                              byte[] after) {
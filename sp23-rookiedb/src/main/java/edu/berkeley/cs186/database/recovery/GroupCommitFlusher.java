@@ -0,0 +1,225 @@
+package edu.berkeley.cs186.database.recovery;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Background flusher used by the log manager in group commit mode.
+ *
+ * Committing transactions register the LSN of their commit record and block
+ * until the log has been flushed past it. A single background thread waits
+ * until either maxBatchSize commits are pending or flushIntervalMillis have
+ * elapsed since the first pending commit arrived, and then forces the log
+ * up to the largest pending LSN once for the whole batch.
+ */
+public class GroupCommitFlusher implements AutoCloseable {
+    private final LogManager logManager;
+    private final long flushIntervalMillis;
+    private final int maxBatchSize;
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // signalled when a commit arrives or the flusher is stopped
+    private final Condition commitPending = flushLock.newCondition();
+    // signalled after every flush of a batch
+    private final Condition batchFlushed = flushLock.newCondition();
+
+    // largest LSN waiting to be flushed, and the number of commits waiting on it
+    private long maxPendingLSN = -1L;
+    private int numPending = 0;
+    private boolean running = true;
+
+    // Statistics
+    private long numFlushes = 0;
+    private long numCommits = 0;
+    private int largestBatch = 0;
+
+    private final Thread flusherThread;
+
+    /**
+     * Starts a group commit flusher for the given log manager.
+     *
+     * @param logManager log manager to flush
+     * @param flushIntervalMillis maximum time (in ms) a commit waits for other
+     *                            commits to join its batch
+     * @param maxBatchSize number of pending commits that triggers an immediate flush
+     */
+    GroupCommitFlusher(LogManager logManager, long flushIntervalMillis, int maxBatchSize) {
+        if (flushIntervalMillis < 0 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("invalid group commit configuration");
+        }
+        this.logManager = logManager;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.flusherThread = new Thread(this::run, "rookiedb-group-commit");
+        this.flusherThread.setDaemon(true);
+        this.flusherThread.start();
+    }
+
+    /**
+     * Blocks until the log has been flushed to at least LSN. The flush itself
+     * is performed by the background thread, shared with any other commits in
+     * the same batch.
+     *
+     * @param LSN LSN of the commit record
+     */
+    void awaitFlush(long LSN) {
+        flushLock.lock();
+        try {
+            if (logManager.getFlushedLSN() >= LSN) {
+                return;
+            }
+            if (running) {
+                maxPendingLSN = Math.max(maxPendingLSN, LSN);
+                ++numPending;
+                commitPending.signal();
+                while (running && logManager.getFlushedLSN() < LSN) {
+                    batchFlushed.awaitUninterruptibly();
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        // Flusher was stopped before our batch went out; flush ourselves.
+        if (logManager.getFlushedLSN() < LSN) {
+            logManager.flushToLSN(LSN);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            long flushLSN;
+            int batchSize;
+            flushLock.lock();
+            try {
+                while (running && numPending == 0) {
+                    commitPending.awaitUninterruptibly();
+                }
+                if (numPending == 0) {
+                    return;
+                }
+                // wait for the batch to fill up, or for the interval to run out
+                long remaining = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (running && numPending < maxBatchSize && remaining > 0) {
+                    try {
+                        remaining = commitPending.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                flushLSN = maxPendingLSN;
+                batchSize = numPending;
+                maxPendingLSN = -1L;
+                numPending = 0;
+            } finally {
+                flushLock.unlock();
+            }
+
+            RuntimeException error = null;
+            try {
+                logManager.flushToLSN(flushLSN);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+
+            flushLock.lock();
+            try {
+                if (error != null) {
+                    // let waiters retry the flush on their own threads
+                    running = false;
+                } else {
+                    ++numFlushes;
+                    numCommits += batchSize;
+                    largestBatch = Math.max(largestBatch, batchSize);
+                }
+                batchFlushed.signalAll();
+            } finally {
+                flushLock.unlock();
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread, after flushing any commits still pending.
+     */
+    @Override
+    public void close() {
+        flushLock.lock();
+        try {
+            running = false;
+            commitPending.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+        try {
+            flusherThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushLock.lock();
+        try {
+            batchFlushed.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of log flushes performed by the flusher thread
+     */
+    public long getNumFlushes() {
+        flushLock.lock();
+        try {
+            return numFlushes;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of commits made durable by the flusher thread
+     */
+    public long getNumCommits() {
+        flushLock.lock();
+        try {
+            return numCommits;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * @return largest number of commits flushed together
+     */
+    public int getLargestBatch() {
+        flushLock.lock();
+        try {
+            return largestBatch;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * @return average number of commits per flush, or 0 if nothing was flushed yet
+     */
+    public double getAverageBatchSize() {
+        flushLock.lock();
+        try {
+            return numFlushes == 0 ? 0 : (double) numCommits / numFlushes;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+}
@@ -0,0 +1,186 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * Archive of log pages removed from the log partition when the log is truncated
+ * (see LogManager#truncate), kept in a file of its own.
+ *
+ * The file is a sequence of entries, one per log page, in increasing page number
+ * order: the page number (8 bytes) followed by the page as it was in the log
+ * partition. Since log pages are never reused, archived records keep their LSNs,
+ * and iterating over the archive yields them in LSN order, ahead of the records
+ * still in the log. An entry torn by a crash while it was being appended is
+ * dropped when the archive is opened; its page is still in the log then, since
+ * pages are only freed after they are archived and forced.
+ */
+public class LogArchive implements Iterable<LogRecord>, AutoCloseable {
+    private static final int ENTRY_SIZE = 8 + DiskSpaceManager.PAGE_SIZE;
+
+    private final FileChannel channel;
+    // page number of the last archived page, or 0 if there is none
+    private long lastPageNum;
+    private long numEntries;
+
+    /**
+     * Opens the archive in the given file, creating it if it does not exist.
+     * @param fileName name of the archive file
+     */
+    public LogArchive(String fileName) {
+        try {
+            this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.numEntries = this.channel.size() / ENTRY_SIZE;
+            this.channel.truncate(this.numEntries * ENTRY_SIZE);
+            if (this.numEntries > 0) {
+                java.nio.ByteBuffer b = java.nio.ByteBuffer.allocate(8);
+                readFully(b, (this.numEntries - 1) * ENTRY_SIZE);
+                this.lastPageNum = b.getLong(0);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends a log page to the archive. Pages must be appended in increasing page
+     * number order; pages already archived (by a truncation interrupted by a crash)
+     * are skipped.
+     * @param pageNum page number of the log page
+     * @param page contents of the log page
+     */
+    public synchronized void append(long pageNum, byte[] page) {
+        if (pageNum <= this.lastPageNum) {
+            return;
+        }
+        java.nio.ByteBuffer entry = java.nio.ByteBuffer.allocate(ENTRY_SIZE);
+        entry.putLong(pageNum).put(page, 0, DiskSpaceManager.PAGE_SIZE).flip();
+        try {
+            long offset = this.numEntries * ENTRY_SIZE;
+            while (entry.hasRemaining()) {
+                offset += this.channel.write(entry, offset);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.lastPageNum = pageNum;
+        ++this.numEntries;
+    }
+
+    /**
+     * Forces the pages appended so far to disk.
+     */
+    public synchronized void force() {
+        try {
+            this.channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return number of log pages in the archive
+     */
+    public synchronized long getNumPages() {
+        return this.numEntries;
+    }
+
+    /**
+     * @return page number of the last archived log page, or 0 if the archive is empty
+     */
+    public synchronized long getLastPageNum() {
+        return this.lastPageNum;
+    }
+
+    /**
+     * Iterates over the records of the archived log pages, in LSN order. Pages
+     * appended after the iterator is created are not included.
+     * @return iterator over archived log records
+     */
+    @Override
+    public Iterator<LogRecord> iterator() {
+        return new ArchiveIterator(this.getNumPages());
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void readFully(java.nio.ByteBuffer buf, long offset) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = this.channel.read(buf, offset);
+            if (n < 0) {
+                throw new IOException("unexpected end of log archive");
+            }
+            offset += n;
+        }
+    }
+
+    private class ArchiveIterator implements Iterator<LogRecord> {
+        private final long numEntries;
+        private long nextEntry = 0;
+        // records of the current page not yet returned
+        private final List<LogRecord> records = new ArrayList<>();
+        private int nextRecord = 0;
+
+        private ArchiveIterator(long numEntries) {
+            this.numEntries = numEntries;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (nextRecord == records.size() && nextEntry < numEntries) {
+                loadEntry(nextEntry++);
+            }
+            return nextRecord < records.size();
+        }
+
+        @Override
+        public LogRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return records.get(nextRecord++);
+        }
+
+        private void loadEntry(long entry) {
+            java.nio.ByteBuffer b = java.nio.ByteBuffer.allocate(ENTRY_SIZE);
+            try {
+                readFully(b, entry * ENTRY_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            long pageNum = b.getLong(0);
+            Buffer page = ByteBuffer.wrap(b.array(), 8, DiskSpaceManager.PAGE_SIZE).slice();
+            records.clear();
+            nextRecord = 0;
+            while (page.position() < DiskSpaceManager.PAGE_SIZE) {
+                int index = page.position();
+                Optional<LogRecord> record = LogRecord.fromBytes(page);
+                if (!record.isPresent()) {
+                    break;
+                }
+                record.get().setLSN(LogManager.makeLSN(pageNum, index));
+                records.add(record.get());
+            }
+        }
+    }
+}
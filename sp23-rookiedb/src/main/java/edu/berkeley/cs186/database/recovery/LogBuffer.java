@@ -0,0 +1,296 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.Page;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory buffer that LogManager appends log records to, so that threads
+ * appending records do not serialize on the log tail.
+ *
+ * The buffer is a ring of page-sized slots, each holding the contents of one log
+ * page until the page is drained. A thread appending a record reserves space for
+ * it by advancing the tail of the log, a (page sequence number, offset) pair, with
+ * a compare-and-set: by the length of the record if it fits in the current page,
+ * and otherwise to the start of the next page, since records never span log
+ * pages. Moving the tail to the next page seals the current page. The thread then
+ * copies the record into the slot of its page, concurrently with other appending
+ * threads, and adds its length to the slot's count of copied bytes.
+ *
+ * A sealed page whose copied bytes add up to the bytes reserved in it is complete,
+ * and can be drained: copied to its log page in the buffer manager (which stays
+ * pinned while its contents are in the ring), and handed over to be flushed.
+ * Pages are drained in order, by one thread at a time: the thread that completes a
+ * page, or a thread that needs pages drained (to flush them, or to reuse their
+ * slot), which waits for copies still in progress. Log pages are allocated as the
+ * tail reaches them, in order, so a record's LSN (the page number and offset of
+ * its log page) is the same as if records were appended one at a time, and is
+ * known as soon as it has been reserved.
+ *
+ * Allocating a log page may evict a dirty data page, which flushes the log up
+ * to the page's LSN, and so drains log pages, while the page is being opened.
+ * This cannot deadlock: a drain only waits for pages that are already open,
+ * and a thread appending to an open page never waits for a page to be opened,
+ * so the pages it waits for are never those of the threads waiting in slotFor.
+ */
+class LogBuffer {
+    // Number of log pages the ring holds
+    static final int NUM_PAGES = 8;
+    // The tail holds the page sequence number above the offset
+    private static final int OFFSET_BITS = 16;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private final BufferManager bufferManager;
+    // called with each log page once it is drained, in log order
+    private final Consumer<Page> pageDrained;
+    private final Slot[] slots = new Slot[NUM_PAGES];
+    // page number of the first log page of the buffer
+    private final long firstPageNum;
+
+    // page sequence number and offset where the next record goes
+    private final AtomicLong tail = new AtomicLong(0);
+    // number of bytes reserved in each sealed page not yet drained, by sequence number
+    private final Map<Long, Integer> sealedPages = new ConcurrentHashMap<>();
+
+    // Held while deciding which thread opens the next page
+    private final ReentrantLock openLock = new ReentrantLock();
+    // signalled when a page is opened
+    private final Condition pageOpened = openLock.newCondition();
+    private boolean opening = false;
+    // sequence number of the next page to open
+    private volatile long nextOpen = 0;
+
+    // Held while draining pages
+    private final ReentrantLock drainLock = new ReentrantLock();
+    // sequence number of the next page to drain
+    private volatile long nextDrain = 0;
+
+    private static class Slot {
+        private final byte[] bytes = new byte[DiskSpaceManager.PAGE_SIZE];
+        // number of bytes copied into the page so far
+        private final AtomicInteger copied = new AtomicInteger(0);
+        // log page (pinned) the slot holds the contents of, and its page number
+        private Page page;
+        private volatile long pageNum = -1;
+        // sequence number of the page, or -1 if the slot is free
+        private volatile long seq = -1;
+    }
+
+    /**
+     * Creates a log buffer, allocating its first log page.
+     * @param bufferManager buffer manager to allocate log pages through
+     * @param pageDrained called with each log page once it is drained
+     */
+    LogBuffer(BufferManager bufferManager, Consumer<Page> pageDrained) {
+        this.bufferManager = bufferManager;
+        this.pageDrained = pageDrained;
+        for (int i = 0; i < NUM_PAGES; ++i) {
+            this.slots[i] = new Slot();
+        }
+        this.firstPageNum = slotFor(0).pageNum;
+    }
+
+    /**
+     * @return page number of the first log page of the buffer
+     */
+    long getFirstPageNum() {
+        return firstPageNum;
+    }
+
+    /**
+     * Appends a log record to the buffer.
+     * @param bytes the record, at most a page long
+     * @return LSN of the record
+     */
+    long append(byte[] bytes) {
+        int length = bytes.length;
+        long prev;
+        long start;
+        do {
+            prev = tail.get();
+            int offset = (int) (prev & OFFSET_MASK);
+            start = offset + length <= DiskSpaceManager.PAGE_SIZE ? prev : ((prev >>> OFFSET_BITS) + 1) << OFFSET_BITS;
+        } while (!tail.compareAndSet(prev, start + length));
+        boolean sealed = start != prev;
+        if (sealed) {
+            sealedPages.put(prev >>> OFFSET_BITS, (int) (prev & OFFSET_MASK));
+        }
+
+        long seq = start >>> OFFSET_BITS;
+        int offset = (int) (start & OFFSET_MASK);
+        Slot slot = slotFor(seq);
+        System.arraycopy(bytes, 0, slot.bytes, offset, length);
+        long LSN = LogManager.makeLSN(slot.pageNum, offset);
+        slot.copied.addAndGet(length);
+        if (sealed || sealedPages.containsKey(seq)) {
+            // this may have completed a page
+            tryDrain();
+        }
+        return LSN;
+    }
+
+    /**
+     * Copies a log page that is still in the buffer.
+     * @param pageNum page number of the log page
+     * @return the contents of the page, or null if the page is not in the buffer
+     */
+    byte[] copyPage(long pageNum) {
+        for (Slot slot : slots) {
+            long seq = slot.seq;
+            if (seq >= 0 && slot.pageNum == pageNum) {
+                byte[] contents = slot.bytes.clone();
+                if (slot.seq == seq) {
+                    return contents;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drains every log page up to and including pageNum, waiting for records
+     * being copied into them. The page with the tail of the log is sealed if it
+     * is one of them, so that records appended from now on go to a later page.
+     * @param pageNum page number of the last log page to drain
+     */
+    void drainThrough(long pageNum) {
+        drainLock.lock();
+        try {
+            drain(Long.MAX_VALUE, pageNum, true);
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Drains the pages that are complete, if no other thread is draining.
+     */
+    private void tryDrain() {
+        while (drainLock.tryLock()) {
+            try {
+                drain(Long.MAX_VALUE, Long.MAX_VALUE, false);
+            } finally {
+                drainLock.unlock();
+            }
+            // the next page may have been completed by a thread that found the lock held
+            if (!isComplete(nextDrain)) {
+                return;
+            }
+        }
+    }
+
+    private boolean isComplete(long seq) {
+        Integer limit = sealedPages.get(seq);
+        Slot slot = slots[(int) (seq % NUM_PAGES)];
+        return limit != null && slot.seq == seq && slot.copied.get() == limit;
+    }
+
+    /**
+     * Drains pages in order, up to page sequence number lastSeq and page number
+     * lastPageNum. Must hold drainLock.
+     * @param wait whether to seal and wait for pages that are not complete, rather
+     *             than stopping at them
+     */
+    private void drain(long lastSeq, long lastPageNum, boolean wait) {
+        while (nextDrain <= lastSeq && nextDrain < nextOpen) {
+            long seq = nextDrain;
+            Slot slot = slots[(int) (seq % NUM_PAGES)];
+            if (slot.pageNum > lastPageNum) {
+                return;
+            }
+            Integer limit = sealedPages.get(seq);
+            if (limit == null || slot.copied.get() < limit) {
+                if (!wait) {
+                    return;
+                }
+                long cur = tail.get();
+                if (limit == null && (cur >>> OFFSET_BITS) == seq
+                        && tail.compareAndSet(cur, (seq + 1) << OFFSET_BITS)) {
+                    sealedPages.put(seq, (int) (cur & OFFSET_MASK));
+                } else {
+                    // sealed by an appending thread that has yet to record it, or
+                    // records are still being copied
+                    Thread.yield();
+                }
+                continue;
+            }
+
+            Page page = slot.page;
+            page.getBuffer().put(slot.bytes, 0, limit);
+            slot.page = null;
+            slot.seq = -1;
+            Arrays.fill(slot.bytes, 0, limit, (byte) 0);
+            slot.copied.set(0);
+            sealedPages.remove(seq);
+            nextDrain = seq + 1;
+            page.unpin();
+            pageDrained.accept(page);
+        }
+    }
+
+    /**
+     * Returns the slot of a page, opening the page (and any before it) if needed.
+     * Pages are opened by one thread at a time, without holding openLock, so that
+     * a thread waiting for a page that is already open never waits on an opener.
+     */
+    private Slot slotFor(long seq) {
+        Slot slot = slots[(int) (seq % NUM_PAGES)];
+        if (slot.seq == seq) {
+            return slot;
+        }
+        openLock.lock();
+        try {
+            while (nextOpen <= seq) {
+                if (opening) {
+                    pageOpened.awaitUninterruptibly();
+                    continue;
+                }
+                opening = true;
+                openLock.unlock();
+                try {
+                    open(nextOpen);
+                } finally {
+                    openLock.lock();
+                    opening = false;
+                    pageOpened.signalAll();
+                }
+            }
+        } finally {
+            openLock.unlock();
+        }
+        return slot;
+    }
+
+    /**
+     * Allocates the log page with sequence number seq and assigns it its slot,
+     * once the page in the slot has been drained. Drains, from here or from a log
+     * flush while the page is allocated, only wait for open pages (see above).
+     */
+    private void open(long seq) {
+        if (nextDrain <= seq - NUM_PAGES) {
+            drainLock.lock();
+            try {
+                drain(seq - NUM_PAGES, Long.MAX_VALUE, true);
+            } finally {
+                drainLock.unlock();
+            }
+        }
+        Page page = bufferManager.fetchNewPage(new DummyLockContext("_dummyLogPageRecord"),
+                                               LogManager.LOG_PARTITION);
+        Slot slot = slots[(int) (seq % NUM_PAGES)];
+        slot.page = page;
+        slot.pageNum = page.getPageNum();
+        slot.seq = seq;
+        nextOpen = seq + 1;
+    }
+}
@@ -1,6 +1,7 @@
 package edu.berkeley.cs186.database.recovery;
 
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterable;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.iterator.ConcatBacktrackingIterator;
@@ -13,10 +14,13 @@ import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The LogManager is responsible for interfacing with the log itself. The log is stored
- * on its own partition (partition 0). Since log pages are never deleted, the page number
+ * on its own partition (partition 0). Since log pages are never reused, the page number
  * is always increasing, so we assign LSNs as follow:
  * - page 1: [ LSN 10000, LSN 10040, LSN 10080, ...]
  * - page 2: [ LSN 20000, LSN 20030, LSN 20055, ...]
@@ -33,27 +37,57 @@ import java.util.*;
  * manager when pages are fetched and evicted (fetchPageHook, fetchNewPageHook, and pageEvictHook).
  * These must be called from the buffer manager to ensure that pageLSN is up to date, and
  * that flushedLSN >= any pageLSN on disk.
+ *
+ * Records are appended to a LogBuffer rather than straight to log pages, so that
+ * appending threads only contend on reserving space (see LogBuffer). Pages are
+ * drained from the buffer to the buffer manager before they are flushed or
+ * scanned, and records still in the buffer are fetched from it.
+ *
+ * Commits flush the log through flushCommit, which in group commit mode hands the
+ * flush to a GroupCommitFlusher so that concurrent commits share a single flush.
+ *
+ * The log can be truncated (see truncate): the pages before a given LSN, other than
+ * page 0, are freed (and optionally copied to a LogArchive first). The log partition
+ * never reallocates freed pages, so LSNs keep increasing, and scans of the log skip
+ * from page 0 to the first page that was not truncated.
  */
 public class LogManager implements Iterable<LogRecord>, AutoCloseable {
     private BufferManager bufferManager;
+    // Log pages drained from the log buffer but not flushed yet, in order
     private Deque<Page> unflushedLogTail;
-    private Page logTail;
-    private Buffer logTailBuffer;
-    private boolean logTailPinned = false;
-    private long flushedLSN;
+    private LogBuffer logBuffer;
+    private volatile long flushedLSN;
+    // Background flusher for commits, or null if group commit is disabled
+    private volatile GroupCommitFlusher groupCommitFlusher;
+    // Disk space manager the log partition is in, to free truncated pages; null
+    // if the log is never truncated
+    private DiskSpaceManager diskSpaceManager;
+    // First log page after page 0 that has not been truncated
+    private volatile long firstLogPage;
+    private final ReentrantLock truncateLock = new ReentrantLock();
+
+    // Statistics
+    private final AtomicLong numBytesAppended = new AtomicLong(0);
 
     public static final int LOG_PARTITION = 0;
 
     LogManager(BufferManager bufferManager) {
-        this.bufferManager = bufferManager;
-        this.unflushedLogTail = new ArrayDeque<>();
-
-        this.logTail = bufferManager.fetchNewPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
-        this.unflushedLogTail.add(this.logTail);
-        this.logTailBuffer = this.logTail.getBuffer();
-        this.logTail.unpin();
+        this(bufferManager, null);
+    }
 
-        this.flushedLSN = maxLSN(this.logTail.getPageNum() - 1L);
+    LogManager(BufferManager bufferManager, DiskSpaceManager diskSpaceManager) {
+        this.bufferManager = bufferManager;
+        this.diskSpaceManager = diskSpaceManager;
+        this.unflushedLogTail = new ConcurrentLinkedDeque<>();
+        this.logBuffer = new LogBuffer(bufferManager, this.unflushedLogTail::add);
+
+        long tailPage = this.logBuffer.getFirstPageNum();
+        this.flushedLSN = maxLSN(tailPage - 1L);
+        if (diskSpaceManager != null && tailPage > 1) {
+            this.firstLogPage = diskSpaceManager.firstAllocatedPage(1, tailPage);
+        } else {
+            this.firstLogPage = 1;
+        }
     }
 
     /**
@@ -61,6 +95,8 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      * @param record log record to replace first record with
      */
     public synchronized void rewriteMasterRecord(MasterLogRecord record) {
+        // drain the first page, if the log was just created
+        logBuffer.drainThrough(0);
         Page firstPage = bufferManager.fetchPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
         try {
             firstPage.getBuffer().put(record.toBytes());
@@ -75,33 +111,12 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      * @param record log record to append to the log
      * @return LSN of new log record
      */
-    public synchronized long appendToLog(LogRecord record) {
+    public long appendToLog(LogRecord record) {
         byte[] bytes = record.toBytes();
-        // loop in case accessing log tail requires flushing the log in order to evict dirty page to load log tail
-        do {
-            if (logTailBuffer == null || bytes.length > DiskSpaceManager.PAGE_SIZE - logTailBuffer.position()) {
-                logTailPinned = true;
-                logTail = bufferManager.fetchNewPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
-                unflushedLogTail.add(logTail);
-                logTailBuffer = logTail.getBuffer();
-            } else {
-                logTailPinned = true;
-                logTail.pin();
-                if (logTailBuffer == null) {
-                    logTail.unpin();
-                }
-            }
-        } while (logTailBuffer == null);
-        try {
-            int pos = logTailBuffer.position();
-            logTailBuffer.put(bytes);
-            long LSN = makeLSN(unflushedLogTail.getLast().getPageNum(), pos);
-            record.LSN = LSN;
-            return LSN;
-        } finally {
-            logTail.unpin();
-            logTailPinned = false;
-        }
+        long LSN = logBuffer.append(bytes);
+        numBytesAppended.addAndGet(bytes.length);
+        record.LSN = LSN;
+        return LSN;
     }
 
     /**
@@ -110,6 +125,14 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      * @return log record with the specified LSN
      */
     public LogRecord fetchLogRecord(long LSN) {
+        byte[] buffered = logBuffer.copyPage(getLSNPage(LSN));
+        if (buffered != null) {
+            Buffer buf = ByteBuffer.wrap(buffered);
+            buf.position(getLSNIndex(LSN));
+            Optional<LogRecord> record = LogRecord.fromBytes(buf);
+            record.ifPresent((LogRecord e) -> e.setLSN(LSN));
+            return record.orElse(null);
+        }
         try {
             Page logPage = bufferManager.fetchPage(new DummyLockContext("_dummyLogPageRecord"), getLSNPage(LSN));
             try {
@@ -133,8 +156,9 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      * @param LSN LSN up to which the log should be flushed
      */
     public synchronized void flushToLSN(long LSN) {
-        Iterator<Page> iter = unflushedLogTail.iterator();
         long pageNum = getLSNPage(LSN);
+        logBuffer.drainThrough(pageNum);
+        Iterator<Page> iter = unflushedLogTail.iterator();
         while (iter.hasNext()) {
             Page page = iter.next();
             if (page.getPageNum() > pageNum) {
@@ -144,14 +168,114 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
             iter.remove();
         }
         flushedLSN = Math.max(flushedLSN, maxLSN(pageNum));
-        if (unflushedLogTail.size() == 0) {
-            if (!logTailPinned) {
-                logTail = null;
+    }
+
+    /**
+     * Flushes the log to at least the specified commit record. In group commit
+     * mode the flush is handed off to the background flusher, which may batch
+     * it with other commits; otherwise this is the same as flushToLSN. Either
+     * way, the log is flushed up to LSN when this returns.
+     * @param LSN LSN of the commit record
+     */
+    public void flushCommit(long LSN) {
+        GroupCommitFlusher flusher = this.groupCommitFlusher;
+        if (flusher == null) {
+            flushToLSN(LSN);
+        } else {
+            flusher.awaitFlush(LSN);
+        }
+    }
+
+    /**
+     * Turns on group commit: commits are flushed by a background thread, once for
+     * every batch of up to maxBatchSize commits, waiting at most flushIntervalMillis
+     * for a batch to fill up. Replaces any previous group commit configuration.
+     * @param flushIntervalMillis maximum time (in ms) a commit waits for its batch
+     * @param maxBatchSize number of pending commits that triggers a flush immediately
+     */
+    public void enableGroupCommit(long flushIntervalMillis, int maxBatchSize) {
+        disableGroupCommit();
+        this.groupCommitFlusher = new GroupCommitFlusher(this, flushIntervalMillis, maxBatchSize);
+    }
+
+    /**
+     * Turns off group commit, flushing any commits waiting on the background flusher.
+     */
+    public void disableGroupCommit() {
+        GroupCommitFlusher flusher = this.groupCommitFlusher;
+        this.groupCommitFlusher = null;
+        if (flusher != null) {
+            // Must not hold the log manager's monitor here: the flusher thread
+            // needs it to finish its last flush.
+            flusher.close();
+        }
+    }
+
+    /**
+     * @return the group commit flusher (with its flush/batch counters), or null
+     * if group commit is disabled
+     */
+    public GroupCommitFlusher getGroupCommitFlusher() {
+        return groupCommitFlusher;
+    }
+
+    /**
+     * Truncates the log before LSN: frees the log pages before the one holding LSN,
+     * except page 0 (which holds the master record), after copying them to archive if
+     * one is given. Only pages that have been flushed are truncated. Records before
+     * LSN (other than those on page 0) can no longer be fetched, and scans of the log
+     * skip them; the caller must make sure that recovery does not need them.
+     * @param LSN first LSN that must stay in the log
+     * @param archive archive to copy truncated pages to, or null
+     * @return number of log pages truncated
+     */
+    public long truncate(long LSN, LogArchive archive) {
+        if (diskSpaceManager == null) {
+            throw new IllegalStateException("log manager cannot free log pages");
+        }
+        truncateLock.lock();
+        try {
+            long fromPage = firstLogPage;
+            long toPage = Math.min(getLSNPage(LSN), getLSNPage(flushedLSN));
+            if (toPage <= fromPage) {
+                return 0;
             }
-            logTailBuffer = null;
+            if (archive != null) {
+                byte[] page = new byte[DiskSpaceManager.PAGE_SIZE];
+                for (long pageNum = fromPage; pageNum < toPage; ++pageNum) {
+                    diskSpaceManager.readPage(pageNum, page);
+                    archive.append(pageNum, page);
+                }
+                archive.force();
+            }
+            // scans started from here on skip the truncated pages
+            firstLogPage = toPage;
+            for (long pageNum = fromPage; pageNum < toPage; ++pageNum) {
+                bufferManager.evict(pageNum);
+            }
+            diskSpaceManager.freePages(fromPage, toPage);
+            return toPage - fromPage;
+        } finally {
+            truncateLock.unlock();
         }
     }
 
+    /**
+     * @return first LSN that may be in the log after page 0: LSNs before it were
+     * truncated
+     */
+    public long getFirstLSN() {
+        return makeLSN(firstLogPage, 0);
+    }
+
+    /**
+     * @return number of bytes of log records appended so far (not counting the
+     * master record rewrites, or unused space at the end of log pages)
+     */
+    public long getNumBytesAppended() {
+        return numBytesAppended.get();
+    }
+
     /**
      * @return flushedLSN
      */
@@ -215,12 +339,24 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
     }
 
     @Override
-    public synchronized void close() {
-        if (!this.unflushedLogTail.isEmpty()) {
-            this.flushToLSN(maxLSN(unflushedLogTail.getLast().getPageNum()));
+    public void close() {
+        disableGroupCommit();
+        synchronized (this) {
+            this.logBuffer.drainThrough(Long.MAX_VALUE);
+            if (!this.unflushedLogTail.isEmpty()) {
+                this.flushToLSN(maxLSN(unflushedLogTail.getLast().getPageNum()));
+            }
         }
     }
 
+    /**
+     * Fetches a log page for scanning, draining it from the log buffer first.
+     */
+    private Page fetchLogPage(long pageNum) {
+        logBuffer.drainThrough(pageNum);
+        return bufferManager.fetchPage(new DummyLockContext(), pageNum);
+    }
+
     private class LogPageIterator extends IndexBacktrackingIterator<LogRecord> {
         private Page logPage;
         private int startIndex;
@@ -277,9 +413,15 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
 
         private LogPagesIterator(long startLSN) {
             nextIndex = getLSNPage(startLSN);
+            int startIndex = getLSNIndex(startLSN);
+            if (nextIndex > 0 && nextIndex < firstLogPage) {
+                // start at the first record that was not truncated
+                nextIndex = firstLogPage;
+                startIndex = 0;
+            }
             try {
-                Page page = bufferManager.fetchPage(new DummyLockContext(), nextIndex);
-                nextIter = new LogPageIterator(page, getLSNIndex(startLSN));
+                Page page = fetchLogPage(nextIndex);
+                nextIter = new LogPageIterator(page, startIndex);
             } catch (PageException e) {
                 nextIter = null;
             }
@@ -313,9 +455,9 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
 
                 nextIter = null;
                 do {
-                    ++nextIndex;
+                    nextIndex = Math.max(nextIndex + 1, firstLogPage);
                     try {
-                        Page page = bufferManager.fetchPage(new DummyLockContext(), nextIndex);
+                        Page page = fetchLogPage(nextIndex);
                         nextIter = new LogPageIterator(page, 0);
                     } catch (PageException e) {
                         break;
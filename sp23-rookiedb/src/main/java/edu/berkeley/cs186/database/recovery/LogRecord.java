@@ -217,6 +217,10 @@ public abstract class LogRecord {
             return UndoAllocPartLogRecord.fromBytes(buf);
         case UNDO_FREE_PART:
             return UndoFreePartLogRecord.fromBytes(buf);
+        case UPDATE_PAGE_DELTA:
+            return UpdatePageDeltaLogRecord.fromBytes(buf);
+        case UNDO_UPDATE_PAGE_DELTA:
+            return UndoUpdatePageDeltaLogRecord.fromBytes(buf);
         default:
             throw new UnsupportedOperationException("bad log type");
         }
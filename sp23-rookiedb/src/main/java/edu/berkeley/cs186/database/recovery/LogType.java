@@ -33,7 +33,11 @@ public enum LogType {
     // compensation log record for undoing a partition alloc
     UNDO_ALLOC_PART,
     // compensation log record for undoing a partition free
-    UNDO_FREE_PART;
+    UNDO_FREE_PART,
+    // log record for updating a page, storing the change as a delta
+    UPDATE_PAGE_DELTA,
+    // compensation log record for undoing a page update stored as a delta
+    UNDO_UPDATE_PAGE_DELTA;
 
     private static LogType[] values = LogType.values();
 
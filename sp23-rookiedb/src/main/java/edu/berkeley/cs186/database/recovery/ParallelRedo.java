@@ -0,0 +1,194 @@
+package edu.berkeley.cs186.database.recovery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Worker threads used by ARIESRecoveryManager#restartRedo in parallel redo mode.
+ *
+ * The thread scanning the log hands page-level records to the workers with
+ * dispatch. Every record for a page goes to the same worker, and each worker
+ * redoes its records in the order they were dispatched, so the changes to any
+ * one page are redone in LSN order, while changes to different pages are redone
+ * concurrently. Records that cannot be reordered against page-level records
+ * (allocations, frees, partition operations) are redone by the scanning thread
+ * after a call to barrier, which waits until every record dispatched so far has
+ * been redone.
+ */
+class ParallelRedo implements AutoCloseable {
+    // Records each worker may have waiting before dispatch blocks
+    private static final int QUEUE_CAPACITY = 1024;
+    // Tells a worker to stop
+    private static final Runnable STOP = () -> {};
+
+    private final Consumer<LogRecord> redo;
+    private final List<BlockingQueue<Runnable>> queues;
+    private final Thread[] threads;
+
+    // number of records dispatched but not yet redone
+    private final AtomicLong pending = new AtomicLong();
+    private final ReentrantLock drainLock = new ReentrantLock();
+    // signalled when pending drops to 0
+    private final Condition drained = drainLock.newCondition();
+    // first exception thrown by a worker, rethrown by the next barrier
+    private volatile Throwable failure;
+
+    // Statistics
+    private long numDispatched = 0;
+    private long numBarriers = 0;
+
+    /**
+     * Starts numThreads workers.
+     *
+     * @param numThreads number of worker threads
+     * @param redo redoes a page-level record; called from the worker threads
+     */
+    ParallelRedo(int numThreads, Consumer<LogRecord> redo) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("need at least one redo thread");
+        }
+        this.redo = redo;
+        this.queues = new ArrayList<>(numThreads);
+        this.threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; ++i) {
+            BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+            this.queues.add(queue);
+            this.threads[i] = new Thread(() -> run(queue), "rookiedb-redo-" + i);
+            this.threads[i].setDaemon(true);
+            this.threads[i].start();
+        }
+    }
+
+    /**
+     * Queues a page-level record to be redone by the worker for its page.
+     * Blocks if that worker is too far behind.
+     *
+     * @param pageNum page the record modifies
+     * @param record record to redo
+     */
+    void dispatch(long pageNum, LogRecord record) {
+        int worker = Math.floorMod(Long.hashCode(pageNum), queues.size());
+        pending.incrementAndGet();
+        ++numDispatched;
+        putUninterruptibly(queues.get(worker), () -> redo.accept(record));
+    }
+
+    /**
+     * Waits until every record dispatched so far has been redone.
+     *
+     * @throws RuntimeException (or Error) thrown by a worker while redoing a record
+     */
+    void barrier() {
+        if (pending.get() > 0) {
+            ++numBarriers;
+            drainLock.lock();
+            try {
+                while (pending.get() > 0) {
+                    drained.awaitUninterruptibly();
+                }
+            } finally {
+                drainLock.unlock();
+            }
+        }
+        Throwable t = failure;
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * @return number of records redone by the workers
+     */
+    long getNumDispatched() {
+        return numDispatched;
+    }
+
+    /**
+     * @return number of barriers that had to wait for the workers
+     */
+    long getNumBarriers() {
+        return numBarriers;
+    }
+
+    /**
+     * Stops the workers after they finish the records already dispatched.
+     */
+    @Override
+    public void close() {
+        for (BlockingQueue<Runnable> queue : queues) {
+            putUninterruptibly(queue, STOP);
+        }
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(BlockingQueue<Runnable> queue) {
+        while (true) {
+            Runnable task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (task == STOP) {
+                return;
+            }
+            try {
+                // once a record fails, the rest are skipped: restart fails anyway
+                if (failure == null) {
+                    task.run();
+                }
+            } catch (Throwable t) {
+                if (failure == null) {
+                    failure = t;
+                }
+            } finally {
+                if (pending.decrementAndGet() == 0) {
+                    drainLock.lock();
+                    try {
+                        drained.signalAll();
+                    } finally {
+                        drainLock.unlock();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void putUninterruptibly(BlockingQueue<Runnable> queue, Runnable task) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(task);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
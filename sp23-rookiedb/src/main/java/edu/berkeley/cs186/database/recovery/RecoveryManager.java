@@ -65,6 +65,17 @@ public interface RecoveryManager extends AutoCloseable {
      */
     void diskIOHook(long pageNum);
 
+    /**
+     * Called when a page read from disk does not match its checksum, to rebuild
+     * the page if possible. The disk space manager writes the rebuilt page out in
+     * place of the corrupt one.
+     *
+     * @param pageNum page number of the corrupt page
+     * @param contents page-sized buffer to be filled with the rebuilt page
+     * @return whether the page was rebuilt
+     */
+    boolean repairPage(long pageNum, byte[] contents);
+
     /**
      * Called when a write to a page happens.
      *
@@ -81,6 +92,30 @@ public interface RecoveryManager extends AutoCloseable {
     long logPageWrite(long transNum, long pageNum, short pageOffset, byte[] before,
                       byte[] after);
 
+    /**
+     * Called when a write changing several ranges of a page happens, instead of
+     * calling logPageWrite for each range. By default, logs each range with
+     * logPageWrite.
+     *
+     * This method is never called on a log page. Each range's before and after
+     * arrays must be the same length, and at most half a page long.
+     *
+     * @param transNum transaction performing the write
+     * @param pageNum page number of page being written
+     * @param pageOffsets offset into page of each changed range, in increasing order
+     * @param befores bytes of each range before the write
+     * @param afters bytes of each range after the write
+     * @return LSN of last record written to log
+     */
+    default long logPageWrites(long transNum, long pageNum, short[] pageOffsets, byte[][] befores,
+                               byte[][] afters) {
+        long lastLSN = -1;
+        for (int i = 0; i < pageOffsets.length; ++i) {
+            lastLSN = logPageWrite(transNum, pageNum, pageOffsets[i], befores[i], afters[i]);
+        }
+        return lastLSN;
+    }
+
     /**
      * Called when a new partition is allocated. A log flush is necessary,
      * since changes are visible on disk immediately after this returns.
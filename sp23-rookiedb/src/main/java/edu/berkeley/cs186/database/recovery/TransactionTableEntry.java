@@ -12,6 +12,9 @@ class TransactionTableEntry {
     Transaction transaction;
     // lastLSN of transaction, or 0 if no log entries for the transaction exist.
     long lastLSN = 0;
+    // LSN of the transaction's first log entry, Long.MAX_VALUE if none exist yet,
+    // or 0 if unknown. The log is not truncated past it while the transaction runs.
+    volatile long firstLSN = Long.MAX_VALUE;
     // map of transaction's savepoints
     private Map<String, Long> savepoints = new HashMap<>();
 
@@ -19,6 +22,17 @@ class TransactionTableEntry {
         this.transaction = transaction;
     }
 
+    /**
+     * Records that a log entry was appended for the transaction.
+     * @param LSN LSN of the log entry
+     */
+    void logged(long LSN) {
+        if (firstLSN == Long.MAX_VALUE) {
+            firstLSN = LSN;
+        }
+        lastLSN = LSN;
+    }
+
     void addSavepoint(String name) {
         savepoints.put(name, lastLSN);
     }
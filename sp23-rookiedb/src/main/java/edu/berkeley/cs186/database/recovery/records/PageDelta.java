@@ -0,0 +1,241 @@
+package edu.berkeley.cs186.database.recovery.records;
+
+import edu.berkeley.cs186.database.common.Buffer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The change made by a page write, as the XOR of the bytes of the page before
+ * and after the write, for compact update records (UpdatePageDeltaLogRecord and
+ * its CLR, UndoUpdatePageDeltaLogRecord). Applying the delta to the page as it
+ * was before the write redoes the write, and applying it again undoes it, so a
+ * delta stores each changed byte once, where an UpdatePageLogRecord stores it
+ * twice. Unchanged bytes are left out, except for gaps of up to MAX_GAP bytes
+ * between changed bytes, which cost less to keep than to start a new run.
+ * <p>
+ * A delta is only correct when applied to the bytes it was computed from (or,
+ * to undo it, to the bytes it produced). ARIES guarantees this: restart redo
+ * repeats history, applying a page's changes in LSN order from its pageLSN on,
+ * and a transaction's changes are undone in reverse order while it still holds
+ * its locks.
+ */
+public class PageDelta {
+    // Longest run of unchanged bytes kept inside a run of changes: starting a new
+    // run instead costs 4 bytes (offset and length)
+    private static final int MAX_GAP = 4;
+
+    // offset (in the page, excluding reserved space) of each run of changes
+    private final short[] offsets;
+    // XOR of the before and after bytes of each run
+    private final byte[][] runs;
+
+    public PageDelta(short[] offsets, byte[][] runs) {
+        if (offsets.length != runs.length) {
+            throw new IllegalArgumentException("page delta needs one offset per run");
+        }
+        this.offsets = offsets;
+        this.runs = runs;
+    }
+
+    /**
+     * Computes the delta of a page write.
+     * @param pageOffsets offset of each written range, in increasing order
+     * @param befores bytes of each range before the write
+     * @param afters bytes of each range after the write
+     * @return delta of the write
+     */
+    public static PageDelta of(short[] pageOffsets, byte[][] befores, byte[][] afters) {
+        List<Short> offsets = new ArrayList<>();
+        List<byte[]> runs = new ArrayList<>();
+        ByteArrayOutputStream run = new ByteArrayOutputStream();
+        int runStart = -1;
+        int runEnd = -1;
+        for (int r = 0; r < pageOffsets.length; ++r) {
+            if (befores[r].length != afters[r].length) {
+                throw new IllegalArgumentException("before and after images differ in length");
+            }
+            for (int i = 0; i < befores[r].length; ++i) {
+                int x = befores[r][i] ^ afters[r][i];
+                if (x == 0) {
+                    continue;
+                }
+                int pos = pageOffsets[r] + i;
+                if (runStart >= 0 && pos - runEnd > MAX_GAP) {
+                    offsets.add((short) runStart);
+                    runs.add(run.toByteArray());
+                    run.reset();
+                    runStart = -1;
+                }
+                if (runStart < 0) {
+                    runStart = pos;
+                } else {
+                    // unchanged bytes in between
+                    for (int gap = runEnd; gap < pos; ++gap) {
+                        run.write(0);
+                    }
+                }
+                run.write(x);
+                runEnd = pos + 1;
+            }
+        }
+        if (runStart >= 0) {
+            offsets.add((short) runStart);
+            runs.add(run.toByteArray());
+        }
+        short[] offsetArray = new short[offsets.size()];
+        for (int i = 0; i < offsetArray.length; ++i) {
+            offsetArray[i] = offsets.get(i);
+        }
+        return new PageDelta(offsetArray, runs.toArray(new byte[0][]));
+    }
+
+    /**
+     * Splits the delta into deltas that each take up at most maxSize bytes
+     * serialized, splitting runs if needed. Applying them in order is the same
+     * as applying this delta.
+     * @param maxSize most bytes each delta may take up serialized (at least 7)
+     * @return the deltas, just this one if it is small enough
+     */
+    public List<PageDelta> split(int maxSize) {
+        List<PageDelta> deltas = new ArrayList<>();
+        if (this.size() <= maxSize) {
+            deltas.add(this);
+            return deltas;
+        }
+        List<Short> offsets = new ArrayList<>();
+        List<byte[]> runs = new ArrayList<>();
+        int size = 2;
+        for (int r = 0; r < this.runs.length; ++r) {
+            int start = 0;
+            while (start < this.runs[r].length) {
+                if (maxSize - size < 5) {
+                    deltas.add(toDelta(offsets, runs));
+                    offsets.clear();
+                    runs.clear();
+                    size = 2;
+                }
+                int length = Math.min(this.runs[r].length - start, maxSize - size - 4);
+                offsets.add((short) (this.offsets[r] + start));
+                runs.add(Arrays.copyOfRange(this.runs[r], start, start + length));
+                size += 4 + length;
+                start += length;
+            }
+        }
+        if (!runs.isEmpty()) {
+            deltas.add(toDelta(offsets, runs));
+        }
+        return deltas;
+    }
+
+    private static PageDelta toDelta(List<Short> offsets, List<byte[]> runs) {
+        short[] offsetArray = new short[offsets.size()];
+        for (int i = 0; i < offsetArray.length; ++i) {
+            offsetArray[i] = offsets.get(i);
+        }
+        return new PageDelta(offsetArray, runs.toArray(new byte[0][]));
+    }
+
+    /**
+     * @return whether the delta changes nothing
+     */
+    public boolean isEmpty() {
+        return runs.length == 0;
+    }
+
+    /**
+     * XORs the delta into a page.
+     * @param page buffer of the page, excluding reserved space (as returned by
+     *             Page#getBuffer)
+     */
+    public void apply(Buffer page) {
+        for (int r = 0; r < runs.length; ++r) {
+            byte[] bytes = new byte[runs[r].length];
+            page.position(offsets[r]).get(bytes);
+            for (int i = 0; i < bytes.length; ++i) {
+                bytes[i] ^= runs[r][i];
+            }
+            page.position(offsets[r]).put(bytes);
+        }
+    }
+
+    /**
+     * XORs the delta into a page.
+     * @param page the page
+     * @param base index in page of offset 0 of the delta
+     */
+    public void apply(byte[] page, int base) {
+        for (int r = 0; r < runs.length; ++r) {
+            for (int i = 0; i < runs[r].length; ++i) {
+                page[base + offsets[r] + i] ^= runs[r][i];
+            }
+        }
+    }
+
+    /**
+     * @return number of bytes the delta takes up serialized
+     */
+    public int size() {
+        int size = 2;
+        for (byte[] run : runs) {
+            size += 4 + run.length;
+        }
+        return size;
+    }
+
+    /**
+     * Serializes the delta: the number of runs (2 bytes), then for each run, its
+     * offset (2 bytes), length (2 bytes), and bytes.
+     * @param buf buffer to write the delta to
+     */
+    public void writeTo(Buffer buf) {
+        buf.putShort((short) runs.length);
+        for (int r = 0; r < runs.length; ++r) {
+            buf.putShort(offsets[r]).putShort((short) runs[r].length).put(runs[r]);
+        }
+    }
+
+    /**
+     * Reads a delta serialized by writeTo.
+     * @param buf buffer to read the delta from
+     * @return the delta
+     */
+    public static PageDelta readFrom(Buffer buf) {
+        int numRuns = buf.getShort();
+        short[] offsets = new short[numRuns];
+        byte[][] runs = new byte[numRuns][];
+        for (int r = 0; r < numRuns; ++r) {
+            offsets[r] = buf.getShort();
+            runs[r] = new byte[buf.getShort()];
+            buf.get(runs[r]);
+        }
+        return new PageDelta(offsets, runs);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (o == null || getClass() != o.getClass()) { return false; }
+        PageDelta that = (PageDelta) o;
+        return Arrays.equals(offsets, that.offsets) && Arrays.deepEquals(runs, that.runs);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(offsets) + Arrays.deepHashCode(runs);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("PageDelta{");
+        for (int r = 0; r < runs.length; ++r) {
+            if (r > 0) {
+                sb.append(", ");
+            }
+            sb.append(offsets[r]).append('=').append(Arrays.toString(runs[r]));
+        }
+        return sb.append('}').toString();
+    }
+}
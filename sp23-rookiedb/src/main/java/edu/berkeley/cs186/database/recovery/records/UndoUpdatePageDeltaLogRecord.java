@@ -0,0 +1,127 @@
+package edu.berkeley.cs186.database.recovery.records;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.LogRecord;
+import edu.berkeley.cs186.database.recovery.LogType;
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * CLR for UpdatePageDeltaLogRecord. Since a delta is an XOR, undoing the change
+ * applies the same delta again.
+ */
+public class UndoUpdatePageDeltaLogRecord extends LogRecord {
+    private long transNum;
+    private long pageNum;
+    private long prevLSN;
+    private long undoNextLSN;
+    public PageDelta delta;
+
+    public UndoUpdatePageDeltaLogRecord(long transNum, long pageNum, long prevLSN, long undoNextLSN,
+                                        PageDelta delta) {
+        super(LogType.UNDO_UPDATE_PAGE_DELTA);
+        this.transNum = transNum;
+        this.pageNum = pageNum;
+        this.prevLSN = prevLSN;
+        this.undoNextLSN = undoNextLSN;
+        this.delta = delta;
+    }
+
+    @Override
+    public Optional<Long> getTransNum() {
+        return Optional.of(transNum);
+    }
+
+    @Override
+    public Optional<Long> getPrevLSN() {
+        return Optional.of(prevLSN);
+    }
+
+    @Override
+    public Optional<Long> getPageNum() {
+        return Optional.of(pageNum);
+    }
+
+    @Override
+    public Optional<Long> getUndoNextLSN() {
+        return Optional.of(undoNextLSN);
+    }
+
+    @Override
+    public boolean isRedoable() {
+        return true;
+    }
+
+    @Override
+    public void redo(RecoveryManager rm, DiskSpaceManager dsm, BufferManager bm) {
+        super.redo(rm, dsm, bm);
+
+        Page page = bm.fetchPage(new DummyLockContext("_dummyUndoUpdatePageDeltaRecord"), pageNum);
+        try {
+            delta.apply(page.getBuffer());
+            page.setPageLSN(getLSN());
+        } finally {
+            page.unpin();
+        }
+        rm.dirtyPage(pageNum, getLSN());
+    }
+
+    @Override
+    public byte[] toBytes() {
+        byte[] b = new byte[33 + delta.size()];
+        Buffer buf = ByteBuffer.wrap(b)
+                     .put((byte) getType().getValue())
+                     .putLong(transNum)
+                     .putLong(pageNum)
+                     .putLong(prevLSN)
+                     .putLong(undoNextLSN);
+        delta.writeTo(buf);
+        return b;
+    }
+
+    public static Optional<LogRecord> fromBytes(Buffer buf) {
+        long transNum = buf.getLong();
+        long pageNum = buf.getLong();
+        long prevLSN = buf.getLong();
+        long undoNextLSN = buf.getLong();
+        PageDelta delta = PageDelta.readFrom(buf);
+        return Optional.of(new UndoUpdatePageDeltaLogRecord(transNum, pageNum, prevLSN, undoNextLSN, delta));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (o == null || getClass() != o.getClass()) { return false; }
+        if (!super.equals(o)) { return false; }
+        UndoUpdatePageDeltaLogRecord that = (UndoUpdatePageDeltaLogRecord) o;
+        return transNum == that.transNum &&
+               pageNum == that.pageNum &&
+               prevLSN == that.prevLSN &&
+               undoNextLSN == that.undoNextLSN &&
+               delta.equals(that.delta);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), transNum, pageNum, prevLSN, undoNextLSN, delta);
+    }
+
+    @Override
+    public String toString() {
+        return "UndoUpdatePageDeltaLogRecord{" +
+               "transNum=" + transNum +
+               ", pageNum=" + pageNum +
+               ", prevLSN=" + prevLSN +
+               ", undoNextLSN=" + undoNextLSN +
+               ", delta=" + delta +
+               ", LSN=" + LSN +
+               '}';
+    }
+}
@@ -0,0 +1,131 @@
+package edu.berkeley.cs186.database.recovery.records;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.LogRecord;
+import edu.berkeley.cs186.database.recovery.LogType;
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Compact form of UpdatePageLogRecord: the change to the page is stored as a
+ * PageDelta (the XOR of the before and after bytes, without unchanged bytes)
+ * rather than as before and after images, and covers all the ranges changed by
+ * one page write.
+ */
+public class UpdatePageDeltaLogRecord extends LogRecord {
+    private long transNum; // transaction that updated the page
+    private long pageNum; // page that was updated
+    private long prevLSN; // previous log's LSN
+    public PageDelta delta; // change to the page
+
+    /**
+     * @param transNum transaction number of transaction that updated the page
+     * @param pageNum the page that was updated
+     * @param prevLSN previous log's LSN
+     * @param delta change to the page
+     */
+    public UpdatePageDeltaLogRecord(long transNum, long pageNum, long prevLSN, PageDelta delta) {
+        super(LogType.UPDATE_PAGE_DELTA);
+        this.transNum = transNum;
+        this.pageNum = pageNum;
+        this.prevLSN = prevLSN;
+        this.delta = delta;
+    }
+
+    @Override
+    public Optional<Long> getTransNum() {
+        return Optional.of(transNum);
+    }
+
+    @Override
+    public Optional<Long> getPrevLSN() {
+        return Optional.of(prevLSN);
+    }
+
+    @Override
+    public Optional<Long> getPageNum() {
+        return Optional.of(pageNum);
+    }
+
+    @Override
+    public boolean isUndoable() { return true; }
+
+    @Override
+    public boolean isRedoable() { return true; }
+
+    @Override
+    public LogRecord undo(long lastLSN) {
+        if (!isUndoable()) {
+            throw new UnsupportedOperationException("cannot undo this record: " + this);
+        }
+        return new UndoUpdatePageDeltaLogRecord(transNum, pageNum, lastLSN, prevLSN, delta);
+    }
+
+    @Override
+    public void redo(RecoveryManager rm, DiskSpaceManager dsm, BufferManager bm) {
+        super.redo(rm, dsm, bm);
+
+        Page page = bm.fetchPage(new DummyLockContext("_dummyUpdatePageDeltaRecord"), pageNum);
+        try {
+            delta.apply(page.getBuffer());
+            page.setPageLSN(getLSN());
+        } finally {
+            page.unpin();
+        }
+    }
+
+    @Override
+    public byte[] toBytes() {
+        byte[] b = new byte[25 + delta.size()];
+        Buffer buf = ByteBuffer.wrap(b)
+                     .put((byte) getType().getValue())
+                     .putLong(transNum)
+                     .putLong(pageNum)
+                     .putLong(prevLSN);
+        delta.writeTo(buf);
+        return b;
+    }
+
+    public static Optional<LogRecord> fromBytes(Buffer buf) {
+        long transNum = buf.getLong();
+        long pageNum = buf.getLong();
+        long prevLSN = buf.getLong();
+        PageDelta delta = PageDelta.readFrom(buf);
+        return Optional.of(new UpdatePageDeltaLogRecord(transNum, pageNum, prevLSN, delta));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (o == null || getClass() != o.getClass()) { return false; }
+        if (!super.equals(o)) { return false; }
+        UpdatePageDeltaLogRecord that = (UpdatePageDeltaLogRecord) o;
+        return transNum == that.transNum &&
+               pageNum == that.pageNum &&
+               prevLSN == that.prevLSN &&
+               delta.equals(that.delta);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), transNum, pageNum, prevLSN, delta);
+    }
+
+    @Override
+    public String toString() {
+        return "UpdatePageDeltaLogRecord{" +
+               "transNum=" + transNum +
+               ", pageNum=" + pageNum +
+               ", delta=" + delta +
+               ", prevLSN=" + prevLSN +
+               ", LSN=" + LSN +
+               '}';
+    }
+}
@@ -0,0 +1,120 @@
+package edu.berkeley.cs186.database.table;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * In-memory map of the free space of the data page entries in a page directory. Entries
+ * are numbered consecutively across header pages (slot = header page index * entries per
+ * header page + index in header page), and each holds the free space of its data page, or
+ * UNUSED if no data page is allocated for it.
+ *
+ * Free space is kept in a max tree over slots, so that the first slot with at least some
+ * amount of free space is found in O(log n) time, and unused slots are kept in a bitmap.
+ */
+class FreeSpaceMap {
+    // free space of a slot with no data page
+    static final short UNUSED = -1;
+
+    // max tree: tree[1] is the root, node i has children 2i and 2i + 1, and the
+    // free space of slot s is at tree[capacity + s]
+    private short[] tree;
+
+    // number of leaves in the tree, a power of two
+    private int capacity;
+
+    // number of slots in the map
+    private int size;
+
+    // slots with no data page
+    private BitSet unusedSlots;
+
+    FreeSpaceMap() {
+        this.capacity = 1;
+        this.tree = new short[2];
+        Arrays.fill(this.tree, UNUSED);
+        this.size = 0;
+        this.unusedSlots = new BitSet();
+    }
+
+    /**
+     * @return number of slots in the map
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Appends a slot to the map.
+     * @param freeSpace free space of the slot's data page, or UNUSED
+     */
+    void add(short freeSpace) {
+        if (size == capacity) {
+            short[] newTree = new short[capacity * 4];
+            Arrays.fill(newTree, UNUSED);
+            System.arraycopy(tree, capacity, newTree, capacity * 2, capacity);
+            capacity *= 2;
+            tree = newTree;
+            for (int node = capacity - 1; node > 0; --node) {
+                tree[node] = (short) Math.max(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+        set(size++, freeSpace);
+    }
+
+    /**
+     * @param slot slot number
+     * @return free space of the slot's data page, or UNUSED
+     */
+    short get(int slot) {
+        checkSlot(slot);
+        return tree[capacity + slot];
+    }
+
+    /**
+     * @param slot slot number
+     * @param freeSpace new free space of the slot's data page, or UNUSED
+     */
+    void set(int slot, short freeSpace) {
+        checkSlot(slot);
+        unusedSlots.set(slot, freeSpace == UNUSED);
+        int node = capacity + slot;
+        tree[node] = freeSpace;
+        for (node /= 2; node > 0; node /= 2) {
+            short max = (short) Math.max(tree[2 * node], tree[2 * node + 1]);
+            if (tree[node] == max) {
+                break;
+            }
+            tree[node] = max;
+        }
+    }
+
+    /**
+     * @param requiredSpace amount of free space needed (positive)
+     * @return first slot whose data page has at least requiredSpace free, or -1 if none
+     */
+    int findSpace(short requiredSpace) {
+        if (tree[1] < requiredSpace) {
+            return -1;
+        }
+        int node = 1;
+        while (node < capacity) {
+            node = tree[2 * node] >= requiredSpace ? 2 * node : 2 * node + 1;
+        }
+        return node - capacity;
+    }
+
+    /**
+     * @return first slot with no data page, or -1 if none
+     */
+    int findUnused() {
+        int slot = unusedSlots.nextSetBit(0);
+        return slot < size ? slot : -1;
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("slot " + slot + " not in free space map of size " + size);
+        }
+    }
+}
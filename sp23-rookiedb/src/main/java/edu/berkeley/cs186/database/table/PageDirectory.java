@@ -14,8 +14,11 @@ import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.Page;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * An implementation of a heap file, using a page directory. Assumes data pages are packed (but record
@@ -38,6 +41,12 @@ import java.util.Random;
  *
  * The page directory id is a randomly generated 32-bit integer used to help detect bugs (where we attempt
  * to write to a page that is not managed by the page directory).
+ *
+ * To find a data page with enough free space without reading every header page, the free space of all
+ * data page entries is kept in memory in a FreeSpaceMap, built from the header pages the first time it is
+ * needed. Header pages remain the source of truth: an entry chosen through the map is checked against its
+ * header page before it is used (header page writes may be undone by a rollback, which the map does not
+ * see), and the map is corrected if it was out of date.
  */
 public class PageDirectory implements BacktrackingIterable<Page> {
     // size of the header in header pages
@@ -64,6 +73,15 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     // First header page
     private HeaderPage firstHeader;
 
+    // All header pages, in order (headers.get(i).headerOffset == i)
+    private List<HeaderPage> headers;
+
+    // Free space of all data page entries, or null if not built yet
+    private FreeSpaceMap freeSpaceMap;
+
+    // Lock on the free space map and on changes to data page entries
+    private ReentrantLock directoryLock;
+
     // Size of metadata of an empty data page.
     private short emptyPageMetadataSize;
 
@@ -89,6 +107,8 @@ public class PageDirectory implements BacktrackingIterable<Page> {
         this.partNum = partNum;
         this.emptyPageMetadataSize = emptyPageMetadataSize;
         this.lockContext = lockContext;
+        this.headers = new ArrayList<>();
+        this.directoryLock = new ReentrantLock();
         this.firstHeader = new HeaderPage(pageNum, 0, true);
     }
 
@@ -112,7 +132,13 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             throw new IllegalArgumentException("requesting page with more space than the size of the page");
         }
 
-        Page page = this.firstHeader.loadPageWithSpace(requiredSpace);
+        Page page;
+        this.directoryLock.lock();
+        try {
+            page = this.loadPageWithSpace(requiredSpace);
+        } finally {
+            this.directoryLock.unlock();
+        }
         LockContext pageContext = lockContext.childContext(page.getPageNum());
         LockUtil.ensureSufficientLockHeld(pageContext, LockType.X);
 
@@ -120,7 +146,7 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     }
 
     public void updateFreeSpace(Page page, short newFreeSpace) {
-        if (newFreeSpace <= 0 || newFreeSpace > EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize) {
+        if (newFreeSpace < 0 || newFreeSpace > EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize) {
             throw new IllegalArgumentException("bad size for data page free space");
         }
 
@@ -136,11 +162,12 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             page.unpin();
         }
 
-        HeaderPage headerPage = firstHeader;
-        for (int i = 0; i < headerIndex; ++i) {
-            headerPage = headerPage.nextPage;
+        this.directoryLock.lock();
+        try {
+            this.headers.get(headerIndex).updateSpace(page, offset, newFreeSpace);
+        } finally {
+            this.directoryLock.unlock();
         }
-        headerPage.updateSpace(page, offset, newFreeSpace);
     }
 
     @Override
@@ -162,6 +189,69 @@ public class PageDirectory implements BacktrackingIterable<Page> {
         return partNum;
     }
 
+    /**
+     * Gets and loads a data page with the required free space: the first data page with
+     * enough space in the first header page that has either such a data page or an unused
+     * entry, or a new data page for the first unused entry of that header page. Assumes
+     * that the directory lock is held.
+     */
+    private Page loadPageWithSpace(short requiredSpace) {
+        FreeSpaceMap map = this.getFreeSpaceMap();
+        while (true) {
+            int slot = map.findSpace(requiredSpace);
+            int unusedSlot = map.findUnused();
+            if (slot == -1 || (unusedSlot != -1 && unusedSlot / HEADER_ENTRY_COUNT < slot / HEADER_ENTRY_COUNT)) {
+                if (unusedSlot == -1) {
+                    this.addNewHeaderPage();
+                    continue;
+                }
+                slot = unusedSlot;
+            }
+            HeaderPage headerPage = this.headers.get(slot / HEADER_ENTRY_COUNT);
+            Page page = headerPage.loadPageWithSpace((short) (slot % HEADER_ENTRY_COUNT), map.get(slot),
+                                                     requiredSpace);
+            if (page != null) {
+                return page;
+            }
+            // the map was out of date, and has been corrected from the header page
+        }
+    }
+
+    /**
+     * Gets the free space map, reading all header pages to build it if it has not been
+     * built yet. Assumes that the directory lock is held.
+     */
+    private FreeSpaceMap getFreeSpaceMap() {
+        if (this.freeSpaceMap == null) {
+            FreeSpaceMap map = new FreeSpaceMap();
+            for (HeaderPage headerPage : this.headers) {
+                headerPage.addEntriesTo(map);
+            }
+            this.freeSpaceMap = map;
+        }
+        return this.freeSpaceMap;
+    }
+
+    /**
+     * Sets the free space of a data page entry in the free space map, if it has been
+     * built. Assumes that the directory lock is held.
+     */
+    private void setFreeSpace(int headerOffset, short index, short freeSpace) {
+        if (this.freeSpaceMap != null) {
+            this.freeSpaceMap.set(headerOffset * HEADER_ENTRY_COUNT + index, freeSpace);
+        }
+    }
+
+    // add a new header page after the last one
+    private void addNewHeaderPage() {
+        this.headers.get(this.headers.size() - 1).addNewHeaderPage();
+        if (this.freeSpaceMap != null) {
+            for (int i = 0; i < HEADER_ENTRY_COUNT; ++i) {
+                this.freeSpaceMap.add(FreeSpaceMap.UNUSED);
+            }
+        }
+    }
+
     /**
      * Wrapper around page object to skip the header and verify that it belongs to this
      * page directory.
@@ -285,6 +375,7 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                 this.page.unpin();
             }
             this.headerOffset = headerOffset;
+            headers.add(this);
             if (nextPageNum == DiskSpaceManager.INVALID_PAGE_NUM) {
                 this.nextPage = null;
             } else {
@@ -292,71 +383,72 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             }
         }
 
-        // add a new header page
+        // add a new header page after this one, which must be the last one
         private void addNewHeaderPage() {
-            if (this.nextPage != null) {
-                this.nextPage.addNewHeaderPage();
-                return;
-            }
             Page page = bufferManager.fetchNewPage(lockContext, partNum);
             this.page.pin();
             try {
                 this.nextPage = new HeaderPage(page.getPageNum(), headerOffset + 1, false);
-                this.page.getBuffer().position(1).putLong(page.getPageNum());
+                this.page.getBuffer().position(5).putLong(page.getPageNum());
             } finally {
                 this.page.unpin();
                 page.unpin();
             }
         }
 
-        // gets and loads a page with the required free space
-        private Page loadPageWithSpace(short requiredSpace) {
+        // appends the free space of each data page entry to the free space map
+        private void addEntriesTo(FreeSpaceMap map) {
             this.page.pin();
             try {
                 Buffer b = this.page.getBuffer();
                 b.position(HEADER_HEADER_SIZE);
-
-                // if we have any data page managed by this header page with enough space, return it
-                short unusedSlot = -1;
-                for (short i = 0; i < HEADER_ENTRY_COUNT; ++i) {
+                for (int i = 0; i < HEADER_ENTRY_COUNT; ++i) {
                     DataPageEntry dpe = DataPageEntry.fromBytes(b);
-                    if (!dpe.isValid()) {
-                        if (unusedSlot == -1) {
-                            unusedSlot = i;
-                        }
-                        continue;
-                    }
-                    if (dpe.freeSpace >= requiredSpace) {
-                        dpe.freeSpace -= requiredSpace;
-                        b.position(b.position() - DataPageEntry.SIZE);
-                        dpe.toBytes(b);
-
-                        return bufferManager.fetchPage(lockContext, dpe.pageNum);
-                    }
+                    map.add(dpe.isValid() ? dpe.freeSpace : FreeSpaceMap.UNUSED);
                 }
+            } finally {
+                this.page.unpin();
+            }
+        }
 
-                // if we have any unused slot in this header page, allocate a new data page
-                if (unusedSlot != -1) {
-                    Page page = bufferManager.fetchNewPage(lockContext, partNum);
-                    DataPageEntry dpe = new DataPageEntry(page.getPageNum(),
-                                                          (short) (EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize - requiredSpace));
+        // takes the required space from the data page of an entry (allocating a new data page if
+        // the entry is unused) and loads the data page, or returns null after correcting the free
+        // space map if the entry's free space is not what the map expected
+        private Page loadPageWithSpace(short index, short expectedFreeSpace, short requiredSpace) {
+            this.page.pin();
+            try {
+                Buffer b = this.page.getBuffer();
+                b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
+                DataPageEntry dpe = DataPageEntry.fromBytes(b);
+                short freeSpace = dpe.isValid() ? dpe.freeSpace : FreeSpaceMap.UNUSED;
+                if (freeSpace != expectedFreeSpace) {
+                    setFreeSpace(headerOffset, index, freeSpace);
+                    return null;
+                }
 
-                    b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * unusedSlot);
+                // if the entry has a data page, it has enough space
+                if (dpe.isValid()) {
+                    dpe.freeSpace -= requiredSpace;
+                    b.position(b.position() - DataPageEntry.SIZE);
                     dpe.toBytes(b);
+                    setFreeSpace(headerOffset, index, dpe.freeSpace);
 
-                    page.getBuffer().putInt(pageDirectoryId).putInt(headerOffset).putShort(unusedSlot);
-
-                    ++this.numDataPages;
-                    return page;
+                    return bufferManager.fetchPage(lockContext, dpe.pageNum);
                 }
 
-                // if we have no next header page, make one
-                if (this.nextPage == null) {
-                    this.addNewHeaderPage();
-                }
+                // otherwise, allocate a new data page
+                Page page = bufferManager.fetchNewPage(lockContext, partNum);
+                dpe = new DataPageEntry(page.getPageNum(),
+                                        (short) (EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize - requiredSpace));
+
+                b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
+                dpe.toBytes(b);
+                setFreeSpace(headerOffset, index, dpe.freeSpace);
+
+                page.getBuffer().putInt(pageDirectoryId).putInt(headerOffset).putShort(index);
 
-                // no space on this header page, try next one
-                return this.nextPage.loadPageWithSpace(requiredSpace);
+                ++this.numDataPages;
+                return page;
             } finally {
                 this.page.unpin();
             }
@@ -374,12 +466,15 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                     dpe.freeSpace = newFreeSpace;
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
                     dpe.toBytes(b);
+                    setFreeSpace(headerOffset, index, newFreeSpace);
                 } else {
                     // the entire page is free; free it
                     Buffer b = this.page.getBuffer();
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
                     (new DataPageEntry()).toBytes(b);
                     bufferManager.freePage(dataPage);
+                    --this.numDataPages;
+                    setFreeSpace(headerOffset, index, FreeSpaceMap.UNUSED);
                 }
             } finally {
                 this.page.unpin();
@@ -0,0 +1,24 @@
+package edu.berkeley.cs186.database.table;
+
+/**
+ * The layout of the data pages of a table (see Table for details).
+ */
+public enum PageLayout {
+    // fixed length records stored one after another, after a bitmap
+    ROW,
+    // fixed length records stored column by column in minipages, after a bitmap
+    PAX,
+    // variable length records stored from the end of the page, located by an
+    // array of slots at the start of the page
+    SLOTTED;
+
+    private static final PageLayout[] values = PageLayout.values();
+
+    public static PageLayout fromInt(int x) {
+        if (x < 0 || x >= values.length) {
+            String err = String.format("Unknown PageLayout ordinal %d.", x);
+            throw new IllegalArgumentException(err);
+        }
+        return values[x];
+    }
+}
@@ -0,0 +1,360 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A RowView is a reusable, read-only view of a single row of some schema. It
+ * is either positioned over the serialized bytes of a row (as laid out by
+ * Record#toBytes), over one entry of serialized columns (as laid out on the
+ * data pages of PAX tables, see Table), or over a row with length-prefixed
+ * strings (as laid out on slotted data pages), in which case values are
+ * decoded straight out of the bytes on access, or over a Record.
+ *
+ * Row iterators (e.g. Table#rowIterator) yield the same RowView over and over,
+ * repositioning it on every call to next(), so that scanning a table does not
+ * allocate anything per row:
+ *
+ *   Iterator<RowView> rows = table.rowIterator();
+ *   while (rows.hasNext()) {
+ *       RowView row = rows.next();
+ *       sum += row.getInt(0);
+ *   }
+ *
+ * A RowView is therefore only valid until the iterator that yielded it is
+ * advanced again; use toRecord() to keep a row around.
+ *
+ * The typed accessors (getInt, compareTo, ...) don't allocate. getString,
+ * getValue and toRecord allocate the objects they return.
+ */
+public class RowView {
+    // types of the columns
+    private TypeId[] typeIds;
+
+    // sizes of the columns in bytes
+    private int[] sizes;
+
+    // offsets of the columns from the start of the row
+    private int[] offsets;
+
+    // schema of the row, for materializing DataBoxes
+    private Schema schema;
+
+    // serialized row, if positioned over bytes
+    private byte[] bytes;
+    private int offset;
+
+    // starts of the serialized columns and entry number, if positioned over
+    // columns
+    private int[] columnStarts;
+    private int entry;
+
+    // positions of the values and lengths of the strings, if positioned over a
+    // row with length-prefixed strings
+    private boolean slotted;
+    private int[] positions;
+    private int[] lengths;
+
+    // record, if positioned over a record
+    private Record record;
+
+    public RowView(Schema schema) {
+        this.schema = schema;
+        int numColumns = schema.size();
+        this.typeIds = new TypeId[numColumns];
+        this.sizes = new int[numColumns];
+        this.offsets = new int[numColumns];
+        int offset = 0;
+        for (int i = 0; i < numColumns; ++i) {
+            Type type = schema.getFieldType(i);
+            this.typeIds[i] = type.getTypeId();
+            this.sizes[i] = type.getSizeInBytes();
+            this.offsets[i] = offset;
+            offset += this.sizes[i];
+        }
+    }
+
+    /**
+     * Positions this view over the row serialized at bytes[offset].
+     */
+    public void reset(byte[] bytes, int offset) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.columnStarts = null;
+        this.slotted = false;
+        this.record = null;
+    }
+
+    /**
+     * Positions this view over the row serialized at bytes[offset] as on
+     * slotted data pages, where each string is its length (two bytes) followed
+     * by its bytes rather than padded to the size of its column.
+     */
+    public void resetSlotted(byte[] bytes, int offset) {
+        if (positions == null) {
+            positions = new int[typeIds.length];
+            lengths = new int[typeIds.length];
+        }
+        for (int i = 0; i < typeIds.length; ++i) {
+            if (typeIds[i] == TypeId.STRING) {
+                lengths[i] = ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+                positions[i] = offset + 2;
+                offset += 2 + lengths[i];
+            } else {
+                positions[i] = offset;
+                offset += sizes[i];
+            }
+        }
+        this.bytes = bytes;
+        this.columnStarts = null;
+        this.slotted = true;
+        this.record = null;
+    }
+
+    /**
+     * Positions this view over entry `entry` of serialized columns, where the
+     * values of column col are stored back to back starting at
+     * bytes[columnStarts[col]]. Columns with a negative start were not read,
+     * and may not be accessed (except through toRecord).
+     */
+    public void reset(byte[] bytes, int[] columnStarts, int entry) {
+        this.bytes = bytes;
+        this.columnStarts = columnStarts;
+        this.entry = entry;
+        this.slotted = false;
+        this.record = null;
+    }
+
+    /**
+     * Positions this view over a record.
+     */
+    public void reset(Record record) {
+        this.record = record;
+        this.bytes = null;
+    }
+
+    /**
+     * @return the schema of the row
+     */
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return the number of columns in the row
+     */
+    public int size() {
+        return typeIds.length;
+    }
+
+    /**
+     * @return true if the value of column col can be accessed, i.e. unless the
+     * view is positioned over columns and column col was not read
+     */
+    public boolean isRead(int col) {
+        return record != null || columnStarts == null || columnStarts[col] >= 0;
+    }
+
+    public boolean getBool(int col) {
+        if (record != null) return record.getValue(col).getBool();
+        checkType(col, TypeId.BOOL);
+        return bytes[position(col)] == 1;
+    }
+
+    public int getInt(int col) {
+        if (record != null) return record.getValue(col).getInt();
+        checkType(col, TypeId.INT);
+        return readInt(position(col));
+    }
+
+    public float getFloat(int col) {
+        if (record != null) return record.getValue(col).getFloat();
+        checkType(col, TypeId.FLOAT);
+        return Float.intBitsToFloat(readInt(position(col)));
+    }
+
+    public long getLong(int col) {
+        if (record != null) return record.getValue(col).getLong();
+        checkType(col, TypeId.LONG);
+        return ((long) readInt(position(col)) << 32)
+               | (readInt(position(col) + 4) & 0xFFFFFFFFL);
+    }
+
+    public String getString(int col) {
+        if (record != null) return record.getValue(col).getString();
+        checkType(col, TypeId.STRING);
+        return new String(bytes, position(col), stringLength(col), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the value of column col, as a new DataBox
+     */
+    public DataBox getValue(int col) {
+        if (record != null) return record.getValue(col);
+        if (slotted && typeIds[col] == TypeId.STRING) return new StringDataBox(getString(col), sizes[col]);
+        Buffer buf = ByteBuffer.wrap(bytes, position(col), sizes[col]);
+        return DataBox.fromBytes(buf, schema.getFieldType(col));
+    }
+
+    /**
+     * @return the row, as a new Record. The values of columns that were not
+     * read (see isRead) are null.
+     */
+    public Record toRecord() {
+        if (record != null) return record;
+        List<DataBox> values = new ArrayList<>(typeIds.length);
+        for (int i = 0; i < typeIds.length; ++i) {
+            values.add(isRead(i) ? getValue(i) : null);
+        }
+        return new Record(values);
+    }
+
+    /**
+     * Same as getValue(col).compareTo(value), without materializing the value
+     * of column col.
+     */
+    public int compareTo(int col, DataBox value) {
+        if (record != null) return record.getValue(col).compareTo(value);
+        switch (typeIds[col]) {
+            case BOOL:
+                if (value.getTypeId() != TypeId.BOOL) throw invalidComparison(col, value);
+                return Boolean.compare(getBool(col), value.getBool());
+            case INT:
+                return compareNumber(getInt(col), value, col);
+            case LONG:
+                return compareNumber(getLong(col), value, col);
+            case FLOAT: {
+                float f = getFloat(col);
+                switch (value.getTypeId()) {
+                    case INT: return f == value.getInt() ? 0 : (f > value.getInt() ? 1 : -1);
+                    case LONG: return f == value.getLong() ? 0 : (f > value.getLong() ? 1 : -1);
+                    case FLOAT: return Float.compare(f, value.getFloat());
+                    default: throw invalidComparison(col, value);
+                }
+            }
+            case STRING:
+                if (value.getTypeId() != TypeId.STRING) throw invalidComparison(col, value);
+                return compareString(col, value.getString());
+            default:
+                return getValue(col).compareTo(value);
+        }
+    }
+
+    /**
+     * Same as getValue(col).equals(value), without materializing the value of
+     * column col.
+     */
+    public boolean valueEquals(int col, DataBox value) {
+        if (record != null) return record.getValue(col).equals(value);
+        if (value == null || value.getTypeId() != typeIds[col]) return false;
+        switch (typeIds[col]) {
+            case BOOL: return getBool(col) == value.getBool();
+            case INT: return getInt(col) == value.getInt();
+            case LONG: return getLong(col) == value.getLong();
+            case FLOAT: return getFloat(col) == value.getFloat();
+            case STRING: return compareString(col, value.getString()) == 0;
+            default: return getValue(col).equals(value);
+        }
+    }
+
+    /**
+     * Same as getValue(col).compareTo(other.getValue(otherCol)). Doesn't
+     * allocate if the other view is positioned over bytes.
+     */
+    public int compareTo(int col, RowView other, int otherCol) {
+        if (other.record != null) return compareTo(col, other.record.getValue(otherCol));
+        if (record != null) return -other.compareTo(otherCol, record.getValue(col));
+        if (typeIds[col] == TypeId.STRING && other.typeIds[otherCol] == TypeId.STRING) {
+            int len = stringLength(col);
+            int otherLen = other.stringLength(otherCol);
+            for (int i = 0; i < Math.min(len, otherLen); ++i) {
+                int c = (bytes[position(col) + i] & 0xFF)
+                        - (other.bytes[other.position(otherCol) + i] & 0xFF);
+                if (c != 0) return c;
+            }
+            return len - otherLen;
+        }
+        if (typeIds[col] == other.typeIds[otherCol]) {
+            switch (typeIds[col]) {
+                case BOOL: return Boolean.compare(getBool(col), other.getBool(otherCol));
+                case INT: return Integer.compare(getInt(col), other.getInt(otherCol));
+                case LONG: return Long.compare(getLong(col), other.getLong(otherCol));
+                case FLOAT: return Float.compare(getFloat(col), other.getFloat(otherCol));
+                default: break;
+            }
+        }
+        return compareTo(col, other.getValue(otherCol));
+    }
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    // position of the value of column col in bytes
+    private int position(int col) {
+        if (slotted) return positions[col];
+        if (columnStarts == null) return offset + offsets[col];
+        if (columnStarts[col] < 0) {
+            throw new IllegalStateException("column " + col + " was not read");
+        }
+        return columnStarts[col] + entry * sizes[col];
+    }
+
+    private int readInt(int pos) {
+        return ((bytes[pos] & 0xFF) << 24) | ((bytes[pos + 1] & 0xFF) << 16)
+               | ((bytes[pos + 2] & 0xFF) << 8) | (bytes[pos + 3] & 0xFF);
+    }
+
+    // length of a string column's value, without its trailing null bytes
+    private int stringLength(int col) {
+        if (slotted) return lengths[col];
+        int start = position(col);
+        int len = sizes[col];
+        while (len > 0 && bytes[start + len - 1] == 0) {
+            --len;
+        }
+        return len;
+    }
+
+    // compares a string column's value with s, as String#compareTo would
+    private int compareString(int col, String s) {
+        int start = position(col);
+        int len = stringLength(col);
+        for (int i = 0; i < Math.min(len, s.length()); ++i) {
+            int c = (bytes[start + i] & 0xFF) - s.charAt(i);
+            if (c != 0) return c;
+        }
+        return len - s.length();
+    }
+
+    private int compareNumber(long l, DataBox value, int col) {
+        switch (value.getTypeId()) {
+            case INT: return Long.compare(l, value.getInt());
+            case LONG: return Long.compare(l, value.getLong());
+            case FLOAT: return l == value.getFloat() ? 0 : (l > value.getFloat() ? 1 : -1);
+            default: throw invalidComparison(col, value);
+        }
+    }
+
+    private void checkType(int col, TypeId typeId) {
+        if (typeIds[col] != typeId) {
+            throw new RuntimeException("column " + col + " is of type " + typeIds[col] + ", not " + typeId);
+        }
+    }
+
+    private IllegalArgumentException invalidComparison(int col, DataBox value) {
+        String err = String.format("Invalid comparison between %s and %s.",
+                                   getValue(col).toString(), value.toString());
+        return new IllegalArgumentException(err);
+    }
+
+    @Override
+    public String toString() {
+        return toRecord().toString();
+    }
+}
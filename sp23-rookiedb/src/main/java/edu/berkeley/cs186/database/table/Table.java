@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.table;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterable;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.iterator.ConcatBacktrackingIterator;
@@ -10,13 +11,22 @@ import edu.berkeley.cs186.database.common.iterator.IndexBacktrackingIterator;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
 /**
  * # Overview
@@ -89,8 +99,49 @@ import java.util.Map;
  * only supports locking at the page level, so in cases where tuple-level locks are
  * necessary even at the cost of an I/O per tuple, a full page record may be desirable),
  * and may be explicitly toggled on with the setFullPageRecords method.
+ *
+ * Tables that are mostly scanned for a few of their columns (e.g. to aggregate
+ * them) may instead store their data pages in the PAX layout (see
+ * setPageLayout). A PAX data page holds the same records in the same
+ * slots, but after the bitmap, it stores the values of each column of all m
+ * records together in a minipage, instead of storing each record together:
+ *
+ *   +--------+-----------------------+-----------------------+-----
+ *   | bitmap | x0 | x1 | ... | x(m-1) | y0 | y1 | ... | y(m-1) | ...
+ *   +--------+-----------------------+-----------------------+-----
+ *             \_____ minipage x _____/ \_____ minipage y _____/
+ *
+ * Record ids and the page directory are not affected by the layout, but a scan
+ * of a PAX table that only needs some of the columns (see rowIterator) only
+ * reads the minipages of those columns.
+ *
+ * Tables with long strings that are mostly much shorter than their columns
+ * allow may store their data pages in the SLOTTED layout, where each string is
+ * stored as its length followed by its bytes, instead of being padded to the
+ * size of its column. Records then vary in length, so a slotted data page
+ * begins with the number of slots on the page and the offset at which record
+ * data starts, followed by an array of slots holding the offset and length of
+ * each record (or zeroes if the slot is empty). Records are stored from the
+ * end of the page towards the slots:
+ *
+ *   +---+---+-------+-------+-------+-------------+----------+----------+
+ *   | n | d | o0 l0 | 0  0  | o2 l2 | free space  | record 2 | record 0 |
+ *   +---+---+-------+-------+-------+-------------+----------+----------+
+ *    \_____/ \_____________________/               ^ d
+ *    header        slots 0 to n-1
+ *
+ * The entry number of a record id is the record's slot, which stays the same
+ * when the records of the page are moved together to make space. The number
+ * of slots per page is bounded by the number of the shortest possible records
+ * that fit on a page, which takes the place of the number of records per page.
  */
 public class Table implements BacktrackingIterable<Record> {
+    // The size (in bytes) of the header of a slotted data page.
+    private static final int SLOTTED_HEADER_SIZE = 4;
+
+    // The size (in bytes) of a slot on a slotted data page.
+    private static final int SLOT_SIZE = 4;
+
     // The name of the table.
     private String name;
 
@@ -106,6 +157,17 @@ public class Table implements BacktrackingIterable<Record> {
     // The number of records on each data page.
     private int numRecordsPerPage;
 
+    // The layout of the data pages.
+    private PageLayout layout;
+
+    // The offsets (in bytes) of the columns from the start of a record, and
+    // their sizes (in bytes).
+    private int[] columnOffsets;
+    private int[] columnSizes;
+
+    // The types of the columns.
+    private TypeId[] columnTypes;
+
     // The lock context of the table.
     private LockContext tableContext;
 
@@ -126,6 +188,16 @@ public class Table implements BacktrackingIterable<Record> {
 
         this.bitmapSizeInBytes = computeBitmapSizeInBytes(pageDirectory.getEffectivePageSize(), schema);
         this.numRecordsPerPage = computeNumRecordsPerPage(pageDirectory.getEffectivePageSize(), schema);
+        this.layout = PageLayout.ROW;
+        this.columnOffsets = new int[schema.size()];
+        this.columnSizes = new int[schema.size()];
+        this.columnTypes = new TypeId[schema.size()];
+        for (int i = 0, offset = 0; i < schema.size(); ++i) {
+            columnOffsets[i] = offset;
+            columnTypes[i] = schema.getFieldType(i).getTypeId();
+            columnSizes[i] = schema.getFieldType(i).getSizeInBytes();
+            offset += columnSizes[i];
+        }
         // mark everything that is not used for records as metadata
         this.pageDirectory.setEmptyPageMetadataSize((short) (pageDirectory.getEffectivePageSize() - numRecordsPerPage
                                                * schema.getSizeInBytes()));
@@ -156,6 +228,24 @@ public class Table implements BacktrackingIterable<Record> {
                                           schema.getSizeInBytes()));
     }
 
+    /**
+     * Sets the layout of the data pages of this table, which is ROW by default.
+     * Like setFullPageRecords, this must be done every time the table is
+     * loaded, before the table is used.
+     */
+    public void setPageLayout(PageLayout layout) {
+        this.layout = layout;
+        if (layout == PageLayout.SLOTTED) {
+            numRecordsPerPage = computeNumSlotsPerPage(pageDirectory.getEffectivePageSize(), schema);
+            bitmapSizeInBytes = 0;
+            pageDirectory.setEmptyPageMetadataSize((short) SLOTTED_HEADER_SIZE);
+        }
+    }
+
+    public PageLayout getPageLayout() {
+        return layout;
+    }
+
     public TableStats getStats() {
         return this.stats.get(name);
     }
@@ -169,6 +259,9 @@ public class Table implements BacktrackingIterable<Record> {
     }
 
     private byte[] getBitMap(Page page) {
+        if (layout == PageLayout.SLOTTED) {
+            return new SlottedPage(page).getBitMap();
+        }
         if (bitmapSizeInBytes > 0) {
             byte[] bytes = new byte[bitmapSizeInBytes];
             page.getBuffer().get(bytes, 0, bitmapSizeInBytes);
@@ -222,6 +315,34 @@ public class Table implements BacktrackingIterable<Record> {
         return pageSizeInBits / recordOverheadInBits;
     }
 
+    /**
+     * Computes the maximum number of slots on a slotted data page: the number of
+     * records of the given `schema` with all strings empty that fit on a page
+     * with `pageSize` bytes of space, including the overhead for their slots.
+     * @param pageSize size of page in bytes
+     * @param schema schema for the records to be stored on this page
+     * @return the maximum number of slots per page
+     */
+    private static int computeNumSlotsPerPage(int pageSize, Schema schema) {
+        int minRecordSize = 0;
+        int maxRecordSize = 0;
+        for (Type type : schema.getFieldTypes()) {
+            if (type.getTypeId() == TypeId.STRING) {
+                minRecordSize += 2;
+                maxRecordSize += 2 + type.getSizeInBytes();
+            } else {
+                minRecordSize += type.getSizeInBytes();
+                maxRecordSize += type.getSizeInBytes();
+            }
+        }
+        if (SLOTTED_HEADER_SIZE + SLOT_SIZE + maxRecordSize > pageSize) {
+            throw new DatabaseException(String.format(
+                    "Records of up to %d bytes do not fit on a slotted page", maxRecordSize
+            ));
+        }
+        return (pageSize - SLOTTED_HEADER_SIZE) / (SLOT_SIZE + Math.max(minRecordSize, 1));
+    }
+
     // Modifiers ///////////////////////////////////////////////////////////////
     /**
      * buildStatistics builds histograms on each of the columns of a table. Running
@@ -231,11 +352,57 @@ public class Table implements BacktrackingIterable<Record> {
         this.stats.get(name).refreshHistograms(buckets, this);
     }
 
+    // offset within a data page of the value of column col of entry entryNum
+    private int valueOffset(int entryNum, int col) {
+        if (layout == PageLayout.PAX) {
+            return bitmapSizeInBytes + numRecordsPerPage * columnOffsets[col] + entryNum * columnSizes[col];
+        }
+        return bitmapSizeInBytes + entryNum * schema.getSizeInBytes() + columnOffsets[col];
+    }
+
     private synchronized void insertRecord(Page page, int entryNum, Record record) {
+        if (layout == PageLayout.PAX) {
+            for (int i = 0; i < schema.size(); ++i) {
+                page.getBuffer().position(valueOffset(entryNum, i)).put(record.getValue(i).toBytes());
+            }
+            return;
+        }
         int offset = bitmapSizeInBytes + (entryNum * schema.getSizeInBytes());
         page.getBuffer().position(offset).put(record.toBytes(schema));
     }
 
+    private Record readRecord(Page page, int entryNum) {
+        if (layout == PageLayout.SLOTTED) {
+            return new SlottedPage(page).getRecord(entryNum);
+        }
+        Buffer buf = page.getBuffer();
+        if (layout == PageLayout.PAX) {
+            List<DataBox> values = new ArrayList<>(schema.size());
+            for (int i = 0; i < schema.size(); ++i) {
+                buf.position(valueOffset(entryNum, i));
+                values.add(DataBox.fromBytes(buf, schema.getFieldType(i)));
+            }
+            return new Record(values);
+        }
+        buf.position(bitmapSizeInBytes + (entryNum * schema.getSizeInBytes()));
+        return Record.fromBytes(buf, schema);
+    }
+
+    // copies the values of entry srcEntry of src into entry destEntry of dest
+    private void copyEntry(Page src, int srcEntry, Page dest, int destEntry) {
+        if (layout == PageLayout.PAX) {
+            for (int i = 0; i < schema.size(); ++i) {
+                byte[] bytes = new byte[columnSizes[i]];
+                src.getBuffer().position(valueOffset(srcEntry, i)).get(bytes);
+                dest.getBuffer().position(valueOffset(destEntry, i)).put(bytes);
+            }
+            return;
+        }
+        byte[] bytes = new byte[schema.getSizeInBytes()];
+        src.getBuffer().position(bitmapSizeInBytes + srcEntry * bytes.length).get(bytes);
+        dest.getBuffer().position(bitmapSizeInBytes + destEntry * bytes.length).put(bytes);
+    }
+
     /**
      * addRecord adds a record to this table and returns the record id of the
      * newly added record. stats, freePageNums, and numRecords are updated
@@ -246,6 +413,9 @@ public class Table implements BacktrackingIterable<Record> {
      */
     public synchronized RecordId addRecord(Record record) {
         record = schema.verify(record);
+        if (layout == PageLayout.SLOTTED) {
+            return addSlottedRecord(record);
+        }
         Page page = pageDirectory.getPageWithSpace(schema.getSizeInBytes());
         try {
             // Find the first empty slot in the bitmap.
@@ -276,6 +446,22 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
+    private RecordId addSlottedRecord(Record record) {
+        byte[] bytes = toSlottedBytes(record);
+        // in case the record needs a new slot
+        Page page = pageDirectory.getPageWithSpace((short) (bytes.length + SLOT_SIZE));
+        try {
+            SlottedPage slottedPage = new SlottedPage(page);
+            int entryNum = slottedPage.insert(bytes);
+            pageDirectory.updateFreeSpace(page, (short) slottedPage.getFreeSpace());
+
+            stats.get(name).addRecord(record);
+            return new RecordId(page.getPageNum(), (short) entryNum);
+        } finally {
+            page.unpin();
+        }
+    }
+
     /**
      * Retrieves a record from the table, throwing an exception if no such record
      * exists.
@@ -290,10 +476,7 @@ public class Table implements BacktrackingIterable<Record> {
                 throw new DatabaseException(msg);
             }
 
-            int offset = bitmapSizeInBytes + (rid.getEntryNum() * schema.getSizeInBytes());
-            Buffer buf = page.getBuffer();
-            buf.position(offset);
-            return Record.fromBytes(buf, schema);
+            return readRecord(page, rid.getEntryNum());
         } finally {
             page.unpin();
         }
@@ -302,7 +485,9 @@ public class Table implements BacktrackingIterable<Record> {
     /**
      * Overwrites an existing record with new values and returns the existing
      * record. stats is updated accordingly. An exception is thrown if rid does
-     * not correspond to an existing record in the table.
+     * not correspond to an existing record in the table, or, on slotted data
+     * pages, if the new record is longer than the old one and does not fit on
+     * the page.
      */
     public synchronized Record updateRecord(RecordId rid, Record updated) {
         validateRecordId(rid);
@@ -316,7 +501,16 @@ public class Table implements BacktrackingIterable<Record> {
 
         Page page = fetchPage(rid.getPageNum());
         try {
-            insertRecord(page, rid.getEntryNum(), newRecord);
+            if (layout == PageLayout.SLOTTED) {
+                SlottedPage slottedPage = new SlottedPage(page);
+                if (!slottedPage.update(rid.getEntryNum(), toSlottedBytes(newRecord))) {
+                    String msg = String.format("Record %s does not fit on its page after the update.", rid);
+                    throw new DatabaseException(msg);
+                }
+                pageDirectory.updateFreeSpace(page, (short) slottedPage.getFreeSpace());
+            } else {
+                insertRecord(page, rid.getEntryNum(), newRecord);
+            }
 
             this.stats.get(name).removeRecord(oldRecord);
             this.stats.get(name).addRecord(newRecord);
@@ -340,6 +534,13 @@ public class Table implements BacktrackingIterable<Record> {
         Page page = fetchPage(rid.getPageNum());
         try {
             Record record = getRecord(rid);
+            if (layout == PageLayout.SLOTTED) {
+                SlottedPage slottedPage = new SlottedPage(page);
+                slottedPage.delete(rid.getEntryNum());
+                stats.get(name).removeRecord(record);
+                pageDirectory.updateFreeSpace(page, (short) slottedPage.getFreeSpace());
+                return record;
+            }
 
             byte[] bitmap = getBitMap(page);
             Bits.setBit(bitmap, rid.getEntryNum(), Bits.Bit.ZERO);
@@ -355,12 +556,224 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
+    /**
+     * Compacts the table: records are moved off of the data pages with the
+     * fewest records and into the free slots of the data pages with the most
+     * records, until at most one data page is partially empty. Data pages
+     * left empty are freed. Requires an X lock on the table.
+     *
+     * Moved records get new record ids; onMove is called with the old and new
+     * record id of each moved record once it has been moved (e.g. to update
+     * indices on the table).
+     *
+     * @return the number of data pages freed
+     */
+    public synchronized int vacuum(BiConsumer<RecordId, RecordId> onMove) {
+        LockUtil.ensureSufficientLockHeld(tableContext, LockType.X);
+        if (numRecordsPerPage == 1) {
+            // every record fills a data page of its own, and data pages are
+            // freed as soon as their record is deleted
+            return 0;
+        }
+        if (layout == PageLayout.SLOTTED) {
+            return vacuumSlotted(onMove);
+        }
+
+        // count the records on each data page, and order the data pages from
+        // most to fewest records
+        List<long[]> pages = new ArrayList<>();
+        Iterator<Page> iter = pageDirectory.iterator();
+        while (iter.hasNext()) {
+            Page page = iter.next();
+            try {
+                pages.add(new long[] {page.getPageNum(), numRecordsOnPage(page)});
+            } finally {
+                page.unpin();
+            }
+        }
+        pages.sort((a, b) -> Long.compare(b[1], a[1]));
+
+        // move records from the back of the list into the front of the list
+        int numFreed = 0;
+        int dest = 0;
+        Page destPage = null;
+        byte[] destBitmap = null;
+        try {
+            for (int src = pages.size() - 1; src > dest; --src) {
+                Page srcPage = fetchPage(pages.get(src)[0]);
+                try {
+                    byte[] srcBitmap = getBitMap(srcPage);
+                    for (int srcEntry = 0; srcEntry < numRecordsPerPage && pages.get(src)[1] > 0; ++srcEntry) {
+                        if (Bits.getBit(srcBitmap, srcEntry) == Bits.Bit.ZERO) {
+                            continue;
+                        }
+                        while (dest < src && pages.get(dest)[1] == numRecordsPerPage) {
+                            if (destPage != null) {
+                                finishVacuumDest(destPage, numRecordsPerPage);
+                                destPage = null;
+                            }
+                            ++dest;
+                        }
+                        if (dest == src) {
+                            break;
+                        }
+                        if (destPage == null) {
+                            destPage = fetchPage(pages.get(dest)[0]);
+                            destBitmap = getBitMap(destPage);
+                        }
+
+                        int destEntry = 0;
+                        while (Bits.getBit(destBitmap, destEntry) == Bits.Bit.ONE) {
+                            ++destEntry;
+                        }
+                        copyEntry(srcPage, srcEntry, destPage, destEntry);
+                        Bits.setBit(destBitmap, destEntry, Bits.Bit.ONE);
+                        writeBitMap(destPage, destBitmap);
+                        Bits.setBit(srcBitmap, srcEntry, Bits.Bit.ZERO);
+                        writeBitMap(srcPage, srcBitmap);
+                        ++pages.get(dest)[1];
+                        --pages.get(src)[1];
+
+                        onMove.accept(new RecordId(srcPage.getPageNum(), (short) srcEntry),
+                                      new RecordId(destPage.getPageNum(), (short) destEntry));
+                    }
+                    if (pages.get(src)[1] == 0) {
+                        ++numFreed;
+                    }
+                    pageDirectory.updateFreeSpace(srcPage,
+                            (short) ((numRecordsPerPage - pages.get(src)[1]) * schema.getSizeInBytes()));
+                } finally {
+                    srcPage.unpin();
+                }
+            }
+        } finally {
+            if (destPage != null) {
+                finishVacuumDest(destPage, (int) pages.get(dest)[1]);
+            }
+        }
+        return numFreed;
+    }
+
+    // vacuum of a table with slotted data pages: records are moved off of the
+    // data pages with the most free space and into the first data page with the
+    // least free space that has room for them
+    private int vacuumSlotted(BiConsumer<RecordId, RecordId> onMove) {
+        List<long[]> pages = new ArrayList<>();
+        Iterator<Page> iter = pageDirectory.iterator();
+        while (iter.hasNext()) {
+            Page page = iter.next();
+            try {
+                pages.add(new long[] {page.getPageNum(), new SlottedPage(page).getFreeSpace()});
+            } finally {
+                page.unpin();
+            }
+        }
+        pages.sort((a, b) -> Long.compare(a[1], b[1]));
+
+        int numFreed = 0;
+        for (int src = pages.size() - 1; src > 0; --src) {
+            Page srcPage = fetchPage(pages.get(src)[0]);
+            try {
+                SlottedPage srcSlottedPage = new SlottedPage(srcPage);
+                for (int srcEntry = 0; srcEntry < srcSlottedPage.numSlots; ++srcEntry) {
+                    if (!srcSlottedPage.isUsed(srcEntry)) {
+                        continue;
+                    }
+                    byte[] bytes = srcSlottedPage.getBytes(srcEntry);
+                    int dest = 0;
+                    while (dest < src && pages.get(dest)[1] < bytes.length + SLOT_SIZE) {
+                        ++dest;
+                    }
+                    if (dest == src) {
+                        continue;
+                    }
+
+                    Page destPage = fetchPage(pages.get(dest)[0]);
+                    try {
+                        SlottedPage destSlottedPage = new SlottedPage(destPage);
+                        int destEntry = destSlottedPage.insert(bytes);
+                        pages.get(dest)[1] = destSlottedPage.getFreeSpace();
+                        pageDirectory.updateFreeSpace(destPage, (short) pages.get(dest)[1]);
+                        srcSlottedPage.delete(srcEntry);
+
+                        onMove.accept(new RecordId(srcPage.getPageNum(), (short) srcEntry),
+                                      new RecordId(destPage.getPageNum(), (short) destEntry));
+                    } finally {
+                        destPage.unpin();
+                    }
+                }
+                if (srcSlottedPage.numSlots == 0) {
+                    ++numFreed;
+                }
+                pageDirectory.updateFreeSpace(srcPage, (short) srcSlottedPage.getFreeSpace());
+            } finally {
+                srcPage.unpin();
+            }
+        }
+        return numFreed;
+    }
+
+    // updates the free space of a data page that records were moved into and unpins it
+    private void finishVacuumDest(Page page, int numRecords) {
+        try {
+            pageDirectory.updateFreeSpace(page,
+                    (short) ((numRecordsPerPage - numRecords) * schema.getSizeInBytes()));
+        } finally {
+            page.unpin();
+        }
+    }
+
     @Override
     public String toString() {
         return "Table " + name;
     }
 
     // Helpers /////////////////////////////////////////////////////////////////
+    // serializes a record as stored on slotted data pages: like Record#toBytes,
+    // except that each string is stored as its length followed by its bytes
+    private byte[] toSlottedBytes(Record record) {
+        byte[][] values = new byte[schema.size()][];
+        int size = 0;
+        for (int i = 0; i < schema.size(); ++i) {
+            DataBox value = record.getValue(i);
+            if (value.getTypeId() == TypeId.STRING) {
+                values[i] = value.getString().getBytes(StandardCharsets.US_ASCII);
+                size += 2;
+            } else {
+                values[i] = value.toBytes();
+            }
+            size += values[i].length;
+        }
+        byte[] bytes = new byte[size];
+        Buffer buf = ByteBuffer.wrap(bytes);
+        for (int i = 0; i < schema.size(); ++i) {
+            if (columnTypes[i] == TypeId.STRING) {
+                buf.putShort((short) values[i].length);
+            }
+            buf.put(values[i]);
+        }
+        return bytes;
+    }
+
+    // deserializes a record serialized by toSlottedBytes
+    private Record fromSlottedBytes(Buffer buf) {
+        List<DataBox> values = new ArrayList<>(schema.size());
+        for (int i = 0; i < schema.size(); ++i) {
+            if (columnTypes[i] == TypeId.STRING) {
+                byte[] bytes = new byte[buf.getShort()];
+                buf.get(bytes);
+                values.add(new StringDataBox(new String(bytes, StandardCharsets.UTF_8), columnSizes[i]));
+            } else {
+                values.add(DataBox.fromBytes(buf, schema.getFieldType(i)));
+            }
+        }
+        return new Record(values);
+    }
+
+    private static int readShort(byte[] bytes, int pos) {
+        return (short) (((bytes[pos] & 0xFF) << 8) | (bytes[pos + 1] & 0xFF));
+    }
+
     private Page fetchPage(long pageNum) {
         try {
             return pageDirectory.getPage(pageNum);
@@ -430,6 +843,28 @@ public class Table implements BacktrackingIterable<Record> {
         return new RecordIterator(ridIterator());
     }
 
+    /**
+     * @return a backtracking iterator over the rows of this table, which yields
+     * one RowView repositioned over each row in turn rather than a new Record
+     * per row (see RowView). Rows are decoded out of a copy of their page's
+     * bytes, taken when the iterator first moves onto the page.
+     */
+    public BacktrackingIterator<RowView> rowIterator() {
+        return rowIterator(null);
+    }
+
+    /**
+     * Same as rowIterator(), but only the columns whose indices are in
+     * `columns` (all columns if null) may be accessed through the yielded
+     * RowView. On PAX tables, only the minipages of those columns are read.
+     */
+    public BacktrackingIterator<RowView> rowIterator(Set<Integer> columns) {
+        LockUtil.ensureSufficientLockHeld(tableContext, LockType.S);
+
+        BacktrackingIterator<Page> iter = pageDirectory.iterator();
+        return new ConcatBacktrackingIterator<>(new RowPageIterator(iter, columns));
+    }
+
     /**
      * RIDPageIterator is a BacktrackingIterator over the RecordIds of a single
      * page of the table.
@@ -516,6 +951,301 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
+    /**
+     * Iterator over the data pages of the table, yielding an iterable over the
+     * rows of each page. Rows of all pages share one RowView and one copy of
+     * page bytes, which is reloaded whenever a row of another page is needed
+     * (e.g. after a reset). On PAX tables, only the bitmap and the minipages
+     * of the requested columns are copied.
+     */
+    private class RowPageIterator implements BacktrackingIterator<BacktrackingIterable<RowView>> {
+        private BacktrackingIterator<Page> sourceIterator;
+        private RowView view;
+        private byte[] pageBytes;
+        private Page loadedPage;
+
+        // starts of the minipages in pageBytes (-1 if not copied), and buffers
+        // to read the copied minipages into, on PAX tables
+        private int[] minipageStarts;
+        private byte[][] minipages;
+
+        private RowPageIterator(BacktrackingIterator<Page> sourceIterator, Set<Integer> columns) {
+            this.sourceIterator = sourceIterator;
+            this.view = new RowView(schema);
+            if (layout == PageLayout.SLOTTED) {
+                this.pageBytes = new byte[pageDirectory.getEffectivePageSize()];
+            } else {
+                this.pageBytes = new byte[bitmapSizeInBytes + numRecordsPerPage * schema.getSizeInBytes()];
+            }
+            this.loadedPage = null;
+            if (layout == PageLayout.PAX) {
+                this.minipageStarts = new int[schema.size()];
+                this.minipages = new byte[schema.size()][];
+                for (int i = 0; i < schema.size(); ++i) {
+                    boolean read = columns == null || columns.contains(i);
+                    minipageStarts[i] = read ? valueOffset(0, i) : -1;
+                    minipages[i] = read ? new byte[numRecordsPerPage * columnSizes[i]] : null;
+                }
+            }
+        }
+
+        private void load(Page page) {
+            if (loadedPage == page) {
+                return;
+            }
+            page.pin();
+            try {
+                Buffer buf = page.getBuffer();
+                if (minipageStarts == null) {
+                    buf.get(pageBytes);
+                } else {
+                    buf.get(pageBytes, 0, bitmapSizeInBytes);
+                    for (int i = 0; i < minipageStarts.length; ++i) {
+                        if (minipageStarts[i] >= 0) {
+                            buf.get(minipages[i], minipageStarts[i], minipages[i].length);
+                            System.arraycopy(minipages[i], 0, pageBytes, minipageStarts[i], minipages[i].length);
+                        }
+                    }
+                }
+            } finally {
+                page.unpin();
+            }
+            loadedPage = page;
+        }
+
+        @Override
+        public void markPrev() {
+            sourceIterator.markPrev();
+        }
+
+        @Override
+        public void markNext() {
+            sourceIterator.markNext();
+        }
+
+        @Override
+        public void reset() {
+            sourceIterator.reset();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return sourceIterator.hasNext();
+        }
+
+        @Override
+        public BacktrackingIterable<RowView> next() {
+            Page page = sourceIterator.next();
+            page.unpin();
+            return () -> new RowIterator(page);
+        }
+
+        /**
+         * Backtracking iterator over the rows of a single page.
+         */
+        private class RowIterator extends IndexBacktrackingIterator<RowView> {
+            private Page page;
+
+            private RowIterator(Page page) {
+                super(numRecordsPerPage);
+                this.page = page;
+            }
+
+            @Override
+            protected int getNextNonEmpty(int currentIndex) {
+                load(page);
+                if (layout == PageLayout.SLOTTED) {
+                    int numSlots = readShort(pageBytes, 0);
+                    for (int i = currentIndex + 1; i < numSlots; ++i) {
+                        if (readShort(pageBytes, SLOTTED_HEADER_SIZE + i * SLOT_SIZE) != 0) {
+                            return i;
+                        }
+                    }
+                    return numRecordsPerPage;
+                }
+                for (int i = currentIndex + 1; i < numRecordsPerPage; ++i) {
+                    if (bitmapSizeInBytes == 0 || Bits.getBit(pageBytes, i) == Bits.Bit.ONE) {
+                        return i;
+                    }
+                }
+                return numRecordsPerPage;
+            }
+
+            @Override
+            protected RowView getValue(int index) {
+                load(page);
+                if (layout == PageLayout.SLOTTED) {
+                    view.resetSlotted(pageBytes, readShort(pageBytes, SLOTTED_HEADER_SIZE + index * SLOT_SIZE));
+                } else if (minipageStarts == null) {
+                    view.reset(pageBytes, bitmapSizeInBytes + index * schema.getSizeInBytes());
+                } else {
+                    view.reset(pageBytes, minipageStarts, index);
+                }
+                return view;
+            }
+        }
+    }
+
+    /**
+     * A slotted data page (see the class comment), with its header and slots
+     * read into memory. The page must stay pinned while the SlottedPage is used.
+     */
+    private class SlottedPage {
+        private Page page;
+        private int numSlots;
+
+        // offset of the start of record data
+        private int dataStart;
+
+        // offsets (0 if the slot is empty) and lengths of the records in the slots
+        private short[] offsets;
+        private short[] lengths;
+
+        private SlottedPage(Page page) {
+            this.page = page;
+            Buffer buf = page.getBuffer();
+            this.numSlots = buf.getShort();
+            this.dataStart = buf.getShort();
+            if (this.dataStart == 0) {
+                // a new data page
+                this.dataStart = pageDirectory.getEffectivePageSize();
+            }
+            this.offsets = new short[numRecordsPerPage];
+            this.lengths = new short[numRecordsPerPage];
+            byte[] slots = new byte[numSlots * SLOT_SIZE];
+            buf.get(slots);
+            Buffer slotBuf = ByteBuffer.wrap(slots);
+            for (int i = 0; i < numSlots; ++i) {
+                offsets[i] = slotBuf.getShort();
+                lengths[i] = slotBuf.getShort();
+            }
+        }
+
+        private boolean isUsed(int slot) {
+            return slot < numSlots && offsets[slot] != 0;
+        }
+
+        private int getFreeSpace() {
+            int used = SLOTTED_HEADER_SIZE + numSlots * SLOT_SIZE;
+            for (int i = 0; i < numSlots; ++i) {
+                used += lengths[i];
+            }
+            return pageDirectory.getEffectivePageSize() - used;
+        }
+
+        private byte[] getBitMap() {
+            byte[] bitmap = new byte[(numRecordsPerPage + 7) / 8];
+            for (int i = 0; i < numSlots; ++i) {
+                if (offsets[i] != 0) {
+                    Bits.setBit(bitmap, i, Bits.Bit.ONE);
+                }
+            }
+            return bitmap;
+        }
+
+        private byte[] getBytes(int slot) {
+            byte[] bytes = new byte[lengths[slot]];
+            page.getBuffer().position(offsets[slot]).get(bytes);
+            return bytes;
+        }
+
+        private Record getRecord(int slot) {
+            return fromSlottedBytes(page.getBuffer().position(offsets[slot]));
+        }
+
+        /**
+         * Stores a record in the first empty slot, or in a new slot if there is
+         * none. The page must have room for the record and a new slot.
+         * @return the slot of the record
+         */
+        private int insert(byte[] bytes) {
+            int slot = 0;
+            while (slot < numSlots && offsets[slot] != 0) {
+                ++slot;
+            }
+            if (slot == numSlots) {
+                ++numSlots;
+            }
+            put(slot, bytes);
+            return slot;
+        }
+
+        /**
+         * Replaces the record in a slot, moving it if it grew.
+         * @return false (leaving the page unchanged) if the page has no room for
+         * the new record
+         */
+        private boolean update(int slot, byte[] bytes) {
+            if (bytes.length <= lengths[slot]) {
+                page.getBuffer().position(offsets[slot]).put(bytes);
+                lengths[slot] = (short) bytes.length;
+                writeSlots();
+                return true;
+            }
+            if (getFreeSpace() + lengths[slot] < bytes.length) {
+                return false;
+            }
+            offsets[slot] = 0;
+            lengths[slot] = 0;
+            put(slot, bytes);
+            return true;
+        }
+
+        private void delete(int slot) {
+            offsets[slot] = 0;
+            lengths[slot] = 0;
+            while (numSlots > 0 && offsets[numSlots - 1] == 0) {
+                --numSlots;
+            }
+            if (numSlots == 0) {
+                dataStart = pageDirectory.getEffectivePageSize();
+            }
+            writeSlots();
+        }
+
+        // stores a record for an empty slot, compacting the page if the record
+        // doesn't fit between the slots and the record data
+        private void put(int slot, byte[] bytes) {
+            if (dataStart - (SLOTTED_HEADER_SIZE + numSlots * SLOT_SIZE) < bytes.length) {
+                compact();
+            }
+            dataStart -= bytes.length;
+            page.getBuffer().position(dataStart).put(bytes);
+            offsets[slot] = (short) dataStart;
+            lengths[slot] = (short) bytes.length;
+            writeSlots();
+        }
+
+        // moves the records to the end of the page, so that all free space is
+        // between the slots and the record data
+        private void compact() {
+            byte[][] records = new byte[numSlots][];
+            for (int i = 0; i < numSlots; ++i) {
+                if (offsets[i] != 0) {
+                    records[i] = getBytes(i);
+                }
+            }
+            dataStart = pageDirectory.getEffectivePageSize();
+            for (int i = 0; i < numSlots; ++i) {
+                if (records[i] != null) {
+                    dataStart -= records[i].length;
+                    page.getBuffer().position(dataStart).put(records[i]);
+                    offsets[i] = (short) dataStart;
+                }
+            }
+        }
+
+        private void writeSlots() {
+            byte[] bytes = new byte[SLOTTED_HEADER_SIZE + numSlots * SLOT_SIZE];
+            Buffer buf = ByteBuffer.wrap(bytes);
+            buf.putShort((short) numSlots).putShort((short) dataStart);
+            for (int i = 0; i < numSlots; ++i) {
+                buf.putShort(offsets[i]).putShort(lengths[i]);
+            }
+            page.getBuffer().put(bytes);
+        }
+    }
+
     /**
      * Wraps an iterator of record ids to form an iterator over records.
      */
@@ -3,11 +3,15 @@ package edu.berkeley.cs186.database;
 import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
 import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
 import edu.berkeley.cs186.database.query.QueryPlan;
+import edu.berkeley.cs186.database.table.PageLayout;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.Schema;
@@ -23,6 +27,7 @@ import java.util.Iterator;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 @Category({Proj99Tests.class, SystemTests.class})
 public class TestDatabase {
@@ -148,6 +153,31 @@ public class TestDatabase {
         }
     }
 
+    @Test
+    public void testDatabaseDurabilityMemoryMapped() {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        Record input = TestUtils.createRecordWithAllTypes();
+
+        String tableName = "testTable1";
+
+        RecordId rid;
+        db.close();
+        db = new Database(this.filename, 32, new DummyLockManager(), new ClockEvictionPolicy(), false, true);
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName);
+            rid = t1.getTransactionContext().addRecord(tableName, input);
+        }
+
+        // a database written through memory mappings opens unchanged without them
+        db.close();
+        db = new Database(this.filename, 32);
+
+        try(Transaction t1 = db.beginTransaction()) {
+            Record rec = t1.getTransactionContext().getRecord(tableName, rid);
+            assertEquals(input, rec);
+        }
+    }
+
     @Test
     public void testREADMESample() {
         try (Transaction t1 = db.beginTransaction()) {
@@ -306,4 +336,126 @@ public class TestDatabase {
             assertFalse(iter.hasNext());
         }
     }
+
+    @Test
+    public void testVacuum() {
+        try (Transaction t1 = db.beginTransaction()) {
+            Schema s = new Schema()
+                    .add("id", Type.intType())
+                    .add("name", Type.stringType(10));
+            t1.createTable(s, "table1");
+            t1.createIndex("table1", "id", false);
+            for (int i = 0; i < 2000; ++i) {
+                t1.insert("table1", i, "name" + i);
+            }
+            t1.commit();
+        }
+
+        try (Transaction t2 = db.beginTransaction()) {
+            // DELETE FROM table1 WHERE id % 3 <> 0;
+            t2.delete("table1", r -> new BoolDataBox(r.getValue(0).getInt() % 3 != 0));
+            int numDataPages = t2.getTransactionContext().getNumDataPages("table1");
+            int numFreed = t2.vacuum("table1");
+            assertTrue(numFreed > 0);
+            assertEquals(numDataPages - numFreed, t2.getTransactionContext().getNumDataPages("table1"));
+            t2.commit();
+        }
+
+        try (Transaction t3 = db.beginTransaction()) {
+            for (int i = 0; i < 2000; ++i) {
+                Iterator<Record> iter = t3.getTransactionContext().lookupKey("table1", "id", new IntDataBox(i));
+                if (i % 3 == 0) {
+                    assertEquals(new Record(i, "name" + i), iter.next());
+                }
+                assertFalse(iter.hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void testPaxTable() {
+        try (Transaction t1 = db.beginTransaction()) {
+            Schema s = new Schema()
+                    .add("id", Type.intType())
+                    .add("name", Type.stringType(10))
+                    .add("score", Type.floatType());
+            t1.createTable(s, "table1", PageLayout.PAX);
+            for (int i = 0; i < 2000; ++i) {
+                t1.insert("table1", i, "name" + i, i / 2.0f);
+            }
+            t1.commit();
+        }
+
+        // the layout is kept when the database is reopened
+        db.close();
+        db = new Database(filename, 32);
+        db.setWorkMem(4);
+
+        try (Transaction t2 = db.beginTransaction()) {
+            assertEquals(PageLayout.PAX, t2.getTransactionContext().getTable("table1").getPageLayout());
+
+            // SELECT name FROM table1 WHERE id >= 1990;
+            QueryPlan queryPlan = t2.query("table1");
+            queryPlan.select("id", PredicateOperator.GREATER_THAN_EQUALS, 1990);
+            queryPlan.project("name");
+            Iterator<Record> iter = queryPlan.execute();
+            for (int i = 1990; i < 2000; ++i) {
+                assertEquals(new Record("name" + i), iter.next());
+            }
+            assertFalse(iter.hasNext());
+
+            // SELECT COUNT(*), SUM(id), MAX(score) FROM table1;
+            queryPlan = t2.query("table1");
+            queryPlan.project("COUNT(*)", "SUM(id)", "MAX(score)");
+            iter = queryPlan.execute();
+            assertEquals(new Record(2000, 1999 * 1000, 999.5f), iter.next());
+            assertFalse(iter.hasNext());
+        }
+    }
+
+    @Test
+    public void testSlottedTable() {
+        try (Transaction t1 = db.beginTransaction()) {
+            Schema s = new Schema()
+                    .add("id", Type.intType())
+                    .add("name", Type.stringType(255));
+            t1.createTable(s, "table1", PageLayout.SLOTTED);
+            t1.createIndex("table1", "id", false);
+            for (int i = 0; i < 2000; ++i) {
+                t1.insert("table1", i, "name" + i);
+            }
+            // 2000 padded records would take 125 pages
+            assertTrue(t1.getTransactionContext().getNumDataPages("table1") <= 10);
+            t1.commit();
+        }
+
+        // the layout is kept when the database is reopened
+        db.close();
+        db = new Database(filename, 32);
+        db.setWorkMem(4);
+
+        try (Transaction t2 = db.beginTransaction()) {
+            assertEquals(PageLayout.SLOTTED, t2.getTransactionContext().getTable("table1").getPageLayout());
+
+            // DELETE FROM table1 WHERE id % 3 <> 0;
+            t2.delete("table1", r -> new BoolDataBox(r.getValue(0).getInt() % 3 != 0));
+            assertTrue(t2.vacuum("table1") > 0);
+
+            // SELECT name FROM table1 WHERE name = 'name1998';
+            QueryPlan queryPlan = t2.query("table1");
+            queryPlan.select("name", PredicateOperator.EQUALS, "name1998");
+            queryPlan.project("name");
+            Iterator<Record> iter = queryPlan.execute();
+            assertEquals(new Record("name1998"), iter.next());
+            assertFalse(iter.hasNext());
+
+            for (int i = 0; i < 2000; ++i) {
+                iter = t2.getTransactionContext().lookupKey("table1", "id", new IntDataBox(i));
+                if (i % 3 == 0) {
+                    assertEquals(new Record(i, "name" + i), iter.next());
+                }
+                assertFalse(iter.hasNext());
+            }
+        }
+    }
 }
@@ -107,4 +107,14 @@ public class TestStatementList {
         assertEquals(StatementType.SELECT, visitor.statementVisitors.get(0).getType());
         assertEquals(StatementType.EXPLAIN, visitor.statementVisitors.get(1).getType());
     }
+
+    @Test
+    public void testVacuum() {
+        StatementListVisitor visitor = parse(
+                "DELETE FROM Students WHERE sid > 100; VACUUM Students;"
+        );
+        assertEquals(2, visitor.statementVisitors.size());
+        assertEquals(StatementType.DELETE, visitor.statementVisitors.get(0).getType());
+        assertEquals(StatementType.VACUUM, visitor.statementVisitors.get(1).getType());
+    }
 }
@@ -147,6 +147,39 @@ public class TestBPlusTree {
         assertEquals(sexp, tree.toSexp());
     }
 
+    @Test
+    @Category(SystemTests.class)
+    public void testBulkLoadLeavesSequential() {
+        // Leaves created by a bulk load are allocated from extents, so they are
+        // on consecutive pages even though inner nodes are created in between.
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+        for (int i = 0; i < 300; ++i) {
+            data.add(new Pair<>(new IntDataBox(i), new RecordId(i, (short) i)));
+        }
+        tree.bulkLoad(data.iterator(), 0.75f);
+
+        BPlusNode root = BPlusNode.fromBytes(metadata, bufferManager, treeContext, metadata.getRootPageNum());
+        List<Long> leafPages = new ArrayList<>();
+        Optional<LeafNode> leaf = Optional.of(root.getLeftmostLeaf());
+        while (leaf.isPresent()) {
+            leafPages.add(leaf.get().getPage().getPageNum());
+            leaf = leaf.get().getRightSibling();
+        }
+        assertEquals(100, leafPages.size());
+        // The first leaf is the initial root, created before the bulk load. The other
+        // 99 come from extents of 8, 16, 32 and 64 pages, so there are only gaps
+        // between extents.
+        int gaps = 0;
+        for (int i = 2; i < leafPages.size(); ++i) {
+            if (leafPages.get(i) != leafPages.get(i - 1) + 1) {
+                ++gaps;
+            }
+        }
+        assertEquals(3, gaps);
+        assertEquals(300, indexIteratorToList(tree::scanAll).size());
+    }
+
     @Test
     @Category(PublicTests.class)
     public void testWhiteBoxTest() {
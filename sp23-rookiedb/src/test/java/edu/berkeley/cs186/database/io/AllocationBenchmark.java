@@ -0,0 +1,87 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares an allocation-heavy workload (allocating pages, freeing every other
+ * one, and allocating into the holes) with master and header pages written out on
+ * every allocation and free, and written out lazily at the end.
+ *
+ * Not run as part of the test suite; run this class directly to get timings.
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class AllocationBenchmark {
+    private static final int NUM_PAGES = 2048;
+    private static final int NUM_ROUNDS = 4;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void benchmarkAllocationHeavyWorkload() throws IOException {
+        // warm up the JIT and the file system
+        runWorkload(false);
+        runWorkload(true);
+
+        long eagerNanos = runWorkload(false);
+        long lazyNanos = runWorkload(true);
+
+        int operations = NUM_PAGES + NUM_ROUNDS * NUM_PAGES;
+        System.out.printf("allocation-heavy workload (%d allocations and frees)%n", operations);
+        System.out.printf("  eager metadata: %8.2f ms (%.1f us/op)%n",
+                          eagerNanos / 1e6, eagerNanos / 1e3 / operations);
+        System.out.printf("  lazy metadata:  %8.2f ms (%.1f us/op)%n",
+                          lazyNanos / 1e6, lazyNanos / 1e3 / operations);
+        System.out.printf("  speedup:        %8.2fx%n", (double) eagerNanos / lazyNanos);
+    }
+
+    /**
+     * Allocates NUM_PAGES pages, then NUM_ROUNDS times frees every other page and
+     * allocates as many pages again. Data page writes are deferred in both cases, so
+     * that only the cost of writing out metadata differs.
+     * @return time taken in nanoseconds, including the final sync
+     */
+    private long runWorkload(boolean lazyMetadata) throws IOException {
+        String dir = tempFolder.newFolder().getAbsolutePath();
+        DiskSpaceManagerImpl diskSpaceManager = new DiskSpaceManagerImpl(dir, new DummyRecoveryManager(),
+                true);
+        diskSpaceManager.setLazyMetadata(lazyMetadata);
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[NUM_PAGES];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < NUM_PAGES; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+        for (int round = 0; round < NUM_ROUNDS; ++round) {
+            for (int i = round % 2; i < NUM_PAGES; i += 2) {
+                diskSpaceManager.freePage(pageNums[i]);
+            }
+            for (int i = round % 2; i < NUM_PAGES; i += 2) {
+                pageNums[i] = diskSpaceManager.allocPage(partNum);
+            }
+        }
+        diskSpaceManager.sync();
+        long elapsed = System.nanoTime() - start;
+        diskSpaceManager.close();
+
+        diskSpaceManager = new DiskSpaceManagerImpl(dir, new DummyRecoveryManager());
+        int allocated = 0;
+        for (long pageNum : pageNums) {
+            allocated += diskSpaceManager.pageAllocated(pageNum) ? 1 : 0;
+        }
+        assertEquals(NUM_PAGES, allocated);
+        diskSpaceManager.close();
+        return elapsed;
+    }
+}
@@ -0,0 +1,130 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Measures the compression ratio of a partition of heap-file-like pages (fixed
+ * length records of an int, a padded string, and a float, after a bitmap, with
+ * pages between a quarter and completely full), and the throughput of reading
+ * every page of the partition, uncompressed and compressed. Both partitions are
+ * read from the OS cache, so the read throughputs compare the cost of
+ * decompression against that of copying whole pages; on a cold cache the
+ * compressed partition also reads fewer bytes from disk.
+ *
+ * Not run as part of the test suite; run this class directly to get timings.
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class CompressionBenchmark {
+    private static final int NUM_PAGES = 4096;
+    private static final int NUM_PASSES = 8;
+    private static final int RECORD_SIZE = 4 + 20 + 4;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void benchmarkCompressedReads() throws IOException {
+        String dir = tempFolder.newFolder().getAbsolutePath();
+        DiskSpaceManagerImpl diskSpaceManager = new DiskSpaceManagerImpl(dir, new DummyRecoveryManager(),
+                true);
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = diskSpaceManager.allocPages(partNum, NUM_PAGES);
+        Random random = new Random(186);
+        for (long pageNum : pageNums) {
+            diskSpaceManager.writePage(pageNum, makePage(random));
+        }
+        diskSpaceManager.sync();
+        File file = new File(dir, Integer.toString(partNum));
+        long uncompressedBytes = file.length();
+
+        // warm up the JIT and the OS cache
+        readAll(diskSpaceManager, pageNums);
+        long uncompressedNanos = readAll(diskSpaceManager, pageNums);
+
+        long start = System.nanoTime();
+        diskSpaceManager.setCompressed(partNum, true);
+        long compressNanos = System.nanoTime() - start;
+        long compressedBytes = file.length();
+
+        readAll(diskSpaceManager, pageNums);
+        long compressedNanos = readAll(diskSpaceManager, pageNums);
+
+        byte[] expected = new byte[DiskSpaceManager.PAGE_SIZE];
+        byte[] actual = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.setCompressed(partNum, false);
+        diskSpaceManager.readPage(pageNums[NUM_PAGES / 2], expected);
+        diskSpaceManager.setCompressed(partNum, true);
+        diskSpaceManager.readPage(pageNums[NUM_PAGES / 2], actual);
+        assertArrayEquals(expected, actual);
+        diskSpaceManager.close();
+
+        double pagesRead = (double) NUM_PASSES * NUM_PAGES;
+        double megabytesRead = pagesRead * DiskSpaceManager.PAGE_SIZE / (1 << 20);
+        System.out.printf("partition of %d heap pages%n", NUM_PAGES);
+        System.out.printf("  uncompressed size: %8.2f MB%n", uncompressedBytes / (double) (1 << 20));
+        System.out.printf("  compressed size:   %8.2f MB (ratio %.2fx, compressed in %.2f ms)%n",
+                          compressedBytes / (double) (1 << 20), (double) uncompressedBytes / compressedBytes,
+                          compressNanos / 1e6);
+        System.out.printf("  uncompressed reads: %8.1f MB/s (%.2f us/page)%n",
+                          megabytesRead / (uncompressedNanos / 1e9), uncompressedNanos / 1e3 / pagesRead);
+        System.out.printf("  compressed reads:   %8.1f MB/s (%.2f us/page)%n",
+                          megabytesRead / (compressedNanos / 1e9), compressedNanos / 1e3 / pagesRead);
+    }
+
+    /**
+     * Reads every page NUM_PASSES times.
+     * @return time taken in nanoseconds
+     */
+    private long readAll(DiskSpaceManager diskSpaceManager, long[] pageNums) {
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        long start = System.nanoTime();
+        for (int pass = 0; pass < NUM_PASSES; ++pass) {
+            for (long pageNum : pageNums) {
+                diskSpaceManager.readPage(pageNum, buf);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return a page laid out like a heap file data page, with its bitmap followed by
+     * records, some of them deleted
+     */
+    private static byte[] makePage(Random random) {
+        ByteBuffer page = ByteBuffer.wrap(new byte[DiskSpaceManager.PAGE_SIZE]);
+        int numSlots = (BufferManager.EFFECTIVE_PAGE_SIZE - 10) * 8 / (RECORD_SIZE * 8 + 1);
+        int bitmapSize = (numSlots + 7) / 8;
+        double fill = 0.25 + 0.75 * random.nextDouble();
+        int recordStart = BufferManager.RESERVED_SPACE + 10 + bitmapSize;
+        for (int slot = 0; slot < numSlots; ++slot) {
+            if (random.nextDouble() >= fill) {
+                continue;
+            }
+            int bitmapByte = BufferManager.RESERVED_SPACE + 10 + slot / 8;
+            page.put(bitmapByte, (byte) (page.get(bitmapByte) | (1 << (7 - slot % 8))));
+            page.position(recordStart + slot * RECORD_SIZE);
+            int id = random.nextInt(1000000);
+            page.putInt(id);
+            byte[] name = ("name" + id).getBytes(StandardCharsets.US_ASCII);
+            page.put(name);
+            page.position(page.position() + 20 - name.length);
+            page.putFloat(random.nextInt(10000) / 100f);
+        }
+        return page.array();
+    }
+}
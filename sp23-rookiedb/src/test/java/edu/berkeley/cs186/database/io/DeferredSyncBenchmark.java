@@ -0,0 +1,96 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares an eviction-heavy workload (a small buffer pool cycling over many
+ * dirty pages) with and without deferred syncing of data page writes.
+ *
+ * Not run as part of the test suite; run this class directly to get timings.
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class DeferredSyncBenchmark {
+    private static final int BUFFER_SIZE = 16;
+    private static final int NUM_PAGES = 256;
+    private static final int NUM_PASSES = 4;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void benchmarkEvictionHeavyWorkload() throws IOException {
+        // warm up the JIT and the file system
+        runWorkload(false);
+        runWorkload(true);
+
+        long forcedNanos = runWorkload(false);
+        long deferredNanos = runWorkload(true);
+
+        int pageWrites = NUM_PAGES * NUM_PASSES;
+        System.out.printf("eviction-heavy workload (%d page writes, %d frames)%n", pageWrites, BUFFER_SIZE);
+        System.out.printf("  fsync per write: %8.2f ms (%.1f us/write)%n",
+                          forcedNanos / 1e6, forcedNanos / 1e3 / pageWrites);
+        System.out.printf("  deferred sync:   %8.2f ms (%.1f us/write)%n",
+                          deferredNanos / 1e6, deferredNanos / 1e3 / pageWrites);
+        System.out.printf("  speedup:         %8.2fx%n", (double) forcedNanos / deferredNanos);
+    }
+
+    /**
+     * Dirties NUM_PAGES pages NUM_PASSES times through a BUFFER_SIZE frame buffer
+     * pool, so that nearly every page access evicts (and writes out) a dirty page.
+     * @return time taken in nanoseconds, including the final sync
+     */
+    private long runWorkload(boolean deferSync) throws IOException {
+        String dir = tempFolder.newFolder().getAbsolutePath();
+        DiskSpaceManagerImpl diskSpaceManager = new DiskSpaceManagerImpl(dir, new DummyRecoveryManager(),
+                deferSync);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                BUFFER_SIZE, new LRUEvictionPolicy());
+        DummyLockContext context = new DummyLockContext();
+        int partNum = diskSpaceManager.allocPart();
+        long[] pageNums = new long[NUM_PAGES];
+        for (int i = 0; i < NUM_PAGES; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+        diskSpaceManager.sync();
+
+        long start = System.nanoTime();
+        for (int pass = 0; pass < NUM_PASSES; ++pass) {
+            for (long pageNum : pageNums) {
+                Page page = bufferManager.fetchPage(context, pageNum);
+                try {
+                    page.getBuffer().putInt(pass);
+                } finally {
+                    page.unpin();
+                }
+            }
+        }
+        bufferManager.evictAll();
+        diskSpaceManager.sync();
+        long elapsed = System.nanoTime() - start;
+
+        Page page = bufferManager.fetchPage(context, pageNums[0]);
+        try {
+            assertEquals(NUM_PASSES - 1, page.getBuffer().getInt());
+        } finally {
+            page.unpin();
+        }
+        bufferManager.close();
+        diskSpaceManager.close();
+        return elapsed;
+    }
+}
@@ -1,7 +1,9 @@
 package edu.berkeley.cs186.database.io;
 
+import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.concurrency.DummyTransactionContext;
 import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
 import org.junit.Before;
 import org.junit.Rule;
@@ -10,8 +12,12 @@ import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -32,6 +38,10 @@ public class TestDiskSpaceManager {
         return new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
     }
 
+    private DiskSpaceManager getDeferredSyncDiskSpaceManager() {
+        return new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager(), true);
+    }
+
     @Test
     public void testCreateDiskSpaceManager() {
         diskSpaceManager = getDiskSpaceManager();
@@ -137,6 +147,53 @@ public class TestDiskSpaceManager {
         diskSpaceManager.close();
     }
 
+    @Test
+    public void testAllocPages() {
+        diskSpaceManager = getDiskSpaceManager();
+        // not the log partition, whose freed pages are not reused
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pages = diskSpaceManager.allocPages(partNum, 3);
+        assertEquals(3, pages.length);
+        for (int i = 0; i < pages.length; ++i) {
+            assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, i), pages[i]);
+        }
+
+        // a freed page that held data is zeroed out when it is allocated again, and
+        // a run skips over holes that are too short
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        buf[0] = 42;
+        diskSpaceManager.writePage(pages[1], buf);
+        diskSpaceManager.freePage(pages[1]);
+        long[] run = diskSpaceManager.allocPages(partNum, 4);
+        for (int i = 0; i < run.length; ++i) {
+            assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, 3 + i), run[i]);
+            diskSpaceManager.readPage(run[i], buf);
+            assertArrayEquals(new byte[DiskSpaceManager.PAGE_SIZE], buf);
+        }
+        long[] hole = diskSpaceManager.allocPages(partNum, 1);
+        assertEquals(pages[1], hole[0]);
+        diskSpaceManager.readPage(hole[0], buf);
+        assertArrayEquals(new byte[DiskSpaceManager.PAGE_SIZE], buf);
+        assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, 7), diskSpaceManager.allocPage(partNum));
+        diskSpaceManager.close();
+
+        diskSpaceManager = getDiskSpaceManager();
+        for (int i = 0; i < 8; ++i) {
+            assertTrue(diskSpaceManager.pageAllocated(DiskSpaceManager.getVirtualPageNum(partNum, i)));
+        }
+        assertFalse(diskSpaceManager.pageAllocated(DiskSpaceManager.getVirtualPageNum(partNum, 8)));
+        assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, 8), diskSpaceManager.allocPage(partNum));
+
+        // runs cannot span header pages
+        try {
+            diskSpaceManager.allocPages(partNum, DiskSpaceManagerImpl.DATA_PAGES_PER_HEADER + 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            /* do nothing */
+        }
+        diskSpaceManager.close();
+    }
+
     @Test(expected = NoSuchElementException.class)
     public void testReadBadPart() {
         diskSpaceManager = getDiskSpaceManager();
@@ -298,5 +355,487 @@ public class TestDiskSpaceManager {
         diskSpaceManager.freePart(partNum2);
         diskSpaceManager.close();
     }
-}
 
+    @Test
+    public void testDeferredSyncReadWritePersistent() {
+        diskSpaceManager = getDeferredSyncDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum1 = diskSpaceManager.allocPage(partNum);
+        long pageNum2 = diskSpaceManager.allocPage(partNum);
+
+        byte[] buf1 = new byte[DiskSpaceManager.PAGE_SIZE];
+        byte[] buf2 = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < buf1.length; ++i) {
+            buf1[i] = (byte) (Integer.valueOf(i).hashCode() & 0xFF);
+            buf2[i] = (byte) ((Integer.valueOf(i).hashCode() >> 8) & 0xFF);
+        }
+        diskSpaceManager.writePage(pageNum1, buf1);
+        diskSpaceManager.sync();
+        diskSpaceManager.writePage(pageNum2, buf2);
+
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNum2, readbuf);
+        assertArrayEquals(buf2, readbuf);
+        diskSpaceManager.close();
+
+        diskSpaceManager = getDiskSpaceManager();
+        diskSpaceManager.readPage(pageNum1, readbuf);
+        assertArrayEquals(buf1, readbuf);
+        diskSpaceManager.readPage(pageNum2, readbuf);
+        assertArrayEquals(buf2, readbuf);
+
+        diskSpaceManager.freePart(partNum);
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testSetDeferSync() {
+        DiskSpaceManagerImpl dsm = new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
+        assertFalse(dsm.isDeferSync());
+        int partNum = dsm.allocPart();
+        long pageNum = dsm.allocPage(partNum);
+        dsm.setDeferSync(true);
+        assertTrue(dsm.isDeferSync());
+
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        buf[17] = 42;
+        dsm.writePage(pageNum, buf);
+        dsm.setDeferSync(false);
+        assertFalse(dsm.isDeferSync());
+
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        dsm.readPage(pageNum, readbuf);
+        assertArrayEquals(buf, readbuf);
+        dsm.close();
+    }
+
+    @Test
+    public void testLazyMetadata() {
+        DiskSpaceManagerImpl dsm = new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
+        assertFalse(dsm.isLazyMetadata());
+        int partNum = dsm.allocPart(1);
+        long pageNum1 = dsm.allocPage(partNum);
+        dsm.setLazyMetadata(true);
+        assertTrue(dsm.isLazyMetadata());
+        // only changes made in a transaction are logged, and may be deferred
+        TransactionContext.setTransaction(new DummyTransactionContext(null, 1L));
+        long pageNum2;
+        try {
+            pageNum2 = dsm.allocPage(partNum);
+            dsm.freePage(pageNum1);
+        } finally {
+            TransactionContext.unsetTransaction();
+        }
+        assertTrue(dsm.pageAllocated(pageNum2));
+        assertFalse(dsm.pageAllocated(pageNum1));
+
+        // a second manager only sees what is on disk, as after a crash
+        DiskSpaceManager crashed = getDiskSpaceManager();
+        assertTrue(crashed.pageAllocated(pageNum1));
+        assertFalse(crashed.pageAllocated(pageNum2));
+        crashed.close();
+
+        dsm.sync();
+        crashed = getDiskSpaceManager();
+        assertFalse(crashed.pageAllocated(pageNum1));
+        assertTrue(crashed.pageAllocated(pageNum2));
+        crashed.close();
+
+        // an allocation that is not logged syncs the partition
+        long pageNum3 = dsm.allocPage(partNum);
+        crashed = getDiskSpaceManager();
+        assertTrue(crashed.pageAllocated(pageNum3));
+        crashed.close();
+
+        dsm.close();
+    }
+
+    @Test
+    public void testLazyMetadataPersist() {
+        DiskSpaceManagerImpl dsm = new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
+        dsm.setLazyMetadata(true);
+        int logPartNum = dsm.allocPart(0);
+        int partNum = dsm.allocPart(1);
+        TransactionContext.setTransaction(new DummyTransactionContext(null, 1L));
+        long logPageNum;
+        long[] pageNums;
+        try {
+            logPageNum = dsm.allocPage(logPartNum);
+            pageNums = dsm.allocPages(partNum, 5);
+        } finally {
+            TransactionContext.unsetTransaction();
+        }
+
+        // the log partition's metadata is never deferred
+        DiskSpaceManager crashed = getDiskSpaceManager();
+        assertTrue(crashed.pageAllocated(logPageNum));
+        assertFalse(crashed.pageAllocated(pageNums[0]));
+        crashed.close();
+
+        dsm.close();
+        diskSpaceManager = getDiskSpaceManager();
+        for (long pageNum : pageNums) {
+            assertTrue(diskSpaceManager.pageAllocated(pageNum));
+        }
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testReadPages() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum1 = diskSpaceManager.allocPart();
+        int partNum2 = diskSpaceManager.allocPart();
+        long[] pageNums = new long[8];
+        for (int i = 0; i < 6; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum1);
+        }
+        pageNums[6] = diskSpaceManager.allocPage(partNum2);
+        pageNums[7] = diskSpaceManager.allocPage(partNum2);
+        for (int i = 0; i < pageNums.length; ++i) {
+            byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+            buf[i] = (byte) (i + 1);
+            buf[DiskSpaceManager.PAGE_SIZE - 1] = (byte) (i + 1);
+            diskSpaceManager.writePage(pageNums[i], buf);
+        }
+
+        // out of order, spanning both partitions, with a gap in the first partition
+        long[] toRead = new long[] {pageNums[7], pageNums[2], pageNums[0], pageNums[6],
+                                    pageNums[1], pageNums[5], pageNums[4]
+                                   };
+        int[] expected = new int[] {7, 2, 0, 6, 1, 5, 4};
+        byte[][] bufs = new byte[toRead.length][DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPages(toRead, bufs);
+        for (int i = 0; i < toRead.length; ++i) {
+            byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+            diskSpaceManager.readPage(toRead[i], readbuf);
+            assertArrayEquals(readbuf, bufs[i]);
+            assertEquals(expected[i] + 1, bufs[i][expected[i]]);
+            assertEquals(expected[i] + 1, bufs[i][DiskSpaceManager.PAGE_SIZE - 1]);
+        }
+
+        diskSpaceManager.freePage(pageNums[3]);
+        try {
+            diskSpaceManager.readPages(new long[] {pageNums[2], pageNums[3]},
+                                       new byte[2][DiskSpaceManager.PAGE_SIZE]);
+            fail();
+        } catch (PageException e) {
+            /* do nothing */
+        }
+
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testReadWriteByteBuffers() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum1 = diskSpaceManager.allocPage(partNum);
+        long pageNum2 = diskSpaceManager.allocPage(partNum);
+
+        // page-sized slices of one direct buffer, as in an off-heap buffer pool
+        ByteBuffer region = ByteBuffer.allocateDirect(3 * DiskSpaceManager.PAGE_SIZE);
+        ByteBuffer[] slices = new ByteBuffer[3];
+        for (int i = 0; i < slices.length; ++i) {
+            ByteBuffer slice = region.duplicate();
+            slice.position(i * DiskSpaceManager.PAGE_SIZE);
+            slice.limit(slice.position() + DiskSpaceManager.PAGE_SIZE);
+            slices[i] = slice.slice();
+        }
+        slices[0].putInt(0, 0xDEADBEEF);
+        slices[0].putInt(DiskSpaceManager.PAGE_SIZE - 4, 0xCAFEBABE);
+        diskSpaceManager.writePage(pageNum1, slices[0]);
+        assertEquals(0, slices[0].position());
+
+        byte[] bytes = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNum1, bytes);
+        assertEquals(0xDEADBEEF, ByteBuffer.wrap(bytes).getInt(0));
+        assertEquals(0xCAFEBABE, ByteBuffer.wrap(bytes).getInt(DiskSpaceManager.PAGE_SIZE - 4));
+
+        diskSpaceManager.readPage(pageNum1, slices[1]);
+        assertEquals(0xDEADBEEF, slices[1].getInt(0));
+        assertEquals(0xCAFEBABE, slices[1].getInt(DiskSpaceManager.PAGE_SIZE - 4));
+
+        slices[0].clear();
+        diskSpaceManager.readPages(new long[] {pageNum2, pageNum1}, new ByteBuffer[] {slices[0], slices[2]});
+        assertEquals(0, slices[0].getInt(0));
+        assertEquals(0xDEADBEEF, slices[2].getInt(0));
+        assertEquals(0xCAFEBABE, slices[2].getInt(DiskSpaceManager.PAGE_SIZE - 4));
+
+        try {
+            diskSpaceManager.readPage(pageNum1, region);
+            fail();
+        } catch (IllegalArgumentException e) {
+            /* do nothing */
+        }
+
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testCompressedPartition() {
+        DiskSpaceManagerImpl dsm = new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
+        int partNum = dsm.allocPart(1);
+        long[] pageNums = dsm.allocPages(partNum, 4);
+        byte[][] pages = new byte[4][DiskSpaceManager.PAGE_SIZE];
+        // a sparse page, a page of repeated records, an incompressible page, and an
+        // empty page
+        pages[0][100] = 42;
+        for (int i = 0; i < DiskSpaceManager.PAGE_SIZE; ++i) {
+            pages[1][i] = (byte) (i % 12 < 4 ? i / 12 : 7);
+        }
+        new Random(186).nextBytes(pages[2]);
+        for (int i = 0; i < 3; ++i) {
+            dsm.writePage(pageNums[i], pages[i]);
+        }
+        long freed = dsm.allocPage(partNum);
+        dsm.freePage(freed);
+        long uncompressedLength = managerRoot.resolve("1").toFile().length();
+
+        dsm.setCompressed(partNum, true);
+        assertTrue(dsm.isCompressed(partNum));
+        assertTrue(managerRoot.resolve("1").toFile().length() < uncompressedLength / 2);
+        assertFalse(dsm.pageAllocated(freed));
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < 4; ++i) {
+            dsm.readPage(pageNums[i], readbuf);
+            assertArrayEquals(pages[i], readbuf);
+        }
+        byte[][] bufs = new byte[2][DiskSpaceManager.PAGE_SIZE];
+        dsm.readPages(new long[] {pageNums[2], pageNums[1]}, bufs);
+        assertArrayEquals(pages[2], bufs[0]);
+        assertArrayEquals(pages[1], bufs[1]);
+        ByteBuffer direct = ByteBuffer.allocateDirect(DiskSpaceManager.PAGE_SIZE);
+        dsm.readPage(pageNums[1], direct);
+        direct.get(readbuf);
+        assertArrayEquals(pages[1], readbuf);
+        dsm.close();
+
+        // still compressed after reopening
+        dsm = new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
+        assertTrue(dsm.isCompressed(partNum));
+        assertFalse(dsm.pageAllocated(freed));
+        for (int i = 0; i < 4; ++i) {
+            assertTrue(dsm.pageAllocated(pageNums[i]));
+            dsm.readPage(pageNums[i], readbuf);
+            assertArrayEquals(pages[i], readbuf);
+        }
+
+        // writing to the partition decompresses it
+        pages[3][0] = 1;
+        dsm.writePage(pageNums[3], pages[3]);
+        assertFalse(dsm.isCompressed(partNum));
+        dsm.close();
+
+        dsm = new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
+        assertFalse(dsm.isCompressed(partNum));
+        for (int i = 0; i < 4; ++i) {
+            dsm.readPage(pageNums[i], readbuf);
+            assertArrayEquals(pages[i], readbuf);
+        }
+        assertEquals(freed, dsm.allocPage(partNum));
+        dsm.close();
+    }
+
+    @Test
+    public void testCompressedPartitionAllocFree() {
+        DiskSpaceManagerImpl dsm = new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
+        int partNum = dsm.allocPart(1);
+        long pageNum1 = dsm.allocPage(partNum);
+        long pageNum2 = dsm.allocPage(partNum);
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        buf[7] = 7;
+        dsm.writePage(pageNum2, buf);
+
+        dsm.setCompressed(partNum, true);
+        dsm.freePage(pageNum1);
+        assertFalse(dsm.isCompressed(partNum));
+
+        dsm.setCompressed(partNum, true);
+        long pageNum3 = dsm.allocPage(partNum);
+        assertFalse(dsm.isCompressed(partNum));
+        assertEquals(pageNum1, pageNum3);
+
+        dsm.setCompressed(partNum, true);
+        dsm.setCompressed(partNum, false);
+        assertFalse(dsm.isCompressed(partNum));
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        dsm.readPage(pageNum2, readbuf);
+        assertArrayEquals(buf, readbuf);
+
+        try {
+            dsm.setCompressed(0, true);
+            fail();
+        } catch (IllegalArgumentException e) {
+            /* do nothing */
+        }
+        dsm.setCompressed(partNum, true);
+        dsm.freePart(partNum);
+        assertFalse(managerRoot.resolve("1").toFile().exists());
+        dsm.close();
+    }
+
+    @Test
+    public void testLeftoverTempFile() throws IOException {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart(1);
+        diskSpaceManager.close();
+        // as if the manager crashed while rewriting the partition
+        Files.write(managerRoot.resolve("1" + PartitionHandle.TEMP_SUFFIX), new byte[] {1, 2, 3});
+
+        diskSpaceManager = getDiskSpaceManager();
+        assertFalse(managerRoot.resolve("1" + PartitionHandle.TEMP_SUFFIX).toFile().exists());
+        assertEquals(2, diskSpaceManager.allocPart());
+        diskSpaceManager.freePart(partNum);
+        diskSpaceManager.close();
+    }
+
+    // Overwrites a few bytes of a data page in a partition's file.
+    private void corruptPage(int partNum, int pageNum) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(managerRoot.resolve(Integer.toString(partNum)).toFile(),
+                "rw")) {
+            file.seek((2L + pageNum) * DiskSpaceManager.PAGE_SIZE + 200);
+            file.write(new byte[] {1, 2, 3});
+        }
+    }
+
+    @Test
+    public void testChecksums() throws IOException {
+        DiskSpaceManagerImpl dsm = new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
+        int logPartNum = dsm.allocPart(0);
+        int partNum = dsm.allocPart(1);
+        long logPage = dsm.allocPage(logPartNum);
+        long[] pageNums = dsm.allocPages(partNum, 3);
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        buf[8] = 5;
+        buf[DiskSpaceManager.PAGE_SIZE - 1] = 6;
+        // written before checksums are on, so it has none
+        dsm.writePage(pageNums[2], buf);
+
+        dsm.setChecksummed(true);
+        assertTrue(dsm.isChecksummed());
+        dsm.writePage(pageNums[0], buf);
+        dsm.writePage(pageNums[1], buf);
+        byte[] logBuf = buf.clone();
+        logBuf[0] = 5;
+        dsm.writePage(logPage, logBuf);
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        dsm.readPage(pageNums[0], readbuf);
+        assertNotEquals(0, ByteBuffer.wrap(readbuf).getInt(0));
+        assertEquals(6, readbuf[DiskSpaceManager.PAGE_SIZE - 1]);
+        // the log partition has no reserved space to store a checksum in
+        dsm.readPage(logPage, readbuf);
+        assertArrayEquals(logBuf, readbuf);
+        dsm.close();
+
+        corruptPage(partNum, 1);
+        corruptPage(partNum, 2);
+        dsm = new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
+        dsm.setChecksummed(true);
+        dsm.readPage(pageNums[0], readbuf);
+        dsm.readPage(pageNums[2], readbuf);
+        try {
+            dsm.readPage(pageNums[1], readbuf);
+            fail();
+        } catch (CorruptPageException e) {
+            assertEquals(pageNums[1], e.getPageNum());
+        }
+        try {
+            dsm.readPages(pageNums, new byte[3][DiskSpaceManager.PAGE_SIZE]);
+            fail();
+        } catch (CorruptPageException e) {
+            assertEquals(pageNums[1], e.getPageNum());
+        }
+
+        // compressed partitions are checksummed the same way
+        dsm.writePage(pageNums[1], buf);
+        dsm.setCompressed(partNum, true);
+        dsm.readPage(pageNums[1], readbuf);
+        assertEquals(6, readbuf[DiskSpaceManager.PAGE_SIZE - 1]);
+
+        dsm.setChecksummed(false);
+        dsm.setCompressed(partNum, false);
+        corruptPage(partNum, 1);
+        dsm.readPage(pageNums[1], readbuf);
+        assertEquals(1, readbuf[200]);
+        dsm.close();
+    }
+
+    @Test
+    public void testLogPagesNotReused() {
+        diskSpaceManager = getDiskSpaceManager();
+        int logPartNum = diskSpaceManager.allocPart(0);
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] logPages = diskSpaceManager.allocPages(logPartNum, 4);
+        long[] pages = diskSpaceManager.allocPages(partNum, 4);
+        diskSpaceManager.freePage(logPages[1]);
+        diskSpaceManager.freePage(pages[1]);
+
+        // pages of other partitions are reused, log pages are not
+        assertEquals(pages[1], diskSpaceManager.allocPage(partNum));
+        assertEquals(logPages[3] + 1, diskSpaceManager.allocPage(logPartNum));
+        diskSpaceManager.freePage(logPages[3] + 1);
+        diskSpaceManager.close();
+
+        // not even after the last log page is freed and the manager reopened
+        diskSpaceManager = getDiskSpaceManager();
+        assertEquals(logPages[3] + 1, diskSpaceManager.allocPage(logPartNum));
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testFreePages() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart(0);
+        long[] pageNums = diskSpaceManager.allocPages(partNum, 10);
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        buf[0] = 9;
+        diskSpaceManager.writePage(pageNums[9], buf);
+        diskSpaceManager.freePage(pageNums[2]);
+
+        assertEquals(pageNums[0], diskSpaceManager.firstAllocatedPage(pageNums[0], pageNums[9]));
+        diskSpaceManager.freePages(pageNums[0], pageNums[5]);
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(i >= 5, diskSpaceManager.pageAllocated(pageNums[i]));
+        }
+        assertEquals(pageNums[5], diskSpaceManager.firstAllocatedPage(pageNums[0], pageNums[9]));
+        assertEquals(pageNums[3], diskSpaceManager.firstAllocatedPage(pageNums[0], pageNums[3]));
+        diskSpaceManager.close();
+
+        diskSpaceManager = getDiskSpaceManager();
+        assertEquals(pageNums[5], diskSpaceManager.firstAllocatedPage(pageNums[0], pageNums[9]));
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNums[9], readbuf);
+        assertArrayEquals(buf, readbuf);
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testFreePagesRewritesFile() {
+        // once enough pages are freed, the file is rewritten with only the pages
+        // left, at the same offsets
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart(0);
+        int numPages = PartitionHandle.MIN_DISCARDED_FOR_REWRITE + 10;
+        long[] pageNums = diskSpaceManager.allocPages(partNum, numPages);
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = numPages - 10; i < numPages; ++i) {
+            buf[0] = (byte) i;
+            diskSpaceManager.writePage(pageNums[i], buf);
+        }
+        diskSpaceManager.freePages(pageNums[0], pageNums[numPages - 10]);
+        assertFalse(managerRoot.resolve("0" + PartitionHandle.TEMP_SUFFIX).toFile().exists());
+        // allocated after the last page, as before
+        assertEquals(pageNums[numPages - 1] + 1, diskSpaceManager.allocPage(partNum));
+        diskSpaceManager.close();
+
+        diskSpaceManager = getDiskSpaceManager();
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = numPages - 10; i < numPages; ++i) {
+            diskSpaceManager.readPage(pageNums[i], readbuf);
+            assertEquals((byte) i, readbuf[0]);
+        }
+        assertFalse(diskSpaceManager.pageAllocated(pageNums[0]));
+        assertEquals(pageNums[numPages - 1] + 2, diskSpaceManager.allocPage(partNum));
+        diskSpaceManager.close();
+    }
+}
@@ -0,0 +1,199 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestMappedDiskSpaceManager {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Path managerRoot;
+
+    @Before
+    public void beforeEach() throws IOException {
+        managerRoot = tempFolder.newFolder("mapped-dsm-test").toPath();
+    }
+
+    private DiskSpaceManager getMappedDiskSpaceManager() {
+        return new MappedDiskSpaceManager(managerRoot.toString(), new DummyRecoveryManager());
+    }
+
+    private DiskSpaceManager getDiskSpaceManager() {
+        return new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
+    }
+
+    private static byte[] makePage(int seed) {
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < buf.length; ++i) {
+            buf[i] = (byte) ((Integer.valueOf(i * 31 + seed).hashCode() >> (seed % 3) * 8) & 0xFF);
+        }
+        return buf;
+    }
+
+    @Test
+    public void testReadWrite() {
+        DiskSpaceManager dsm = getMappedDiskSpaceManager();
+        int partNum = dsm.allocPart();
+        long pageNum1 = dsm.allocPage(partNum);
+        long pageNum2 = dsm.allocPage(partNum);
+
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        dsm.readPage(pageNum1, readbuf);
+        assertArrayEquals(new byte[DiskSpaceManager.PAGE_SIZE], readbuf);
+
+        dsm.writePage(pageNum1, makePage(1));
+        dsm.writePage(pageNum2, makePage(2));
+        dsm.readPage(pageNum1, readbuf);
+        assertArrayEquals(makePage(1), readbuf);
+        dsm.readPage(pageNum2, readbuf);
+        assertArrayEquals(makePage(2), readbuf);
+
+        dsm.freePart(partNum);
+        dsm.close();
+    }
+
+    @Test
+    public void testReadWriteDirectBuffers() {
+        DiskSpaceManager dsm = getMappedDiskSpaceManager();
+        int partNum = dsm.allocPart();
+        long pageNum = dsm.allocPage(partNum);
+
+        ByteBuffer buf = ByteBuffer.allocateDirect(DiskSpaceManager.PAGE_SIZE);
+        buf.put(makePage(3));
+        buf.flip();
+        dsm.writePage(pageNum, buf);
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        dsm.readPage(pageNum, readbuf);
+        assertArrayEquals(makePage(3), readbuf);
+
+        ByteBuffer readBuffer = ByteBuffer.allocateDirect(DiskSpaceManager.PAGE_SIZE);
+        dsm.readPage(pageNum, readBuffer);
+        assertEquals(0, readBuffer.position());
+        readBuffer.get(readbuf);
+        assertArrayEquals(makePage(3), readbuf);
+
+        dsm.freePart(partNum);
+        dsm.close();
+    }
+
+    @Test(expected = PageException.class)
+    public void testReadUnallocated() {
+        DiskSpaceManager dsm = getMappedDiskSpaceManager();
+        dsm.allocPart();
+        dsm.readPage(0, new byte[DiskSpaceManager.PAGE_SIZE]);
+        dsm.close();
+    }
+
+    @Test
+    public void testFileLengthUnchanged() {
+        DiskSpaceManager dsm = getMappedDiskSpaceManager();
+        int partNum = dsm.allocPart();
+        dsm.close();
+        assertEquals(DiskSpaceManager.PAGE_SIZE, managerRoot.resolve("" + partNum).toFile().length());
+
+        dsm = getMappedDiskSpaceManager();
+        dsm.allocPage(partNum);
+        dsm.allocPage(partNum);
+        dsm.close();
+        // master page, header page, 2 data pages
+        assertEquals(4 * DiskSpaceManager.PAGE_SIZE, managerRoot.resolve("" + partNum).toFile().length());
+    }
+
+    @Test
+    public void testCompatibleWithDiskSpaceManagerImpl() {
+        // write with the mapped manager, across several segments...
+        DiskSpaceManager dsm = getMappedDiskSpaceManager();
+        int partNum = dsm.allocPart();
+        int numPages = MappedPartitionHandle.SEGMENT_SIZE / DiskSpaceManager.PAGE_SIZE + 10;
+        long[] pageNums = new long[numPages];
+        for (int i = 0; i < numPages; ++i) {
+            pageNums[i] = dsm.allocPage(partNum);
+        }
+        dsm.writePage(pageNums[0], makePage(0));
+        dsm.writePage(pageNums[numPages - 1], makePage(1));
+        dsm.close();
+
+        // ...read and write with the regular manager...
+        dsm = getDiskSpaceManager();
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        dsm.readPage(pageNums[0], readbuf);
+        assertArrayEquals(makePage(0), readbuf);
+        dsm.readPage(pageNums[numPages - 1], readbuf);
+        assertArrayEquals(makePage(1), readbuf);
+        dsm.writePage(pageNums[1], makePage(2));
+        long extraPage = dsm.allocPage(partNum);
+        dsm.writePage(extraPage, makePage(3));
+        dsm.close();
+
+        // ...and read it all back with the mapped manager
+        dsm = getMappedDiskSpaceManager();
+        dsm.readPage(pageNums[0], readbuf);
+        assertArrayEquals(makePage(0), readbuf);
+        dsm.readPage(pageNums[1], readbuf);
+        assertArrayEquals(makePage(2), readbuf);
+        dsm.readPage(pageNums[2], readbuf);
+        assertArrayEquals(new byte[DiskSpaceManager.PAGE_SIZE], readbuf);
+        dsm.readPage(extraPage, readbuf);
+        assertArrayEquals(makePage(3), readbuf);
+        assertTrue(dsm.pageAllocated(extraPage));
+        dsm.freePage(extraPage);
+        assertFalse(dsm.pageAllocated(extraPage));
+        dsm.close();
+    }
+
+    @Test
+    public void testDeferredSync() {
+        DiskSpaceManager dsm = new MappedDiskSpaceManager(managerRoot.toString(), new DummyRecoveryManager(), true);
+        int partNum = dsm.allocPart();
+        long pageNum = dsm.allocPage(partNum);
+        dsm.writePage(pageNum, makePage(5));
+        dsm.sync();
+        dsm.close();
+
+        dsm = getMappedDiskSpaceManager();
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        dsm.readPage(pageNum, readbuf);
+        assertArrayEquals(makePage(5), readbuf);
+        dsm.close();
+    }
+
+    @Test
+    public void testCompressedPartition() {
+        MappedDiskSpaceManager dsm = new MappedDiskSpaceManager(managerRoot.toString(), new DummyRecoveryManager());
+        int partNum = dsm.allocPart(1);
+        long[] pageNums = dsm.allocPages(partNum, 3);
+        dsm.writePage(pageNums[0], makePage(0));
+        dsm.writePage(pageNums[1], makePage(1));
+        dsm.setCompressed(partNum, true);
+
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        dsm.readPage(pageNums[1], readbuf);
+        assertArrayEquals(makePage(1), readbuf);
+        dsm.writePage(pageNums[2], makePage(2));
+        assertFalse(dsm.isCompressed(partNum));
+        dsm.setCompressed(partNum, true);
+        dsm.close();
+
+        // compressed files open the same way with either manager
+        DiskSpaceManagerImpl unmapped = new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
+        assertTrue(unmapped.isCompressed(partNum));
+        for (int i = 0; i < 3; ++i) {
+            unmapped.readPage(pageNums[i], readbuf);
+            assertArrayEquals(makePage(i), readbuf);
+        }
+        unmapped.close();
+    }
+}
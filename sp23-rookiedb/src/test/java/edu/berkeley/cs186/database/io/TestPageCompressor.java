@@ -0,0 +1,95 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestPageCompressor {
+    private static final int PAGE_SIZE = DiskSpaceManager.PAGE_SIZE;
+
+    private final PageCompressor compressor = new PageCompressor();
+
+    // Compresses and decompresses page, and returns the compressed length
+    private int roundTrip(byte[] page) {
+        byte[] compressed = new byte[PAGE_SIZE * 2];
+        int length = compressor.compress(page, compressed);
+        assertTrue(length > 0);
+        // decompress into the middle of a larger array, as into a slice of a buffer pool
+        byte[] dst = new byte[PAGE_SIZE * 3];
+        Arrays.fill(dst, (byte) 0x55);
+        PageCompressor.decompress(compressed, length, dst, PAGE_SIZE, PAGE_SIZE);
+        assertArrayEquals(page, Arrays.copyOfRange(dst, PAGE_SIZE, 2 * PAGE_SIZE));
+        assertEquals(0x55, dst[PAGE_SIZE - 1]);
+        assertEquals(0x55, dst[2 * PAGE_SIZE]);
+        return length;
+    }
+
+    @Test
+    public void testEmptyPage() {
+        assertTrue(roundTrip(new byte[PAGE_SIZE]) < 32);
+    }
+
+    @Test
+    public void testRepeatedRecords() {
+        byte[] page = new byte[PAGE_SIZE];
+        for (int i = 0; i < 3000; ++i) {
+            page[i] = (byte) (i % 17 == 0 ? i / 17 : i % 5);
+        }
+        assertTrue(roundTrip(page) < PAGE_SIZE / 2);
+    }
+
+    @Test
+    public void testLongLiteralsAndMatches() {
+        // 600 random bytes, then a repeat of them, then zeros
+        byte[] page = new byte[PAGE_SIZE];
+        byte[] random = new byte[600];
+        new Random(0).nextBytes(random);
+        System.arraycopy(random, 0, page, 0, 600);
+        System.arraycopy(random, 0, page, 600, 600);
+        assertTrue(roundTrip(page) < 700);
+    }
+
+    @Test
+    public void testIncompressible() {
+        byte[] page = new byte[PAGE_SIZE];
+        new Random(1).nextBytes(page);
+        roundTrip(page);
+        assertEquals(-1, compressor.compress(page, new byte[PAGE_SIZE - 1]));
+    }
+
+    @Test
+    public void testCorrupt() {
+        byte[] page = new byte[PAGE_SIZE];
+        page[10] = 1;
+        byte[] compressed = new byte[PAGE_SIZE];
+        int length = compressor.compress(page, compressed);
+        // cut off in the middle of the last match's length
+        try {
+            PageCompressor.decompress(compressed, length - 2, new byte[PAGE_SIZE], 0, PAGE_SIZE);
+            fail();
+        } catch (PageException e) {
+            /* do nothing */
+        }
+        try {
+            PageCompressor.decompress(compressed, length, new byte[PAGE_SIZE + 1], 0, PAGE_SIZE + 1);
+            fail();
+        } catch (PageException e) {
+            /* do nothing */
+        }
+        // a match reaching back before the start of the page
+        byte[] bad = new byte[] {0x10, 1, 0x00, 0x05};
+        try {
+            PageCompressor.decompress(bad, bad.length, new byte[PAGE_SIZE], 0, PAGE_SIZE);
+            fail();
+        } catch (PageException e) {
+            /* do nothing */
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Measures the latency of page fetches that need an eviction while most of the
+ * buffer is pinned, for each eviction policy. The pinned pages are loaded first,
+ * so a policy that scans its candidates from the least recently used end has to
+ * skip over all of them on every eviction.
+ *
+ * Not run as part of the test suite; run this class directly to get timings.
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class EvictionLatencyBenchmark {
+    private static final int BUFFER_SIZE = 4096;
+    private static final int NUM_FETCHES = 50000;
+    private static final double[] PIN_RATIOS = {0, 0.5, 0.9, 0.99};
+
+    @Test
+    public void benchmarkEvictionLatency() {
+        Map<String, Supplier<EvictionPolicy>> policies = new LinkedHashMap<>();
+        policies.put("clock", ClockEvictionPolicy::new);
+        policies.put("LRU", LRUEvictionPolicy::new);
+        policies.put("LRU-2", LRUKEvictionPolicy::new);
+        policies.put("2Q", TwoQueueEvictionPolicy::new);
+
+        System.out.printf("ns per fetch with eviction (%d frames, %d fetches)%n", BUFFER_SIZE, NUM_FETCHES);
+        System.out.printf("  %-10s", "pinned");
+        for (String policy : policies.keySet()) {
+            System.out.printf("%10s", policy);
+        }
+        System.out.println();
+        for (double pinRatio : PIN_RATIOS) {
+            System.out.printf("  %-10s", String.format("%.0f%%", pinRatio * 100));
+            for (Supplier<EvictionPolicy> policy : policies.values()) {
+                // warm up the JIT
+                runWorkload(policy.get(), pinRatio);
+                System.out.printf("%10.0f", (double) runWorkload(policy.get(), pinRatio) / NUM_FETCHES);
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Pins pinRatio of the buffer, then fetches and unpins NUM_FETCHES pages that
+     * are not in the buffer, each of which evicts an unpinned frame.
+     * @return time taken by the fetches in nanoseconds
+     */
+    private static long runWorkload(EvictionPolicy policy, double pinRatio) {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                BUFFER_SIZE, policy);
+        int partNum = diskSpaceManager.allocPart(1);
+        int numPinned = (int) (BUFFER_SIZE * pinRatio);
+        // twice as many unpinned pages as unpinned frames, so that every fetch misses
+        int numUnpinned = 2 * (BUFFER_SIZE - numPinned);
+        long[] pinnedPageNums = new long[numPinned];
+        long[] pageNums = new long[numUnpinned];
+        for (int i = 0; i < numPinned; ++i) {
+            pinnedPageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+        for (int i = 0; i < numUnpinned; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+
+        DummyLockContext context = new DummyLockContext();
+        List<Page> pinned = new ArrayList<>();
+        for (long pageNum : pinnedPageNums) {
+            pinned.add(bufferManager.fetchPage(context, pageNum));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < NUM_FETCHES; ++i) {
+            bufferManager.fetchPage(context, pageNums[i % numUnpinned]).unpin();
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Page page : pinned) {
+            page.unpin();
+        }
+        bufferManager.close();
+        diskSpaceManager.close();
+        return elapsed;
+    }
+}
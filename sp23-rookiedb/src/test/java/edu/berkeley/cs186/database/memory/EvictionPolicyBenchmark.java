@@ -0,0 +1,183 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Replays page access traces against a buffer manager with each eviction policy,
+ * and reports hit ratios. A trace is a sequence of page indices; the built-in
+ * traces model a hot working set (index/catalog pages) alternating or interleaved
+ * with large sequential scans, a skewed random workload, and a loop slightly
+ * larger than the buffer.
+ *
+ * A recorded trace can be replayed by pointing the rookiedb.trace system property
+ * at a file with one page index per line.
+ *
+ * Not run as part of the test suite; run this class directly to get hit ratios.
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class EvictionPolicyBenchmark {
+    private static final int BUFFER_SIZE = 100;
+
+    @Test
+    public void benchmarkHitRatios() throws IOException {
+        Map<String, Supplier<EvictionPolicy>> policies = new LinkedHashMap<>();
+        policies.put("clock", ClockEvictionPolicy::new);
+        policies.put("LRU", LRUEvictionPolicy::new);
+        policies.put("LRU-2", LRUKEvictionPolicy::new);
+        policies.put("2Q", TwoQueueEvictionPolicy::new);
+
+        Map<String, int[]> traces = new LinkedHashMap<>();
+        traces.put("hot set + scans", hotSetWithScans());
+        traces.put("concurrent scan", concurrentScan());
+        traces.put("skewed random", skewedRandom());
+        traces.put("loop", loop());
+        String traceFile = System.getProperty("rookiedb.trace");
+        if (traceFile != null) {
+            traces.put(traceFile, readTrace(traceFile));
+        }
+
+        System.out.printf("hit ratios (%d frames)%n", BUFFER_SIZE);
+        System.out.printf("  %-16s", "trace");
+        for (String policy : policies.keySet()) {
+            System.out.printf("%8s", policy);
+        }
+        System.out.println();
+        for (Map.Entry<String, int[]> trace : traces.entrySet()) {
+            System.out.printf("  %-16s", trace.getKey());
+            for (Supplier<EvictionPolicy> policy : policies.values()) {
+                System.out.printf("%8.3f", replay(trace.getValue(), policy.get()));
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Replays a trace, fetching and reading each page once per access.
+     * @return fraction of accesses that did not read the page from disk
+     */
+    private static double replay(int[] trace, EvictionPolicy policy) {
+        int numPages = 0;
+        for (int index : trace) {
+            numPages = Math.max(numPages, index + 1);
+        }
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                BUFFER_SIZE, policy);
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[numPages];
+        for (int i = 0; i < numPages; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+
+        DummyLockContext context = new DummyLockContext();
+        for (int index : trace) {
+            Page page = bufferManager.fetchPage(context, pageNums[index]);
+            try {
+                page.getBuffer().getInt(0);
+            } finally {
+                page.unpin();
+            }
+        }
+        double hitRatio = 1 - (double) bufferManager.getNumIOs() / trace.length;
+        bufferManager.close();
+        diskSpaceManager.close();
+        return hitRatio;
+    }
+
+    /**
+     * 50 hot pages accessed uniformly at random, with a sequential scan of 1000
+     * other pages after every 2000 accesses.
+     */
+    private static int[] hotSetWithScans() {
+        Random random = new Random(186);
+        List<Integer> trace = new ArrayList<>();
+        for (int round = 0; round < 10; ++round) {
+            for (int i = 0; i < 2000; ++i) {
+                trace.add(random.nextInt(50));
+            }
+            for (int i = 0; i < 1000; ++i) {
+                trace.add(50 + i);
+            }
+        }
+        return toArray(trace);
+    }
+
+    /**
+     * 60 hot pages accessed uniformly at random, interleaved one to one with a
+     * repeated sequential scan of 1000 other pages.
+     */
+    private static int[] concurrentScan() {
+        Random random = new Random(186);
+        List<Integer> trace = new ArrayList<>();
+        for (int i = 0; i < 20000; ++i) {
+            trace.add(random.nextInt(60));
+            trace.add(60 + i % 1000);
+        }
+        return toArray(trace);
+    }
+
+    /**
+     * 20000 accesses to 1000 pages, with 80% of accesses to 20% of the pages.
+     */
+    private static int[] skewedRandom() {
+        Random random = new Random(186);
+        List<Integer> trace = new ArrayList<>();
+        for (int i = 0; i < 20000; ++i) {
+            if (random.nextDouble() < 0.8) {
+                trace.add(random.nextInt(200));
+            } else {
+                trace.add(200 + random.nextInt(800));
+            }
+        }
+        return toArray(trace);
+    }
+
+    /**
+     * 100 passes over 120 pages.
+     */
+    private static int[] loop() {
+        List<Integer> trace = new ArrayList<>();
+        for (int pass = 0; pass < 100; ++pass) {
+            for (int i = 0; i < 120; ++i) {
+                trace.add(i);
+            }
+        }
+        return toArray(trace);
+    }
+
+    private static int[] readTrace(String fileName) throws IOException {
+        List<Integer> trace = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(fileName))) {
+            line = line.trim();
+            if (!line.isEmpty()) {
+                trace.add(Integer.parseInt(line));
+            }
+        }
+        return toArray(trace);
+    }
+
+    private static int[] toArray(List<Integer> trace) {
+        int[] result = new int[trace.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = trace.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,116 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Measures contention on a shared root page: each lookup pins and reads the
+ * root, and then fetches and reads a random child page while the root is still
+ * pinned, as a B+ tree lookup does. Most children are not in memory, and page
+ * reads take READ_LATENCY_NANOS, so a thread waiting for a child page holds its
+ * pin on the root for a while; with exclusive pins, every other lookup waits for it.
+ *
+ * The workload is run with the Clock policy, whose hits are a single write, and
+ * with LRU, whose hits are queued and applied under its lock, so that readers
+ * of the root page do not serialize on the policy with either.
+ *
+ * Not run as part of the test suite; run this class directly to get timings.
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class PageLatchBenchmark {
+    private static final int BUFFER_SIZE = 64;
+    private static final int NUM_CHILDREN = 1024;
+    private static final int LOOKUPS_PER_THREAD = 500;
+    private static final long READ_LATENCY_NANOS = 100000;
+
+    /**
+     * In-memory disk space manager where reading a page takes READ_LATENCY_NANOS.
+     */
+    private static class SlowDiskSpaceManager extends MemoryDiskSpaceManager {
+        @Override
+        public void readPage(long page, byte[] buf) {
+            LockSupport.parkNanos(READ_LATENCY_NANOS);
+            super.readPage(page, buf);
+        }
+    }
+
+    @Test
+    public void benchmarkSharedRootPage() throws InterruptedException {
+        benchmarkSharedRootPage("Clock", ClockEvictionPolicy::new);
+        benchmarkSharedRootPage("LRU", LRUEvictionPolicy::new);
+    }
+
+    private void benchmarkSharedRootPage(String name, Supplier<EvictionPolicy> policy)
+            throws InterruptedException {
+        System.out.printf("lookups through a shared root page (%s, %d frames, %d children, %d us reads)%n",
+                          name, BUFFER_SIZE, NUM_CHILDREN, READ_LATENCY_NANOS / 1000);
+        // warm up the JIT
+        runWorkload(2, policy.get());
+        for (int numThreads = 1; numThreads <= 16; numThreads *= 2) {
+            long nanos = runWorkload(numThreads, policy.get());
+            long numLookups = (long) numThreads * LOOKUPS_PER_THREAD;
+            System.out.printf("  %2d threads: %8.1f lookups/ms%n", numThreads, numLookups / (nanos / 1e6));
+        }
+    }
+
+    /**
+     * Runs numThreads threads, each doing LOOKUPS_PER_THREAD lookups.
+     * @return time taken in nanoseconds
+     */
+    private long runWorkload(int numThreads, EvictionPolicy policy) throws InterruptedException {
+        MemoryDiskSpaceManager diskSpaceManager = new SlowDiskSpaceManager();
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                BUFFER_SIZE, policy);
+        int partNum = diskSpaceManager.allocPart(1);
+        long rootPageNum = diskSpaceManager.allocPage(partNum);
+        long[] childPageNums = new long[NUM_CHILDREN];
+        for (int i = 0; i < NUM_CHILDREN; ++i) {
+            childPageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; ++t) {
+            long seed = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                DummyLockContext context = new DummyLockContext();
+                for (int i = 0; i < LOOKUPS_PER_THREAD; ++i) {
+                    Page root = bufferManager.fetchPage(context, rootPageNum);
+                    try {
+                        root.getBuffer().getInt(0);
+                        Page child = bufferManager.fetchPage(context, childPageNums[random.nextInt(NUM_CHILDREN)]);
+                        try {
+                            child.getBuffer().getInt(0);
+                        } finally {
+                            child.unpin();
+                        }
+                    } finally {
+                        root.unpin();
+                    }
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        bufferManager.close();
+        diskSpaceManager.close();
+        return elapsed;
+    }
+}
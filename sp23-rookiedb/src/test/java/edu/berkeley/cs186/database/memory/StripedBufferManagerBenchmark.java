@@ -0,0 +1,99 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares page fetch throughput of the single-lock buffer manager and the
+ * striped buffer manager with several threads fetching random pages from a
+ * working set that mostly fits in memory, so that the buffer manager's
+ * locking dominates.
+ *
+ * Not run as part of the test suite; run this class directly to get timings.
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class StripedBufferManagerBenchmark {
+    private static final int BUFFER_SIZE = 1024;
+    private static final int NUM_PAGES = 1100;
+    private static final int NUM_STRIPES = 16;
+    private static final int FETCHES_PER_THREAD = 200000;
+
+    @Test
+    public void benchmarkConcurrentFetches() throws InterruptedException {
+        int maxThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        System.out.printf("random fetches (%d pages, %d frames, %d fetches per thread)%n",
+                          NUM_PAGES, BUFFER_SIZE, FETCHES_PER_THREAD);
+        for (int numThreads = 1; numThreads <= maxThreads; numThreads *= 2) {
+            // warm up the JIT
+            runWorkload(false, numThreads);
+            runWorkload(true, numThreads);
+
+            long singleNanos = runWorkload(false, numThreads);
+            long stripedNanos = runWorkload(true, numThreads);
+            long numFetches = (long) numThreads * FETCHES_PER_THREAD;
+            System.out.printf("  %2d threads: single lock %8.0f fetches/ms, %d stripes %8.0f fetches/ms (%.2fx)%n",
+                              numThreads, numFetches / (singleNanos / 1e6), NUM_STRIPES,
+                              numFetches / (stripedNanos / 1e6), (double) singleNanos / stripedNanos);
+        }
+    }
+
+    /**
+     * Runs numThreads threads, each fetching, reading and unpinning FETCHES_PER_THREAD
+     * random pages.
+     * @return time taken in nanoseconds
+     */
+    private long runWorkload(boolean striped, int numThreads) throws InterruptedException {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        BufferManager bufferManager;
+        if (striped) {
+            bufferManager = new StripedBufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                    BUFFER_SIZE, ClockEvictionPolicy::new, NUM_STRIPES);
+        } else {
+            bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                                              BUFFER_SIZE, new ClockEvictionPolicy());
+        }
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[NUM_PAGES];
+        for (int i = 0; i < NUM_PAGES; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; ++t) {
+            long seed = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                DummyLockContext context = new DummyLockContext();
+                for (int i = 0; i < FETCHES_PER_THREAD; ++i) {
+                    Page page = bufferManager.fetchPage(context, pageNums[random.nextInt(NUM_PAGES)]);
+                    try {
+                        page.getBuffer().getInt(0);
+                    } finally {
+                        page.unpin();
+                    }
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        bufferManager.close();
+        diskSpaceManager.close();
+        return elapsed;
+    }
+}
@@ -2,6 +2,7 @@ package edu.berkeley.cs186.database.memory;
 
 import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.concurrency.DummyLockContext;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
@@ -12,7 +13,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -34,6 +38,41 @@ public class TestBufferManager {
         diskSpaceManager.close();
     }
 
+    @Test
+    public void testExtentAllocator() {
+        int partNum = diskSpaceManager.allocPart(1);
+        ExtentAllocator extents = new ExtentAllocator(bufferManager, new DummyLockContext(), partNum, 2, 4);
+
+        // extents of 2 and then 4 pages; pages allocated in between go after the extent
+        long[] pageNums = new long[3];
+        for (int i = 0; i < pageNums.length; ++i) {
+            Page page = extents.fetchNewPage();
+            pageNums[i] = page.getPageNum();
+            page.getBuffer().putInt(i);
+            page.unpin();
+        }
+        Page other = bufferManager.fetchNewPage(new DummyLockContext(), partNum);
+        other.unpin();
+        Page page = extents.fetchNewPage();
+        page.unpin();
+
+        assertEquals(pageNums[0] + 1, pageNums[1]);
+        assertEquals(pageNums[1] + 1, pageNums[2]);
+        assertEquals(pageNums[2] + 1, page.getPageNum());
+        assertEquals(pageNums[2] + 4, other.getPageNum());
+
+        // pages of the last extent that were not handed out are freed
+        extents.close();
+        assertFalse(diskSpaceManager.pageAllocated(pageNums[2] + 2));
+        assertFalse(diskSpaceManager.pageAllocated(pageNums[2] + 3));
+        assertTrue(diskSpaceManager.pageAllocated(page.getPageNum()));
+        for (int i = 0; i < pageNums.length; ++i) {
+            Page p = bufferManager.fetchPage(new DummyLockContext(), pageNums[i]);
+            assertEquals(i, p.getBuffer().getInt());
+            p.unpin();
+        }
+    }
+
     @Test
     public void testFetchNewPage() {
         int partNum = diskSpaceManager.allocPart(1);
@@ -92,6 +131,43 @@ public class TestBufferManager {
         assertArrayEquals(expected, actual);
     }
 
+    @Test
+    public void testOffHeapFrames() {
+        BufferManager bm = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 2,
+                                             new LRUEvictionPolicy(), true);
+        assertTrue(bm.isOffHeap());
+        assertFalse(bufferManager.isOffHeap());
+        int partNum = diskSpaceManager.allocPart(1);
+
+        // more pages than frames, so pages are written out and read back in
+        long[] pageNums = new long[4];
+        for (int i = 0; i < pageNums.length; ++i) {
+            Page page = bm.fetchNewPage(new DummyLockContext(), partNum);
+            pageNums[i] = page.getPageNum();
+            page.getBuffer().putInt(i).putLong(100L * i);
+            page.getBuffer().position(BufferManager.EFFECTIVE_PAGE_SIZE - 4).putInt(-i);
+            page.setPageLSN(10L + i);
+            page.unpin();
+        }
+        for (int i = 0; i < pageNums.length; ++i) {
+            Page page = bm.fetchPage(new DummyLockContext(), pageNums[i]);
+            Buffer buf = page.getBuffer();
+            assertEquals(i, buf.getInt());
+            assertEquals(100L * i, buf.getLong());
+            assertEquals(-i, buf.getInt(BufferManager.EFFECTIVE_PAGE_SIZE - 4));
+            assertEquals(10L + i, page.getPageLSN());
+            page.unpin();
+        }
+
+        Page[] pages = bm.fetchPages(new DummyLockContext(), new long[] {pageNums[1], pageNums[0]});
+        assertEquals(1, pages[0].getBuffer().getInt());
+        assertEquals(0, pages[1].getBuffer().getInt());
+        for (Page page : pages) {
+            page.unpin();
+        }
+        bm.close();
+    }
+
     @Test
     public void testFlush() {
         int partNum = diskSpaceManager.allocPart(1);
@@ -330,4 +406,448 @@ public class TestBufferManager {
         int partNum = diskSpaceManager.allocPart(1);
         bufferManager.fetchPageFrame(DiskSpaceManager.getVirtualPageNum(partNum, 0));
     }
+
+    @Test
+    public void testFetchPageFrames() {
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[8];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+            byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+            buf[BufferManager.RESERVED_SPACE] = (byte) (i + 1);
+            diskSpaceManager.writePage(pageNums[i], buf);
+        }
+
+        BufferFrame frame1 = bufferManager.fetchPageFrame(pageNums[1]);
+        frame1.unpin();
+        long ios = bufferManager.getNumIOs();
+
+        BufferFrame[] frames = bufferManager.fetchPageFrames(new long[] {pageNums[0], pageNums[1], pageNums[2], pageNums[3]});
+        assertSame(frame1, frames[1]);
+        assertEquals(ios + 3, bufferManager.getNumIOs());
+        for (int i = 0; i < frames.length; ++i) {
+            assertTrue(frames[i].isPinned());
+            byte[] b = new byte[1];
+            frames[i].readBytes((short) 0, (short) 1, b);
+            assertEquals(i + 1, b[0]);
+            frames[i].unpin();
+        }
+
+        // more pages than free frames: unpinned frames are evicted, but not the ones being loaded
+        frames = bufferManager.fetchPageFrames(new long[] {pageNums[4], pageNums[5], pageNums[6], pageNums[7]});
+        for (int i = 0; i < frames.length; ++i) {
+            byte[] b = new byte[1];
+            frames[i].readBytes((short) 0, (short) 1, b);
+            assertEquals(i + 5, b[0]);
+            frames[i].unpin();
+        }
+        assertTrue(frames[0].isValid());
+    }
+
+    @Test
+    public void testFetchPageFramesReadError() {
+        long[] pageNums = new long[4];
+        boolean[] failReads = new boolean[1];
+        DiskSpaceManager dsm = new MemoryDiskSpaceManager() {
+            @Override
+            public void readPage(long page, byte[] buf) {
+                if (failReads[0] && page == pageNums[1]) {
+                    throw new PageException("injected read failure");
+                }
+                super.readPage(page, buf);
+            }
+        };
+        BufferManager bm = new BufferManager(dsm, new DummyRecoveryManager(), 4,
+                                             new LRUEvictionPolicy());
+        int partNum = dsm.allocPart(1);
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = dsm.allocPage(partNum);
+            byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+            buf[BufferManager.RESERVED_SPACE] = (byte) (i + 1);
+            dsm.writePage(pageNums[i], buf);
+        }
+
+        failReads[0] = true;
+        long ios = bm.getNumIOs();
+        try {
+            bm.fetchPageFrames(Arrays.copyOf(pageNums, 3));
+            fail();
+        } catch (PageException e) { /* do nothing */ }
+        failReads[0] = false;
+        // only the pages that were read in are counted, and kept
+        assertEquals(ios + 2, bm.getNumIOs());
+        for (int i = 0; i < 3; ++i) {
+            Page page = bm.fetchPage(new DummyLockContext(), pageNums[i]);
+            assertEquals(i + 1, page.getBuffer().get());
+            page.unpin();
+        }
+        assertEquals(ios + 3, bm.getNumIOs());
+        bm.close();
+    }
+
+    @Test
+    public void testFetchPageFramesTooManyPinned() {
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[6];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+
+        try {
+            bufferManager.fetchPageFrames(pageNums);
+            fail();
+        } catch (IllegalStateException e) {
+            /* do nothing */
+        }
+
+        // frames claimed before running out are loaded and unpinned
+        BufferFrame frame = bufferManager.fetchPageFrame(pageNums[0]);
+        assertTrue(frame.isValid());
+        frame.unpin();
+        BufferFrame[] frames = bufferManager.fetchPageFrames(Arrays.copyOf(pageNums, 5));
+        for (BufferFrame f : frames) {
+            f.unpin();
+        }
+    }
+
+    @Test
+    public void testReadAhead() {
+        BufferManager bm = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 16,
+                                             new LRUEvictionPolicy());
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[12];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+
+        bm.enableReadAhead(4, 8, 1);
+        ReadAheadPrefetcher prefetcher = bm.getReadAheadPrefetcher();
+        // two consecutive pages start read-ahead of the next four
+        bm.fetchPage(new DummyLockContext(), pageNums[0]).unpin();
+        bm.fetchPage(new DummyLockContext(), pageNums[1]).unpin();
+        // waits for the prefetch to finish
+        bm.disableReadAhead();
+        assertNull(bm.getReadAheadPrefetcher());
+        assertEquals(4, prefetcher.getNumPrefetched());
+        assertEquals(2, prefetcher.getNumMisses());
+        assertEquals(4, prefetcher.getNumOutstanding());
+
+        long ios = bm.getNumIOs();
+        for (int i = 2; i < 6; ++i) {
+            bm.fetchPage(new DummyLockContext(), pageNums[i]).unpin();
+        }
+        assertEquals(ios, bm.getNumIOs());
+        assertEquals(4, prefetcher.getNumHits());
+        assertEquals(0, prefetcher.getNumWasted());
+        assertEquals(0, prefetcher.getNumOutstanding());
+        bm.close();
+    }
+
+    @Test
+    public void testReadAheadReadError() {
+        long[] pageNums = new long[8];
+        boolean[] failReads = new boolean[1];
+        // pages 2 and 3 cannot be read, and a read of several pages fills the
+        // buffers with garbage before failing, like a read that fails partway
+        DiskSpaceManager dsm = new MemoryDiskSpaceManager() {
+            @Override
+            public void readPage(long page, byte[] buf) {
+                if (failReads[0] && (page == pageNums[2] || page == pageNums[3])) {
+                    throw new PageException("injected read failure");
+                }
+                super.readPage(page, buf);
+            }
+
+            @Override
+            public void readPages(long[] pages, ByteBuffer[] bufs) {
+                if (!failReads[0]) {
+                    super.readPages(pages, bufs);
+                    return;
+                }
+                for (ByteBuffer buf : bufs) {
+                    buf.duplicate().put(new byte[DiskSpaceManager.PAGE_SIZE]);
+                    buf.put(BufferManager.RESERVED_SPACE, (byte) 0x7F);
+                }
+                throw new PageException("injected read failure");
+            }
+        };
+        BufferManager bm = new BufferManager(dsm, new DummyRecoveryManager(), 4,
+                                             new LRUEvictionPolicy());
+        int partNum = dsm.allocPart(1);
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = dsm.allocPage(partNum);
+            byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+            buf[BufferManager.RESERVED_SPACE] = (byte) (i + 1);
+            dsm.writePage(pageNums[i], buf);
+        }
+        for (int i = 4; i < 8; ++i) {
+            bm.fetchPage(new DummyLockContext(), pageNums[i]).unpin();
+        }
+
+        failReads[0] = true;
+        bm.enableReadAhead(2, 2, 1);
+        ReadAheadPrefetcher prefetcher = bm.getReadAheadPrefetcher();
+        bm.fetchPage(new DummyLockContext(), pageNums[0]).unpin();
+        bm.fetchPage(new DummyLockContext(), pageNums[1]).unpin();
+        bm.disableReadAhead();
+        failReads[0] = false;
+        assertEquals(0, prefetcher.getNumPrefetched());
+        assertEquals(0, prefetcher.getNumOutstanding());
+
+        // the frames claimed for the failed read-ahead were not kept
+        for (int i = 0; i < 4; ++i) {
+            Page page = bm.fetchPage(new DummyLockContext(), pageNums[i]);
+            assertEquals(i + 1, page.getBuffer().get());
+            page.unpin();
+        }
+        assertEquals(0, prefetcher.getNumWasted());
+        bm.close();
+    }
+
+    @Test
+    public void testReadAheadBudgetAndWaste() {
+        BufferManager bm = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 8,
+                                             new LRUEvictionPolicy());
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[20];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+
+        bm.enableReadAhead(10, 3, 2);
+        ReadAheadPrefetcher prefetcher = bm.getReadAheadPrefetcher();
+        bm.fetchPage(new DummyLockContext(), pageNums[0]).unpin();
+        bm.fetchPage(new DummyLockContext(), pageNums[1]).unpin();
+        bm.disableReadAhead();
+        // limited by the budget
+        assertEquals(3, prefetcher.getNumPrefetched());
+
+        // a random access elsewhere evicts the prefetched pages before they are used
+        for (int i = 19; i >= 10; --i) {
+            bm.fetchPage(new DummyLockContext(), pageNums[i]).unpin();
+        }
+        assertEquals(0, prefetcher.getNumHits());
+        assertEquals(3, prefetcher.getNumWasted());
+        assertEquals(0, prefetcher.getNumOutstanding());
+        bm.close();
+    }
+
+    @Test
+    public void testReadAheadSkipsUnallocatedPages() {
+        BufferManager bm = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 16,
+                                             new LRUEvictionPolicy());
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[3];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+
+        bm.enableReadAhead(8, 8, 1);
+        ReadAheadPrefetcher prefetcher = bm.getReadAheadPrefetcher();
+        bm.fetchPage(new DummyLockContext(), pageNums[0]).unpin();
+        bm.fetchPage(new DummyLockContext(), pageNums[1]).unpin();
+        bm.disableReadAhead();
+        assertEquals(1, prefetcher.getNumPrefetched());
+        assertEquals(1, prefetcher.getNumOutstanding());
+        bm.close();
+    }
+
+    @Test
+    public void testForegroundFlushes() {
+        int partNum = diskSpaceManager.allocPart(1);
+        for (int i = 0; i < 5; ++i) {
+            BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+            frame.writeBytes((short) 0, (short) 1, new byte[] {(byte) (i + 1)});
+            frame.unpin();
+        }
+        assertEquals(0, bufferManager.getNumEvictions());
+        assertEquals(1.0, bufferManager.getDirtyRatio(), 1e-9);
+
+        bufferManager.fetchNewPageFrame(partNum).unpin();
+        assertEquals(1, bufferManager.getNumEvictions());
+        assertEquals(1, bufferManager.getNumForegroundFlushes());
+        assertEquals(0.8, bufferManager.getDirtyRatio(), 1e-9);
+    }
+
+    @Test
+    public void testFailedVictimFlush() {
+        boolean[] failWrites = new boolean[1];
+        DiskSpaceManager dsm = new MemoryDiskSpaceManager() {
+            @Override
+            public void writePage(long page, byte[] buf) {
+                if (failWrites[0]) {
+                    throw new PageException("injected write failure");
+                }
+                super.writePage(page, buf);
+            }
+        };
+        BufferManager bm = new BufferManager(dsm, new DummyRecoveryManager(), 2,
+                                             new LRUEvictionPolicy());
+        int partNum = dsm.allocPart(1);
+        long[] pageNums = new long[3];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = dsm.allocPage(partNum);
+        }
+        for (int i = 0; i < 2; ++i) {
+            BufferFrame frame = bm.fetchPageFrame(pageNums[i]);
+            frame.writeBytes((short) 0, (short) 1, new byte[] {(byte) (i + 1)});
+            frame.unpin();
+        }
+
+        // the dirty victim cannot be written out
+        failWrites[0] = true;
+        try {
+            bm.fetchPageFrame(pageNums[2]);
+            fail();
+        } catch (PageException e) { /* do nothing */ }
+        failWrites[0] = false;
+
+        // the frame claimed for the page was released, so the page can be fetched
+        BufferFrame frame = bm.fetchPageFrame(pageNums[2]);
+        frame.unpin();
+        byte[] buf = new byte[1];
+        frame = bm.fetchPageFrame(pageNums[1]);
+        frame.readBytes((short) 0, (short) 1, buf);
+        frame.unpin();
+        assertEquals(2, buf[0]);
+        bm.close();
+    }
+
+    @Test
+    public void testPageCleaner() {
+        int partNum = diskSpaceManager.allocPart(1);
+        // only rounds run by hand
+        bufferManager.enablePageCleaner(0.0, 1.0, 3600 * 1000L);
+        PageCleaner cleaner = bufferManager.getPageCleaner();
+
+        BufferFrame[] frames = new BufferFrame[5];
+        for (int i = 0; i < 5; ++i) {
+            frames[i] = bufferManager.fetchNewPageFrame(partNum);
+            frames[i].writeBytes((short) 0, (short) 1, new byte[] {(byte) (i + 1)});
+        }
+        for (int i = 0; i < 4; ++i) {
+            frames[i].unpin();
+        }
+
+        // pinned frame is skipped
+        assertEquals(4, cleaner.cleanOnce());
+        assertEquals(4, cleaner.getNumBackgroundFlushes());
+        assertEquals(0.2, bufferManager.getDirtyRatio(), 1e-9);
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(frames[0].getPageNum(), buf);
+        assertEquals(1, buf[BufferManager.RESERVED_SPACE]);
+        frames[4].unpin();
+
+        // evictions find clean victims
+        for (int i = 0; i < 4; ++i) {
+            bufferManager.fetchNewPageFrame(partNum).unpin();
+        }
+        assertEquals(4, bufferManager.getNumEvictions());
+        assertEquals(0, bufferManager.getNumForegroundFlushes());
+    }
+
+    @Test
+    public void testPageCleanerDirtyRatio() {
+        BufferManager bm = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 16,
+                                             new LRUEvictionPolicy());
+        int partNum = diskSpaceManager.allocPart(1);
+        bm.enablePageCleaner(0.5, 1.0, 3600 * 1000L);
+        PageCleaner cleaner = bm.getPageCleaner();
+        for (int i = 0; i < 16; ++i) {
+            BufferFrame frame = bm.fetchNewPageFrame(partNum);
+            if (i < 12) {
+                frame.writeBytes((short) 0, (short) 1, new byte[] {1});
+            }
+            frame.unpin();
+        }
+        assertEquals(0.75, bm.getDirtyRatio(), 1e-9);
+        assertEquals(4, cleaner.cleanOnce());
+        assertEquals(0.5, bm.getDirtyRatio(), 1e-9);
+        // only the cold end left to clean
+        assertEquals(0, cleaner.cleanOnce());
+        bm.close();
+    }
+
+    @Test
+    public void testPageCleanerBackground() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+        for (int i = 0; i < 5; ++i) {
+            BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+            frame.writeBytes((short) 0, (short) 1, new byte[] {1});
+            frame.unpin();
+        }
+        bufferManager.enablePageCleaner(0.0, 0.5, 10);
+        PageCleaner cleaner = bufferManager.getPageCleaner();
+        for (int i = 0; i < 500 && bufferManager.getDirtyRatio() > 0; ++i) {
+            Thread.sleep(10);
+        }
+        assertEquals(0.0, bufferManager.getDirtyRatio(), 1e-9);
+        assertEquals(5, cleaner.getNumBackgroundFlushes());
+        bufferManager.disablePageCleaner();
+        assertNull(bufferManager.getPageCleaner());
+    }
+
+    @Test
+    public void testConcurrentReadersOfPinnedPage() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+        Page page = bufferManager.fetchNewPage(new DummyLockContext(), partNum);
+        page.getBuffer().putInt(42);
+
+        // another thread can fetch and read the page while this thread has it pinned
+        int[] read = new int[1];
+        Thread reader = new Thread(() -> {
+            Page other = bufferManager.fetchPage(new DummyLockContext(), page.getPageNum());
+            try {
+                read[0] = other.getBuffer().getInt();
+            } finally {
+                other.unpin();
+            }
+        });
+        reader.start();
+        reader.join(10000);
+        assertFalse(reader.isAlive());
+        assertEquals(42, read[0]);
+        page.unpin();
+    }
+
+    @Test
+    public void testWritesAreAtomicForReaders() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+        Page page = bufferManager.fetchNewPage(new DummyLockContext(), partNum);
+        page.unpin();
+
+        // a long is written with one write, and read with one read, so readers
+        // never see a torn value with the two halves from different writes
+        List<Throwable> errors = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> {
+            for (int i = 0; i < 20000; ++i) {
+                Page p = bufferManager.fetchPage(new DummyLockContext(), page.getPageNum());
+                p.getBuffer().putLong(((long) i << 32) | i);
+                p.unpin();
+            }
+        }));
+        for (int t = 0; t < 2; ++t) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 20000; ++i) {
+                    Page p = bufferManager.fetchPage(new DummyLockContext(), page.getPageNum());
+                    long value = p.getBuffer().getLong();
+                    p.unpin();
+                    assertEquals(value >>> 32, value & 0xFFFFFFFFL);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((th, e) -> {
+                synchronized (errors) {
+                    errors.add(e);
+                }
+            });
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(new ArrayList<>(), errors);
+    }
 }
@@ -6,6 +6,13 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -32,7 +39,7 @@ public class TestEvictionPolicy {
 
         @Override
         long getPageNum() {
-            return 0;
+            return index;
         }
 
         @Override
@@ -193,4 +200,256 @@ public class TestEvictionPolicy {
         assertEquals(frames[2], policy.evict(new BufferFrame[] {placeholderFrames[0], placeholderFrames[1], frames[2], placeholderFrames[3]}));
         policy.cleanup(frames[2]);
     }
+
+    @Test
+    public void testLRUKPolicy() {
+        EvictionPolicy policy = new LRUKEvictionPolicy(2);
+        BufferFrame[] all = new BufferFrame[] {frames[0], frames[1], frames[2], frames[3], frames[4]};
+        policy.init(frames[0]);
+        // correlated with the load, not a second reference
+        policy.hit(frames[0]);
+        policy.init(frames[1]);
+        policy.hit(frames[0]);
+        policy.init(frames[2]);
+        policy.init(frames[3]);
+
+        // frames referenced once go first, least recently used first
+        assertEquals(frames[1], policy.evict(new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]}));
+        policy.cleanup(frames[1]);
+
+        policy.init(frames[4]);
+        // page 1 is loaded again, and keeps its earlier reference
+        policy.init(frames[1]);
+
+        assertEquals(frames[2], policy.evict(all));
+        policy.cleanup(frames[2]);
+        policy.init(frames[2]);
+
+        frames[2].pin();
+        frames[3].pin();
+        frames[4].pin();
+        // frame 0's second most recent reference is older than frame 1's
+        assertEquals(frames[0], policy.coldFrames(all, 1).get(0));
+        assertEquals(2, policy.coldFrames(all, 5).size());
+        assertEquals(frames[0], policy.evict(all));
+        policy.cleanup(frames[0]);
+
+        frames[1].pin();
+        boolean exceptionThrown = false;
+        try {
+            policy.evict(new BufferFrame[] {frames[1], frames[2], frames[3], frames[4]});
+        } catch (IllegalStateException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+
+        frames[3].unpin();
+        assertEquals(frames[3], policy.evict(new BufferFrame[] {frames[1], frames[2], frames[3], frames[4]}));
+        policy.cleanup(frames[3]);
+        frames[1].unpin();
+        frames[2].unpin();
+        frames[4].unpin();
+    }
+
+    @Test
+    public void testTwoQueuePolicy() {
+        // A1in may hold 1 frame, A1out remembers 2 pages
+        EvictionPolicy policy = new TwoQueueEvictionPolicy(0.25, 0.5);
+        policy.init(frames[0]);
+        policy.init(frames[1]);
+        policy.init(frames[2]);
+        policy.init(frames[3]);
+
+        // FIFO out of A1in
+        assertEquals(frames[0], policy.evict(new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]}));
+        policy.cleanup(frames[0]);
+        // page 0 is remembered, and goes to Am when loaded again
+        policy.init(frames[0]);
+        // a later hit moves frame 1 to Am as well
+        policy.hit(frames[1]);
+        policy.hit(frames[1]);
+
+        assertEquals(frames[2], policy.evict(new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]}));
+        policy.cleanup(frames[2]);
+
+        // a scan cycles through A1in (hits right after loading are correlated),
+        // and does not evict pages 0 and 1
+        for (int i = 4; i < 8; ++i) {
+            policy.init(frames[i]);
+            policy.hit(frames[i]);
+            BufferFrame evicted = policy.evict(new BufferFrame[] {frames[0], frames[1], frames[i - 1], frames[i]});
+            assertEquals(frames[i - 1], evicted);
+            policy.cleanup(evicted);
+        }
+
+        // everything in A1in pinned: evict least recently used frame from Am
+        frames[7].pin();
+        BufferFrame[] all = new BufferFrame[] {frames[0], frames[1], frames[7], placeholderFrames[0]};
+        assertEquals(frames[0], policy.coldFrames(all, 4).get(0));
+        assertEquals(frames[0], policy.evict(all));
+        policy.cleanup(frames[0]);
+
+        frames[1].pin();
+        boolean exceptionThrown = false;
+        try {
+            policy.evict(new BufferFrame[] {placeholderFrames[1], frames[1], frames[7], placeholderFrames[0]});
+        } catch (IllegalStateException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+        frames[1].unpin();
+        frames[7].unpin();
+    }
+
+    private static void pin(EvictionPolicy policy, BufferFrame frame) {
+        frame.pin();
+        policy.pinned(frame);
+    }
+
+    private static void unpin(EvictionPolicy policy, BufferFrame frame) {
+        frame.unpin();
+        policy.unpinned(frame);
+    }
+
+    @Test
+    public void testLRUPolicyPinNotifications() {
+        EvictionPolicy policy = new LRUEvictionPolicy();
+        BufferFrame[] all = new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]};
+        for (BufferFrame frame : all) {
+            policy.init(frame);
+        }
+
+        // pinned frames leave the list, hits on them are ignored until unpinned
+        pin(policy, frames[0]);
+        pin(policy, frames[1]);
+        policy.hit(frames[1]);
+        assertEquals(Arrays.asList(frames[2], frames[3]), policy.coldFrames(all, 4));
+        assertEquals(frames[2], policy.evict(all));
+        policy.cleanup(frames[2]);
+
+        // unpinned frames become most recently used
+        unpin(policy, frames[0]);
+        assertEquals(Arrays.asList(frames[3], frames[0]), policy.coldFrames(all, 4));
+        assertEquals(frames[3], policy.evict(all));
+        policy.cleanup(frames[3]);
+        assertEquals(frames[0], policy.evict(all));
+        policy.cleanup(frames[0]);
+
+        // notifications for frames that were cleaned up are ignored
+        pin(policy, frames[0]);
+        unpin(policy, frames[0]);
+        boolean exceptionThrown = false;
+        try {
+            policy.evict(all);
+        } catch (IllegalStateException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+        unpin(policy, frames[1]);
+        assertEquals(frames[1], policy.evict(all));
+    }
+
+    @Test
+    public void testClockPolicyPinNotifications() {
+        EvictionPolicy policy = new ClockEvictionPolicy();
+        BufferFrame[] all = new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]};
+        for (BufferFrame frame : all) {
+            policy.init(frame);
+        }
+
+        // pinned frames leave the ring, but keep their reference bit
+        pin(policy, frames[0]);
+        pin(policy, frames[1]);
+        policy.hit(frames[1]);
+        assertEquals(Arrays.asList(frames[2], frames[3]), policy.coldFrames(all, 4));
+        assertEquals(frames[2], policy.evict(all));
+        policy.cleanup(frames[2]);
+
+        // unpinned frames rejoin the ring just behind the arm
+        unpin(policy, frames[0]);
+        unpin(policy, frames[1]);
+        assertEquals(Arrays.asList(frames[3], frames[0], frames[1]), policy.coldFrames(all, 4));
+        assertEquals(frames[3], policy.evict(all));
+        policy.cleanup(frames[3]);
+        assertEquals(frames[0], policy.evict(all));
+        policy.cleanup(frames[0]);
+        assertEquals(frames[1], policy.evict(all));
+        policy.cleanup(frames[1]);
+
+        // notifications for frames that were cleaned up are ignored
+        pin(policy, frames[1]);
+        unpin(policy, frames[1]);
+        boolean exceptionThrown = false;
+        try {
+            policy.evict(all);
+        } catch (IllegalStateException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+    }
+
+    @Test
+    public void testQueuedHitsAppliedInOrder() {
+        EvictionPolicy policy = new LRUEvictionPolicy();
+        BufferFrame[] all = new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]};
+        for (BufferFrame frame : all) {
+            policy.init(frame);
+        }
+        // more hits than are queued before being applied, last round 3, 2, 1, 0
+        for (int round = 0; round < HitQueue.MAX_PENDING; ++round) {
+            for (int i = all.length - 1; i >= 0; --i) {
+                policy.hit(all[i]);
+                policy.hit(all[i]);
+            }
+        }
+        assertEquals(Arrays.asList(frames[3], frames[2], frames[1], frames[0]), policy.coldFrames(all, 4));
+
+        // a hit on the frame hit last still counts once something else happened
+        policy.hit(frames[0]);
+        policy.cleanup(frames[1]);
+        policy.hit(frames[3]);
+        policy.hit(frames[0]);
+        assertEquals(Arrays.asList(frames[2], frames[3], frames[0]), policy.coldFrames(all, 4));
+    }
+
+    @Test
+    public void testConcurrentHits() throws InterruptedException {
+        EvictionPolicy[] policies = new EvictionPolicy[] {
+            new LRUEvictionPolicy(), new LRUKEvictionPolicy(), new TwoQueueEvictionPolicy()
+        };
+        for (EvictionPolicy policy : policies) {
+            for (BufferFrame frame : frames) {
+                policy.init(frame);
+            }
+            AtomicBoolean done = new AtomicBoolean(false);
+            List<Thread> threads = new ArrayList<>();
+            List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+            for (int t = 0; t < 4; ++t) {
+                int seed = t;
+                threads.add(new Thread(() -> {
+                    Random random = new Random(seed);
+                    try {
+                        while (!done.get()) {
+                            policy.hit(frames[random.nextInt(frames.length)]);
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            // frames are evicted and loaded again while they are being hit
+            for (int i = 0; i < 2000; ++i) {
+                BufferFrame victim = policy.evict(frames);
+                policy.cleanup(victim);
+                policy.init(victim);
+            }
+            done.set(true);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(Collections.emptyList(), errors);
+            assertEquals(frames.length, policy.coldFrames(frames, frames.length).size());
+        }
+    }
 }
@@ -0,0 +1,295 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.io.PageException;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestStripedBufferManager {
+    private DiskSpaceManager diskSpaceManager;
+    private StripedBufferManager bufferManager;
+
+    @Before
+    public void beforeEach() {
+        diskSpaceManager = new MemoryDiskSpaceManager();
+        bufferManager = new StripedBufferManager(diskSpaceManager, new DummyRecoveryManager(), 16,
+                LRUEvictionPolicy::new, 4);
+    }
+
+    @After
+    public void afterEach() {
+        bufferManager.close();
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testStripeSizes() {
+        assertEquals(4, bufferManager.getNumStripes());
+        assertEquals(16, bufferManager.getBufferSize());
+
+        StripedBufferManager uneven = new StripedBufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                10, ClockEvictionPolicy::new, 3);
+        assertEquals(10, uneven.getBufferSize());
+        uneven.close();
+
+        try {
+            new StripedBufferManager(diskSpaceManager, new DummyRecoveryManager(), 2,
+                                     ClockEvictionPolicy::new, 3);
+            fail();
+        } catch (IllegalArgumentException e) {
+            /* do nothing */
+        }
+    }
+
+    @Test
+    public void testFetchAndPersist() {
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[40];
+        for (int i = 0; i < pageNums.length; ++i) {
+            Page page = bufferManager.fetchNewPage(new DummyLockContext(), partNum);
+            pageNums[i] = page.getPageNum();
+            page.getBuffer().putInt(i);
+            page.unpin();
+        }
+        // more pages than frames, so most pages were evicted
+        Set<Long> loaded = new HashSet<>();
+        bufferManager.iterPageNums((pageNum, dirty) -> loaded.add(pageNum));
+        assertTrue(loaded.size() <= 16);
+        assertTrue(bufferManager.getNumEvictions() >= 24);
+
+        for (int i = 0; i < pageNums.length; ++i) {
+            Page page = bufferManager.fetchPage(new DummyLockContext(), pageNums[i]);
+            assertEquals(i, page.getBuffer().getInt());
+            page.unpin();
+        }
+
+        Page[] pages = bufferManager.fetchPages(new DummyLockContext(), new long[] {pageNums[3], pageNums[1], pageNums[2]});
+        assertEquals(3, pages[0].getBuffer().getInt());
+        assertEquals(1, pages[1].getBuffer().getInt());
+        assertEquals(2, pages[2].getBuffer().getInt());
+        for (Page page : pages) {
+            page.unpin();
+        }
+    }
+
+    @Test
+    public void testSameFrameForSamePage() {
+        int partNum = diskSpaceManager.allocPart(1);
+        BufferFrame frame1 = bufferManager.fetchNewPageFrame(partNum);
+        BufferFrame frame2 = bufferManager.fetchPageFrame(frame1.getPageNum());
+        frame1.unpin();
+        frame2.unpin();
+        assertSame(frame1, frame2);
+
+        bufferManager.evict(frame1.getPageNum());
+        assertFalse(frame1.isValid());
+        BufferFrame frame3 = bufferManager.fetchPageFrame(frame1.getPageNum());
+        assertNotSame(frame1, frame3);
+        frame3.unpin();
+    }
+
+    @Test
+    public void testFreePageAndPart() {
+        int partNum = diskSpaceManager.allocPart(1);
+        Page page1 = bufferManager.fetchNewPage(new DummyLockContext(), partNum);
+        Page page2 = bufferManager.fetchNewPage(new DummyLockContext(), partNum);
+        page2.unpin();
+        bufferManager.freePage(page1);
+        page1.unpin();
+        assertFalse(diskSpaceManager.pageAllocated(page1.getPageNum()));
+
+        bufferManager.freePart(partNum);
+        List<Long> loaded = new ArrayList<>();
+        bufferManager.iterPageNums((pageNum, dirty) -> loaded.add(pageNum));
+        assertTrue(loaded.isEmpty());
+        try {
+            bufferManager.fetchPageFrame(page2.getPageNum());
+            fail();
+        } catch (PageException e) {
+            /* do nothing */
+        }
+    }
+
+    @Test
+    public void testConcurrentFetches() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+        int numThreads = 4;
+        int pagesPerThread = 10;
+        long[][] pageNums = new long[numThreads][pagesPerThread];
+        for (int t = 0; t < numThreads; ++t) {
+            for (int i = 0; i < pagesPerThread; ++i) {
+                pageNums[t][i] = diskSpaceManager.allocPage(partNum);
+            }
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < numThreads; ++t) {
+            long[] mine = pageNums[t];
+            Thread thread = new Thread(() -> {
+                for (int round = 0; round < 50; ++round) {
+                    for (long pageNum : mine) {
+                        Page page = bufferManager.fetchPage(new DummyLockContext(), pageNum);
+                        try {
+                            int value = page.getBuffer().getInt(0);
+                            page.getBuffer().putInt(0, value + 1);
+                        } finally {
+                            page.unpin();
+                        }
+                    }
+                }
+            });
+            thread.setUncaughtExceptionHandler((th, e) -> {
+                synchronized (errors) {
+                    errors.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(new ArrayList<>(), errors);
+
+        for (long[] mine : pageNums) {
+            for (long pageNum : mine) {
+                Page page = bufferManager.fetchPage(new DummyLockContext(), pageNum);
+                assertEquals(50, page.getBuffer().getInt(0));
+                page.unpin();
+            }
+        }
+    }
+
+    @Test
+    public void testStripeRanges() {
+        // a range is at most half of the smallest stripe
+        assertEquals(2, bufferManager.getStripeRange());
+        StripedBufferManager large = new StripedBufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                1024, LRUEvictionPolicy::new, 4);
+        assertEquals(StripedBufferManager.MAX_STRIPE_RANGE, large.getStripeRange());
+        large.close();
+
+        int partNum = diskSpaceManager.allocPart(1);
+        long first = DiskSpaceManager.getVirtualPageNum(partNum, 0);
+        int range = bufferManager.getStripeRange();
+        for (int i = 1; i < range; ++i) {
+            assertEquals(bufferManager.stripeIndex(first), bufferManager.stripeIndex(first + i));
+        }
+        // consecutive ranges go to every stripe in turn
+        Set<Integer> stripes = new HashSet<>();
+        for (int i = 0; i < bufferManager.getNumStripes(); ++i) {
+            stripes.add(bufferManager.stripeIndex(first + (long) i * range));
+        }
+        assertEquals(bufferManager.getNumStripes(), stripes.size());
+    }
+
+    @Test
+    public void testFetchPagesLargerThanStripe() {
+        int partNum = diskSpaceManager.allocPart(1);
+        // twice as many pages as a stripe holds, not starting on a range boundary
+        diskSpaceManager.allocPage(partNum);
+        long[] pageNums = new long[8];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+        Page[] pages = bufferManager.fetchPages(new DummyLockContext(), pageNums);
+        for (int i = 0; i < pages.length; ++i) {
+            assertEquals(pageNums[i], pages[i].getPageNum());
+            pages[i].unpin();
+        }
+    }
+
+    @Test
+    public void testScanLargerThanStripe() {
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[10];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+        for (long pageNum : pageNums) {
+            bufferManager.fetchPage(new DummyLockContext(), pageNum).unpin();
+        }
+        // the pages are spread over the stripes, so a second scan finds them
+        // all in memory, as it would in a single 16-frame buffer manager
+        long numIOs = bufferManager.getNumIOs();
+        for (int scan = 0; scan < 3; ++scan) {
+            for (long pageNum : pageNums) {
+                bufferManager.fetchPage(new DummyLockContext(), pageNum).unpin();
+            }
+        }
+        assertEquals(numIOs, bufferManager.getNumIOs());
+        assertEquals(0, bufferManager.getNumEvictions());
+    }
+
+    @Test
+    public void testFetchPagesCoalesces() {
+        List<Integer> readSizes = new ArrayList<>();
+        DiskSpaceManager dsm = new MemoryDiskSpaceManager() {
+            @Override
+            public void readPages(long[] pages, ByteBuffer[] bufs) {
+                readSizes.add(pages.length);
+                super.readPages(pages, bufs);
+            }
+        };
+        StripedBufferManager bm = new StripedBufferManager(dsm, new DummyRecoveryManager(), 64,
+                LRUEvictionPolicy::new, 4);
+        assertEquals(8, bm.getStripeRange());
+        int partNum = dsm.allocPart(1);
+        long[] pageNums = new long[4];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = dsm.allocPage(partNum);
+        }
+        Page[] pages = bm.fetchPages(new DummyLockContext(), pageNums);
+        for (Page page : pages) {
+            page.unpin();
+        }
+        // all four pages are in one range, so they are read in together
+        assertEquals(Collections.singletonList(4), readSizes);
+        assertEquals(4, bm.getNumIOs());
+        bm.close();
+        dsm.close();
+    }
+
+    @Test
+    public void testReadAheadAcrossStripes() {
+        int partNum = diskSpaceManager.allocPart(1);
+        // the read-ahead window runs past the end of the first range
+        long[] pageNums = new long[8];
+        for (int i = 0; i < bufferManager.getStripeRange() - 1; ++i) {
+            diskSpaceManager.allocPage(partNum);
+        }
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+        bufferManager.enableReadAhead(4, 8, 1);
+        ReadAheadPrefetcher prefetcher = bufferManager.getReadAheadPrefetcher();
+        bufferManager.fetchPage(new DummyLockContext(), pageNums[0]).unpin();
+        bufferManager.fetchPage(new DummyLockContext(), pageNums[1]).unpin();
+        bufferManager.disableReadAhead();
+        assertEquals(2, prefetcher.getNumMisses());
+        assertEquals(4, prefetcher.getNumPrefetched());
+
+        for (int i = 2; i < 6; ++i) {
+            bufferManager.fetchPage(new DummyLockContext(), pageNums[i]).unpin();
+        }
+        assertEquals(4, prefetcher.getNumHits());
+    }
+}
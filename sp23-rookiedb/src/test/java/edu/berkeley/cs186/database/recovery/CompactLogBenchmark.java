@@ -0,0 +1,87 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compares the amount of log written per transaction with page writes logged
+ * as before/after images and as deltas (ARIESRecoveryManager#setCompactLogging),
+ * for small OLTP-style transactions: each inserts a row into an indexed table
+ * and updates one column of another row.
+ *
+ * Not run as part of the test suite; run this class directly to get results.
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class CompactLogBenchmark {
+    private static final int NUM_ROWS = 1000;
+    private static final int NUM_TRANSACTIONS = 500;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void benchmarkLogVolume() throws IOException {
+        System.out.printf("log volume of %d transactions (insert + update each)%n", NUM_TRANSACTIONS);
+        double images = run(false);
+        double deltas = run(true);
+        System.out.printf("  before/after images: %8.1f bytes/transaction%n", images);
+        System.out.printf("  deltas:              %8.1f bytes/transaction%n", deltas);
+        System.out.printf("  reduction:           %8.2fx%n", images / deltas);
+    }
+
+    /**
+     * @return bytes of log appended per transaction
+     */
+    private double run(boolean compactLogging) throws IOException {
+        Database db = new Database(tempFolder.newFolder().getAbsolutePath(), 128, new DummyLockManager(),
+                                   new ClockEvictionPolicy(), true);
+        try {
+            db.waitAllTransactions();
+            ARIESRecoveryManager recoveryManager = (ARIESRecoveryManager) db.getRecoveryManager();
+            recoveryManager.setCompactLogging(compactLogging);
+            Schema schema = new Schema()
+                    .add("id", Type.intType())
+                    .add("balance", Type.intType())
+                    .add("name", Type.stringType(32));
+            try (Transaction t = db.beginTransaction()) {
+                t.createTable(schema, "accounts");
+                for (int i = 0; i < NUM_ROWS; ++i) {
+                    t.insert("accounts", i, 0, "account " + i);
+                }
+            }
+            try (Transaction t = db.beginTransaction()) {
+                t.createIndex("accounts", "id", false);
+            }
+
+            Random random = new Random(186);
+            long start = recoveryManager.logManager.getNumBytesAppended();
+            for (int i = 0; i < NUM_TRANSACTIONS; ++i) {
+                try (Transaction t = db.beginTransaction()) {
+                    t.insert("accounts", NUM_ROWS + i, 100, "account " + (NUM_ROWS + i));
+                    DataBox id = new IntDataBox(random.nextInt(NUM_ROWS));
+                    t.update("accounts", "balance", b -> new IntDataBox(b.getInt() + 1),
+                             "id", PredicateOperator.EQUALS, id);
+                }
+            }
+            return (recoveryManager.logManager.getNumBytesAppended() - start) / (double) NUM_TRANSACTIONS;
+        } finally {
+            db.close();
+        }
+    }
+}
@@ -7,8 +7,10 @@ import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.index.BPlusTreeMetadata;
 import edu.berkeley.cs186.database.query.QueryPlan;
+import edu.berkeley.cs186.database.table.PageLayout;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.RowView;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -17,6 +19,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
 
@@ -83,6 +86,9 @@ class DummyTransaction extends Transaction {
     @Override
     public void createTable(Schema s, String tableName) {}
 
+    @Override
+    public void createTable(Schema s, String tableName, PageLayout layout) {}
+
     @Override
     public void dropTable(String tableName) {}
 
@@ -95,6 +101,11 @@ class DummyTransaction extends Transaction {
     @Override
     public void dropIndex(String tableName, String columnName) {}
 
+    @Override
+    public int vacuum(String tableName) {
+        return 0;
+    }
+
     @Override
     public QueryPlan query(String tableName) {
         return null;
@@ -200,6 +211,16 @@ class DummyTransaction extends Transaction {
             return null;
         }
 
+        @Override
+        public BacktrackingIterator<RowView> getRowIterator(String tableName) {
+            return null;
+        }
+
+        @Override
+        public BacktrackingIterator<RowView> getRowIterator(String tableName, Set<Integer> columns) {
+            return null;
+        }
+
         @Override
         public boolean contains(String tableName, String columnName, DataBox key) {
             return false;
@@ -220,6 +241,11 @@ class DummyTransaction extends Transaction {
             return null;
         }
 
+        @Override
+        public int vacuumTable(String tableName) {
+            return 0;
+        }
+
         @Override
         public RecordId updateRecord(String tableName, RecordId rid, Record record) {
             return null;
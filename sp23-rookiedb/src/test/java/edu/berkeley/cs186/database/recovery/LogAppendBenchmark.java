@@ -0,0 +1,100 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures logging throughput with several threads appending update records
+ * (about 110 bytes each) at once, through the log buffer, and with appends
+ * serialized through a single lock as a point of comparison. Each thread
+ * flushes the log every FLUSH_INTERVAL records, like a transaction committing.
+ *
+ * The log buffer only pays off when appending threads run in parallel: on a
+ * single core, threads take turns whichever way records are appended, and the
+ * two modes should be about as fast. The numbers recorded when the log buffer
+ * was added came from a single-core machine, so they show the buffer's
+ * overhead, not how it scales; the number of cores is printed with the results.
+ *
+ * Not run as part of the test suite; run this class directly to get timings.
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class LogAppendBenchmark {
+    private static final int NUM_RECORDS = 1000000;
+    private static final int FLUSH_INTERVAL = 50;
+    private static final int[] THREADS = {1, 2, 4, 8};
+
+    @Test
+    public void benchmarkAppend() throws InterruptedException {
+        System.out.printf("appending %d records (%d cores)%n", NUM_RECORDS,
+                          Runtime.getRuntime().availableProcessors());
+        // warm up the JIT
+        run(4, false);
+        run(4, true);
+        for (int threads : THREADS) {
+            long bufferNanos = run(threads, false);
+            long lockedNanos = run(threads, true);
+            System.out.printf("  %d thread(s): %10.0f records/s (serialized: %10.0f records/s)%n", threads,
+                              NUM_RECORDS / (bufferNanos / 1e9), NUM_RECORDS / (lockedNanos / 1e9));
+        }
+    }
+
+    /**
+     * @param serialize whether to append one record at a time, under a lock
+     * @return time taken to append NUM_RECORDS records, in ns
+     */
+    private long run(int numThreads, boolean serialize) throws InterruptedException {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(0);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 1024,
+                new ClockEvictionPolicy());
+        LogManager logManager = new LogManager(bufferManager);
+        ReentrantLock appendLock = new ReentrantLock();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; ++t) {
+            final long transNum = t + 1;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < NUM_RECORDS / numThreads; ++i) {
+                    UpdatePageLogRecord record = new UpdatePageLogRecord(transNum, i, 0L, (short) 0,
+                            new byte[40], new byte[40]);
+                    long LSN;
+                    if (serialize) {
+                        appendLock.lock();
+                        try {
+                            LSN = logManager.appendToLog(record);
+                        } finally {
+                            appendLock.unlock();
+                        }
+                    } else {
+                        LSN = logManager.appendToLog(record);
+                    }
+                    if (i % FLUSH_INTERVAL == FLUSH_INTERVAL - 1) {
+                        logManager.flushToLSN(LSN);
+                    }
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        long nanos = System.nanoTime() - start;
+
+        long expectedBytes = (long) (NUM_RECORDS / numThreads) * numThreads * 111;
+        assertEquals(expectedBytes, logManager.getNumBytesAppended());
+        logManager.close();
+        bufferManager.close();
+        return nanos;
+    }
+}
@@ -0,0 +1,158 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures restart time after a crash with a large synthetic log (many small
+ * committed updates spread over more pages than fit in the buffer, none of
+ * them written out), with serial redo and with several redo threads. Each run
+ * restarts from its own copy of the same crashed database.
+ *
+ * Not run as part of the test suite; run this class directly to get timings.
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class RedoBenchmark {
+    private static final int NUM_PAGES = 2048;
+    private static final int NUM_TRANSACTIONS = 200;
+    private static final int UPDATES_PER_TRANSACTION = 1000;
+    private static final int BUFFER_FRAMES = 512;
+    private static final int[] REDO_THREADS = {1, 2, 4, 8};
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void benchmarkRestart() throws IOException {
+        File crashed = tempFolder.newFolder();
+        long[] pageNums = new long[NUM_PAGES];
+        int[] lastValue = new int[NUM_PAGES];
+        long logBytes = buildCrashedDatabase(crashed.getAbsolutePath(), pageNums, lastValue);
+
+        System.out.printf("restart after %d updates to %d pages (%.2f MB of log, %d buffer frames)%n",
+                          NUM_TRANSACTIONS * UPDATES_PER_TRANSACTION, NUM_PAGES, logBytes / (double) (1 << 20),
+                          BUFFER_FRAMES);
+        // warm up the JIT and the OS cache
+        restart(copy(crashed), 1, pageNums, lastValue);
+        for (int redoThreads : REDO_THREADS) {
+            long nanos = restart(copy(crashed), redoThreads, pageNums, lastValue);
+            System.out.printf("  %d redo thread(s): %8.2f ms%n", redoThreads, nanos / 1e6);
+        }
+    }
+
+    /**
+     * Writes committed updates through a recovery manager that is then abandoned
+     * without flushing any data pages.
+     * @return size of the log partition in bytes
+     */
+    private long buildCrashedDatabase(String dir, long[] pageNums, int[] lastValue) {
+        ARIESRecoveryManager recoveryManager = load(dir);
+        recoveryManager.restart();
+        Random random = new Random(186);
+        long transNum = 1;
+        begin(recoveryManager, transNum);
+        for (int i = 0; i < NUM_PAGES; ++i) {
+            pageNums[i] = recoveryManager.diskSpaceManager.allocPage(1);
+        }
+        commit(recoveryManager, transNum);
+        for (int t = 0; t < NUM_TRANSACTIONS; ++t) {
+            begin(recoveryManager, ++transNum);
+            for (int u = 0; u < UPDATES_PER_TRANSACTION; ++u) {
+                int i = random.nextInt(NUM_PAGES);
+                lastValue[i] = random.nextInt();
+                Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), pageNums[i]);
+                try {
+                    page.getBuffer().putInt(4 * random.nextInt(64), lastValue[i]);
+                    page.getBuffer().putInt(1000, lastValue[i]);
+                } finally {
+                    page.unpin();
+                }
+            }
+            commit(recoveryManager, transNum);
+        }
+        DummyTransaction.cleanupTransactions();
+        return new File(dir, "0").length();
+    }
+
+    /**
+     * Restarts the database in dir with the given number of redo threads.
+     * @return time taken by restart in nanoseconds
+     */
+    private long restart(String dir, int redoThreads, long[] pageNums, int[] lastValue) {
+        ARIESRecoveryManager recoveryManager = load(dir);
+        recoveryManager.setRedoThreads(redoThreads);
+        long start = System.nanoTime();
+        recoveryManager.restart();
+        long nanos = System.nanoTime() - start;
+        for (int i = 0; i < NUM_PAGES; i += 97) {
+            Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), pageNums[i]);
+            try {
+                assertEquals(lastValue[i], page.getBuffer().getInt(1000));
+            } finally {
+                page.unpin();
+            }
+        }
+        recoveryManager.close();
+        DummyTransaction.cleanupTransactions();
+        return nanos;
+    }
+
+    private ARIESRecoveryManager load(String dir) {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir, recoveryManager);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, BUFFER_FRAMES,
+                new LRUEvictionPolicy());
+        boolean isLoaded = true;
+        try {
+            diskSpaceManager.allocPart(0);
+            diskSpaceManager.allocPart(1);
+            isLoaded = false;
+        } catch (IllegalStateException e) {
+            // already loaded
+        }
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        if (!isLoaded) {
+            recoveryManager.initialize();
+        }
+        return recoveryManager;
+    }
+
+    private static DummyTransaction begin(ARIESRecoveryManager recoveryManager, long transNum) {
+        DummyTransaction transaction = DummyTransaction.create(transNum);
+        recoveryManager.startTransaction(transaction);
+        TransactionContext.setTransaction(transaction.getTransactionContext());
+        return transaction;
+    }
+
+    private static void commit(ARIESRecoveryManager recoveryManager, long transNum) {
+        TransactionContext.unsetTransaction();
+        recoveryManager.commit(transNum);
+        recoveryManager.end(transNum);
+    }
+
+    private String copy(File from) throws IOException {
+        File to = tempFolder.newFolder();
+        for (File file : from.listFiles()) {
+            Files.copy(file.toPath(), new File(to, file.getName()).toPath());
+        }
+        return to.getAbsolutePath();
+    }
+}
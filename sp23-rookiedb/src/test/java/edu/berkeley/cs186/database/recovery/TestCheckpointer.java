@@ -0,0 +1,256 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests fuzzy checkpoints taken while transactions are running, and the
+ * background checkpointer (ARIESRecoveryManager#enableCheckpointer).
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestCheckpointer {
+    private String testDir;
+    private ARIESRecoveryManager recoveryManager;
+    // whether the next checkpoint fails
+    private final AtomicBoolean failCheckpoint = new AtomicBoolean(false);
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() throws IOException {
+        testDir = tempFolder.newFolder("test-dir").getAbsolutePath();
+        DummyTransaction.cleanupTransactions();
+        recoveryManager = loadRecoveryManager();
+        recoveryManager.restart();
+    }
+
+    @After
+    public void cleanup() {
+        recoveryManager.close();
+    }
+
+    private ARIESRecoveryManager loadRecoveryManager() {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create) {
+            @Override
+            public void checkpoint() {
+                if (failCheckpoint.getAndSet(false)) {
+                    throw new IllegalStateException("injected checkpoint failure");
+                }
+                super.checkpoint();
+            }
+        };
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(testDir, recoveryManager);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32,
+                new LRUEvictionPolicy());
+        boolean isLoaded = true;
+        try {
+            diskSpaceManager.allocPart(0);
+            diskSpaceManager.allocPart(1);
+            isLoaded = false;
+        } catch (IllegalStateException e) {
+            // already loaded
+        }
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        if (!isLoaded) {
+            recoveryManager.initialize();
+        }
+        return recoveryManager;
+    }
+
+    /**
+     * Simulates a crash: nothing more is written out, and the managers are
+     * abandoned without closing them.
+     */
+    private void crash() {
+        recoveryManager.disableCheckpointer();
+        DummyTransaction.cleanupTransactions();
+        recoveryManager = loadRecoveryManager();
+    }
+
+    private void writeInt(long pageNum, int offset, int value) {
+        Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            page.getBuffer().putInt(offset, value);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private int readInt(long pageNum, int offset) {
+        Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            return page.getBuffer().getInt(offset);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private void startTransaction(long transNum) {
+        DummyTransaction transaction = DummyTransaction.create(transNum);
+        recoveryManager.startTransaction(transaction);
+        TransactionContext.setTransaction(transaction.getTransactionContext());
+    }
+
+    private void commitTransaction(long transNum) {
+        TransactionContext.unsetTransaction();
+        recoveryManager.commit(transNum);
+        recoveryManager.end(transNum);
+    }
+
+    private long masterCheckpointLSN() {
+        return ((MasterLogRecord) recoveryManager.logManager.fetchLogRecord(0L)).lastCheckpointLSN;
+    }
+
+    /**
+     * Commits numTransactions transactions, each writing its transaction number
+     * to offset 4 * i of page i % 8 (of pageNums), and a large value to the rest of
+     * the page. Every commit flushes the log, so every transaction writes at
+     * least a log page.
+     */
+    private void writeTransactions(long[] pageNums, long firstTransNum, int numTransactions) {
+        for (long transNum = firstTransNum; transNum < firstTransNum + numTransactions; ++transNum) {
+            startTransaction(transNum);
+            Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(),
+                    pageNums[(int) (transNum % pageNums.length)]);
+            try {
+                page.getBuffer().position(1000).put(new byte[1500]);
+                page.getBuffer().putInt(4 * (int) (transNum % 200), (int) transNum);
+            } finally {
+                page.unpin();
+            }
+            commitTransaction(transNum);
+        }
+    }
+
+    private long[] allocPages(int numPages) {
+        startTransaction(1L);
+        long[] pageNums = new long[numPages];
+        for (int i = 0; i < numPages; ++i) {
+            pageNums[i] = recoveryManager.diskSpaceManager.allocPage(1);
+        }
+        commitTransaction(1L);
+        return pageNums;
+    }
+
+    @Test
+    public void testCheckpointOnLogVolume() throws InterruptedException {
+        long[] pageNums = allocPages(8);
+        recoveryManager.enableCheckpointer(16 * DiskSpaceManager.PAGE_SIZE);
+        long initialCheckpointLSN = masterCheckpointLSN();
+
+        // below the threshold: no checkpoint
+        writeTransactions(pageNums, 2, 1);
+        Thread.sleep(100);
+        assertEquals(0, recoveryManager.getCheckpointer().getNumCheckpoints());
+
+        writeTransactions(pageNums, 3, 40);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (recoveryManager.getCheckpointer().getNumCheckpoints() == 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(recoveryManager.getCheckpointer().getNumCheckpoints() > 0);
+        assertTrue(masterCheckpointLSN() > initialCheckpointLSN);
+        assertEquals(masterCheckpointLSN(), recoveryManager.getLastCheckpointLSN());
+
+        recoveryManager.disableCheckpointer();
+        assertNull(recoveryManager.getCheckpointer());
+    }
+
+    @Test
+    public void testCheckpointFailure() throws InterruptedException {
+        long[] pageNums = allocPages(8);
+        recoveryManager.enableCheckpointer(2 * DiskSpaceManager.PAGE_SIZE);
+        Checkpointer checkpointer = recoveryManager.getCheckpointer();
+        failCheckpoint.set(true);
+
+        // the checkpointer keeps running after the failed checkpoint, and
+        // checkpoints again as more log is written
+        long deadline = System.currentTimeMillis() + 10000;
+        long transNum = 2;
+        while (checkpointer.getNumCheckpoints() == 0 && System.currentTimeMillis() < deadline) {
+            writeTransactions(pageNums, transNum, 10);
+            transNum += 10;
+        }
+        assertEquals(1, checkpointer.getNumFailures());
+        assertEquals("injected checkpoint failure", checkpointer.getLastFailure().getMessage());
+        assertTrue(checkpointer.getNumCheckpoints() > 0);
+        recoveryManager.disableCheckpointer();
+        assertEquals(masterCheckpointLSN(), recoveryManager.getLastCheckpointLSN());
+    }
+
+    @Test
+    public void testRestartAfterBackgroundCheckpoints() {
+        long[] pageNums = allocPages(8);
+        recoveryManager.enableCheckpointer(2 * DiskSpaceManager.PAGE_SIZE);
+        writeTransactions(pageNums, 2, 100);
+        // uncommitted changes, to be undone at restart
+        startTransaction(200L);
+        writeInt(pageNums[0], 3000, 7);
+        TransactionContext.unsetTransaction();
+        recoveryManager.logManager.flushToLSN(recoveryManager.transactionTable.get(200L).lastLSN);
+        crash();
+        recoveryManager.restart();
+
+        for (long transNum = 2; transNum < 102; ++transNum) {
+            assertEquals((int) transNum, readInt(pageNums[(int) (transNum % 8)], 4 * (int) transNum));
+        }
+        assertEquals(0, readInt(pageNums[0], 3000));
+    }
+
+    @Test
+    public void testConcurrentCheckpoints() throws InterruptedException {
+        // checkpoints taken back to back while transactions commit
+        long[] pageNums = allocPages(8);
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread checkpointThread = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    recoveryManager.checkpoint();
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        checkpointThread.start();
+        try {
+            writeTransactions(pageNums, 2, 100);
+        } finally {
+            done.set(true);
+            checkpointThread.join();
+        }
+        assertNull(failure.get());
+        crash();
+        recoveryManager.restart();
+
+        assertTrue(recoveryManager.transactionTable.isEmpty());
+        assertEquals(101, readInt(pageNums[101 % 8], 4 * 101));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidConfiguration() {
+        recoveryManager.enableCheckpointer(0);
+    }
+}
@@ -0,0 +1,369 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.records.PageDelta;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageDeltaLogRecord;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests logging page writes as deltas (ARIESRecoveryManager#setCompactLogging).
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestCompactLogging {
+    private String testDir;
+    private ARIESRecoveryManager recoveryManager;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() throws IOException {
+        testDir = tempFolder.newFolder("test-dir").getAbsolutePath();
+        DummyTransaction.cleanupTransactions();
+        recoveryManager = loadRecoveryManager();
+        recoveryManager.restart();
+        recoveryManager.setCompactLogging(true);
+    }
+
+    @After
+    public void cleanup() {
+        recoveryManager.close();
+    }
+
+    private ARIESRecoveryManager loadRecoveryManager() {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        DiskSpaceManagerImpl diskSpaceManager = new DiskSpaceManagerImpl(testDir, recoveryManager);
+        diskSpaceManager.setChecksummed(true);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32,
+                new LRUEvictionPolicy());
+        boolean isLoaded = true;
+        try {
+            diskSpaceManager.allocPart(0);
+            diskSpaceManager.allocPart(1);
+            isLoaded = false;
+        } catch (IllegalStateException e) {
+            // already loaded
+        }
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        if (!isLoaded) {
+            recoveryManager.initialize();
+        }
+        return recoveryManager;
+    }
+
+    /**
+     * Simulates a crash: nothing more is written out, and the managers are
+     * abandoned without closing them.
+     */
+    private void crash() {
+        DummyTransaction.cleanupTransactions();
+        recoveryManager = loadRecoveryManager();
+    }
+
+    private void startTransaction(long transNum) {
+        DummyTransaction transaction = DummyTransaction.create(transNum);
+        recoveryManager.startTransaction(transaction);
+        TransactionContext.setTransaction(transaction.getTransactionContext());
+    }
+
+    private void commitTransaction(long transNum) {
+        TransactionContext.unsetTransaction();
+        recoveryManager.commit(transNum);
+        recoveryManager.end(transNum);
+    }
+
+    private void write(long pageNum, int offset, byte[] bytes) {
+        Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            page.getBuffer().position(offset).put(bytes);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private byte[] read(long pageNum) {
+        Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            byte[] bytes = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+            page.getBuffer().get(bytes);
+            return bytes;
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private void flushLog(long transNum) {
+        recoveryManager.logManager.flushToLSN(recoveryManager.transactionTable.get(transNum).lastLSN);
+    }
+
+    /**
+     * Fills a page with random bytes in one transaction, then makes scattered
+     * changes to it in a second one.
+     * @param expected set to the expected contents of the page
+     * @return page number of the page
+     */
+    private long writePage(byte[] expected) {
+        Random random = new Random(186);
+        startTransaction(1L);
+        long pageNum = recoveryManager.diskSpaceManager.allocPage(1);
+        random.nextBytes(expected);
+        write(pageNum, 0, expected);
+        commitTransaction(1L);
+
+        startTransaction(2L);
+        for (int i = 0; i < 50; ++i) {
+            int offset = random.nextInt(expected.length - 8);
+            byte[] bytes = new byte[1 + random.nextInt(8)];
+            random.nextBytes(bytes);
+            System.arraycopy(bytes, 0, expected, offset, bytes.length);
+            write(pageNum, offset, bytes);
+        }
+        commitTransaction(2L);
+        return pageNum;
+    }
+
+    @Test
+    public void testPageDelta() {
+        byte[] before = new byte[100];
+        byte[] after = new byte[100];
+        after[10] = 1;
+        after[13] = 2; // within MAX_GAP of the previous change: same run
+        after[50] = 3; // new run
+        after[99] = 4;
+        PageDelta delta = PageDelta.of(new short[] {0}, new byte[][] {before}, new byte[][] {after});
+        assertEquals(2 + 4 + 4 + 4 + 1 + 4 + 1, delta.size());
+
+        byte[] page = before.clone();
+        delta.apply(page, 0);
+        assertArrayEquals(after, page);
+        delta.apply(page, 0);
+        assertArrayEquals(before, page);
+
+        byte[] serialized = new byte[delta.size()];
+        delta.writeTo(ByteBuffer.wrap(serialized));
+        assertEquals(delta, PageDelta.readFrom(ByteBuffer.wrap(serialized)));
+
+        // nothing changed
+        assertTrue(PageDelta.of(new short[] {0}, new byte[][] {before}, new byte[][] {before.clone()})
+                   .isEmpty());
+    }
+
+    @Test
+    public void testSplitPageDelta() {
+        Random random = new Random(186);
+        byte[] before = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        byte[] after = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        random.nextBytes(after);
+        PageDelta delta = PageDelta.of(new short[] {0}, new byte[][] {before}, new byte[][] {after});
+        List<PageDelta> parts = delta.split(BufferManager.EFFECTIVE_PAGE_SIZE / 2);
+        assertTrue(parts.size() > 1);
+        byte[] page = before.clone();
+        for (PageDelta part : parts) {
+            assertTrue(part.size() <= BufferManager.EFFECTIVE_PAGE_SIZE / 2);
+            part.apply(page, 0);
+        }
+        assertArrayEquals(after, page);
+    }
+
+    @Test
+    public void testLogsDeltas() {
+        byte[] expected = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        writePage(expected);
+        int numDeltas = 0;
+        Iterator<LogRecord> iter = recoveryManager.logManager.iterator();
+        while (iter.hasNext()) {
+            LogRecord record = iter.next();
+            assertFalse(record instanceof UpdatePageLogRecord);
+            if (record instanceof UpdatePageDeltaLogRecord) {
+                ++numDeltas;
+            }
+        }
+        // the initial fill is split into several records
+        assertTrue(numDeltas > 50);
+    }
+
+    @Test
+    public void testRedo() {
+        byte[] expected = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        long pageNum = writePage(expected);
+        crash();
+        recoveryManager.restart();
+        assertArrayEquals(expected, read(pageNum));
+    }
+
+    @Test
+    public void testParallelRedo() {
+        byte[] expected = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        long pageNum = writePage(expected);
+        crash();
+        recoveryManager.setRedoThreads(4);
+        recoveryManager.restart();
+        assertArrayEquals(expected, read(pageNum));
+    }
+
+    @Test
+    public void testAbort() {
+        byte[] expected = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        long pageNum = writePage(expected);
+        startTransaction(3L);
+        write(pageNum, 100, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+        write(pageNum, 103, new byte[] {10, 11});
+        write(pageNum, 3000, new byte[500]);
+        TransactionContext.unsetTransaction();
+        recoveryManager.abort(3L);
+        recoveryManager.end(3L);
+        assertArrayEquals(expected, read(pageNum));
+    }
+
+    @Test
+    public void testUndoAtRestart() {
+        byte[] expected = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        long pageNum = writePage(expected);
+        startTransaction(3L);
+        write(pageNum, 100, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+        write(pageNum, 3000, new byte[500]);
+        TransactionContext.unsetTransaction();
+        flushLog(3L);
+        crash();
+        recoveryManager.restart();
+        assertArrayEquals(expected, read(pageNum));
+
+        // and once more, redoing the CLRs
+        crash();
+        recoveryManager.restart();
+        assertArrayEquals(expected, read(pageNum));
+    }
+
+    @Test
+    public void testMixedRecords() {
+        // records logged with compact logging off and on are recovered together
+        recoveryManager.setCompactLogging(false);
+        byte[] expected = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        long pageNum = writePage(expected);
+        recoveryManager.setCompactLogging(true);
+        startTransaction(3L);
+        write(pageNum, 200, new byte[] {1, 2, 3});
+        System.arraycopy(new byte[] {1, 2, 3}, 0, expected, 200, 3);
+        commitTransaction(3L);
+        crash();
+        recoveryManager.restart();
+        assertArrayEquals(expected, read(pageNum));
+    }
+
+    @Test
+    public void testFreePage() {
+        byte[] expected = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        long pageNum = writePage(expected);
+        startTransaction(3L);
+        recoveryManager.diskSpaceManager.freePage(pageNum);
+        TransactionContext.unsetTransaction();
+        recoveryManager.abort(3L);
+        recoveryManager.end(3L);
+        assertArrayEquals(expected, read(pageNum));
+    }
+
+    @Test
+    public void testRepairPage() throws IOException {
+        byte[] expected = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        long pageNum = writePage(expected);
+        Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            page.flush();
+        } finally {
+            page.unpin();
+        }
+        recoveryManager.checkpoint();
+        try (RandomAccessFile file = new RandomAccessFile(testDir + "/1", "rw")) {
+            file.seek((2L + DiskSpaceManager.getPageNum(pageNum)) * DiskSpaceManager.PAGE_SIZE + 500);
+            file.write(new byte[] {(byte) 0xAB, (byte) 0xCD});
+        }
+        crash();
+        recoveryManager.restart();
+
+        recoveryManager.setRepairPages(true);
+        assertArrayEquals(expected, read(pageNum));
+    }
+
+    @Test
+    public void testRepairPageFromArchive() {
+        recoveryManager.setRepairPages(true);
+        // an archive that a truncation appends the next flushed log pages to
+        // just before it is read, while they are still in the log: their
+        // deltas must be replayed once, not once from each
+        AtomicBoolean racing = new AtomicBoolean(false);
+        LogArchive archive = new LogArchive(new File(tempFolder.getRoot(), "archive").getAbsolutePath()) {
+            @Override
+            public Iterator<LogRecord> iterator() {
+                if (racing.getAndSet(false)) {
+                    long firstPage = LogManager.getLSNPage(recoveryManager.logManager.getFirstLSN());
+                    long lastPage = LogManager.getLSNPage(recoveryManager.logManager.getFlushedLSN());
+                    assertTrue(lastPage > firstPage);
+                    byte[] logPage = new byte[DiskSpaceManager.PAGE_SIZE];
+                    for (long logPageNum = firstPage; logPageNum < lastPage; ++logPageNum) {
+                        recoveryManager.diskSpaceManager.readPage(logPageNum, logPage);
+                        append(logPageNum, logPage);
+                    }
+                }
+                return super.iterator();
+            }
+        };
+        recoveryManager.enableLogArchive(archive);
+        byte[] expected = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        long pageNum = writePage(expected);
+        recoveryManager.bufferManager.evictAll();
+        recoveryManager.cleanDPT();
+        recoveryManager.checkpoint();
+        // the page's allocation and first deltas are only in the archive now
+        assertTrue(recoveryManager.truncateLog() > 0);
+
+        Random random = new Random(61);
+        startTransaction(3L);
+        for (int i = 0; i < 300; ++i) {
+            int offset = random.nextInt(expected.length - 8);
+            byte[] bytes = new byte[1 + random.nextInt(8)];
+            random.nextBytes(bytes);
+            System.arraycopy(bytes, 0, expected, offset, bytes.length);
+            write(pageNum, offset, bytes);
+        }
+        commitTransaction(3L);
+
+        long numArchived = archive.getNumPages();
+        racing.set(true);
+        byte[] contents = new byte[DiskSpaceManager.PAGE_SIZE];
+        assertTrue(recoveryManager.repairPage(pageNum, contents));
+        assertArrayEquals(expected, Arrays.copyOfRange(contents, BufferManager.RESERVED_SPACE,
+                                                       DiskSpaceManager.PAGE_SIZE));
+        assertTrue(archive.getNumPages() > numArchived);
+    }
+
+    @Test
+    public void testCompactLoggingOffByDefault() {
+        assertFalse(new ARIESRecoveryManager(DummyTransaction::create).isCompactLogging());
+    }
+}
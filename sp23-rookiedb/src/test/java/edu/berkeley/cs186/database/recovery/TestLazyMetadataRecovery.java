@@ -0,0 +1,170 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests restart recovery of page allocations and frees that the disk space manager
+ * had not written out yet (DiskSpaceManagerImpl#setLazyMetadata).
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestLazyMetadataRecovery {
+    private String testDir;
+    private ARIESRecoveryManager recoveryManager;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() throws IOException {
+        testDir = tempFolder.newFolder("test-dir").getAbsolutePath();
+        DummyTransaction.cleanupTransactions();
+        recoveryManager = loadRecoveryManager();
+    }
+
+    @After
+    public void cleanup() {
+        recoveryManager.close();
+    }
+
+    private ARIESRecoveryManager loadRecoveryManager() {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        DiskSpaceManagerImpl diskSpaceManager = new DiskSpaceManagerImpl(testDir, recoveryManager);
+        diskSpaceManager.setLazyMetadata(true);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32,
+                new LRUEvictionPolicy());
+        boolean isLoaded = true;
+        try {
+            diskSpaceManager.allocPart(0);
+            diskSpaceManager.allocPart(1);
+            for (int i = 0; i < 10; ++i) {
+                diskSpaceManager.allocPage(DiskSpaceManager.getVirtualPageNum(1, i));
+            }
+            isLoaded = false;
+        } catch (IllegalStateException e) {
+            // already loaded
+        }
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        if (!isLoaded) {
+            recoveryManager.initialize();
+        }
+        return recoveryManager;
+    }
+
+    /**
+     * Simulates a crash: nothing more is written out, and the managers are
+     * abandoned without closing them.
+     */
+    private void crash() {
+        DummyTransaction.cleanupTransactions();
+        recoveryManager = loadRecoveryManager();
+    }
+
+    @Test
+    public void testRedoAllocAndFree() {
+        DummyTransaction transaction = DummyTransaction.create(1L);
+        recoveryManager.startTransaction(transaction);
+        TransactionContext.setTransaction(transaction.getTransactionContext());
+
+        long allocatedPage = recoveryManager.diskSpaceManager.allocPage(1);
+        long freedPage = DiskSpaceManager.getVirtualPageNum(1, 3);
+        recoveryManager.diskSpaceManager.freePage(freedPage);
+
+        // write the new page out, so that only its allocation is missing on disk
+        Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), allocatedPage);
+        try {
+            page.getBuffer().putInt(0, 186);
+            page.flush();
+        } finally {
+            page.unpin();
+        }
+        TransactionContext.unsetTransaction();
+        recoveryManager.commit(1L);
+
+        crash();
+        assertTrue(recoveryManager.diskSpaceManager.pageAllocated(freedPage));
+        assertFalse(recoveryManager.diskSpaceManager.pageAllocated(allocatedPage));
+
+        recoveryManager.restart();
+        assertFalse(recoveryManager.diskSpaceManager.pageAllocated(freedPage));
+        assertTrue(recoveryManager.diskSpaceManager.pageAllocated(allocatedPage));
+        page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), allocatedPage);
+        try {
+            assertEquals(186, page.getBuffer().getInt(0));
+        } finally {
+            page.unpin();
+        }
+    }
+
+    @Test
+    public void testUndoUncommittedAlloc() {
+        DummyTransaction transaction = DummyTransaction.create(1L);
+        recoveryManager.startTransaction(transaction);
+        TransactionContext.setTransaction(transaction.getTransactionContext());
+        long allocatedPage = recoveryManager.diskSpaceManager.allocPage(1);
+        TransactionContext.unsetTransaction();
+
+        // a checkpoint writes the allocation out, though it never commits
+        recoveryManager.checkpoint();
+        crash();
+        assertTrue(recoveryManager.diskSpaceManager.pageAllocated(allocatedPage));
+
+        recoveryManager.restart();
+        assertFalse(recoveryManager.diskSpaceManager.pageAllocated(allocatedPage));
+    }
+
+    @Test
+    public void testUnloggedAllocWrittenOut() {
+        // allocated outside of a transaction, so there is no log record to redo
+        long allocatedPage = recoveryManager.diskSpaceManager.allocPage(1);
+        crash();
+        assertTrue(recoveryManager.diskSpaceManager.pageAllocated(allocatedPage));
+        recoveryManager.restart();
+        assertTrue(recoveryManager.diskSpaceManager.pageAllocated(allocatedPage));
+    }
+
+    @Test
+    public void testRestartFreshDatabase() throws IOException {
+        String dbDir = tempFolder.newFolder("db").getAbsolutePath();
+        // the catalog's pages are allocated outside of any transaction, and the
+        // database crashes before the first checkpoint
+        new Database(dbDir, 32, new DummyLockManager(), new ClockEvictionPolicy(), true);
+
+        Database db = new Database(dbDir, 32, new DummyLockManager(), new ClockEvictionPolicy(), true);
+        try (Transaction t = db.beginTransaction()) {
+            t.createTable(new Schema().add("id", Type.intType()), "table1");
+            t.insert("table1", 186);
+        }
+        try (Transaction t = db.beginTransaction()) {
+            Iterator<Record> records = t.query("table1").execute();
+            assertEquals(186, records.next().getValue(0).getInt());
+            assertFalse(records.hasNext());
+        }
+        db.close();
+    }
+}
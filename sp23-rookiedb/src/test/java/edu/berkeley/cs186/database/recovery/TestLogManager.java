@@ -7,17 +7,26 @@ import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 @Category(SystemTests.class)
 public class TestLogManager {
@@ -130,4 +139,225 @@ public class TestLogManager {
         postIO = bufferManager.getNumIOs();
         assertEquals(0, postIO - prevIO);
     }
+
+    @Test
+    public void testGroupCommitFlush() {
+        logManager.enableGroupCommit(1000, 1);
+        long LSN = logManager.appendToLog(new MasterLogRecord(1234));
+        logManager.flushCommit(LSN);
+
+        assertTrue(logManager.getFlushedLSN() >= LSN);
+        GroupCommitFlusher flusher = logManager.getGroupCommitFlusher();
+        assertEquals(1, flusher.getNumFlushes());
+        assertEquals(1, flusher.getNumCommits());
+
+        // already durable: no further flush needed
+        logManager.flushCommit(LSN);
+        assertEquals(1, flusher.getNumFlushes());
+    }
+
+    @Test
+    public void testGroupCommitBatch() throws InterruptedException {
+        // long interval, so the only way to flush is to fill the batch
+        logManager.enableGroupCommit(60000, 4);
+        List<Thread> committers = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            final int n = i;
+            committers.add(new Thread(() -> {
+                long LSN = logManager.appendToLog(new MasterLogRecord(n));
+                logManager.flushCommit(LSN);
+            }));
+        }
+        long prevIO = bufferManager.getNumIOs();
+        for (Thread t : committers) t.start();
+        for (Thread t : committers) t.join();
+
+        GroupCommitFlusher flusher = logManager.getGroupCommitFlusher();
+        assertEquals(1, flusher.getNumFlushes());
+        assertEquals(4, flusher.getNumCommits());
+        assertEquals(4, flusher.getLargestBatch());
+        assertEquals(1, bufferManager.getNumIOs() - prevIO);
+    }
+
+    @Test
+    public void testDisableGroupCommitFlushesPending() throws InterruptedException {
+        logManager.enableGroupCommit(60000, 100);
+        long LSN = logManager.appendToLog(new MasterLogRecord(1234));
+        Thread committer = new Thread(() -> logManager.flushCommit(LSN));
+        committer.start();
+        logManager.disableGroupCommit();
+        committer.join();
+
+        assertTrue(logManager.getFlushedLSN() >= LSN);
+        assertEquals(null, logManager.getGroupCommitFlusher());
+    }
+
+    @Test
+    public void testConcurrentAppendsEvictingDirtyPages() throws InterruptedException {
+        // a buffer small enough that opening a log page evicts dirty data pages,
+        // which flushes (and so drains) the log from inside LogBuffer#open while
+        // other appending threads wait for the page to be opened
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(0);
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] dataPages = new long[64];
+        for (int i = 0; i < dataPages.length; ++i) {
+            dataPages[i] = diskSpaceManager.allocPage(partNum);
+        }
+        AtomicReference<LogManager> log = new AtomicReference<>();
+        AtomicInteger flushesFromOpen = new AtomicInteger();
+        BufferManager bm = new BufferManager(diskSpaceManager, new DummyRecoveryManager() {
+            @Override
+            public void pageFlushHook(long pageLSN) {
+                for (StackTraceElement frame : Thread.currentThread().getStackTrace()) {
+                    if (frame.getClassName().equals(LogBuffer.class.getName())
+                            && frame.getMethodName().equals("open")) {
+                        flushesFromOpen.incrementAndGet();
+                        break;
+                    }
+                }
+                log.get().flushToLSN(pageLSN);
+            }
+        }, LogBuffer.NUM_PAGES + 8, new LRUEvictionPolicy());
+        LogManager lm = new LogManager(bm);
+        log.set(lm);
+
+        int numThreads = 4;
+        int recordsPerThread = 2000;
+        List<List<Long>> LSNs = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        records.clear();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int t = 0; t < numThreads; ++t) {
+            List<Long> threadLSNs = new ArrayList<>();
+            LSNs.add(threadLSNs);
+            records.add(new ArrayList<>());
+            final int n = t;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < recordsPerThread; ++i) {
+                        long dataPage = dataPages[(n * 7 + i) % dataPages.length];
+                        LogRecord record = new UpdatePageLogRecord(n, dataPage, 0L, (short) 0,
+                                                                   new byte[i % 100], new byte[i % 100]);
+                        records.get(n).add(record);
+                        long LSN = lm.appendToLog(record);
+                        threadLSNs.add(LSN);
+                        Page page = bm.fetchPage(new DummyLockContext(), dataPage);
+                        try {
+                            page.getBuffer().putLong(0, LSN);
+                            page.setPageLSN(LSN);
+                        } finally {
+                            page.unpin();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }));
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join(60000);
+        for (Thread t : threads) assertFalse(t.isAlive());
+        assertNull(failure.get());
+        assertTrue(flushesFromOpen.get() > 0);
+
+        for (int t = 0; t < numThreads; ++t) {
+            for (int i = 0; i < recordsPerThread; ++i) {
+                assertEquals(records.get(t).get(i), lm.fetchLogRecord(LSNs.get(t).get(i)));
+            }
+        }
+        lm.close();
+        bm.close();
+    }
+
+    // records appended by each thread of appendConcurrently
+    private final List<List<LogRecord>> records = new ArrayList<>();
+
+    /**
+     * Appends records of varying sizes from several threads at once (each
+     * thread's records tagged with its number), flushing now and then.
+     * @return LSNs of each thread's records, in the order they were appended
+     */
+    private List<List<Long>> appendConcurrently(int numThreads, int recordsPerThread)
+            throws InterruptedException {
+        records.clear();
+        List<List<Long>> LSNs = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int t = 0; t < numThreads; ++t) {
+            List<Long> threadLSNs = new ArrayList<>();
+            LSNs.add(threadLSNs);
+            records.add(new ArrayList<>());
+            final int n = t;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < recordsPerThread; ++i) {
+                        LogRecord record = i % 3 == 0
+                                           ? new MasterLogRecord(n * 1000000L + i)
+                                           : new UpdatePageLogRecord(n, i, 0L, (short) 0, new byte[i % 100],
+                                                                     new byte[i % 100]);
+                        records.get(n).add(record);
+                        threadLSNs.add(logManager.appendToLog(record));
+                        if (i % 500 == 0) {
+                            logManager.flushToLSN(threadLSNs.get(i));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }));
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        assertNull(failure.get());
+        return LSNs;
+    }
+
+    @Test
+    public void testConcurrentAppends() throws InterruptedException {
+        int numThreads = 4;
+        int recordsPerThread = 3000;
+        List<List<Long>> LSNs = appendConcurrently(numThreads, recordsPerThread);
+
+        List<Long> allLSNs = new ArrayList<>();
+        for (int t = 0; t < numThreads; ++t) {
+            List<Long> threadLSNs = LSNs.get(t);
+            for (int i = 0; i < recordsPerThread; ++i) {
+                // each thread's records are in order, and can be fetched by LSN
+                if (i > 0) {
+                    assertTrue(threadLSNs.get(i) > threadLSNs.get(i - 1));
+                }
+                assertEquals(records.get(t).get(i), logManager.fetchLogRecord(threadLSNs.get(i)));
+            }
+            allLSNs.addAll(threadLSNs);
+        }
+        Collections.sort(allLSNs);
+
+        // a scan returns every record once, in LSN order
+        Iterator<LogRecord> iter = logManager.iterator();
+        for (long LSN : allLSNs) {
+            assertEquals(LSN, (long) iter.next().getLSN());
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testConcurrentAppendsFlushed() throws InterruptedException {
+        List<List<Long>> LSNs = appendConcurrently(4, 1000);
+        long lastLSN = 0;
+        for (List<Long> threadLSNs : LSNs) {
+            lastLSN = Math.max(lastLSN, threadLSNs.get(threadLSNs.size() - 1));
+        }
+        logManager.flushToLSN(lastLSN);
+        assertTrue(logManager.getFlushedLSN() >= lastLSN);
+
+        // every flushed page holds all of its records: read them back from disk
+        for (int t = 0; t < LSNs.size(); ++t) {
+            for (int i = 0; i < LSNs.get(t).size(); ++i) {
+                long LSN = LSNs.get(t).get(i);
+                bufferManager.evict(LogManager.getLSNPage(LSN));
+                assertEquals(records.get(t).get(i), logManager.fetchLogRecord(LSN));
+            }
+        }
+    }
 }
@@ -98,6 +98,24 @@ public class TestLogRecord {
                        pageString));
     }
 
+    @Test
+    public void testUpdatePageDeltaSerialize() {
+        PageDelta delta = PageDelta.of(new short[] {4, 1000},
+                                       new byte[][] {"abcdefghij".getBytes(), "klmno".getBytes()},
+                                       new byte[][] {"abXdefghYj".getBytes(), "zzzzz".getBytes()});
+        checkSerialize(new UpdatePageDeltaLogRecord(-98765L, -43210L, -12345L, delta));
+        checkSerialize(new UpdatePageDeltaLogRecord(-98765L, -43210L, -12345L,
+                       new PageDelta(new short[0], new byte[0][])));
+    }
+
+    @Test
+    public void testUndoUpdatePageDeltaSerialize() {
+        PageDelta delta = PageDelta.of(new short[] {4, 1000},
+                                       new byte[][] {"abcdefghij".getBytes(), "klmno".getBytes()},
+                                       new byte[][] {"abXdefghYj".getBytes(), "zzzzz".getBytes()});
+        checkSerialize(new UndoUpdatePageDeltaLogRecord(-98765L, -43210L, -12345L, -57812L, delta));
+    }
+
     @Test
     public void testBeginCheckpointSerialize() {
         checkSerialize(new BeginCheckpointLogRecord());
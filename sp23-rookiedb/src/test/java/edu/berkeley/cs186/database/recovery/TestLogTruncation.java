@@ -0,0 +1,353 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests truncation of the log (ARIESRecoveryManager#truncateLog), and the
+ * archive of truncated log pages.
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestLogTruncation {
+    private String testDir;
+    private ARIESRecoveryManager recoveryManager;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() throws IOException {
+        testDir = tempFolder.newFolder("test-dir").getAbsolutePath();
+        DummyTransaction.cleanupTransactions();
+        recoveryManager = loadRecoveryManager();
+        recoveryManager.restart();
+    }
+
+    @After
+    public void cleanup() {
+        recoveryManager.close();
+    }
+
+    private ARIESRecoveryManager loadRecoveryManager() {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(testDir, recoveryManager);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32,
+                new LRUEvictionPolicy());
+        boolean isLoaded = true;
+        try {
+            diskSpaceManager.allocPart(0);
+            diskSpaceManager.allocPart(1);
+            isLoaded = false;
+        } catch (IllegalStateException e) {
+            // already loaded
+        }
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        if (!isLoaded) {
+            recoveryManager.initialize();
+        }
+        return recoveryManager;
+    }
+
+    /**
+     * Simulates a crash: nothing more is written out, and the managers are
+     * abandoned without closing them.
+     */
+    private void crash() {
+        DummyTransaction.cleanupTransactions();
+        recoveryManager = loadRecoveryManager();
+    }
+
+    private void writeInt(long pageNum, int offset, int value) {
+        Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            page.getBuffer().putInt(offset, value);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private int readInt(long pageNum, int offset) {
+        Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            return page.getBuffer().getInt(offset);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private void startTransaction(long transNum) {
+        DummyTransaction transaction = DummyTransaction.create(transNum);
+        recoveryManager.startTransaction(transaction);
+        TransactionContext.setTransaction(transaction.getTransactionContext());
+    }
+
+    private void commitTransaction(long transNum) {
+        TransactionContext.unsetTransaction();
+        recoveryManager.commit(transNum);
+        recoveryManager.end(transNum);
+    }
+
+    private long[] allocPages(long transNum, int numPages) {
+        startTransaction(transNum);
+        long[] pageNums = new long[numPages];
+        for (int i = 0; i < numPages; ++i) {
+            pageNums[i] = recoveryManager.diskSpaceManager.allocPage(1);
+        }
+        commitTransaction(transNum);
+        return pageNums;
+    }
+
+    /**
+     * Commits numTransactions transactions, each writing its transaction number
+     * to offset 4 * (transNum % 200) of page transNum % pageNums.length. Every
+     * commit flushes the log, so every transaction writes a log page.
+     */
+    private void writeTransactions(long[] pageNums, long firstTransNum, int numTransactions) {
+        for (long transNum = firstTransNum; transNum < firstTransNum + numTransactions; ++transNum) {
+            startTransaction(transNum);
+            writeInt(pageNums[(int) (transNum % pageNums.length)], 4 * (int) (transNum % 200), (int) transNum);
+            commitTransaction(transNum);
+        }
+    }
+
+    /**
+     * Writes every dirty page out, so that the dirty page table does not hold the
+     * log back.
+     */
+    private void flushPages() {
+        recoveryManager.bufferManager.evictAll();
+        recoveryManager.cleanDPT();
+    }
+
+    private String archivePath() {
+        return new File(tempFolder.getRoot(), "archive").getAbsolutePath();
+    }
+
+    private long firstLogPage() {
+        return LogManager.getLSNPage(recoveryManager.logManager.getFirstLSN());
+    }
+
+    @Test
+    public void testTruncateLog() {
+        long[] pageNums = allocPages(1L, 4);
+        writeTransactions(pageNums, 2, 20);
+        flushPages();
+        recoveryManager.checkpoint();
+        long checkpointLSN = recoveryManager.getLastCheckpointLSN();
+
+        assertTrue(recoveryManager.truncateLog() > 0);
+        assertEquals(LogManager.getLSNPage(checkpointLSN), firstLogPage());
+        assertFalse(recoveryManager.diskSpaceManager.pageAllocated(1L));
+        assertFalse(recoveryManager.diskSpaceManager.pageAllocated(firstLogPage() - 1));
+        // nothing more to truncate
+        assertEquals(0, recoveryManager.truncateLog());
+
+        // scans go from the master record straight to the rest of the log
+        Iterator<LogRecord> iter = recoveryManager.logManager.scanFrom(0);
+        assertTrue(iter.next() instanceof MasterLogRecord);
+        long prevLSN = 0;
+        int numRecords = 0;
+        while (iter.hasNext()) {
+            LogRecord record = iter.next();
+            assertTrue(record.getLSN() > prevLSN);
+            if (LogManager.getLSNPage(record.getLSN()) > 0) {
+                assertTrue(record.getLSN() >= recoveryManager.logManager.getFirstLSN());
+                ++numRecords;
+            }
+            prevLSN = record.getLSN();
+        }
+        assertTrue(numRecords > 0);
+        assertEquals(0, LogManager.getLSNIndex(recoveryManager.logManager.getFirstLSN()));
+        assertFalse(recoveryManager.logManager.scanFrom(LogManager.makeLSN(1, 0)).next() instanceof MasterLogRecord);
+
+        // LSNs keep increasing after truncation, and after restart
+        writeTransactions(pageNums, 22, 5);
+        crash();
+        recoveryManager.restart();
+        startTransaction(27L);
+        writeInt(pageNums[0], 0, 27);
+        assertTrue(recoveryManager.transactionTable.get(27L).lastLSN > prevLSN);
+        commitTransaction(27L);
+        for (long transNum = 2; transNum < 27; ++transNum) {
+            assertEquals((int) transNum, readInt(pageNums[(int) (transNum % 4)], 4 * (int) transNum));
+        }
+    }
+
+    @Test
+    public void testActiveTransactionHoldsLog() {
+        long[] pageNums = allocPages(1L, 4);
+        startTransaction(100L);
+        writeInt(pageNums[0], 3000, 100);
+        TransactionContext.unsetTransaction();
+        long firstLSN = recoveryManager.transactionTable.get(100L).firstLSN;
+        writeTransactions(pageNums, 2, 20);
+        flushPages();
+        recoveryManager.checkpoint();
+
+        recoveryManager.truncateLog();
+        assertTrue(recoveryManager.logManager.getFirstLSN() <= firstLSN);
+        assertNotNull(recoveryManager.logManager.fetchLogRecord(firstLSN));
+
+        // the transaction is still rolled back after a crash
+        recoveryManager.logManager.flushToLSN(recoveryManager.transactionTable.get(100L).lastLSN);
+        crash();
+        recoveryManager.restart();
+        assertEquals(0, readInt(pageNums[0], 3000));
+        flushPages();
+        recoveryManager.checkpoint();
+        recoveryManager.truncateLog();
+        assertTrue(recoveryManager.logManager.getFirstLSN() > firstLSN);
+    }
+
+    @Test
+    public void testDirtyPageHoldsLog() {
+        long[] pageNums = allocPages(1L, 4);
+        writeTransactions(pageNums, 2, 20);
+        flushPages();
+        startTransaction(22L);
+        writeInt(pageNums[0], 3000, 22);
+        commitTransaction(22L);
+        long recLSN = recoveryManager.dirtyPageTable.get(pageNums[0]);
+        writeTransactions(pageNums, 23, 20);
+        recoveryManager.checkpoint();
+        // every page but pageNums[0] is written out
+        for (int i = 1; i < 4; ++i) {
+            recoveryManager.bufferManager.evict(pageNums[i]);
+        }
+        recoveryManager.cleanDPT();
+
+        recoveryManager.truncateLog();
+        long firstLSN = recoveryManager.logManager.getFirstLSN();
+        assertTrue(firstLSN > LogManager.makeLSN(1, 0));
+        assertTrue(firstLSN <= recLSN);
+
+        // the change to the dirty page is redone from the log after a crash
+        crash();
+        recoveryManager.restart();
+        assertEquals(22, readInt(pageNums[0], 3000));
+    }
+
+    @Test
+    public void testTruncateAtCheckpoint() {
+        recoveryManager.setTruncateLog(true);
+        assertTrue(recoveryManager.isTruncateLog());
+        long[] pageNums = allocPages(1L, 4);
+        writeTransactions(pageNums, 2, 20);
+        flushPages();
+        recoveryManager.checkpoint();
+        assertEquals(LogManager.getLSNPage(recoveryManager.getLastCheckpointLSN()), firstLogPage());
+    }
+
+    @Test
+    public void testSpaceReclaimed() {
+        // enough log is truncated that the log partition's file is rewritten
+        // without the truncated pages
+        recoveryManager.setTruncateLog(true);
+        long[] pageNums = allocPages(1L, 4);
+        for (long transNum = 2; transNum < 402; transNum += 100) {
+            writeTransactions(pageNums, transNum, 100);
+            flushPages();
+            recoveryManager.checkpoint();
+        }
+        assertTrue(firstLogPage() > 300);
+        assertFalse(new File(testDir, "0.tmp").exists());
+
+        crash();
+        recoveryManager.restart();
+        for (long transNum = 302; transNum < 402; ++transNum) {
+            assertEquals((int) transNum, readInt(pageNums[(int) (transNum % 4)], 4 * (int) (transNum % 200)));
+        }
+    }
+
+    @Test
+    public void testArchive() {
+        recoveryManager.enableLogArchive(archivePath());
+        long[] pageNums = allocPages(1L, 4);
+        writeTransactions(pageNums, 2, 20);
+        flushPages();
+        recoveryManager.checkpoint();
+        long numTruncated = recoveryManager.truncateLog();
+        assertTrue(numTruncated > 0);
+
+        LogArchive archive = recoveryManager.getLogArchive();
+        assertEquals(numTruncated, archive.getNumPages());
+        assertEquals(firstLogPage() - 1, archive.getLastPageNum());
+        long prevLSN = 0;
+        int numRecords = 0;
+        for (LogRecord record : archive) {
+            assertTrue(record.getLSN() > prevLSN);
+            assertTrue(record.getLSN() < recoveryManager.logManager.getFirstLSN());
+            prevLSN = record.getLSN();
+            ++numRecords;
+        }
+        assertTrue(numRecords > 20);
+
+        // the archive survives restarts, and already archived pages are skipped
+        crash();
+        recoveryManager.restart();
+        recoveryManager.enableLogArchive(archivePath());
+        assertEquals(numTruncated, recoveryManager.getLogArchive().getNumPages());
+        recoveryManager.getLogArchive().append(1, new byte[DiskSpaceManager.PAGE_SIZE]);
+        assertEquals(numTruncated, recoveryManager.getLogArchive().getNumPages());
+    }
+
+    @Test
+    public void testRepairPageFromArchive() {
+        recoveryManager.setRepairPages(true);
+        long[] pageNums = allocPages(1L, 4);
+        writeTransactions(pageNums, 2, 20);
+        flushPages();
+        recoveryManager.checkpoint();
+
+        // the page was allocated before the truncation point, so it can only be
+        // rebuilt with the archive
+        byte[] contents = new byte[DiskSpaceManager.PAGE_SIZE];
+        recoveryManager.truncateLog();
+        assertFalse(recoveryManager.repairPage(pageNums[2], contents));
+
+        crash();
+        recoveryManager.restart();
+        recoveryManager.setRepairPages(true);
+        recoveryManager.enableLogArchive(archivePath());
+        writeTransactions(pageNums, 22, 20);
+        flushPages();
+        recoveryManager.checkpoint();
+        recoveryManager.truncateLog();
+        assertTrue(recoveryManager.getLogArchive().getNumPages() > 0);
+        // only allocations and updates truncated after the archive was enabled
+        // are archived
+        assertFalse(recoveryManager.repairPage(pageNums[2], contents));
+
+        long[] newPageNums = allocPages(100L, 4);
+        writeTransactions(newPageNums, 102, 20);
+        flushPages();
+        recoveryManager.checkpoint();
+        recoveryManager.truncateLog();
+        assertTrue(recoveryManager.repairPage(newPageNums[2], contents));
+        ByteBuffer page = ByteBuffer.wrap(contents);
+        for (long transNum = 102; transNum < 122; transNum += 4) {
+            assertEquals((int) transNum, page.getInt(BufferManager.RESERVED_SPACE + 4 * (int) transNum));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.CorruptPageException;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests rebuilding pages that fail their checksum from the log
+ * (ARIESRecoveryManager#setRepairPages).
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestPageRepair {
+    private String testDir;
+    private ARIESRecoveryManager recoveryManager;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() throws IOException {
+        testDir = tempFolder.newFolder("test-dir").getAbsolutePath();
+        DummyTransaction.cleanupTransactions();
+        recoveryManager = loadRecoveryManager();
+        recoveryManager.restart();
+    }
+
+    @After
+    public void cleanup() {
+        recoveryManager.close();
+    }
+
+    private ARIESRecoveryManager loadRecoveryManager() {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        DiskSpaceManagerImpl diskSpaceManager = new DiskSpaceManagerImpl(testDir, recoveryManager);
+        diskSpaceManager.setChecksummed(true);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32,
+                new LRUEvictionPolicy());
+        boolean isLoaded = true;
+        try {
+            diskSpaceManager.allocPart(0);
+            diskSpaceManager.allocPart(1);
+            // allocated outside of any transaction, so not in the log
+            diskSpaceManager.allocPage(DiskSpaceManager.getVirtualPageNum(1, 0));
+            isLoaded = false;
+        } catch (IllegalStateException e) {
+            // already loaded
+        }
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        if (!isLoaded) {
+            recoveryManager.initialize();
+        }
+        return recoveryManager;
+    }
+
+    /**
+     * Simulates a crash: nothing more is written out, and the managers are
+     * abandoned without closing them.
+     */
+    private void crash() {
+        DummyTransaction.cleanupTransactions();
+        recoveryManager = loadRecoveryManager();
+    }
+
+    // Overwrites a few bytes of a data page of partition 1 on disk.
+    private void corruptPage(long pageNum) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(testDir + "/1", "rw")) {
+            file.seek((2L + DiskSpaceManager.getPageNum(pageNum)) * DiskSpaceManager.PAGE_SIZE + 500);
+            file.write(new byte[] {(byte) 0xAB, (byte) 0xCD});
+        }
+    }
+
+    private void writeInt(long pageNum, int offset, int value) {
+        Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            page.getBuffer().putInt(offset, value);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private int readInt(long pageNum, int offset) {
+        Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            return page.getBuffer().getInt(offset);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    /**
+     * Allocates a page, commits writes of 186 at offset 0 and 42 at offset 1000, and
+     * rolls back a write at offset 2000, then writes the page out.
+     * @return page number of the page
+     */
+    private long writePage() {
+        DummyTransaction transaction1 = DummyTransaction.create(1L);
+        recoveryManager.startTransaction(transaction1);
+        TransactionContext.setTransaction(transaction1.getTransactionContext());
+        long pageNum = recoveryManager.diskSpaceManager.allocPage(1);
+        writeInt(pageNum, 0, 186);
+        writeInt(pageNum, 1000, 41);
+        writeInt(pageNum, 1000, 42);
+        TransactionContext.unsetTransaction();
+        recoveryManager.commit(1L);
+        recoveryManager.end(1L);
+
+        DummyTransaction transaction2 = DummyTransaction.create(2L);
+        recoveryManager.startTransaction(transaction2);
+        TransactionContext.setTransaction(transaction2.getTransactionContext());
+        writeInt(pageNum, 2000, 7);
+        TransactionContext.unsetTransaction();
+        recoveryManager.abort(2L);
+        recoveryManager.end(2L);
+
+        Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            page.flush();
+        } finally {
+            page.unpin();
+        }
+        return pageNum;
+    }
+
+    @Test
+    public void testCorruptPageWithoutRepair() throws IOException {
+        long pageNum = writePage();
+        recoveryManager.checkpoint();
+        corruptPage(pageNum);
+        crash();
+        recoveryManager.restart();
+
+        assertFalse(recoveryManager.isRepairPages());
+        try {
+            readInt(pageNum, 0);
+            fail();
+        } catch (CorruptPageException e) {
+            assertEquals(pageNum, e.getPageNum());
+        }
+    }
+
+    @Test
+    public void testRepairPage() throws IOException {
+        long pageNum = writePage();
+        recoveryManager.checkpoint();
+        corruptPage(pageNum);
+        crash();
+        recoveryManager.restart();
+
+        recoveryManager.setRepairPages(true);
+        assertEquals(186, readInt(pageNum, 0));
+        assertEquals(42, readInt(pageNum, 1000));
+        assertEquals(0, readInt(pageNum, 2000));
+
+        // the repaired page was written out in place of the corrupt one
+        byte[] contents = new byte[DiskSpaceManager.PAGE_SIZE];
+        recoveryManager.setRepairPages(false);
+        recoveryManager.diskSpaceManager.readPage(pageNum, contents);
+        assertEquals(42, contents[BufferManager.RESERVED_SPACE + 1003]);
+    }
+
+    @Test
+    public void testRepairDuringRestart() throws IOException {
+        long pageNum = writePage();
+        // written out, but changed since the last checkpoint, so restart redoes
+        // its changes and reads it first
+        corruptPage(pageNum);
+        crash();
+        recoveryManager.setRepairPages(true);
+        recoveryManager.restart();
+
+        assertEquals(186, readInt(pageNum, 0));
+        assertEquals(42, readInt(pageNum, 1000));
+        assertEquals(0, readInt(pageNum, 2000));
+    }
+
+    @Test
+    public void testUnrepairablePage() throws IOException {
+        // allocated and written without a transaction, so the log cannot rebuild it
+        long pageNum = DiskSpaceManager.getVirtualPageNum(1, 0);
+        writeInt(pageNum, 0, 186);
+        Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            page.flush();
+        } finally {
+            page.unpin();
+        }
+        corruptPage(pageNum);
+        crash();
+        recoveryManager.restart();
+
+        recoveryManager.setRepairPages(true);
+        try {
+            readInt(pageNum, 0);
+            fail();
+        } catch (CorruptPageException e) {
+            assertEquals(pageNum, e.getPageNum());
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the redo pass of restart recovery with worker threads
+ * (ARIESRecoveryManager#setRedoThreads).
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestParallelRedo {
+    private String testDir;
+    private ARIESRecoveryManager recoveryManager;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() throws IOException {
+        testDir = tempFolder.newFolder("test-dir").getAbsolutePath();
+        DummyTransaction.cleanupTransactions();
+        recoveryManager = loadRecoveryManager();
+        recoveryManager.restart();
+    }
+
+    @After
+    public void cleanup() {
+        recoveryManager.close();
+    }
+
+    private ARIESRecoveryManager loadRecoveryManager() {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(testDir, recoveryManager);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32,
+                new LRUEvictionPolicy());
+        boolean isLoaded = true;
+        try {
+            diskSpaceManager.allocPart(0);
+            diskSpaceManager.allocPart(1);
+            isLoaded = false;
+        } catch (IllegalStateException e) {
+            // already loaded
+        }
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        if (!isLoaded) {
+            recoveryManager.initialize();
+        }
+        return recoveryManager;
+    }
+
+    /**
+     * Simulates a crash: nothing more is written out, and the managers are
+     * abandoned without closing them.
+     */
+    private void crash() {
+        DummyTransaction.cleanupTransactions();
+        recoveryManager = loadRecoveryManager();
+    }
+
+    private void writeInt(long pageNum, int offset, int value) {
+        Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            page.getBuffer().putInt(offset, value);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private int readInt(long pageNum, int offset) {
+        Page page = recoveryManager.bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            return page.getBuffer().getInt(offset);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private void startTransaction(long transNum) {
+        DummyTransaction transaction = DummyTransaction.create(transNum);
+        recoveryManager.startTransaction(transaction);
+        TransactionContext.setTransaction(transaction.getTransactionContext());
+    }
+
+    private void commitTransaction(long transNum) {
+        TransactionContext.unsetTransaction();
+        recoveryManager.commit(transNum);
+        recoveryManager.end(transNum);
+    }
+
+    @Test
+    public void testParallelRedo() {
+        // more pages than fit in the buffer, written by several transactions
+        startTransaction(1L);
+        long[] pageNums = new long[64];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = recoveryManager.diskSpaceManager.allocPage(1);
+        }
+        commitTransaction(1L);
+        Random random = new Random(186);
+        Map<Long, Map<Integer, Integer>> expected = new HashMap<>();
+        for (long transNum = 2; transNum < 12; ++transNum) {
+            startTransaction(transNum);
+            for (int i = 0; i < 100; ++i) {
+                long pageNum = pageNums[random.nextInt(pageNums.length)];
+                int offset = 4 * random.nextInt(16);
+                int value = random.nextInt();
+                writeInt(pageNum, offset, value);
+                expected.computeIfAbsent(pageNum, k -> new HashMap<>()).put(offset, value);
+            }
+            commitTransaction(transNum);
+        }
+        crash();
+        recoveryManager.setRedoThreads(4);
+        recoveryManager.restart();
+
+        for (Map.Entry<Long, Map<Integer, Integer>> page : expected.entrySet()) {
+            for (Map.Entry<Integer, Integer> write : page.getValue().entrySet()) {
+                assertEquals((int) write.getValue(), readInt(page.getKey(), write.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void testAllocationsAreBarriers() {
+        // a page written, freed, and reallocated, with writes to other pages in
+        // between: its writes from before the free must be redone before the
+        // free, and not after the reallocation
+        startTransaction(1L);
+        long pageNum = recoveryManager.diskSpaceManager.allocPage(1);
+        long otherPageNum = recoveryManager.diskSpaceManager.allocPage(1);
+        writeInt(pageNum, 0, 186);
+        writeInt(otherPageNum, 0, 1);
+        recoveryManager.diskSpaceManager.freePage(pageNum);
+        writeInt(otherPageNum, 0, 2);
+        long reallocated = recoveryManager.diskSpaceManager.allocPage(1);
+        assertEquals(pageNum, reallocated);
+        writeInt(reallocated, 4, 42);
+        commitTransaction(1L);
+        crash();
+        recoveryManager.setRedoThreads(4);
+        recoveryManager.restart();
+
+        assertTrue(recoveryManager.diskSpaceManager.pageAllocated(pageNum));
+        assertEquals(0, readInt(pageNum, 0));
+        assertEquals(42, readInt(pageNum, 4));
+        assertEquals(2, readInt(otherPageNum, 0));
+    }
+
+    @Test
+    public void testUncommittedChangesUndone() {
+        startTransaction(1L);
+        long pageNum = recoveryManager.diskSpaceManager.allocPage(1);
+        writeInt(pageNum, 0, 186);
+        commitTransaction(1L);
+        startTransaction(2L);
+        writeInt(pageNum, 0, 7);
+        writeInt(pageNum, 8, 7);
+        TransactionContext.unsetTransaction();
+        // written out without a commit, so redone by the workers, then undone
+        recoveryManager.logManager.flushToLSN(recoveryManager.transactionTable.get(2L).lastLSN);
+        crash();
+        recoveryManager.setRedoThreads(4);
+        recoveryManager.restart();
+
+        assertEquals(186, readInt(pageNum, 0));
+        assertEquals(0, readInt(pageNum, 8));
+    }
+
+    @Test
+    public void testPerPageOrder() {
+        // records for the same page are redone in the order they were dispatched
+        Map<Long, List<Long>> redone = new HashMap<>();
+        try (ParallelRedo workers = new ParallelRedo(4, record -> {
+                List<Long> lsns = redone.get(record.getPageNum().get());
+                synchronized (lsns) {
+                    lsns.add(record.getLSN());
+                }
+            })) {
+            for (long pageNum = 0; pageNum < 8; ++pageNum) {
+                redone.put(pageNum, new ArrayList<>());
+            }
+            for (long LSN = 1; LSN <= 10000; ++LSN) {
+                long pageNum = LSN % 8;
+                LogRecord record = new UpdatePageLogRecord(1L, pageNum, 0L, (short) 0, new byte[1], new byte[1]);
+                record.setLSN(LSN);
+                workers.dispatch(pageNum, record);
+            }
+            workers.barrier();
+            assertEquals(10000, workers.getNumDispatched());
+        }
+        for (Map.Entry<Long, List<Long>> entry : redone.entrySet()) {
+            List<Long> lsns = entry.getValue();
+            assertEquals(1250, lsns.size());
+            for (int i = 1; i < lsns.size(); ++i) {
+                assertTrue(lsns.get(i - 1) < lsns.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testWorkerFailure() {
+        try (ParallelRedo workers = new ParallelRedo(2, record -> {
+                throw new IllegalStateException("redo failed");
+            })) {
+            LogRecord record = new UpdatePageLogRecord(1L, 1L, 0L, (short) 0, new byte[1], new byte[1]);
+            record.setLSN(1L);
+            workers.dispatch(1L, record);
+            try {
+                workers.barrier();
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals("redo failed", e.getMessage());
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRedoThreads() {
+        recoveryManager.setRedoThreads(0);
+    }
+}
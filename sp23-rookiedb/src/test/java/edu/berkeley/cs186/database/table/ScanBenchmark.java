@@ -0,0 +1,114 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares a filtered full scan (counting the rows with x < 1000) that
+ * materializes a Record per row with one that reads rows through a RowView.
+ *
+ * Not run as part of the test suite; run this class directly to get timings.
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class ScanBenchmark {
+    private static final int NUM_RECORDS = 200000;
+    private static final int NUM_SCANS = 10;
+
+    @Test
+    public void benchmarkFilteredScan() {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(1);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 1024,
+                new ClockEvictionPolicy());
+        Page page = bufferManager.fetchNewPage(new DummyLockContext(), 1);
+        PageDirectory pageDirectory;
+        try {
+            pageDirectory = new PageDirectory(bufferManager, 1, page.getPageNum(), (short) 0, new DummyLockContext());
+        } finally {
+            page.unpin();
+        }
+        Schema schema = new Schema()
+                .add("x", Type.intType())
+                .add("y", Type.intType())
+                .add("s", Type.stringType(20))
+                .add("f", Type.floatType());
+        Table table = new Table("t", schema, pageDirectory, new DummyLockContext());
+        for (int i = 0; i < NUM_RECORDS; ++i) {
+            table.addRecord(new Record(i % 10000, i, "row" + i, (float) i));
+        }
+
+        // warm up the JIT
+        scanRecords(table);
+        scanRows(table);
+
+        long recordBytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < NUM_SCANS; ++i) {
+            assertEquals(NUM_RECORDS / 10, scanRecords(table));
+        }
+        long recordNanos = System.nanoTime() - start;
+        recordBytes = allocatedBytes() - recordBytes;
+
+        long rowBytes = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < NUM_SCANS; ++i) {
+            assertEquals(NUM_RECORDS / 10, scanRows(table));
+        }
+        long rowNanos = System.nanoTime() - start;
+        rowBytes = allocatedBytes() - rowBytes;
+
+        long rows = (long) NUM_RECORDS * NUM_SCANS;
+        System.out.printf("filtered scan (%d rows)%n", rows);
+        System.out.printf("  records:  %8.2f ms (%.1f ns/row, %.1f bytes/row allocated)%n",
+                          recordNanos / 1e6, (double) recordNanos / rows, (double) recordBytes / rows);
+        System.out.printf("  row view: %8.2f ms (%.1f ns/row, %.1f bytes/row allocated)%n",
+                          rowNanos / 1e6, (double) rowNanos / rows, (double) rowBytes / rows);
+        System.out.printf("  speedup:  %8.2fx%n", (double) recordNanos / rowNanos);
+        bufferManager.close();
+    }
+
+    private static int scanRecords(Table table) {
+        IntDataBox bound = new IntDataBox(1000);
+        int count = 0;
+        Iterator<Record> records = table.iterator();
+        while (records.hasNext()) {
+            if (records.next().getValue(0).compareTo(bound) < 0) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private static int scanRows(Table table) {
+        IntDataBox bound = new IntDataBox(1000);
+        int count = 0;
+        Iterator<RowView> rows = table.rowIterator();
+        while (rows.hasNext()) {
+            if (rows.next().compareTo(0, bound) < 0) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+               .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,88 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestFreeSpaceMap {
+    @Test
+    public void testEmpty() {
+        FreeSpaceMap map = new FreeSpaceMap();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.findSpace((short) 1));
+        assertEquals(-1, map.findUnused());
+    }
+
+    @Test
+    public void testFindSpace() {
+        FreeSpaceMap map = new FreeSpaceMap();
+        map.add((short) 10);
+        map.add(FreeSpaceMap.UNUSED);
+        map.add((short) 50);
+        map.add((short) 30);
+        map.add((short) 50);
+
+        assertEquals(0, map.findSpace((short) 1));
+        assertEquals(0, map.findSpace((short) 10));
+        assertEquals(2, map.findSpace((short) 11));
+        assertEquals(2, map.findSpace((short) 50));
+        assertEquals(-1, map.findSpace((short) 51));
+        assertEquals(1, map.findUnused());
+
+        map.set(2, (short) 20);
+        assertEquals(3, map.findSpace((short) 30));
+        assertEquals(4, map.findSpace((short) 31));
+        map.set(1, (short) 100);
+        assertEquals(1, map.findSpace((short) 31));
+        assertEquals(-1, map.findUnused());
+        map.set(4, FreeSpaceMap.UNUSED);
+        assertEquals(4, map.findUnused());
+        assertEquals(FreeSpaceMap.UNUSED, map.get(4));
+        assertEquals((short) 100, map.get(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testSetOutOfBounds() {
+        FreeSpaceMap map = new FreeSpaceMap();
+        map.add((short) 10);
+        map.set(1, (short) 10);
+    }
+
+    @Test
+    public void testMatchesLinearScan() {
+        Random random = new Random(186);
+        FreeSpaceMap map = new FreeSpaceMap();
+        short[] freeSpace = new short[1000];
+        for (int i = 0; i < freeSpace.length; ++i) {
+            freeSpace[i] = (short) (random.nextInt(4001) - 1);
+            map.add(freeSpace[i]);
+        }
+        for (int i = 0; i < 10000; ++i) {
+            int slot = random.nextInt(freeSpace.length);
+            freeSpace[slot] = (short) (random.nextInt(4001) - 1);
+            map.set(slot, freeSpace[slot]);
+
+            short requiredSpace = (short) (random.nextInt(4000) + 1);
+            int expected = -1;
+            for (int j = 0; j < freeSpace.length && expected == -1; ++j) {
+                if (freeSpace[j] >= requiredSpace) {
+                    expected = j;
+                }
+            }
+            assertEquals(expected, map.findSpace(requiredSpace));
+            int expectedUnused = -1;
+            for (int j = 0; j < freeSpace.length && expectedUnused == -1; ++j) {
+                if (freeSpace[j] == FreeSpaceMap.UNUSED) {
+                    expectedUnused = j;
+                }
+            }
+            assertEquals(expectedUnused, map.findUnused());
+        }
+    }
+}
@@ -190,6 +190,72 @@ public class TestPageDirectory {
         } catch (IllegalArgumentException e) { /* do nothing */ }
     }
 
+    @Test
+    public void testGetPageWithSpaceManyHeaderPages() {
+        createPageDirectory((short) 0);
+        Page header = bufferManager.fetchNewPage(new DummyLockContext("_dummyPageDirectoryRecord"), 0);
+        header.unpin();
+        createPageDirectory(header.getPageNum(), (short) 0);
+
+        // fill more than two header pages with full data pages
+        short pageSize = pageDirectory.getEffectivePageSize();
+        List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            Page page = pageDirectory.getPageWithSpace(pageSize);
+            page.unpin();
+            pages.add(page);
+        }
+        assertEquals(1000, pageDirectory.getNumDataPages());
+
+        // free space is found in the first data page that has enough, after reopening too
+        pageDirectory.updateFreeSpace(pages.get(900), (short) 20);
+        pageDirectory.updateFreeSpace(pages.get(700), (short) 10);
+        createPageDirectory(header.getPageNum(), (short) 0);
+        Page p1 = pageDirectory.getPageWithSpace((short) 20);
+        Page p2 = pageDirectory.getPageWithSpace((short) 10);
+        Page p3 = pageDirectory.getPageWithSpace((short) 10);
+        p1.unpin(); p2.unpin(); p3.unpin();
+        assertEquals(pages.get(900), p1);
+        assertEquals(pages.get(700), p2);
+        assertFalse(pages.contains(p3));
+
+        // freed data pages' entries are reused
+        pageDirectory.updateFreeSpace(pages.get(3), pageSize);
+        Page p4 = pageDirectory.getPageWithSpace(pageSize);
+        p4.unpin();
+        List<Page> iterated = new ArrayList<>();
+        for (Page page : pageDirectory) {
+            page.unpin();
+            iterated.add(page);
+        }
+        assertEquals(1001, iterated.size());
+        assertEquals(p4, iterated.get(3));
+    }
+
+    @Test
+    public void testGetPageWithSpaceHeaderChanged() {
+        Page header = bufferManager.fetchNewPage(new DummyLockContext("_dummyPageDirectoryRecord"), 0);
+        header.unpin();
+        createPageDirectory(header.getPageNum(), (short) 10);
+
+        short pageSize = (short) (pageDirectory.getEffectivePageSize() - 10);
+        Page p1 = pageDirectory.getPageWithSpace((short) (pageSize - 100));
+
+        // shrink the free space recorded in the header page behind the page directory's
+        // back (as undoing a delete would): 100 -> 50
+        header.pin();
+        try {
+            header.getBuffer().position(13 + 8).putShort((short) 50);
+        } finally {
+            header.unpin();
+        }
+        Page p2 = pageDirectory.getPageWithSpace((short) 60);
+        Page p3 = pageDirectory.getPageWithSpace((short) 50);
+        p1.unpin(); p2.unpin(); p3.unpin();
+        assertNotEquals(p1, p2);
+        assertEquals(p1, p3);
+    }
+
     @Test
     public void testIterator() {
         createPageDirectory((short) 0);
@@ -0,0 +1,94 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.databox.*;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestRowView {
+    private static final Schema SCHEMA = new Schema()
+            .add("b", Type.boolType())
+            .add("i", Type.intType())
+            .add("s", Type.stringType(6))
+            .add("f", Type.floatType())
+            .add("l", Type.longType());
+
+    private static RowView viewOf(Record record) {
+        // pad the row, to check that the view reads at its offset
+        byte[] bytes = new byte[SCHEMA.getSizeInBytes() + 3];
+        System.arraycopy(SCHEMA.verify(record).toBytes(SCHEMA), 0, bytes, 3, SCHEMA.getSizeInBytes());
+        RowView view = new RowView(SCHEMA);
+        view.reset(bytes, 3);
+        return view;
+    }
+
+    @Test
+    public void testAccessors() {
+        Record record = new Record(true, -186, "abc", 1.5f, 1L << 40);
+        RowView view = viewOf(record);
+        assertEquals(5, view.size());
+        assertTrue(view.getBool(0));
+        assertEquals(-186, view.getInt(1));
+        assertEquals("abc", view.getString(2));
+        assertEquals(1.5f, view.getFloat(3), 0);
+        assertEquals(1L << 40, view.getLong(4));
+        assertEquals(new StringDataBox("abc", 6), view.getValue(2));
+        assertEquals(SCHEMA.verify(record), view.toRecord());
+
+        // a view over a record behaves the same way
+        view.reset(record);
+        assertEquals(-186, view.getInt(1));
+        assertEquals("abc", view.getString(2));
+        assertEquals(record, view.toRecord());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testWrongType() {
+        viewOf(new Record(true, 1, "a", 1.0f, 1L)).getFloat(1);
+    }
+
+    @Test
+    public void testComparisonsMatchDataBoxes() {
+        List<Record> records = Arrays.asList(
+                new Record(false, 0, "z", 0.0f, 0L),
+                new Record(true, 5, "ab", 5.0f, 5L),
+                new Record(true, -5, "abc", -5.5f, -5L),
+                new Record(false, 6, "b", 5.5f, 1L << 40),
+                new Record(true, Integer.MAX_VALUE, "abcdef", 1e9f, Long.MIN_VALUE)
+        );
+        for (Record a : records) {
+            RowView view = viewOf(a);
+            for (Record b : records) {
+                RowView other = viewOf(b);
+                for (int col = 0; col < SCHEMA.size(); ++col) {
+                    for (int otherCol = 0; otherCol < SCHEMA.size(); ++otherCol) {
+                        DataBox value = a.getValue(col);
+                        DataBox otherValue = b.getValue(otherCol);
+                        assertEquals(value.equals(otherValue), view.valueEquals(col, otherValue));
+                        Integer expected;
+                        try {
+                            expected = Integer.signum(value.compareTo(otherValue));
+                        } catch (IllegalArgumentException e) {
+                            expected = null;
+                        }
+                        if (expected == null) {
+                            int c = col;
+                            assertThrows(IllegalArgumentException.class, () -> view.compareTo(c, otherValue));
+                        } else {
+                            assertEquals(expected.intValue(), Integer.signum(view.compareTo(col, otherValue)));
+                            assertEquals(expected.intValue(),
+                                         Integer.signum(view.compareTo(col, other, otherCol)));
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
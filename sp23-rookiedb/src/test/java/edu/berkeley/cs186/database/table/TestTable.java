@@ -6,6 +6,7 @@ import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
@@ -20,8 +21,11 @@ import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -147,6 +151,66 @@ public class TestTable {
         }
     }
 
+    @Test
+    public void testVacuum() {
+        int numRecordsPerPage = table.getNumRecordsPerPage();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < numRecordsPerPage * 5; ++i) {
+            rids.add(table.addRecord(createRecordWithAllTypes(i)));
+        }
+        Map<RecordId, Record> records = new HashMap<>();
+        for (int i = 0; i < rids.size(); ++i) {
+            if (i % 4 == 0) {
+                records.put(rids.get(i), createRecordWithAllTypes(i));
+            } else {
+                table.deleteRecord(rids.get(i));
+            }
+        }
+        assertEquals(5, table.getNumDataPages());
+
+        // a quarter of the records are left on each page, which fit on two pages
+        Map<RecordId, Record> moved = new HashMap<>();
+        int numFreed = table.vacuum((oldRid, newRid) -> {
+            assertTrue(records.containsKey(oldRid));
+            assertFalse(records.containsKey(newRid));
+            moved.put(newRid, records.remove(oldRid));
+        });
+        records.putAll(moved);
+        assertEquals(3, numFreed);
+        assertEquals(2, table.getNumDataPages());
+        assertEquals(numRecordsPerPage * 5 / 4, records.size());
+        for (Map.Entry<RecordId, Record> entry : records.entrySet()) {
+            assertEquals(entry.getValue(), table.getRecord(entry.getKey()));
+        }
+        int numRecords = 0;
+        for (Record r : table) {
+            assertTrue(records.containsValue(r));
+            ++numRecords;
+        }
+        assertEquals(records.size(), numRecords);
+
+        // vacuuming again does nothing, and the partially empty page is reused
+        assertEquals(0, table.vacuum((oldRid, newRid) -> fail("no records should move")));
+        for (int i = 0; i < numRecordsPerPage * 3 / 4; ++i) {
+            table.addRecord(createRecordWithAllTypes(i));
+        }
+        assertEquals(2, table.getNumDataPages());
+    }
+
+    @Test
+    public void testVacuumFullPageRecords() {
+        table.setFullPageRecords();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            rids.add(table.addRecord(createRecordWithAllTypes(i)));
+        }
+        for (int i = 0; i < 10; i += 2) {
+            table.deleteRecord(rids.get(i));
+        }
+        assertEquals(0, table.vacuum((oldRid, newRid) -> fail("no records should move")));
+        assertEquals(5, table.getNumDataPages());
+    }
+
     @Test
     public void testReloadTable()  {
         // We add 42 to make sure we have some incomplete pages.
@@ -406,6 +470,319 @@ public class TestTable {
         assertFalse(iter.hasNext());
     }
 
+    /**
+     * Test of the row iterator over three pages of records with every other
+     * record missing, including marking and resetting across pages.
+     */
+    @Test
+    public void testRowIterator() {
+        int numRecords = table.getNumRecordsPerPage() * 2 + 42;
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < numRecords; ++i) {
+            rids.add(table.addRecord(createRecordWithAllTypes(i)));
+        }
+        for (int i = 0; i < numRecords; i += 2) {
+            table.deleteRecord(rids.get(i));
+        }
+
+        BacktrackingIterator<RowView> iter = table.rowIterator();
+        RowView first = null;
+        for (int i = 1; i < numRecords; i += 2) {
+            assertTrue(iter.hasNext());
+            RowView row = iter.next();
+            // the same view is reused for every row
+            if (first == null) first = row;
+            assertSame(first, row);
+            assertEquals(i, row.getInt(1));
+            assertEquals(createRecordWithAllTypes(i), row.toRecord());
+            if (i == 11) iter.markPrev();
+        }
+        assertFalse(iter.hasNext());
+
+        // rows of the first page are read again after a reset
+        iter.reset();
+        for (int i = 11; i < numRecords; i += 2) {
+            assertEquals(i, iter.next().getInt(1));
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testRowIteratorFullPageRecords() {
+        table.setFullPageRecords();
+        for (int i = 0; i < 5; ++i) {
+            table.addRecord(createRecordWithAllTypes(i));
+        }
+        BacktrackingIterator<RowView> iter = table.rowIterator();
+        for (int i = 0; i < 5; ++i) {
+            assertEquals(createRecordWithAllTypes(i), iter.next().toRecord());
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testPaxLayout() {
+        table.setPageLayout(PageLayout.PAX);
+        int numRecordsPerPage = table.getNumRecordsPerPage();
+        assertEquals(400, numRecordsPerPage);
+        int numRecords = numRecordsPerPage * 2 + 42;
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < numRecords; ++i) {
+            rids.add(table.addRecord(createRecordWithAllTypes(i)));
+        }
+        for (int i = 0; i < numRecords; i += 3) {
+            table.updateRecord(rids.get(i), createRecordWithAllTypes(-i));
+        }
+        for (int i = 1; i < numRecords; i += 3) {
+            table.deleteRecord(rids.get(i));
+        }
+
+        // the int column of the first page is stored in one minipage, after
+        // the bitmap and the bool column's minipage
+        Page page = pageDirectory.getPage(rids.get(0).getPageNum());
+        try {
+            int minipageOffset = 50 + numRecordsPerPage;
+            assertEquals(0, page.getBuffer().getInt(minipageOffset));
+            assertEquals(2, page.getBuffer().getInt(minipageOffset + 2 * 4));
+            assertEquals(-3, page.getBuffer().getInt(minipageOffset + 3 * 4));
+        } finally {
+            page.unpin();
+        }
+
+        for (int i = 0; i < numRecords; ++i) {
+            if (i % 3 == 1) continue;
+            Record expected = createRecordWithAllTypes(i % 3 == 0 ? -i : i);
+            assertEquals(expected, table.getRecord(rids.get(i)));
+        }
+        Iterator<Record> iter = table.iterator();
+        BacktrackingIterator<RowView> rowIter = table.rowIterator();
+        for (int i = 0; i < numRecords; ++i) {
+            if (i % 3 == 1) continue;
+            Record expected = createRecordWithAllTypes(i % 3 == 0 ? -i : i);
+            assertEquals(expected, iter.next());
+            assertEquals(expected, rowIter.next().toRecord());
+        }
+        assertFalse(iter.hasNext());
+        assertFalse(rowIter.hasNext());
+
+        // the layout is the same when the table is loaded again
+        table = new Table(table.getName(), table.getSchema(), pageDirectory, new DummyLockContext());
+        table.setPageLayout(PageLayout.PAX);
+        assertEquals(createRecordWithAllTypes(2), table.getRecord(rids.get(2)));
+    }
+
+    @Test
+    public void testPaxRowIteratorColumns() {
+        table.setPageLayout(PageLayout.PAX);
+        int numRecords = table.getNumRecordsPerPage() * 2 + 42;
+        for (int i = 0; i < numRecords; ++i) {
+            table.addRecord(createRecordWithAllTypes(i));
+        }
+
+        BacktrackingIterator<RowView> iter = table.rowIterator(Collections.singleton(1));
+        for (int i = 0; i < numRecords; ++i) {
+            RowView row = iter.next();
+            assertEquals(i, row.getInt(1));
+            assertTrue(row.isRead(1));
+            assertFalse(row.isRead(0));
+            assertNull(row.toRecord().getValue(3));
+            if (i == 11) iter.markPrev();
+        }
+        assertFalse(iter.hasNext());
+        iter.reset();
+        assertEquals(11, iter.next().getInt(1));
+
+        // columns that were not read can't be accessed
+        try {
+            iter.next().getFloat(3);
+            fail("column 3 was not read");
+        } catch (IllegalStateException e) {
+            /* do nothing */
+        }
+    }
+
+    @Test
+    public void testPaxVacuum() {
+        table.setPageLayout(PageLayout.PAX);
+        int numRecordsPerPage = table.getNumRecordsPerPage();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < numRecordsPerPage * 3; ++i) {
+            rids.add(table.addRecord(createRecordWithAllTypes(i)));
+        }
+        Map<RecordId, Record> records = new HashMap<>();
+        for (int i = 0; i < rids.size(); ++i) {
+            if (i % 2 == 0) {
+                records.put(rids.get(i), createRecordWithAllTypes(i));
+            } else {
+                table.deleteRecord(rids.get(i));
+            }
+        }
+
+        Map<RecordId, Record> moved = new HashMap<>();
+        int numFreed = table.vacuum((oldRid, newRid) -> moved.put(newRid, records.remove(oldRid)));
+        records.putAll(moved);
+        assertEquals(1, numFreed);
+        assertEquals(2, table.getNumDataPages());
+        for (Map.Entry<RecordId, Record> entry : records.entrySet()) {
+            assertEquals(entry.getValue(), table.getRecord(entry.getKey()));
+        }
+    }
+
+    // a table t(id: int, name: string(200)) with slotted data pages
+    private Table createSlottedTable() {
+        Schema slottedSchema = new Schema()
+                .add("id", Type.intType())
+                .add("name", Type.stringType(200));
+        Page page = bufferManager.fetchNewPage(new DummyLockContext(), 1);
+        try {
+            pageDirectory = new PageDirectory(bufferManager, 1, page.getPageNum(), (short) 0, new DummyLockContext());
+        } finally {
+            page.unpin();
+        }
+        Table slottedTable = new Table("slottedtable", slottedSchema, pageDirectory, new DummyLockContext());
+        slottedTable.setPageLayout(PageLayout.SLOTTED);
+        return slottedTable;
+    }
+
+    @Test
+    public void testSlottedLayout() {
+        table = createSlottedTable();
+        // 4 byte header, and 4 byte slots for records of at least 6 bytes
+        assertEquals((4050 - 4) / 10, table.getNumRecordsPerPage());
+
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            rids.add(table.addRecord(new Record(i, "name" + i)));
+        }
+        // each record takes at most 4 + 2 + 7 bytes and a slot, rather than
+        // 204 bytes and a bit of the bitmap
+        assertEquals(5, table.getNumDataPages());
+
+        for (int i = 1; i < 1000; i += 3) {
+            table.deleteRecord(rids.get(i));
+        }
+        for (int i = 0; i < 1000; i += 3) {
+            table.updateRecord(rids.get(i), new Record(i, i % 2 == 0 ? "n" : "a much longer name " + i));
+        }
+        Map<RecordId, Record> records = new HashMap<>();
+        for (int i = 0; i < 1000; ++i) {
+            if (i % 3 == 0) {
+                records.put(rids.get(i), new Record(i, i % 2 == 0 ? "n" : "a much longer name " + i));
+            } else if (i % 3 == 2) {
+                records.put(rids.get(i), new Record(i, "name" + i));
+            }
+        }
+        for (Map.Entry<RecordId, Record> entry : records.entrySet()) {
+            assertEquals(entry.getValue(), table.getRecord(entry.getKey()));
+        }
+
+        Iterator<RecordId> ridIter = table.ridIterator();
+        Iterator<Record> iter = table.iterator();
+        BacktrackingIterator<RowView> rowIter = table.rowIterator();
+        int numRecords = 0;
+        while (ridIter.hasNext()) {
+            Record expected = records.get(ridIter.next());
+            assertEquals(expected, iter.next());
+            RowView row = rowIter.next();
+            assertEquals(expected, row.toRecord());
+            assertEquals(expected.getValue(1).getString(), row.getString(1));
+            assertEquals(0, row.compareTo(1, expected.getValue(1)));
+            ++numRecords;
+        }
+        assertEquals(records.size(), numRecords);
+        assertFalse(iter.hasNext());
+        assertFalse(rowIter.hasNext());
+
+        // the layout is the same when the table is loaded again
+        table = new Table(table.getName(), table.getSchema(), pageDirectory, new DummyLockContext());
+        table.setPageLayout(PageLayout.SLOTTED);
+        assertEquals(records.get(rids.get(3)), table.getRecord(rids.get(3)));
+        assertEquals(records.get(rids.get(5)), table.getRecord(rids.get(5)));
+    }
+
+    @Test(expected = DatabaseException.class)
+    public void testSlottedGetDeletedRecord() {
+        table = createSlottedTable();
+        RecordId rid = table.addRecord(new Record(0, "a"));
+        table.addRecord(new Record(1, "b"));
+        table.deleteRecord(rid);
+        table.getRecord(rid);
+    }
+
+    @Test
+    public void testSlottedUpdateOnFullPage() {
+        table = createSlottedTable();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            rids.add(table.addRecord(new Record(i, "a name of 20 chars.")));
+        }
+        assertEquals(2, table.getNumDataPages());
+        long firstPage = rids.get(0).getPageNum();
+
+        // shrinking records and growing them back into the space freed by
+        // other records moves them on the page
+        for (int i = 0; i < 100; ++i) {
+            if (rids.get(i).getPageNum() == firstPage) {
+                table.updateRecord(rids.get(i), new Record(i, i % 2 == 0 ? "a" : "a name of 20 chars."));
+            }
+        }
+        for (int i = 1; i < 100; i += 2) {
+            if (rids.get(i).getPageNum() == firstPage) {
+                table.updateRecord(rids.get(i), new Record(i, "a name of 37 chars, at least twice 19"));
+            }
+        }
+        for (int i = 0; i < 100; ++i) {
+            String name = i % 2 == 0 ? "a" : "a name of 37 chars, at least twice 19";
+            assertEquals(new Record(i, name), table.getRecord(rids.get(i)));
+        }
+
+        // records that no longer fit on their page can't be updated
+        try {
+            table.updateRecord(rids.get(0), new Record(0, new String(new char[199]).replace('\0', 'x')));
+            fail("record should not fit on its page");
+        } catch (DatabaseException e) {
+            /* do nothing */
+        }
+        assertEquals(new Record(0, "a"), table.getRecord(rids.get(0)));
+    }
+
+    @Test
+    public void testSlottedVacuum() {
+        table = createSlottedTable();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i) {
+            rids.add(table.addRecord(new Record(i, "name" + i)));
+        }
+        int numDataPages = table.getNumDataPages();
+        Map<RecordId, Record> records = new HashMap<>();
+        for (int i = 0; i < rids.size(); ++i) {
+            if (i % 4 == 0) {
+                records.put(rids.get(i), new Record(i, "name" + i));
+            } else {
+                table.deleteRecord(rids.get(i));
+            }
+        }
+
+        Map<RecordId, Record> moved = new HashMap<>();
+        int numFreed = table.vacuum((oldRid, newRid) -> {
+            assertTrue(records.containsKey(oldRid));
+            assertFalse(records.containsKey(newRid));
+            moved.put(newRid, records.remove(oldRid));
+        });
+        records.putAll(moved);
+        assertTrue(numFreed > numDataPages / 2);
+        assertEquals(numDataPages - numFreed, table.getNumDataPages());
+        for (Map.Entry<RecordId, Record> entry : records.entrySet()) {
+            assertEquals(entry.getValue(), table.getRecord(entry.getKey()));
+        }
+        int numRecords = 0;
+        for (Record r : table) {
+            assertTrue(records.containsValue(r));
+            ++numRecords;
+        }
+        assertEquals(500, numRecords);
+    }
+
     /**
      * Simple test of TableIterator over three pages of records with no gaps.
      */